@@ -1,22 +1,143 @@
 import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java_cup.runtime.*;
 import lexer.*;
 import ast.*;
 import parser.*;
+import semantic.*;
+import codegen.*;
+import opt.*;
+import vm.*;
 
 /**
  * Main program to do generate MIPS code from C-- language.
  *
  * The program reads a in-file, creates a scanner and a parser, and
- * calls the parser.  If the parse is successful, the program performs
- * name analysis, type-checking and code generation
+ * calls the parser.  If the parse is successful, the program runs the
+ * passes (name analysis, type-checking and code generation) with a
+ * PassManager
+ *
+ * Command-line flags:
+ *     -prelex   tokenize the whole file into a compact TokenStream before
+ *               parsing, instead of scanning on demand
+ *     -rdparse  parse with the hand-written recursive-descent parser
+ *               (CmmRDParser) instead of the CUP parser; implies -prelex
+ *     -parallel parse the top-level declarations concurrently
+ *               (CmmParallelParser); implies -rdparse
+ *     -flat     keep the AST in a compact FlatAST, built one top-level
+ *               declaration at a time by CmmRDParser; implies -rdparse
+ *               (-parallel is ignored)
+ *     -unparse  write the unparsed program (to a .unparse file) instead of
+ *               the generated code
+ *     -object   assemble the generated code into an ELF32 relocatable
+ *               object (a .o file, see codegen.Assembler) instead of
+ *               writing it as text to a .asm file; needs -regcall (or
+ *               -O2 or -Os), as the stack calling convention writes the
+ *               return code after each declaration, in .data after a
+ *               global variable
+ *     -jvm      generate a Java class file (NAME.class for NAME.cmm, see
+ *               codegen.JvmGenerator), to be run with java -cp DIR NAME,
+ *               instead of MIPS code
+ *     -run      compile the program to bytecode and run it with the
+ *               interpreter (see vm.Interpreter) instead of generating
+ *               code: cin reads NAME.in if there is one, and cout writes
+ *               to NAME.out
+ *     -bench    run the program as -run does, 5 times, and as many with
+ *               the tree-walking interpreter vm.TreeWalker, printing the
+ *               best time of each and whether their outputs differ;
+ *               implies -run
+ *     -regcall  generate code with the register calling convention: the
+ *               first four arguments in A0-A3, and the variables in
+ *               registers (see codegen.Frame), instead of passing all
+ *               the arguments on the stack
+ *     -reduce-strength
+ *               multiply and divide by constants with shifts and adds
+ *               (see codegen.StrengthReduction) rather than mul and div
+ *     -schedule reorder the instructions of each basic block for the MIPS
+ *               pipeline (see codegen.Scheduler), the assembler filling
+ *               the delay slots of the branches as it does for SPIM
+ *     -delay-slots
+ *               schedule and fill the delay slots of the branches, for
+ *               assemblers supporting .set noreorder; implies -schedule
+ *     -small-data
+ *               address the globals off GP, set by main to their data
+ *               block (see codegen.DataLayout), in one instruction
+ *     -buffered-io
+ *               read and write through the buffers of a runtime written
+ *               with the program (see codegen.IoRuntime) rather than with
+ *               a syscall for each cin and cout; the output is written
+ *               when the buffer is full and when main exits, and the ints
+ *               read may be separated by any blanks
+ *     -unroll-factor=N
+ *               unroll the counted loops N times (4 by default, 1 to
+ *               unroll fully the short ones only) in the pass unroll
+ *     -disable-pass=NAME, -enable-pass=NAME
+ *               do not run (run) the pass NAME: name-analysis, type-check,
+ *               inline, sra, promote, unroll, licm, cse, dce,
+ *               merge-writes, resolve-offset, unparse or codegen; inline
+ *               (function inlining), sra (scalar replacement of the local
+ *               structs), promote (promotion of the globals to locals in
+ *               the loops), unroll (loop unrolling), licm (loop-invariant
+ *               code motion and induction variables), cse (common
+ *               subexpression elimination), dce (dead code elimination)
+ *               and merge-writes (merging of the consecutive writes of
+ *               constants) are disabled by default
+ *     -time-passes
+ *               print the time and memory allocated by each pass
+ *     -O0, -O1, -O2, -Os
+ *               the optimization level, selecting the passes and code
+ *               generation flags (those given too are added):
+ *               -O0   none, the fastest compile;
+ *               -O1   the cheap passes: sra, cse, dce and merge-writes,
+ *                     and -reduce-strength and -small-data;
+ *               -O2   all: -regcall, -reduce-strength, -schedule,
+ *                     -small-data and the passes inline, sra, promote,
+ *                     unroll, licm, cse, dce and merge-writes;
+ *               -Os   the smallest code: -regcall, -small-data, sra, cse,
+ *                     dce and merge-writes;
+ *               the compile time and the number of instructions generated
+ *               are printed for each file
+ *
+ * The output of a file that does not compile is removed, and the program
+ * exits with -1 once all the files are read.
  */
 
 public class Main {
+
+    // command-line flags
+    private static boolean preLex = false;
+    private static boolean rdParse = false;
+    private static boolean parallelParse = false;
+    private static boolean flat = false;
+    private static boolean unparse = false;
+    private static boolean object = false;
+    private static boolean jvm = false;
+    private static boolean run = false;
+    private static boolean bench = false;
+    private static boolean registerCalls = false;
+    private static boolean reduceStrength = false;
+    private static boolean schedule = false;
+    private static boolean smallData = false;
+    private static boolean fillDelaySlots = false;
+    private static boolean bufferedIO = false;
+    private static int unrollFactor = 4;
+    private static boolean timePasses = false;
+    private static String level = null;   // the -O flag given
+    private static List<String> disabledPasses = new ArrayList<String>();
+    private static List<String> enabledPasses = new ArrayList<String>();
+
+    private static final int BENCH_RUNS = 5;
+
     public static void main(String[] args) throws IOException { // may be thrown by the scanner
+        readFlags(args);
+        passes(null, null, null, null, null); // check the pass names given
         java.util.Scanner console = new java.util.Scanner(System.in);
         String stop = "stop";
         String filename = readFileName(console,stop);
+        boolean failed = false;
         
         while ( ! filename.equals(stop) ) {
             FileReader inFile = null;
@@ -28,28 +149,226 @@ public class Main {
             }
 
             PrintWriter outFile = null;
+            InstructionCounter counter = null;
+            OutputStream output = null; // of the class file, or of the program run
+            String base = filename.substring(0,filename.lastIndexOf("."));
             String outfilepath = null;
             try {
-            outfilepath = filename.substring(0,filename.lastIndexOf(".")) + ".asm";
-                outFile = new PrintWriter(outfilepath);
+            outfilepath = base + (unparse ? ".unparse" : jvm ? ".class" : run ? ".out"
+                                  : object ? ".o" : ".asm");
+                OutputStream stream = new FileOutputStream(outfilepath);
+                if ((jvm || run) && !unparse) {
+                    output = new BufferedOutputStream(stream);
+                }
+                else {
+                    counter = new InstructionCounter(object && !unparse
+                        ? new Assembler(new BufferedOutputStream(stream))
+                        : new BufferedWriter(new OutputStreamWriter(stream)));
+                    outFile = new PrintWriter(counter);
+                }
             } catch (FileNotFoundException ex) {
                 System.err.println("File " + outfilepath + " could not be opened for writing.");
                 System.exit(-1);
             }
+            long start = System.nanoTime();
+            boolean compiled = false;
             try {
-                processInputFile(inFile,outFile);
+                compiled = processInputFile(inFile,outFile,output,base);
             }
             catch (SyntaxErrorException see) {
                 System.out.println("syntax error: parsing aborted");
             }
             inFile.close();
-            outFile.close();
+            if ( output != null ) {
+                output.close();
+                if ( level != null ) {
+                    System.err.printf("%s %s: %.3f ms%n", filename, level,
+                                      (System.nanoTime() - start) / 1e6);
+                }
+            }
+            else {
+                outFile.close();
+                if ( level != null ) {
+                    System.err.printf("%s %s: %.3f ms, %d instructions%n", filename,
+                                      level, (System.nanoTime() - start) / 1e6,
+                                      counter.count());
+                }
+            }
+            if ( ! compiled ) {
+                new File(outfilepath).delete();
+                failed = true;
+            }
             filename = readFileName(console,stop);
         }
+        if ( failed )
+            System.exit(-1);
+    }
+
+    // returns false if the file did not compile
+    private static boolean processInputFile(FileReader inFile, PrintWriter outFile,
+                                            OutputStream output, String base)
+            throws IOException {
+        Program program;
+        if (flat) {
+            CharNum.num = 1; // new file: the scanner starts on column 1
+            // the TokenStream is dropped as soon as the FlatAST is built
+            program = new CmmRDParser(TokenStream.lex(inFile)).parseFlat();
+            System.out.println ("program parsed correctly.");
+        }
+        else {
+            program = parse(inFile);
+        }
+        ErrMsg.reset(); // reset the control for analysis errors
+        BytecodeCompiler compiler = run && !unparse && !jvm ? new BytecodeCompiler() : null;
+        TreeWalker walker = compiler != null && bench ? new TreeWalker() : null;
+        PassManager passes = passes(outFile, output, new File(base).getName(), compiler, walker);
+        boolean compiled = passes.run(program);
+        if ( ! compiled )
+            System.err.println("Compilation aborted");
+        else if ( compiler != null )
+            runProgram(compiler.bytecode(), walker, output, base);
+        if ( timePasses )
+            passes.printStats(System.err);
+        return compiled;
+    }
+
+    /**
+     * The passes run on each file: name analysis, type checking, the
+     * optimizations, offset resolution for local variables, then unparsing
+     * or code generation (to the class file of the name with -jvm, to
+     * bytecode with the compiler given, the walker then collecting the
+     * program too, with -run)
+     */
+    private static PassManager passes(PrintWriter outFile, OutputStream classFile,
+                                      String className, BytecodeCompiler compiler,
+                                      TreeWalker walker) {
+        PassManager passes = new PassManager();
+        passes.add(new NameAnalyzer());
+        passes.add(new TypeChecker());
+        passes.add(new Inliner(), false);
+        passes.add(new ScalarReplacement(), false);
+        passes.add(new GlobalPromotion(), false);
+        passes.add(new LoopUnroller(unrollFactor), false);
+        passes.add(new LoopOptimizer(), false);
+        passes.add(new LocalValueNumbering(), false);
+        passes.add(new DeadCodeEliminator(), false);
+        passes.add(new WriteMerger(), false);
+        passes.add(new OffsetResolver());
+        if ( unparse )
+            passes.add(new Unparser(outFile));
+        else if ( jvm )
+            passes.add(new JvmGenerator(classFile, className));
+        else if ( compiler != null ) {
+            passes.add(compiler);
+            if ( walker != null )
+                passes.add(walker);
+        }
+        else {
+            CodeGenerator.Options options = new CodeGenerator.Options();
+            options.registerCalls = registerCalls;
+            options.reduceStrength = reduceStrength;
+            options.schedule = schedule;
+            options.fillDelaySlots = fillDelaySlots;
+            options.smallData = smallData;
+            options.bufferedIO = bufferedIO;
+            passes.add(new CodeGenerator(outFile, options));
+        }
+        for (String name : levelPasses()) {
+            setEnabled(passes, name, true);
+        }
+        for (String name : disabledPasses) {
+            setEnabled(passes, name, false);
+        }
+        for (String name : enabledPasses) {
+            setEnabled(passes, name, true);
+        }
+        return passes;
+    }
+
+    /**
+     * Run the program compiled, reading the NAME.in file of base if there
+     * is one and writing to output; with the walker (-bench), run it
+     * BENCH_RUNS times with each interpreter, and print their best times
+     */
+    private static void runProgram(Bytecode bytecode, TreeWalker walker, OutputStream output,
+                                   String base) throws IOException {
+        File inputFile = new File(base + ".in");
+        byte[] input = inputFile.exists() ? Files.readAllBytes(inputFile.toPath()) : new byte[0];
+        Interpreter interpreter = new Interpreter(bytecode);
+        try {
+            if ( walker == null ) {
+                interpreter.run(new ByteArrayInputStream(input), output);
+                return;
+            }
+            ByteArrayOutputStream vmOutput = new ByteArrayOutputStream();
+            ByteArrayOutputStream treeOutput = new ByteArrayOutputStream();
+            long vmNanos = Long.MAX_VALUE;
+            long treeNanos = Long.MAX_VALUE;
+            for (int k = 0; k < BENCH_RUNS; k++) {
+                vmOutput.reset();
+                long start = System.nanoTime();
+                interpreter.run(new ByteArrayInputStream(input), vmOutput);
+                vmNanos = Math.min(vmNanos, System.nanoTime() - start);
+                treeOutput.reset();
+                start = System.nanoTime();
+                walker.run(new ByteArrayInputStream(input), treeOutput);
+                treeNanos = Math.min(treeNanos, System.nanoTime() - start);
+            }
+            vmOutput.writeTo(output);
+            System.err.printf("%s: interpreter %.3f ms, tree walker %.3f ms (%.1fx)%n", base,
+                              vmNanos / 1e6, treeNanos / 1e6, (double) treeNanos / vmNanos);
+            if ( ! Arrays.equals(vmOutput.toByteArray(), treeOutput.toByteArray()) )
+                System.err.println(base + ": the outputs of the interpreters differ");
+        }
+        catch (ArithmeticException | IllegalStateException ex) {
+            System.err.println("runtime error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * The passes disabled by default run at the optimization level
+     */
+    private static String[] levelPasses() {
+        if ( level == null || level.equals("-O0") )
+            return new String[0];
+        if ( level.equals("-O1") )
+            return new String[] { "sra", "cse", "dce", "merge-writes" };
+        if ( level.equals("-O2") )
+            return new String[] { "inline", "sra", "promote", "unroll", "licm",
+                                  "cse", "dce", "merge-writes" };
+        return new String[] { "sra", "cse", "dce", "merge-writes" }; // -Os
+    }
+
+    private static void setEnabled(PassManager passes, String name, boolean enabled) {
+        if ( ! passes.setEnabled(name, enabled) ) {
+            System.err.println("Unknown pass " + name);
+            System.exit(-1);
+        }
     }
 
-    private static void processInputFile(FileReader inFile, PrintWriter outFile) {
-        CmmParser P = new CmmParser(new Yylex(inFile));
+    /**
+     * To parse the in-file with the parser selected by the flags
+     */
+    private static AST.ProgramNode parse(FileReader inFile) throws IOException {
+        CharNum.num = 1; // new file: the scanner starts on column 1
+        if (parallelParse) {
+            CmmParallelParser P = new CmmParallelParser(TokenStream.lex(inFile));
+            AST.ProgramNode root = P.parse();
+            System.out.println ("program parsed correctly.");
+            return root;
+        }
+        if (rdParse) {
+            CmmRDParser P = new CmmRDParser(TokenStream.lex(inFile));
+            AST.ProgramNode root = P.parse();
+            System.out.println ("program parsed correctly.");
+            return root;
+        }
+        Scanner scanner;
+        if (preLex)
+            scanner = new TokenStreamScanner(TokenStream.lex(inFile));
+        else
+            scanner = new Yylex(inFile);
+        CmmParser P = new CmmParser(scanner);
         Symbol root = null; // the parser will return a Symbol whose value
                             // field is the translation of the root nonterminal
                             // (i.e., of the nonterminal "program")
@@ -62,18 +381,114 @@ public class Main {
             System.err.println("Exception occured during parse: " + ex);
             System.exit(-1);
         }
-        AST.ProgramNode astRoot = (AST.ProgramNode) root.value;
-        ErrMsg.reset(); // reset the control for analysis errors
-        astRoot.nameAnalysis();  // perform name analysis
-        astRoot.typeCheck();     // type checking
-        astRoot.resolveOffset(); // offset resolution for local variables
-        // astRoot.unparse(outFile, 0); // perform the unparsing
-        if ( ErrMsg.hasFatalError() )
-            System.err.println("Compilation aborted");
-        else
-            astRoot.codeGen(outFile); // perform the code generation
+        return (AST.ProgramNode) root.value;
     }
     
+    /**
+     * To set the flags given on the command line
+     */
+    private static void readFlags(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("-prelex")) {
+                preLex = true;
+            }
+            else if (arg.equals("-rdparse")) {
+                rdParse = true;
+            }
+            else if (arg.equals("-parallel")) {
+                parallelParse = true;
+            }
+            else if (arg.equals("-flat")) {
+                flat = true;
+            }
+            else if (arg.equals("-unparse")) {
+                unparse = true;
+            }
+            else if (arg.equals("-object")) {
+                object = true;
+            }
+            else if (arg.equals("-jvm")) {
+                jvm = true;
+            }
+            else if (arg.equals("-run")) {
+                run = true;
+            }
+            else if (arg.equals("-bench")) {
+                run = true;
+                bench = true;
+            }
+            else if (arg.equals("-regcall")) {
+                registerCalls = true;
+            }
+            else if (arg.equals("-reduce-strength")) {
+                reduceStrength = true;
+            }
+            else if (arg.equals("-schedule")) {
+                schedule = true;
+            }
+            else if (arg.equals("-delay-slots")) {
+                schedule = true;
+                fillDelaySlots = true;
+            }
+            else if (arg.equals("-small-data")) {
+                smallData = true;
+            }
+            else if (arg.equals("-buffered-io")) {
+                bufferedIO = true;
+            }
+            else if (arg.startsWith("-unroll-factor=")) {
+                unrollFactor = readCount(arg, "-unroll-factor=");
+            }
+            else if (arg.startsWith("-disable-pass=")) {
+                disabledPasses.add(arg.substring("-disable-pass=".length()));
+            }
+            else if (arg.startsWith("-enable-pass=")) {
+                enabledPasses.add(arg.substring("-enable-pass=".length()));
+            }
+            else if (arg.equals("-time-passes")) {
+                timePasses = true;
+            }
+            else if (arg.equals("-O0") || arg.equals("-O1")
+                     || arg.equals("-O2") || arg.equals("-Os")) {
+                level = arg;
+            }
+            else {
+                System.err.println("Unknown flag " + arg);
+                System.exit(-1);
+            }
+        }
+        // the code generation flags of the level
+        if ( "-O2".equals(level) || "-Os".equals(level) )
+            registerCalls = true;
+        if ( "-O1".equals(level) || "-O2".equals(level) )
+            reduceStrength = true;
+        if ( "-O2".equals(level) )
+            schedule = true;
+        if ( level != null && ! level.equals("-O0") )
+            smallData = true;
+        if ( object && ! registerCalls && ! unparse && ! jvm && ! run ) {
+            System.err.println("-object needs -regcall (or -O2 or -Os): the stack"
+                               + " calling convention writes code in .data");
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * The positive count given by a flag prefix=N
+     */
+    private static int readCount(String arg, String prefix) {
+        try {
+            int count = Integer.parseInt(arg.substring(prefix.length()));
+            if (count > 0) {
+                return count;
+            }
+        } catch (NumberFormatException ex) {
+        }
+        System.err.println("Bad count in flag " + arg);
+        System.exit(-1);
+        return 0;
+    }
+
     /**
      * To read a valid input file name or the keyword 'stop' from the user
      */
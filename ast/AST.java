@@ -2,9 +2,7 @@ package ast;
 
 import java.io.*;
 import java.util.*;
-import lexer.*;
 import symtable.*;
-import codegen.*;
 
 // **********************************************************************
 // ASTnode class (container class for all other classes)
@@ -14,47 +12,308 @@ public class AST {
 
 // **********************************************************************
 // ASTnode class (base class for all other kinds of nodes)
+//
+// The nodes only hold the program: the passes over the AST are Visitors
+// (see below), in their own classes.
 // **********************************************************************
-public abstract static  class ASTnode { 
-    
-    public void unparse(PrintWriter p, int indent) {}
+public abstract static  class ASTnode {
 
-    protected void doIndent(PrintWriter p, int indent) {
-        for (int k=0; k<indent; k++) p.print(" ");
+    public void unparse(PrintWriter p, int indent) {
+        new Unparser(p).walk(this, indent);
+    }
+
+    /**
+     * Call the method of the visitor for the class of this node
+     */
+    public abstract void accept(Visitor v);
+
+    /**
+     * The children of this node, in order (null children are left out)
+     */
+    public List<ASTnode> children() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Add this node, then its children, to the FlatAST being built
+     */
+    public abstract void flatten(FlatAST flat);
+
+    protected static List<ASTnode> children(ASTnode... nodes) {
+        List<ASTnode> list = new ArrayList<ASTnode>(nodes.length);
+        for (ASTnode node : nodes) {
+            if (node != null) {
+                list.add(node);
+            }
+        }
+        return list;
     }
 }
 
+// **********************************************************************
+// Visitor interface
+//
+// One method per concrete class of node.
+// **********************************************************************
+public interface Visitor {
+    void visitProgramNode(ProgramNode node);
+    void visitDeclListNode(DeclListNode node);
+    void visitFormalsListNode(FormalsListNode node);
+    void visitFnBodyNode(FnBodyNode node);
+    void visitStmtListNode(StmtListNode node);
+    void visitExpListNode(ExpListNode node);
+    void visitVarDeclNode(VarDeclNode node);
+    void visitFnDeclNode(FnDeclNode node);
+    void visitFormalDeclNode(FormalDeclNode node);
+    void visitStructDeclNode(StructDeclNode node);
+    void visitIntNode(IntNode node);
+    void visitBoolNode(BoolNode node);
+    void visitVoidNode(VoidNode node);
+    void visitStructNode(StructNode node);
+    void visitAssignStmtNode(AssignStmtNode node);
+    void visitPostIncStmtNode(PostIncStmtNode node);
+    void visitPostDecStmtNode(PostDecStmtNode node);
+    void visitReadStmtNode(ReadStmtNode node);
+    void visitWriteStmtNode(WriteStmtNode node);
+    void visitIfStmtNode(IfStmtNode node);
+    void visitIfElseStmtNode(IfElseStmtNode node);
+    void visitWhileStmtNode(WhileStmtNode node);
+    void visitCallStmtNode(CallStmtNode node);
+    void visitReturnStmtNode(ReturnStmtNode node);
+    void visitIntLitNode(IntLitNode node);
+    void visitStringLitNode(StringLitNode node);
+    void visitTrueNode(TrueNode node);
+    void visitFalseNode(FalseNode node);
+    void visitIdNode(IdNode node);
+    void visitDotAccessExpNode(DotAccessExpNode node);
+    void visitAssignNode(AssignNode node);
+    void visitCallExpNode(CallExpNode node);
+    void visitUnaryMinusNode(UnaryMinusNode node);
+    void visitNotNode(NotNode node);
+    void visitPlusNode(PlusNode node);
+    void visitMinusNode(MinusNode node);
+    void visitTimesNode(TimesNode node);
+    void visitDivideNode(DivideNode node);
+    void visitAndNode(AndNode node);
+    void visitOrNode(OrNode node);
+    void visitEqualsNode(EqualsNode node);
+    void visitNotEqualsNode(NotEqualsNode node);
+    void visitLessNode(LessNode node);
+    void visitGreaterNode(GreaterNode node);
+    void visitLessEqNode(LessEqNode node);
+    void visitGreaterEqNode(GreaterEqNode node);
+}
+
+// **********************************************************************
+// Walk class and VisitorWalk
+//
+// A Walk performs a pass over an AST with an explicit stack instead of
+// recursive calls, so that deeply nested expressions and blocks do not
+// overflow the Java stack.
+//
+// When a node is expanded, the pass schedules, in order, the children to
+// visit (visit) and the actions to run between them (then); actions may
+// schedule more work themselves. Values computed on a child (a type, an
+// offset) are handed to the parent's actions through the value stack
+// (push/pop).
+// **********************************************************************
+public abstract static class Walk {
+
+    private static class Item {
+        Item(ASTnode node, int arg, Runnable action) {
+            this.node = node;
+            this.arg = arg;
+            this.action = action;
+        }
+
+        ASTnode node;     // node to expand, or null for an action
+        int arg;          // argument of the pass (indent, offset)
+        Runnable action;
+    }
+
+    private ArrayDeque<Item> work = new ArrayDeque<Item>();
+    private List<Item> scheduled = new ArrayList<Item>();
+    private List<Object> values = new ArrayList<Object>();
+
+    /**
+     * Perform the pass on the node
+     */
+    protected abstract void expand(ASTnode node, int arg);
+
+    public void walk(ASTnode root) {
+        walk(root, 0);
+    }
+
+    public void walk(ASTnode root, int arg) {
+        visit(root, arg);
+        flush();
+        while (!work.isEmpty()) {
+            Item item = work.pop();
+            if (item.node != null) {
+                expand(item.node, item.arg);
+            }
+            else {
+                item.action.run();
+            }
+            flush();
+        }
+    }
+
+    // move the work scheduled by the last expansion or action on top of
+    // the stack, keeping its order
+    private void flush() {
+        for (int k = scheduled.size() - 1; k >= 0; k--) {
+            work.push(scheduled.get(k));
+        }
+        scheduled.clear();
+    }
+
+    public void visit(ASTnode node) {
+        visit(node, 0);
+    }
+
+    public void visit(ASTnode node, int arg) {
+        scheduled.add(new Item(node, arg, null));
+    }
+
+    public void then(Runnable action) {
+        scheduled.add(new Item(null, 0, action));
+    }
+
+    public void push(Object value) {
+        values.add(value);
+    }
+
+    public Object pop() {
+        return values.remove(values.size() - 1);
+    }
+}
+
+/**
+ * Walk expanding each node with the Visitor method of its class.
+ * By default, a node is handled by defaultVisit, which visits its
+ * children with the same argument.
+ */
+public abstract static class VisitorWalk extends Walk implements Visitor {
+
+    private int arg;
+
+    protected void expand(ASTnode node, int arg) {
+        this.arg = arg;
+        node.accept(this);
+    }
+
+    /**
+     * Argument the node being expanded was scheduled with (to be read
+     * before scheduling anything)
+     */
+    protected int arg() {
+        return arg;
+    }
+
+    protected void defaultVisit(ASTnode node) {
+        visitChildren(node);
+    }
+
+    protected void visitChildren(ASTnode node) {
+        for (ASTnode child : node.children()) {
+            visit(child, arg);
+        }
+    }
+
+    public void visitProgramNode(ProgramNode node) { defaultVisit(node); }
+    public void visitDeclListNode(DeclListNode node) { defaultVisit(node); }
+    public void visitFormalsListNode(FormalsListNode node) { defaultVisit(node); }
+    public void visitFnBodyNode(FnBodyNode node) { defaultVisit(node); }
+    public void visitStmtListNode(StmtListNode node) { defaultVisit(node); }
+    public void visitExpListNode(ExpListNode node) { defaultVisit(node); }
+    public void visitVarDeclNode(VarDeclNode node) { defaultVisit(node); }
+    public void visitFnDeclNode(FnDeclNode node) { defaultVisit(node); }
+    public void visitFormalDeclNode(FormalDeclNode node) { defaultVisit(node); }
+    public void visitStructDeclNode(StructDeclNode node) { defaultVisit(node); }
+    public void visitIntNode(IntNode node) { defaultVisit(node); }
+    public void visitBoolNode(BoolNode node) { defaultVisit(node); }
+    public void visitVoidNode(VoidNode node) { defaultVisit(node); }
+    public void visitStructNode(StructNode node) { defaultVisit(node); }
+    public void visitAssignStmtNode(AssignStmtNode node) { defaultVisit(node); }
+    public void visitPostIncStmtNode(PostIncStmtNode node) { defaultVisit(node); }
+    public void visitPostDecStmtNode(PostDecStmtNode node) { defaultVisit(node); }
+    public void visitReadStmtNode(ReadStmtNode node) { defaultVisit(node); }
+    public void visitWriteStmtNode(WriteStmtNode node) { defaultVisit(node); }
+    public void visitIfStmtNode(IfStmtNode node) { defaultVisit(node); }
+    public void visitIfElseStmtNode(IfElseStmtNode node) { defaultVisit(node); }
+    public void visitWhileStmtNode(WhileStmtNode node) { defaultVisit(node); }
+    public void visitCallStmtNode(CallStmtNode node) { defaultVisit(node); }
+    public void visitReturnStmtNode(ReturnStmtNode node) { defaultVisit(node); }
+    public void visitIntLitNode(IntLitNode node) { defaultVisit(node); }
+    public void visitStringLitNode(StringLitNode node) { defaultVisit(node); }
+    public void visitTrueNode(TrueNode node) { defaultVisit(node); }
+    public void visitFalseNode(FalseNode node) { defaultVisit(node); }
+    public void visitIdNode(IdNode node) { defaultVisit(node); }
+    public void visitDotAccessExpNode(DotAccessExpNode node) { defaultVisit(node); }
+    public void visitAssignNode(AssignNode node) { defaultVisit(node); }
+    public void visitCallExpNode(CallExpNode node) { defaultVisit(node); }
+    public void visitUnaryMinusNode(UnaryMinusNode node) { defaultVisit(node); }
+    public void visitNotNode(NotNode node) { defaultVisit(node); }
+    public void visitPlusNode(PlusNode node) { defaultVisit(node); }
+    public void visitMinusNode(MinusNode node) { defaultVisit(node); }
+    public void visitTimesNode(TimesNode node) { defaultVisit(node); }
+    public void visitDivideNode(DivideNode node) { defaultVisit(node); }
+    public void visitAndNode(AndNode node) { defaultVisit(node); }
+    public void visitOrNode(OrNode node) { defaultVisit(node); }
+    public void visitEqualsNode(EqualsNode node) { defaultVisit(node); }
+    public void visitNotEqualsNode(NotEqualsNode node) { defaultVisit(node); }
+    public void visitLessNode(LessNode node) { defaultVisit(node); }
+    public void visitGreaterNode(GreaterNode node) { defaultVisit(node); }
+    public void visitLessEqNode(LessEqNode node) { defaultVisit(node); }
+    public void visitGreaterEqNode(GreaterEqNode node) { defaultVisit(node); }
+}
+
 // **********************************************************************
 // ProgramNode,  DeclListNode, FormalsListNode, FnBodyNode,
 // StmtListNode, ExpListNode
 // **********************************************************************
 
-public static class ProgramNode extends ASTnode {
+public static class ProgramNode extends ASTnode implements Program {
 
     public ProgramNode(DeclListNode L) {
         myDeclList = L;
     }
 
-    public void resolveOffset(){
-        myDeclList.resolveOffset(0);
+    /**
+     * Run the pass on each top-level declaration, replacing it with the
+     * result of the pass
+     */
+    public void apply(Pass pass) {
+        pass.begin();
+        ListIterator<DeclNode> it = myDeclList.getList().listIterator();
+        while (it.hasNext()) {
+            DeclNode decl = pass.run(it.next());
+            if (decl == null) {
+                it.remove();
+            }
+            else {
+                it.set(decl);
+            }
+        }
+        pass.end();
     }
 
-    public void codeGen(PrintWriter p) {
-        myDeclList.codeGen(p);
+    public void accept(Visitor v) {
+        v.visitProgramNode(this);
     }
 
-    public void typeCheck() {
-        myDeclList.typeCheck();
+    @Override
+    public List<ASTnode> children() {
+        return children(myDeclList);
     }
 
-    public void nameAnalysis() {
-        SymTable symTab = new SymTable();
-        myDeclList.nameAnalysis(symTab);
+    public void flatten(FlatAST flat) {
+        myDeclList.flatten(flat);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        myDeclList.unparse(p, indent);
+    public DeclListNode declList() {
+        return myDeclList;
     }
 
     private DeclListNode myDeclList;
@@ -65,75 +324,20 @@ public static class DeclListNode extends ASTnode {
     public DeclListNode(List<DeclNode> S) {
         myDecls = S;
     }
-    
-    public int resolveOffset(int offset){
-        for (DeclNode node : myDecls) {
-            offset = node.resolveOffset(offset);
-        }
-        return offset;
-    }
-
-    public void codeGen(PrintWriter p){
-        for (DeclNode node : myDecls) {
-            try{
-                node.codeGen(p);
-
-                //function
-                Codegen.genLabel(p, Codegen.nextReturnLabel());
-                Codegen.generateIndexed(p, "lw", Codegen.RA, Codegen.FP, 0, "load return address");
-                Codegen.generateWithComment(p, "move", "store address from FP to SP",  Codegen.T0, Codegen.FP);
-                Codegen.generateIndexed(p, "lw", Codegen.FP, Codegen.FP, -4, "restore FP");
-                Codegen.generateWithComment(p, "move", "restore SP",  Codegen.SP, Codegen.T0);
-                Codegen.generate(p, "jr", Codegen.RA);
-            }catch (NoSuchElementException e){
-                System.err.println("unexpected NoSuchElementException in DeclListNode.CodeGen");
-                System.exit(-1);
-            }
-        }
-    }
-       
-    public void typeCheck() {
-        boolean main = false;
-        for (DeclNode node : myDecls) {
-            if(node.typeCheck()){
-                main = true;
-            }
-        }
-        if(!main){
-            ErrMsg.fatal(0,0,"No main function");
-        }
-    }
 
-    public void nameAnalysis(SymTable symTab) {
-        for (DeclNode node : myDecls) {
-            node.nameAnalysis(symTab);
-        }
-    }
-     
-    public void nameAnalysis(SymTable structSymTab, SymTable globalTab) {
-        for (DeclNode node : myDecls) {
-            if (node instanceof VarDeclNode) {
-                ((VarDeclNode)node).nameAnalysis(structSymTab, globalTab);
-            } else {
-                // this should never happen
-                node.nameAnalysis(globalTab);
-            }
-        }
+    public void accept(Visitor v) {
+        v.visitDeclListNode(this);
     }
 
     @Override
-    public void unparse(PrintWriter p, int indent) {
-        Iterator<DeclNode> it = myDecls.iterator();
-        try {
-            while (it.hasNext()) {
-                (it.next()).unparse(p, indent);
-            }
-        } catch (NoSuchElementException ex) {
-            System.err.println("unexpected NoSuchElementException in DeclListNode.print");
-            System.exit(-1);
-        }
+    public List<ASTnode> children() {
+        return new ArrayList<ASTnode>(myDecls);
+    }
+
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.DECL_LIST, 0, 0, 0, children());
     }
-    
+
     public List<DeclNode> getList() {
         return myDecls;
     }
@@ -147,47 +351,25 @@ public static class FormalsListNode extends ASTnode {
         myFormals = S;
     }
 
-    public int resolveOffset(int offset){
-        if(this.length() == 0){
-            return 0;
-        }
-        for (FormalDeclNode node : myFormals) {
-            offset = node.resolveOffset(offset);
-        }
-        return offset;
+    public int length() {
+        return myFormals.size();
     }
 
-    public void codeGen(PrintWriter p) {
-        for (FormalDeclNode formal : myFormals) {
-            formal.codeGen(p);
-        }
+    public void accept(Visitor v) {
+        v.visitFormalsListNode(this);
     }
 
-    public List<Type.AbstractType> nameAnalysis(SymTable symTab) {
-        List<Type.AbstractType> typeList = new LinkedList<Type.AbstractType>();
-        for (FormalDeclNode node : myFormals) {
-            SymInfo info = node.nameAnalysis(symTab);
-            if (info != null) {
-                typeList.add(info.getType());
-            }
-        }
-        return typeList;
+    @Override
+    public List<ASTnode> children() {
+        return new ArrayList<ASTnode>(myFormals);
     }
 
-    public int length() {
-        return myFormals.size();
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.FORMALS_LIST, 0, 0, 0, children());
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        Iterator<FormalDeclNode> it = myFormals.iterator();
-        if (it.hasNext()) {
-            it.next().unparse(p, indent);
-            while (it.hasNext()) {
-                p.print(", ");
-                it.next().unparse(p, indent);
-            }
-        } 
+    public List<FormalDeclNode> getList() {
+        return myFormals;
     }
 
     private List<FormalDeclNode> myFormals;
@@ -200,37 +382,33 @@ public static class FnBodyNode extends ASTnode {
         myStmtList = stmtList;
     }
 
-    public int resolveOffset(int offset){
-        offset = myDeclList.resolveOffset(offset);
-        return myStmtList.resolveOffset(offset);
+    public int declSize(){
+        return myDeclList.getList().size();
     }
 
-    public void codeGen(PrintWriter p,String label) {
-        myDeclList.codeGen(p);
-        myStmtList.codeGen(p,label);
+    public List<DeclNode> getDeclList() {
+        return myDeclList.getList();
     }
 
-    public void typeCheck(Type.AbstractType retType) {
-        myStmtList.typeCheck(retType);
+    public void accept(Visitor v) {
+        v.visitFnBodyNode(this);
     }
 
-    public void nameAnalysis(SymTable symTab) {
-        myDeclList.nameAnalysis(symTab);
-        myStmtList.nameAnalysis(symTab);
+    @Override
+    public List<ASTnode> children() {
+        return children(myDeclList, myStmtList);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        myDeclList.unparse(p, indent);
-        myStmtList.unparse(p, indent);
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.FN_BODY, 0, 0, 0, children());
     }
 
-    public int declSize(){
-        return myDeclList.getList().size();
+    public DeclListNode declList() {
+        return myDeclList;
     }
 
-    public List<DeclNode> getDeclList() {
-        return myDeclList.getList();
+    public StmtListNode stmtList() {
+        return myStmtList;
     }
 
     private DeclListNode myDeclList;
@@ -243,37 +421,21 @@ public static class StmtListNode extends ASTnode {
         myStmts = S;
     }
 
-    public int resolveOffset(int offset){
-        for( StmtNode node: myStmts ){
-            node.resolveOffset(offset);
-        }
-        return offset;
+    public void accept(Visitor v) {
+        v.visitStmtListNode(this);
     }
 
-    public void codeGen(PrintWriter p,String label) {
-        for(StmtNode node : myStmts) {
-            node.codeGen(p,label);
-        }
-    }
-
-    public void typeCheck(Type.AbstractType retType) {
-        for(StmtNode node : myStmts) {
-            node.typeCheck(retType);
-        }
+    @Override
+    public List<ASTnode> children() {
+        return new ArrayList<ASTnode>(myStmts);
     }
 
-    public void nameAnalysis(SymTable symTab) {
-        for (StmtNode node : myStmts) {
-            node.nameAnalysis(symTab);
-        }
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.STMT_LIST, 0, 0, 0, children());
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        Iterator<StmtNode> it = myStmts.iterator();
-        while (it.hasNext()) {
-            it.next().unparse(p, indent);
-        }
+    public List<StmtNode> getList() {
+        return myStmts;
     }
 
     private List<StmtNode> myStmts;
@@ -285,63 +447,25 @@ public static class ExpListNode extends ASTnode {
         myExps = S;
     }
 
-    public void codeGen(PrintWriter p) {
-        int space = 4;
-        for ( int i = myExps.size() - 1; i >= 0; i-- ) {
-            ExpNode exp = myExps.get(i);
-            exp.codeGen(p);
-            if (exp instanceof DotAccessExpNode){
-                Codegen.genPop(p, Codegen.T0);
-                Codegen.generate(p, "lw", Codegen.T1, Codegen.T0);
-                Codegen.genPush(p, Codegen.T1);
-            }
-            Codegen.genPop(p, Codegen.T0);
-            Codegen.generateIndexed(p, "sw", Codegen.T0, Codegen.SP,space);
-            space += 4;
-        }
-    }
-      
-    public void typeCheck(List<Type.AbstractType> typeList) {
-        int k = 0;
-        try {
-            for (ExpNode node : myExps) {
-                Type.AbstractType actualType = node.typeCheck(); // actual type of arg
-                
-                if (!actualType.isErrorType()) { // if this is not an error
-                    Type.AbstractType formalType = typeList.get(k); // get the formal type
-                    if ( ! formalType.equals(actualType)) {
-                        ErrMsg.fatal(node.lineNum, node.charNum,
-                                     "Type of actual does not match type of formal");
-                    }
-                }
-                k++;
-            }
-        } catch (NoSuchElementException e) {
-            System.err.println("unexpected NoSuchElementException in ExpListNode.typeCheck");
-            System.exit(-1);
-        }
+    public int size() {
+        return myExps.size();
     }
 
-    public void nameAnalysis(SymTable symTab) {
-        for (ExpNode node : myExps) {
-            node.nameAnalysis(symTab);
-        }
+    public void accept(Visitor v) {
+        v.visitExpListNode(this);
     }
 
     @Override
-    public void unparse(PrintWriter p, int indent) {
-        Iterator<ExpNode> it = myExps.iterator();
-        if (it.hasNext()) { // if there is at least one element
-            it.next().unparse(p, indent);
-            while (it.hasNext()) {  // print the rest of the list
-                p.print(", ");
-                it.next().unparse(p, indent);
-            }
-        } 
+    public List<ASTnode> children() {
+        return new ArrayList<ASTnode>(myExps);
     }
 
-    public int size() {
-        return myExps.size();
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.EXP_LIST, 0, 0, 0, children());
+    }
+
+    public List<ExpNode> getList() {
+        return myExps;
     }
 
     private List<ExpNode> myExps;
@@ -352,14 +476,6 @@ public static class ExpListNode extends ASTnode {
 // **********************************************************************
 
 public static abstract class DeclNode extends ASTnode {
-
-    public boolean typeCheck() { return false; }
-
-    public void codeGen(PrintWriter p) { }
-    
-    public int resolveOffset(int offset){ return offset; }
-   
-    public abstract SymInfo nameAnalysis(SymTable symTab);
 }
 
 public static class VarDeclNode extends DeclNode {
@@ -371,136 +487,31 @@ public static class VarDeclNode extends DeclNode {
 
     }
 
-    @Override
-    public int resolveOffset(int offset){
-        if(myId.info().isGlobal()){
-            return offset;
-        }
-        else{
-            myId.info().setOffset(offset);
-            return offset + 4;
-        }
+    public void accept(Visitor v) {
+        v.visitVarDeclNode(this);
     }
 
     @Override
-    public void codeGen(PrintWriter p){
-        SymInfo info = myId.info();
-
-        if(info.isGlobal()) {
-            Codegen.generate(p,".data");
-            Codegen.generateWithComment(p,".align 2","align on a word boundary");
-            if (mySize == -1) {
-                Codegen.generateLabeled(p, "_" + myId.name(), ".space 4", "");
-            }
-            else {
-                Codegen.generateLabeled(p, "_" + myId.name(), ".word "+mySize, "");
-            }
-        }
+    public List<ASTnode> children() {
+        return children(myType, myId);
     }
 
-    public SymInfo nameAnalysis(SymTable symTab) {
-        boolean badDecl = false;
-        String name = myId.name();
-        SymInfo info = null;
-        IdNode structId = null;
-
-        if (myType instanceof VoidNode) {  // check for void type
-            ErrMsg.fatal(myId.lineNum, myId.charNum, 
-                         "Non-function declared void");
-            badDecl = true;        
-        }
-        else if (myType instanceof StructNode) {
-            structId = ((StructNode) myType).idNode();//the name of variable
-            info = symTab.lookupGlobal(structId.name());//the type
-            if (info == null || !(info instanceof StructDefInfo)) {
-                ErrMsg.fatal(structId.lineNum, structId.charNum, 
-                             "Invalid name of struct type");
-                badDecl = true;
-            }
-            else {
-                structId.link(info);
-            }
-        }
-        SymInfo dup = symTab.lookupLocal(name);
-        
-        if (dup != null) {
-            ErrMsg.fatal(myId.lineNum, myId.charNum, 
-                         "Multiple declaration of identifier");
-            badDecl = true;            
-        }
-        if (!badDecl) {  // insert into symbol table
-            if (myType instanceof StructNode) {
-                info = new StructInfo(structId);
-            }
-            else {
-                info = new SymInfo(myType.type());
-            }
-            symTab.addDecl(name, info);
-            myId.link(info);
-
-        }
-        return info;
-    }
-    
-    public SymInfo nameAnalysis(SymTable structSymTab, SymTable globalTab) {
-        boolean badDecl = false;
-        String name = myId.name();
-        SymInfo info = null;
-        IdNode structId = null;
-
-        if (myType instanceof VoidNode) {  // check for void type
-            ErrMsg.fatal(myId.lineNum, myId.charNum, 
-                         "Non-function declared void");
-            badDecl = true;        
-        }
-        else if (myType instanceof StructNode) {
-            structId = ((StructNode) myType).idNode();
-            info = globalTab.lookupGlobal(structId.name());
-            // if the name for the struct type is not found, 
-            // or is not a struct type
-            if (info == null || !(info instanceof StructDefInfo)) {
-                ErrMsg.fatal(structId.lineNum, structId.charNum, 
-                             "Invalid name of struct type");
-                badDecl = true;
-            }
-            else {
-                structId.link(info);
-            }
-        }
-        SymInfo dup = structSymTab.lookupLocal(name);
-        
-        if (dup != null) {
-            ErrMsg.fatal(myId.lineNum, myId.charNum, 
-                         "Multiple declaration of struct field");
-            badDecl = true;            
-        }
-        if (!badDecl) {  // insert into symbol table
-            if (myType instanceof StructNode) {
-                info = new StructInfo(structId);
-            }
-            else {
-                info = new SymInfo(myType.type());
-            }
-            structSymTab.addDecl(name, info);
-            myId.link(info);
-        }
-        
-        return info;
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.VAR_DECL, 0, 0, mySize, children());
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        myType.unparse(p, 0);
-        p.print(" ");
-        myId.unparse(p, 0);
-        p.println(";");
+    public TypeNode typeNode() {
+        return myType;
     }
 
     public IdNode getMyId() {
         return myId;
     }
 
+    public int size() {
+        return mySize;
+    }
+
     private TypeNode myType;
     private IdNode myId;
     private int mySize;
@@ -517,93 +528,33 @@ public static class FnDeclNode extends DeclNode {
         myBody = body;
     }
 
-    @Override
-    public int resolveOffset(int offset){
-        return myBody.resolveOffset(8);
+    public void accept(Visitor v) {
+        v.visitFnDeclNode(this);
     }
 
     @Override
-    public void codeGen(PrintWriter p) {
-        p.print("\t.text\n");
+    public List<ASTnode> children() {
+        return children(myType, myId, myFormalsList, myBody);
+    }
 
-        if(this.myId.name().equals("main")) {
-            p.print("\t.globl main\n");
-            Codegen.genLabel(p,this.myId.name());
-        }
-         else {
-             // PROJECT
-            Codegen.generate(p, "j", this.myId.name());
-            Codegen.genLabel(p, "_" + this.myId.name());
-         }
-        Codegen.genPush(p, Codegen.RA);
-        Codegen.genPush(p, Codegen.FP);
-        String exitLabel = "exit_" + this.myId.name();
-        p.println("# Push space for the locals");
-        Codegen.generate(p,"subu",
-            Codegen.SP,Codegen.SP,4 * myBody.declSize());
-        //Body
-        this.myBody.codeGen(p,exitLabel);
-        //label for return
-        Codegen.genLabel(p,exitLabel); 
-        // PROJECT
-        
-        if(this.myId.name().equals("main")) {
-            Codegen.generate(p,"li",Codegen.V0,"10");
-            Codegen.generate(p,"syscall");
-        }
-         else {
-             // PROJECT;
-            // function isn't main
-            Codegen.generate(p, "j", Codegen.V1);
-            Codegen.generate(p,"function call");
-         }
-    }
-       
-    @Override
-    public boolean typeCheck() {
-        myBody.typeCheck(myType.type());
-        if(myId.name().equals("main") && myType.type().isVoidType() && myFormalsList.length() == 0){
-            return true;
-        }
-        return false;
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.FN_DECL, 0, 0, 0, children());
     }
 
-    public SymInfo nameAnalysis(SymTable symTab) {
-        String name = myId.name();
-        FnInfo info = null; 
+    public TypeNode typeNode() {
+        return myType;
+    }
 
-        SymInfo dup = symTab.lookupLocal(name);
+    public IdNode idNode() {
+        return myId;
+    }
 
-        if (dup != null) {
-            ErrMsg.fatal(myId.lineNum, myId.charNum,
-                         "Multiply declared identifier");
-        }
-        else { // add function name to local symbol table
-            info = new FnInfo(myType.type(), myFormalsList.length());
-            symTab.addDecl(name, info);
-            myId.link(info);
-        }
-        symTab.addScope();  // add a new scope for locals and params
-        // process the formals
-        List<Type.AbstractType> typeList = myFormalsList.nameAnalysis(symTab);
-        if (info != null) {
-            info.addFormals(typeList);
-        }
-        myBody.nameAnalysis(symTab);
-        symTab.removeScope();
-        return null;
-    }    
+    public FormalsListNode formalsList() {
+        return myFormalsList;
+    }
 
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        myType.unparse(p, 0);
-        p.print(" ");
-        myId.unparse(p, 0);
-        p.print("(");
-        myFormalsList.unparse(p, 0);
-        p.println(") {");
-        myBody.unparse(p, indent+4);
-        p.println("}\n");
+    public FnBodyNode body() {
+        return myBody;
     }
 
     private TypeNode myType;
@@ -619,42 +570,25 @@ public static class FormalDeclNode extends DeclNode {
         myId = id;
     }
 
+    public void accept(Visitor v) {
+        v.visitFormalDeclNode(this);
+    }
+
     @Override
-    public int resolveOffset(int offset){
-        myId.info().setOffset(offset);
-        return offset + 4;
-    }
-
-    public SymInfo nameAnalysis(SymTable symTab) {
-        String name = myId.name();
-        boolean badDecl = false;
-        SymInfo info = null;
-        
-        if (myType instanceof VoidNode) {
-            ErrMsg.fatal(myId.lineNum, myId.charNum, 
-                         "Non-function declared void");
-            badDecl = true;        
-        }
+    public List<ASTnode> children() {
+        return children(myType, myId);
+    }
 
-        if (symTab.lookupLocal(name) != null) {
-            ErrMsg.fatal(myId.lineNum, myId.charNum, 
-                         "Multiply declared identifier");
-            badDecl = true;
-        }
-        
-        if ( ! badDecl ) {  // insert into symbol table
-            info = new SymInfo(myType.type());
-            symTab.addDecl(name, info);
-            myId.link(info);
-        }
-        
-        return info;
-    } 
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.FORMAL_DECL, 0, 0, 0, children());
+    }
 
-    public void unparse(PrintWriter p, int indent) {
-        myType.unparse(p, 0);
-        p.print(" ");
-        myId.unparse(p, 0);
+    public TypeNode typeNode() {
+        return myType;
+    }
+
+    public IdNode idNode() {
+        return myId;
     }
 
     private TypeNode myType;
@@ -668,41 +602,25 @@ public static class StructDeclNode extends DeclNode {
         myDeclList = declList;
     }
 
-    public SymInfo nameAnalysis(SymTable symTab) {
-        String name = myId.name();
-        boolean badDecl = false;
-        
-        SymInfo dup = symTab.lookupLocal(name);
-
-        if (dup != null) {
-            ErrMsg.fatal(myId.lineNum, myId.charNum, 
-                         "Multiply declared identifier");
-            badDecl = true;            
-        }
+    public void accept(Visitor v) {
+        v.visitStructDeclNode(this);
+    }
 
-        SymTable structSymTab = new SymTable();
+    @Override
+    public List<ASTnode> children() {
+        return children(myId, myDeclList);
+    }
 
-        myDeclList.nameAnalysis(structSymTab, symTab);
-        
-        if (!badDecl) {
-            StructDefInfo info = new StructDefInfo(structSymTab);
-            symTab.addDecl(name, info);
-            myId.link(info);
-        }
-        
-        return null;
-    }    
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.STRUCT_DECL, 0, 0, 0, children());
+    }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        p.print("struct ");
-		myId.unparse(p, 0);
-		p.println("{");
-        myDeclList.unparse(p, indent+4);
-        doIndent(p, indent);
-        p.println("};\n");
+    public IdNode idNode() {
+        return myId;
+    }
 
+    public DeclListNode declList() {
+        return myDeclList;
     }
 
     private IdNode myId;
@@ -716,8 +634,6 @@ public static class StructDeclNode extends DeclNode {
 public abstract static class TypeNode extends ASTnode {
 
     public abstract Type.AbstractType type();
-
-    public void codeGen() {}
 }
 
 public static class IntNode extends TypeNode {
@@ -729,9 +645,12 @@ public static class IntNode extends TypeNode {
         return new Type.IntType();
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        p.print("int");
+    public void accept(Visitor v) {
+        v.visitIntNode(this);
+    }
+
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.INT, 0, 0, 0);
     }
 }
 
@@ -739,14 +658,17 @@ public static class BoolNode extends TypeNode {
 
     public BoolNode() {
     }
- 
+
     public Type.AbstractType type() {
         return new Type.BoolType();
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        p.print("bool");
+    public void accept(Visitor v) {
+        v.visitBoolNode(this);
+    }
+
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.BOOL, 0, 0, 0);
     }
 }
 
@@ -754,14 +676,17 @@ public static class VoidNode extends TypeNode {
 
     public VoidNode() {
     }
- 
+
     public Type.AbstractType type() {
         return new Type.VoidType();
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        p.print("void");
+    public void accept(Visitor v) {
+        v.visitVoidNode(this);
+    }
+
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.VOID, 0, 0, 0);
     }
 }
 
@@ -775,20 +700,21 @@ public static class StructNode extends TypeNode {
         return new Type.StructType(myId);
     }
 
+    public void accept(Visitor v) {
+        v.visitStructNode(this);
+    }
+
     @Override
-    public void unparse(PrintWriter p, int indent) {
-        p.print("struct ");
-        myId.unparse(p, 0);
+    public List<ASTnode> children() {
+        return children(myId);
     }
 
-    public IdNode idNode() {
-      return myId;
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.STRUCT, 0, 0, 0, children());
     }
 
-    public int resolveOffset(int offset) {
-        SymInfo info = myId.info();
-        StructDefInfo Info = (StructDefInfo) info;
-        return offset - Info.getSize();
+    public IdNode idNode() {
+      return myId;
     }
 
     private IdNode myId;
@@ -799,16 +725,6 @@ public static class StructNode extends TypeNode {
 // **********************************************************************
 
 public abstract static class StmtNode extends ASTnode {
-
-    public void nameAnalysis(SymTable symTab) {}
-    
-    public int resolveOffset(int offset){
-        return offset;
-    }
-
-    public void codeGen(PrintWriter p,String label) {}
-
-    public abstract void typeCheck(Type.AbstractType retType);
 }
 
 public static class AssignStmtNode extends StmtNode {
@@ -817,26 +733,21 @@ public static class AssignStmtNode extends StmtNode {
         myAssign = assign;
     }
 
-    @Override
-    public void codeGen(PrintWriter p,String label) {
-        myAssign.codeGen(p);
-        Codegen.genPop(p,Codegen.T0);
-    }    
-
-    public void typeCheck(Type.AbstractType retType) {
-        myAssign.typeCheck();
+    public void accept(Visitor v) {
+        v.visitAssignStmtNode(this);
     }
 
     @Override
-    public void nameAnalysis(SymTable symTab) {
-        myAssign.nameAnalysis(symTab);
+    public List<ASTnode> children() {
+        return children(myAssign);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        myAssign.unparse(p, -1); // no parentheses
-        p.println(";");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.ASSIGN_STMT, 0, 0, 0, children());
+    }
+
+    public AssignNode assign() {
+        return myAssign;
     }
 
     private AssignNode myAssign;
@@ -848,46 +759,25 @@ public static class PostIncStmtNode extends StmtNode {
         myExp = exp;
     }
 
+    public void accept(Visitor v) {
+        v.visitPostIncStmtNode(this);
+    }
+
     @Override
-    public void codeGen(PrintWriter p,String label) {
-        IdNode idExp = (IdNode) myExp;            
-        idExp.codeGen(p);
-        Codegen.genPop(p,Codegen.T0);
-        Codegen.generate(p,"add", Codegen.T0, Codegen.T0, 1);           
-
-        if(myExp instanceof IdNode)
-        {
-            SymInfo info = idExp.info();
-            if(info.isGlobal())
-                Codegen.generate(p, "sw", Codegen.T0,"_" + idExp.name());
-            else
-                Codegen.generateIndexed(p,"sw",Codegen.T0,Codegen.FP,-info.getOffset());
-        }
-        if (myExp instanceof DotAccessExpNode ){
-            Codegen.generate(p, "lw", Codegen.T1, "(" + Codegen.T0 + ")");
-            Codegen.generateWithComment(p, "addi", "PostInc", Codegen.T1, Codegen.T1, "1");
-        }
+    public List<ASTnode> children() {
+        return children(myExp);
     }
-    
-    public void typeCheck(Type.AbstractType retType) {
-        Type.AbstractType type = myExp.typeCheck();
-        
-        if ( ! type.isErrorType() && ! type.isIntType() ) {
-            ErrMsg.fatal(myExp.lineNum, myExp.charNum,
-                         "Arithmetic operator applied to non-numeric operand");
-        }
+
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.POST_INC_STMT, 0, 0, 0, children());
     }
 
-    @Override
-    public void nameAnalysis(SymTable symTab) {
-        myExp.nameAnalysis(symTab);
+    public ExpNode exp() {
+        return myExp;
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        myExp.unparse(p, 0);
-        p.println("++;");
+    public void setExp(ExpNode exp) {
+        myExp = exp;
     }
 
     private ExpNode myExp;
@@ -899,47 +789,25 @@ public static class PostDecStmtNode extends StmtNode {
         myExp = exp;
     }
 
+    public void accept(Visitor v) {
+        v.visitPostDecStmtNode(this);
+    }
+
     @Override
-    public void codeGen(PrintWriter p,String label) {
-        IdNode idExp = (IdNode)myExp;            
-        idExp.codeGen(p);
-       
-        Codegen.genPop(p,Codegen.T0);
-        Codegen.generate(p,"sub", Codegen.T0, Codegen.T0, 1);           
-        
-        if(myExp instanceof IdNode)
-        {
-            SymInfo info = idExp.info();
-            if(info.isGlobal())
-                Codegen.generate(p, "sw", Codegen.T0,"_" + idExp.name());
-            else
-                Codegen.generateIndexed(p,"sw",Codegen.T0,Codegen.FP,- info.getOffset());
-        }
-        if (myExp instanceof DotAccessExpNode ){
-            Codegen.generate(p, "lw", Codegen.T1, "(" + Codegen.T0 + ")");
-            Codegen.generateWithComment(p, "addi", "PostDec", Codegen.T1, Codegen.T1, "1");
-        }
+    public List<ASTnode> children() {
+        return children(myExp);
     }
 
-    public void typeCheck(Type.AbstractType retType) {
-        Type.AbstractType type = myExp.typeCheck();
-        
-        if ( ! type.isErrorType() && ! type.isIntType() ) {
-            ErrMsg.fatal(myExp.lineNum, myExp.charNum,
-                         "Arithmetic operator applied to non-numeric operand");
-        }
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.POST_DEC_STMT, 0, 0, 0, children());
     }
 
-    @Override
-    public void nameAnalysis(SymTable symTab) {
-        myExp.nameAnalysis(symTab);
+    public ExpNode exp() {
+        return myExp;
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        myExp.unparse(p, 0);
-        p.println("--;");
+    public void setExp(ExpNode exp) {
+        myExp = exp;
     }
 
     private ExpNode myExp;
@@ -950,46 +818,26 @@ public static class ReadStmtNode extends StmtNode {
     public ReadStmtNode(ExpNode e) {
         myExp = e;
     }
-    
-    @Override
-    public void codeGen(PrintWriter p,String label){
-        if(myExp instanceof IdNode){
-            Codegen.generate(p,"li", Codegen.V0, 5);
-            Codegen.generate(p,"syscall");
-            ((IdNode) myExp).genAddr(p);
-            Codegen.genPop(p,Codegen.T0);
-            Codegen.generateIndexed(p,"sw", Codegen.V0, Codegen.T0, 0 );
-        }
-    } 
-
-    public void typeCheck(Type.AbstractType retType) {
-        Type.AbstractType type = myExp.typeCheck();
-        
-        if ( type.isFnType() ) {
-            ErrMsg.fatal(myExp.lineNum, myExp.charNum,
-                         "Attempt to read a function");
-        }
-        if ( type.isStructDefType() ) {
-            ErrMsg.fatal(myExp.lineNum, myExp.charNum,
-                         "Attempt to read a struct name");
-        }
-        if ( type.isStructType() ) {
-            ErrMsg.fatal(myExp.lineNum, myExp.charNum,
-                         "Attempt to read a struct variable");
-        }
+
+    public void accept(Visitor v) {
+        v.visitReadStmtNode(this);
     }
 
     @Override
-    public void nameAnalysis(SymTable symTab) {
-        myExp.nameAnalysis(symTab);
-    }    
+    public List<ASTnode> children() {
+        return children(myExp);
+    }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        p.print("cin >> ");
-        myExp.unparse(p, 0);
-        p.println(";");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.READ_STMT, 0, 0, 0, children());
+    }
+
+    public ExpNode exp() {
+        return myExp;
+    }
+
+    public void setExp(ExpNode exp) {
+        myExp = exp;
     }
 
     private ExpNode myExp;
@@ -1000,58 +848,26 @@ public static class WriteStmtNode extends StmtNode {
     public WriteStmtNode(ExpNode exp) {
         myExp = exp;
     }
-    
+
+    public void accept(Visitor v) {
+        v.visitWriteStmtNode(this);
+    }
+
     @Override
-    public void codeGen(PrintWriter p,String label) {
-        myExp.codeGen(p);
-        Codegen.genPop(p,Codegen.A0);
-        
-        if( myExp instanceof StringLitNode ) {
-            Codegen.generate(p,"li", Codegen.V0, 4);
-        }
-        else if (myExp instanceof DotAccessExpNode){
-            Codegen.genPop(p, Codegen.T0);
-            Codegen.generate(p, "lw", Codegen.T1, "(" + Codegen.T0 + ")");
-            Codegen.genPush(p, Codegen.T1);
-        }
-        else {
-            Codegen.generate(p,"li", Codegen.V0, 1);  //int
-        }
-        Codegen.generate(p,"syscall");         
+    public List<ASTnode> children() {
+        return children(myExp);
     }
 
-    public void typeCheck(Type.AbstractType retType) {
-        Type.AbstractType type = myExp.typeCheck();
-        
-        if (type.isFnType()) {
-            ErrMsg.fatal(myExp.lineNum, myExp.charNum,
-                         "Attempt to write a function");
-        }
-        if (type.isStructDefType()) {
-            ErrMsg.fatal(myExp.lineNum, myExp.charNum,
-                         "Attempt to write a struct name");
-        }
-        if (type.isStructType()) {
-            ErrMsg.fatal(myExp.lineNum, myExp.charNum,
-                         "Attempt to write a struct variable");
-        }
-        if (type.isVoidType()) {
-            ErrMsg.fatal(myExp.lineNum, myExp.charNum,
-                         "Attempt to write void");
-        }
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.WRITE_STMT, 0, 0, 0, children());
     }
 
-    @Override
-    public void nameAnalysis(SymTable symTab) {
-        myExp.nameAnalysis(symTab);
+    public ExpNode exp() {
+        return myExp;
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        p.print("cout << ");
-        myExp.unparse(p, 0);
-        p.println(";");
+    public void setExp(ExpNode exp) {
+        myExp = exp;
     }
 
     private ExpNode myExp;
@@ -1064,53 +880,34 @@ public static class IfStmtNode extends StmtNode {
         myExp = exp;
         myStmtList = slist;
     }
-    
+
+    public void accept(Visitor v) {
+        v.visitIfStmtNode(this);
+    }
+
     @Override
-    public int resolveOffset(int offset){
-        offset = myDeclList.resolveOffset(offset);
-        return myStmtList.resolveOffset(offset);
+    public List<ASTnode> children() {
+        return children(myExp, myDeclList, myStmtList);
+    }
+
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.IF_STMT, 0, 0, 0, children());
+    }
+
+    public ExpNode exp() {
+        return myExp;
     }
 
-    @Override
-    public void codeGen(PrintWriter p,String label) {
-        String endiflabel = Codegen.nextEndifLabel();
-        myExp.codeGen(p);
-        Codegen.generate(p,"li",Codegen.T1,1);
-        Codegen.generate(p,"bne", Codegen.T0, Codegen.T1, endiflabel);
-        p.println();
-        myStmtList.codeGen(p,label);
-        Codegen.generate(p,"nop");
-        Codegen.genLabel(p,endiflabel);
-    }
-
-    public void typeCheck(Type.AbstractType retType) {
-        Type.AbstractType type = myExp.typeCheck();
-        if ( ! type.isErrorType() && ! type.isBoolType() ) {
-            ErrMsg.fatal(myExp.lineNum, myExp.charNum,
-                         "Non-bool expression used as an if condition");        
-        }
-        myStmtList.typeCheck(retType);
+    public void setExp(ExpNode exp) {
+        myExp = exp;
     }
 
-    @Override
-    public void nameAnalysis(SymTable symTab) {
-        myExp.nameAnalysis(symTab);
-        symTab.addScope();      
-        myDeclList.nameAnalysis(symTab);
-        myStmtList.nameAnalysis(symTab);
-        symTab.removeScope();
+    public DeclListNode declList() {
+        return myDeclList;
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        p.print("if (");
-        myExp.unparse(p, 0);
-        p.println(") {");
-        myDeclList.unparse(p, indent+4);
-        myStmtList.unparse(p, indent+4);
-        doIndent(p, indent);
-        p.println("}");
+    public StmtListNode stmtList() {
+        return myStmtList;
     }
 
     private ExpNode myExp;
@@ -1130,72 +927,42 @@ public static class IfElseStmtNode extends StmtNode {
         myElseStmtList = slist2;
     }
 
-    @Override
-    public int resolveOffset(int offset){
-        offset = myThenDeclList.resolveOffset(offset);
-        offset = myThenStmtList.resolveOffset(offset);
-        offset = myElseDeclList.resolveOffset(offset);
-        return myElseStmtList.resolveOffset(offset);
+    public void accept(Visitor v) {
+        v.visitIfElseStmtNode(this);
     }
 
     @Override
-    public void codeGen(PrintWriter p,String label) {
-        myExp.codeGen(p);
-
-        String elselabel = Codegen.nextElseLabel();
-        Codegen.generate(p,"li",Codegen.T1,1);
-        Codegen.generate(p,"bne", Codegen.T0, Codegen.T1,elselabel);
-        
-        myThenStmtList.codeGen(p,label);
-        String endiflabel = Codegen.nextEndifLabel();
-
-        Codegen.generate(p,"j", endiflabel);  
-        
-        Codegen.genLabel(p,elselabel);
-        myElseStmtList.codeGen(p,label);
-        
-        Codegen.genLabel(p,endiflabel);
-    }
-    
-    public void typeCheck(Type.AbstractType retType) {
-        Type.AbstractType type = myExp.typeCheck();
-        if ( ! type.isErrorType() && ! type.isBoolType() ) {
-            ErrMsg.fatal(myExp.lineNum, myExp.charNum,
-                         "Non-bool expression used as an if condition");        
-        }
-        myThenStmtList.typeCheck(retType);
-        myElseStmtList.typeCheck(retType);
+    public List<ASTnode> children() {
+        return children(myExp, myThenDeclList, myThenStmtList,
+                        myElseDeclList, myElseStmtList);
     }
 
-    @Override
-    public void nameAnalysis(SymTable symTab) {
-        myExp.nameAnalysis(symTab);
-        symTab.addScope();             
-        myThenDeclList.nameAnalysis(symTab);
-        myThenStmtList.nameAnalysis(symTab);               
-        symTab.removeScope();
-        symTab.addScope();                
-        myElseDeclList.nameAnalysis(symTab);
-        myElseStmtList.nameAnalysis(symTab);                
-        symTab.removeScope();
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.IF_ELSE_STMT, 0, 0, 0, children());
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        p.print("if (");
-        myExp.unparse(p, 0);
-        p.println(") {");
-        myThenDeclList.unparse(p, indent+4);
-        myThenStmtList.unparse(p, indent+4);
-        doIndent(p, indent);
-        p.println("}");
-        doIndent(p, indent);
-        p.println("else {");
-        myElseDeclList.unparse(p, indent+4);
-        myElseStmtList.unparse(p, indent+4);
-        doIndent(p, indent);
-        p.println("}");        
+    public ExpNode exp() {
+        return myExp;
+    }
+
+    public void setExp(ExpNode exp) {
+        myExp = exp;
+    }
+
+    public DeclListNode thenDeclList() {
+        return myThenDeclList;
+    }
+
+    public StmtListNode thenStmtList() {
+        return myThenStmtList;
+    }
+
+    public DeclListNode elseDeclList() {
+        return myElseDeclList;
+    }
+
+    public StmtListNode elseStmtList() {
+        return myElseStmtList;
     }
 
     private ExpNode myExp;
@@ -1213,55 +980,33 @@ public static class WhileStmtNode extends StmtNode {
         myStmtList = slist;
     }
 
-    @Override
-    public int resolveOffset(int offset){
-        offset = myDeclList.resolveOffset(offset);
-        return myStmtList.resolveOffset(offset);
+    public void accept(Visitor v) {
+        v.visitWhileStmtNode(this);
     }
 
     @Override
-    public void codeGen(PrintWriter p,String label) {
-        String nextLoopLabel = Codegen.nextLoopLabel();                
-        String endlloopLabel = Codegen.nextEndloopLabel();
-        Codegen.genLabel(p,nextLoopLabel);
-        myExp.codeGen(p);
-
-        Codegen.generate(p,"li",Codegen.T1,1);
-        Codegen.generate(p,"bne", Codegen.T0, Codegen.T1, endlloopLabel);
-        
-        myStmtList.codeGen(p,label);
-        Codegen.generate(p,"j", nextLoopLabel);
-        Codegen.genLabel(p,endlloopLabel);
-    }
-     
-    public void typeCheck(Type.AbstractType retType) {
-        Type.AbstractType type = myExp.typeCheck();
-        if ( ! type.isErrorType() && ! type.isBoolType() ) {
-            ErrMsg.fatal(myExp.lineNum, myExp.charNum,
-                         "Non-bool expression used as a while condition");        
-        }
-        myStmtList.typeCheck(retType);
+    public List<ASTnode> children() {
+        return children(myExp, myDeclList, myStmtList);
     }
 
-    @Override
-    public void nameAnalysis(SymTable symTab) {
-        myExp.nameAnalysis(symTab);
-        symTab.addScope();
-        myDeclList.nameAnalysis(symTab);
-        myStmtList.nameAnalysis(symTab);
-        symTab.removeScope();
-    }
-	
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        p.print("while (");
-        myExp.unparse(p, 0);
-        p.println(") {");
-        myDeclList.unparse(p, indent+4);
-        myStmtList.unparse(p, indent+4);
-        doIndent(p, indent);
-        p.println("}");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.WHILE_STMT, 0, 0, 0, children());
+    }
+
+    public ExpNode exp() {
+        return myExp;
+    }
+
+    public void setExp(ExpNode exp) {
+        myExp = exp;
+    }
+
+    public DeclListNode declList() {
+        return myDeclList;
+    }
+
+    public StmtListNode stmtList() {
+        return myStmtList;
     }
 
     private ExpNode myExp;
@@ -1275,26 +1020,21 @@ public static class CallStmtNode extends StmtNode {
         myCall = call;
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        myCall.unparse(p, indent);
-        p.println(";");
+    public void accept(Visitor v) {
+        v.visitCallStmtNode(this);
     }
-    
+
     @Override
-    public void codeGen(PrintWriter p,String label){
-        this.myCall.codeGen(p);
-        Codegen.genPop(p,Codegen.T0);
+    public List<ASTnode> children() {
+        return children(myCall);
     }
 
-    public void typeCheck(Type.AbstractType retType) {
-        myCall.typeCheck();
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.CALL_STMT, 0, 0, 0, children());
     }
 
-    @Override
-    public void nameAnalysis(SymTable symTab) {
-        myCall.nameAnalysis(symTab);
+    public CallExpNode call() {
+        return myCall;
     }
 
     private CallExpNode myCall;
@@ -1312,50 +1052,36 @@ public static class ReturnStmtNode extends StmtNode {
         myLinenum = linenum;
     }
 
-    @Override
-    public void codeGen(PrintWriter p,String exitLabel) {
-        if (myExp != null) {
-            myExp.codeGen(p);
-            Codegen.genPop(p,Codegen.V0);
-        }
-        Codegen.generate(p,"j", exitLabel);
-    }
- 
-    public void typeCheck(Type.AbstractType retType) {
-        if (myExp != null) {  // return value given
-            Type.AbstractType type = myExp.typeCheck();
-            if ( retType.isVoidType() ) {
-                ErrMsg.fatal(myExp.lineNum, myExp.charNum,
-                             "Return with a value in a void function");                
-            }
-            else if ( ! retType.isErrorType() && ! type.isErrorType() && ! retType.equals(type) ) {
-                ErrMsg.fatal(myExp.lineNum, myExp.charNum,
-                             "Bad return value");
-            }
-        }
-        else {  // no return value given -- ok if this is a void function
-            if ( ! retType.isVoidType() ) {
-                ErrMsg.fatal(myLinenum, myCharnum, "Missing return value");                
-            }
-        }       
+    public void accept(Visitor v) {
+        v.visitReturnStmtNode(this);
     }
 
     @Override
-    public void nameAnalysis(SymTable symTab) {
-        if (myExp != null) {
-            myExp.nameAnalysis(symTab);
-        }
+    public List<ASTnode> children() {
+        return children(myExp);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        p.print("return");
-        if (myExp != null) {
-            p.print(" ");
-            myExp.unparse(p, 0);
-        }
-        p.println(";");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.RETURN_STMT, myLinenum, myCharnum, 0, children());
+    }
+
+    /**
+     * The returned expression, null if there is none
+     */
+    public ExpNode exp() {
+        return myExp;
+    }
+
+    public void setExp(ExpNode exp) {
+        myExp = exp;
+    }
+
+    public int lineNum() {
+        return myLinenum;
+    }
+
+    public int charNum() {
+        return myCharnum;
     }
 
     private ExpNode myExp; // possibly null
@@ -1378,36 +1104,36 @@ public abstract static class ExpNode extends ASTnode {
         this.lineNum = lineNum;
         this.charNum = charNum;
     }
-    
-    public abstract Type.AbstractType typeCheck();
-    
-    public void nameAnalysis(SymTable symTab) { }
-    public void codeGen(PrintWriter p){}
+
+    public int lineNum() {
+        return lineNum;
+    }
+
+    public int charNum() {
+        return charNum;
+    }
 
     protected int lineNum;
     protected int charNum;
 }
 
 public static class IntLitNode extends ExpNode {
-  
+
     public IntLitNode(int lineNum, int charNum, int intVal) {
         super(lineNum,charNum);
         myIntVal = intVal;
     }
-    
-    @Override
-    public void codeGen(PrintWriter p) {
-        Codegen.generate(p,"li", Codegen.T0, myIntVal);
-        Codegen.genPush(p,Codegen.T0);
+
+    public void accept(Visitor v) {
+        v.visitIntLitNode(this);
     }
 
-    public Type.AbstractType typeCheck() {
-        return new Type.IntType();
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.INT_LIT, lineNum, charNum, myIntVal);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        p.print(myIntVal);
+    public int intVal() {
+        return myIntVal;
     }
 
     private int myIntVal;
@@ -1420,23 +1146,16 @@ public static class StringLitNode extends ExpNode {
         myStrVal = strVal;
     }
 
-    @Override
-    public void codeGen(PrintWriter p) {
-        String strlabel = Codegen.StringLabel();
-        p.println("\t.data");
-        Codegen.generateLabeled(p,strlabel, ".asciiz " + myStrVal, "");
-        p.println("\t.text");
-        Codegen.generate(p,"la", Codegen.T0, strlabel);
-        Codegen.genPush(p,Codegen.T0);
+    public void accept(Visitor v) {
+        v.visitStringLitNode(this);
     }
 
-    public Type.AbstractType typeCheck() {
-        return new Type.StringType();
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.STRING_LIT, lineNum, charNum, flat.string(myStrVal));
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        p.print(myStrVal);
+    public String strVal() {
+        return myStrVal;
     }
 
     private String myStrVal;
@@ -1447,20 +1166,13 @@ public static class TrueNode extends ExpNode {
     public TrueNode(int lineNum, int charNum) {
         super(lineNum,charNum);
     }
-    
-    @Override
-    public void codeGen(PrintWriter p) {
-        Codegen.generate(p,"li", Codegen.T0, 1);
-        Codegen.genPush(p,Codegen.T0);
-    }    
 
-    public Type.AbstractType typeCheck() {
-        return new Type.BoolType();
+    public void accept(Visitor v) {
+        v.visitTrueNode(this);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        p.print("true");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.TRUE, lineNum, charNum, 0);
     }
 }
 
@@ -1470,19 +1182,12 @@ public static class FalseNode extends ExpNode {
         super(lineNum,charNum);
     }
 
-    @Override
-    public void codeGen(PrintWriter p) {
-        Codegen.generate(p,"li", Codegen.T0, 0);
-        Codegen.genPush(p,Codegen.T0);
-    }
-
-    public Type.AbstractType typeCheck() {
-        return new Type.BoolType();
+    public void accept(Visitor v) {
+        v.visitFalseNode(this);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        p.print("false");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.FALSE, lineNum, charNum, 0);
     }
 }
 
@@ -1493,76 +1198,26 @@ public static class IdNode extends ExpNode {
         myStrVal = strVal;
     }
 
-    public void genJumpAndLink(PrintWriter p) {
-        String fn = myStrVal;
-        if(!myStrVal.equals("main")){
-            fn = "_" + fn;
-        }
-        Codegen.generate(p, "la", Codegen.T0, fn);
-        Codegen.generate(p, "jalr", Codegen.T0);
-    }
-
-    @Override
-    public void codeGen(PrintWriter p) {
-        if(this.info().isGlobal()) {
-            Codegen.generate(p,"lw", Codegen.T0, "_" + this.myStrVal);
-            Codegen.genPush(p,Codegen.T0);
-        } 
-        else {
-            Codegen.generateIndexed(p,"lw", Codegen.T0, Codegen.FP, 
-                    - this.info().getOffset());
-            Codegen.genPush(p,Codegen.T0);
-        }
-    }
-    
-    public void genAddr(PrintWriter p) {
-        if(this.info().isGlobal()) {
-            Codegen.generate(p,"la", Codegen.T0, "_" + this.myStrVal);
-            Codegen.genPush(p,Codegen.T0);
-        } else {
-            Codegen.generateIndexed(p,"la", Codegen.T0, Codegen.FP, 
-                    -this.info().getOffset(), "Generate Address");
-            Codegen.genPush(p,Codegen.T0);
-        }       
-    }
-
-    public Type.AbstractType typeCheck() {
-        if ( myInfo != null ) {
-            return myInfo.getType();
-        } 
-        else {
-            ErrMsg.fatal(lineNum, charNum, "ID with null info field in IdNode.typeCheck()");
-            System.exit(-1);
-        }
-        return null;
-    }
-    
-    @Override
-    public void nameAnalysis(SymTable symTab) {
-        SymInfo info = symTab.lookupGlobal(myStrVal);
-        if (info == null) {
-            ErrMsg.fatal(lineNum, charNum, "Undeclared identifier");
-        } else {
-            link(info);
-        }
-    }
-
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        p.print(myStrVal + "[" + myInfo.getOffset() + "]");
-    }
-    
     public void link(SymInfo info) {
         myInfo = info;
     }
-    
+
     public String name() {
         return myStrVal;
     }
 
     public SymInfo info() {
         return myInfo;
-    }   
+    }
+
+    public void accept(Visitor v) {
+        v.visitIdNode(this);
+    }
+
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.ID, lineNum, charNum, flat.string(myStrVal));
+        flat.link(myInfo);
+    }
 
     private String myStrVal;
     private SymInfo myInfo;
@@ -1576,114 +1231,45 @@ public static class DotAccessExpNode extends ExpNode {
         myId = id;
         myInfo = null;
     }
-  
-    public Type.AbstractType typeCheck() {
-        return myId.typeCheck();
-    }
 
-    @Override
-    public void nameAnalysis(SymTable symTab) {
-        badAccess = false;
-        SymTable structSymTab = null; // to lookup RHS of dot-access
-        SymInfo info = null;
-        myLhs.nameAnalysis(symTab);  // do name analysis on LHS
-        if (myLhs instanceof IdNode) {
-            IdNode id = (IdNode)myLhs;
-            info = id.info();
-            if (info == null) { // ID was undeclared
-                badAccess = true;
-            }
-            else if (info instanceof StructInfo) { 
-                SymInfo tempSym = ((StructInfo)info).getStructType().info();
-                structSymTab = ((StructDefInfo)tempSym).getSymTable();
-            } 
-            else {  // LHS is not a struct type
-                ErrMsg.fatal(id.lineNum, id.charNum, 
-                             "Dot-access of non-struct type");
-                badAccess = true;
-            }
-        }
-        else if (myLhs instanceof DotAccessExpNode) {
-            DotAccessExpNode lhs = (DotAccessExpNode) myLhs;
-            if (lhs.badAccess) {  // if errors in processing myLhs
-                badAccess = true; // don't continue proccessing this dot-access
-            }
-            else { //  no errors in processing myLhs
-                info = lhs.info();
-
-                if (info == null) {  // no struct in which to look up RHS
-                    ErrMsg.fatal(lhs.lineNum, lhs.charNum, 
-                                 "Dot-access of non-struct type");
-                    badAccess = true;
-                }
-                else {  // get the struct's symbol table in which to lookup RHS
-                    if (info instanceof StructDefInfo) {
-                        structSymTab = ((StructDefInfo)info).getSymTable();
-                    }
-                    else {
-                        System.err.println("Unexpected Sym type in DotAccessExpNode");
-                        System.exit(-1);
-                    }
-                }
-            }
-        }
-        else { // don't know what kind of thing myLhs is
-            System.err.println("Unexpected node type in LHS of dot-access");
-            System.exit(-1);
-        }
-        // do name analysis on RHS of dot-access in the struct's symbol table
-        if (!badAccess) {
-            info = structSymTab.lookupGlobal(myId.name()); // lookup
-                
-            if (info == null) { // not found - RHS is not a valid field name
-                ErrMsg.fatal(myId.lineNum, myId.charNum, 
-                             "Invalid struct field name");
-                badAccess = true;
-            }
-            else {
-                myId.link(info);  // link the symbol
-                // if RHS is itself as struct type, link the symbol for its struct 
-                // type to this dot-access node (to allow chained dot-access)
-                if (info instanceof StructInfo) {
-                    myInfo = ((StructInfo)info).getStructType().info();
-                }
-            }
-        }
+    public SymInfo info() {
+        return myInfo;
     }
 
-    public void codeGen(PrintWriter p){
+    public void link(SymInfo info) {
+        myInfo = info;
+    }
 
-        int offset = 0;
+    public boolean badAccess() {
+        return badAccess;
+    }
 
-        // if myLhs is IdNode
-        if(myLhs instanceof IdNode) {
-            IdNode idnode = (IdNode)myLhs;
-            SymInfo info1 = idnode.info();
-            int offset1 = info1.getOffset();
-            SymInfo info2 = myId.info();
-            int offset2 = info2.getOffset();
-            offset = offset1 + offset2;
-            Codegen.generateIndexed(p, "la", Codegen.T0, Codegen.FP, offset);
-            Codegen.genPush(p, Codegen.T0);
-        }
-        if (myLhs instanceof DotAccessExpNode){
+    public void setBadAccess(boolean badAccess) {
+        this.badAccess = badAccess;
+    }
 
-        }
+    public void accept(Visitor v) {
+        v.visitDotAccessExpNode(this);
     }
 
-    public SymInfo info() {
-        return myInfo;
-    }    
-    
     @Override
-    public void unparse(PrintWriter p, int indent) {
-	    p.print("(");
-		myLhs.unparse(p, 0);
-		p.print(").");
-		myId.unparse(p, 0);
+    public List<ASTnode> children() {
+        return children(myLhs, myId);
+    }
+
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.DOT_ACCESS, 0, 0, 0, children());
+    }
+
+    public ExpNode lhs() {
+        return myLhs;
+    }
+
+    public IdNode idNode() {
+        return myId;
     }
 
-    private ExpNode myLhs;	
+    private ExpNode myLhs;
     private IdNode myId;
     private SymInfo myInfo;    // link to SymInfo for struct type
     private boolean badAccess; // to prevent multiple, cascading errors
@@ -1697,74 +1283,33 @@ public static class AssignNode extends ExpNode {
         myRhs = rhs;
     }
 
-    @Override
-    public void codeGen(PrintWriter p){
-        myRhs.codeGen(p);
-        if (myRhs instanceof DotAccessExpNode){
-            Codegen.genPop(p, Codegen.T0);   // T0 store the address
-            Codegen.generate(p, "lw", Codegen.T1, "(" + Codegen.T0 + ")");
-            Codegen.genPush(p, Codegen.T1);
-        }
-        Codegen.genPop(p, Codegen.T1);
-
-        if (myLhs instanceof IdNode){
-            ((IdNode)myLhs).genAddr(p);
-            Codegen.genPop(p,Codegen.T1);
-            Codegen.genPop(p,Codegen.T0);
-            Codegen.generateIndexed(p,"sw", Codegen.T0, Codegen.T1, 0);
-            Codegen.genPush(p,Codegen.T0);
-        }
-        else if (myLhs instanceof DotAccessExpNode){
-            myLhs.codeGen(p);
-            Codegen.genPop(p, Codegen.T0);
-            Codegen.genPush(p, Codegen.T1);  //push the value
-            Codegen.generate(p, "sw",Codegen.T1, "(" + Codegen.T0 + ")");
-        }
-        Codegen.genPop(p,Codegen.T1);
-
-    } 
-
-    public Type.AbstractType typeCheck() {
-        Type.AbstractType typeLhs = myLhs.typeCheck();
-        Type.AbstractType typeExp = myRhs.typeCheck();
-        Type.AbstractType retType = typeLhs;
-        
-        if (typeLhs.isFnType() && typeExp.isFnType()) {
-            ErrMsg.fatal(myLhs.lineNum, charNum, "Function assignment");
-            retType = new Type.ErrorType();
-        }
-        if (typeLhs.isStructDefType() && typeExp.isStructDefType()) {
-            ErrMsg.fatal(myLhs.lineNum, charNum, "Struct name assignment");
-            retType = new Type.ErrorType();
-        }
-        if (typeLhs.isStructType() && typeExp.isStructType()) {
-            ErrMsg.fatal(myLhs.lineNum, charNum, "Struct variable assignment");
-            retType = new Type.ErrorType();
-        }        
-        if (!typeLhs.equals(typeExp) && !typeLhs.isErrorType() && !typeExp.isErrorType()) {
-            ErrMsg.fatal(myLhs.lineNum, charNum, "Type mismatch");
-            retType = new Type.ErrorType();
-        }
-        if (typeLhs.isErrorType() || typeExp.isErrorType()) {
-            retType = new Type.ErrorType();
-        }
-        
-        return retType;
+    public void accept(Visitor v) {
+        v.visitAssignNode(this);
     }
 
     @Override
-    public void nameAnalysis(SymTable symTab) {
-        myRhs.nameAnalysis(symTab);
-        myLhs.nameAnalysis(symTab);
+    public List<ASTnode> children() {
+        return children(myLhs, myRhs);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        if (indent != -1)  p.print("(");
-        myLhs.unparse(p, 0);
-        p.print(" = ");
-        myRhs.unparse(p, 0);
-        if (indent != -1)  p.print(")");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.ASSIGN, 0, 0, 0, children());
+    }
+
+    public ExpNode lhs() {
+        return myLhs;
+    }
+
+    public ExpNode rhs() {
+        return myRhs;
+    }
+
+    public void setLhs(ExpNode lhs) {
+        myLhs = lhs;
+    }
+
+    public void setRhs(ExpNode rhs) {
+        myRhs = rhs;
     }
 
     private ExpNode myLhs;
@@ -1783,47 +1328,25 @@ public static class CallExpNode extends ExpNode {
         this(name,new ExpListNode(new LinkedList<>()));
     }
 
-    public Type.AbstractType typeCheck() {
-        if ( ! myId.typeCheck().isFnType() ) {  
-            ErrMsg.fatal(myId.lineNum, myId.charNum, 
-                         "Attempt to call a non-function");
-            return new Type.ErrorType();
-        }
-        FnInfo fnInfo = (FnInfo)(myId.info());
-        if ( fnInfo == null ) {
-            System.err.println("null sym for Id in CallExpNode.typeCheck");
-            System.exit(-1);
-        }
-        
-        if ( myExpList.size() != fnInfo.getNumParams() ) {
-            ErrMsg.fatal(myId.lineNum, myId.charNum, 
-                         "Function call with wrong number of args");
-            return fnInfo.getReturnType();
-        }
-        myExpList.typeCheck(fnInfo.getParamTypes());
-        return fnInfo.getReturnType();
+    public void accept(Visitor v) {
+        v.visitCallExpNode(this);
     }
 
     @Override
-    public void nameAnalysis(SymTable symTab) {
-        myId.nameAnalysis(symTab);
-        myExpList.nameAnalysis(symTab);
-    }    
+    public List<ASTnode> children() {
+        return children(myId, myExpList);
+    }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-	    myId.unparse(p, 0);
-		  p.print("(");
-		  if (myExpList != null) {
-			 myExpList.unparse(p, 0);
-		  }
-		  p.print(")");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.CALL, 0, 0, 0, children());
+    }
+
+    public IdNode idNode() {
+        return myId;
     }
 
-    public void codeGen(PrintWriter p) {
-        myExpList.codeGen(p);
-        myId.genJumpAndLink(p);
-        Codegen.genPush(p, Codegen.V0); //push return value and pop it in callStmtNode
+    public ExpListNode expList() {
+        return myExpList;
     }
 
     private IdNode myId;
@@ -1838,8 +1361,16 @@ public abstract static class UnaryExpNode extends ExpNode {
     }
 
     @Override
-    public void nameAnalysis(SymTable symTab) {
-        myExp.nameAnalysis(symTab);
+    public List<ASTnode> children() {
+        return children(myExp);
+    }
+
+    public ExpNode exp() {
+        return myExp;
+    }
+
+    public void setExp(ExpNode exp) {
+        myExp = exp;
     }
 
     protected ExpNode myExp;
@@ -1854,27 +1385,24 @@ public abstract static class BinaryExpNode extends ExpNode {
     }
 
     @Override
-    public void nameAnalysis(SymTable symTab) {
-        myExp1.nameAnalysis(symTab);
-        myExp2.nameAnalysis(symTab);
+    public List<ASTnode> children() {
+        return children(myExp1, myExp2);
     }
 
-    public void codeGen(PrintWriter p) {
-        myExp1.codeGen(p);
-        if(myExp1 instanceof DotAccessExpNode) {
-            Codegen.genPop(p, Codegen.T0);
-            Codegen.generate(p, "lw", Codegen.T1, "(" + Codegen.T0 + ")");
-            Codegen.genPush(p, Codegen.T1);
-        }
+    public ExpNode exp1() {
+        return myExp1;
+    }
 
-        myExp2.codeGen(p);
-        if(myExp2 instanceof DotAccessExpNode) {
-            Codegen.genPop(p, Codegen.T0);
-            Codegen.generate(p, "lw", Codegen.T1, "(" + Codegen.T0 + ")");
-            Codegen.genPush(p, Codegen.T1);
-        }
-        Codegen.genPop(p, Codegen.T1);
-        Codegen.genPop(p, Codegen.T0);
+    public ExpNode exp2() {
+        return myExp2;
+    }
+
+    public void setExp1(ExpNode exp) {
+        myExp1 = exp;
+    }
+
+    public void setExp2(ExpNode exp) {
+        myExp2 = exp;
     }
 
     protected ExpNode myExp1;
@@ -1891,41 +1419,26 @@ public static class UnaryMinusNode extends UnaryExpNode {
         super(exp);
     }
 
-    @Override
-    public void codeGen(PrintWriter p) {
-        this.myExp.codeGen(p);
-        if(myExp instanceof DotAccessExpNode) {
-            Codegen.genPop(p, Codegen.T0);
-            Codegen.generate(p, "lw", Codegen.T1, "(" + Codegen.T0 + ")");
-            Codegen.genPush(p, Codegen.T1);
-        }
-        Codegen.genPop(p,Codegen.T0);
-        Codegen.generate(p,"li", Codegen.T1,0);
-        Codegen.generate(p,"sub",Codegen.T0, Codegen.T1, Codegen.T0);
-        Codegen.genPush(p,Codegen.T0);
-    }
-
-    public Type.AbstractType typeCheck() {
-        Type.AbstractType type = myExp.typeCheck();
-        Type.AbstractType retType = new Type.IntType();
-        
-        if ( ! type.isErrorType() && ! type.isIntType() ) {
-            ErrMsg.fatal(lineNum, charNum,
-                         "Arithmetic operator applied to non-numeric operand");
-            retType = new Type.ErrorType();
-        }
-        if (type.isErrorType()) {
-            retType = new Type.ErrorType();
-        }
-        return retType;
+    /**
+     * Whether negating MIN_VALUE wraps around rather than traps on MIPS
+     */
+    public boolean wraps() {
+        return myWraps;
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-        p.print("(-");
-        myExp.unparse(p, 0);
-        p.print(")");
+    public void setWraps(boolean wraps) {
+        myWraps = wraps;
+    }
+
+    public void accept(Visitor v) {
+        v.visitUnaryMinusNode(this);
     }
+
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.UNARY_MINUS, 0, 0, 0, children());
+    }
+
+    private boolean myWraps;
 }
 
 public static class NotNode extends UnaryExpNode {
@@ -1934,38 +1447,12 @@ public static class NotNode extends UnaryExpNode {
         super(exp);
     }
 
-    @Override
-    public void codeGen(PrintWriter p) {
-        this.myExp.codeGen(p);
-        if(myExp instanceof DotAccessExpNode) {
-            Codegen.genPop(p, Codegen.T0);
-            Codegen.generate(p, "lw", Codegen.T1, "(" + Codegen.T0 + ")");
-            Codegen.genPush(p, Codegen.T1);
-        }
-        Codegen.genPop(p,Codegen.T0);
-        Codegen.generate(p,"seq",Codegen.T0, Codegen.T0, "0");
-        Codegen.genPush(p,Codegen.T0);
-    }
-
-    public Type.AbstractType typeCheck() {
-        Type.AbstractType type = myExp.typeCheck();
-        Type.AbstractType retType = new Type.BoolType();
-        if ( ! type.isErrorType() && ! type.isBoolType() ) {
-            ErrMsg.fatal(lineNum, charNum,
-                         "Logical operator applied to non-bool operand");
-            retType = new Type.ErrorType();
-        }
-        if ( type.isErrorType() ) {
-            retType = new Type.ErrorType();
-        }
-        return retType;
+    public void accept(Visitor v) {
+        v.visitNotNode(this);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-	    p.print("(!");
-		myExp.unparse(p, 0);
-		p.print(")");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.NOT, 0, 0, 0, children());
     }
 }
 
@@ -1976,27 +1463,20 @@ public abstract static class ArithmeticExpNode extends BinaryExpNode {
     protected ArithmeticExpNode(ExpNode exp1, ExpNode exp2) {
         super(exp1, exp2);
     }
-    
-    public Type.AbstractType typeCheck() {
-        Type.AbstractType type1 = myExp1.typeCheck();
-        Type.AbstractType type2 = myExp2.typeCheck();
-        Type.AbstractType retType = new Type.IntType();
-        
-        if ( ! type1.isErrorType() && ! type1.isIntType() ) {
-            ErrMsg.fatal(myExp1.lineNum, myExp1.charNum,
-                         "Arithmetic operator applied to non-numeric operand");
-            retType = new Type.ErrorType();
-        }
-        if ( ! type2.isErrorType() && ! type2.isIntType() ) {
-            ErrMsg.fatal(myExp2.lineNum, myExp2.charNum,
-                         "Arithmetic operator applied to non-numeric operand");
-            retType = new Type.ErrorType();
-        }
-        if ( type1.isErrorType() || type2.isErrorType() ) {
-            retType = new Type.ErrorType();
-        }
-        return retType;
+
+    /**
+     * Whether an overflow wraps around rather than traps on MIPS, as in
+     * the updates and moved expressions synthesized by the optimizations
+     */
+    public boolean wraps() {
+        return myWraps;
+    }
+
+    public void setWraps(boolean wraps) {
+        myWraps = wraps;
     }
+
+    private boolean myWraps;
 }
 
 public abstract static class LogicalExpNode extends BinaryExpNode {
@@ -2004,27 +1484,6 @@ public abstract static class LogicalExpNode extends BinaryExpNode {
     protected LogicalExpNode(ExpNode exp1, ExpNode exp2) {
         super(exp1, exp2);
     }
-    
-    public Type.AbstractType typeCheck() {
-        Type.AbstractType type1 = myExp1.typeCheck();
-        Type.AbstractType type2 = myExp2.typeCheck();
-        Type.AbstractType retType = new Type.BoolType();
-        
-        if ( ! type1.isErrorType() && ! type1.isBoolType() ) {
-            ErrMsg.fatal(myExp1.lineNum, myExp1.charNum,
-                         "Logical operator applied to non-bool operand");
-            retType = new Type.ErrorType();
-        }
-        if ( ! type2.isErrorType() && ! type2.isBoolType() ) {
-            ErrMsg.fatal(myExp2.lineNum, myExp2.charNum,
-                         "Logical operator applied to non-bool operand");
-            retType = new Type.ErrorType();
-        }
-        if ( type1.isErrorType() || type2.isErrorType() ) {
-            retType = new Type.ErrorType();
-        }
-        return retType;
-    }
 }
 
 public abstract static class EqualityExpNode extends BinaryExpNode {
@@ -2032,42 +1491,6 @@ public abstract static class EqualityExpNode extends BinaryExpNode {
     protected EqualityExpNode(ExpNode exp1, ExpNode exp2) {
         super(exp1, exp2);
     }
-
-    public Type.AbstractType typeCheck() {
-        Type.AbstractType type1 = myExp1.typeCheck();
-        Type.AbstractType type2 = myExp2.typeCheck();
-        Type.AbstractType retType = new Type.BoolType();
-        
-        if ( type1.isVoidType() && type2.isVoidType() ) {
-            ErrMsg.fatal(lineNum, charNum,
-                         "Equality operator applied to void functions");
-            retType = new Type.ErrorType();
-        }
-        if ( type1.isFnType() && type2.isFnType() ) {
-            ErrMsg.fatal(lineNum, charNum,
-                         "Equality operator applied to functions");
-            retType = new Type.ErrorType();
-        }
-        if ( type1.isStructDefType() && type2.isStructDefType() ) {
-            ErrMsg.fatal(lineNum, charNum,
-                         "Equality operator applied to struct names");
-            retType = new Type.ErrorType();
-        }
-        if ( type1.isStructType() && type2.isStructType() ) {
-            ErrMsg.fatal(lineNum, charNum,
-                         "Equality operator applied to struct variables");
-            retType = new Type.ErrorType();
-        }        
-        if ( ! type1.equals(type2) && ! type1.isErrorType() && ! type2.isErrorType() ) {
-            ErrMsg.fatal(lineNum, charNum,
-                         "Type mismatch");
-            retType = new Type.ErrorType();
-        }
-        if ( type1.isErrorType() || type2.isErrorType() ) {
-            retType = new Type.ErrorType();
-        }
-        return retType;
-    }
 }
 
 public abstract static class RelationalExpNode extends BinaryExpNode {
@@ -2075,27 +1498,6 @@ public abstract static class RelationalExpNode extends BinaryExpNode {
     protected RelationalExpNode(ExpNode exp1, ExpNode exp2) {
         super(exp1, exp2);
     }
-    
-    public Type.AbstractType typeCheck() {
-        Type.AbstractType type1 = myExp1.typeCheck();
-        Type.AbstractType type2 = myExp2.typeCheck();
-        Type.AbstractType retType = new Type.BoolType();
-        
-        if ( ! type1.isErrorType() && ! type1.isIntType() ) {
-            ErrMsg.fatal(myExp1.lineNum, myExp1.charNum,
-                         "Relational operator applied to non-numeric operand");
-            retType = new Type.ErrorType();
-        }
-        if ( ! type2.isErrorType() && ! type2.isIntType() ) {
-            ErrMsg.fatal(myExp2.lineNum, myExp2.charNum,
-                         "Relational operator applied to non-numeric operand");
-            retType = new Type.ErrorType();
-        }
-        if ( type1.isErrorType() || type2.isErrorType() ) {
-            retType = new Type.ErrorType();
-        }
-        return retType;
-    }
 }
 
 // **********************************************************************
@@ -2108,23 +1510,12 @@ public static class PlusNode extends ArithmeticExpNode {
         super(exp1, exp2);
     }
 
-    @Override
-    public void codeGen(PrintWriter p) {
-        myExp1.codeGen(p);
-        myExp2.codeGen(p);
-        Codegen.genPop(p,Codegen.T1);
-        Codegen.genPop(p,Codegen.T0);
-        Codegen.generate(p,"add",Codegen.T0, Codegen.T0, Codegen.T1);
-        Codegen.genPush(p,Codegen.T0);
+    public void accept(Visitor v) {
+        v.visitPlusNode(this);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-	    p.print("(");
-		myExp1.unparse(p, 0);
-		p.print(" + ");
-		myExp2.unparse(p, 0);
-		p.print(")");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.PLUS, 0, 0, 0, children());
     }
 }
 
@@ -2133,24 +1524,13 @@ public static class MinusNode extends ArithmeticExpNode {
     public MinusNode(ExpNode exp1, ExpNode exp2) {
         super(exp1, exp2);
     }
-    
-    @Override
-    public void codeGen(PrintWriter p) {
-        myExp1.codeGen(p);
-        myExp2.codeGen(p);
-        Codegen.genPop(p,Codegen.T1);
-        Codegen.genPop(p,Codegen.T0);
-        Codegen.generate(p,"sub", Codegen.T0, Codegen.T0, Codegen.T1);
-        Codegen.genPush(p,Codegen.T0);
+
+    public void accept(Visitor v) {
+        v.visitMinusNode(this);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-	    p.print("(");
-		myExp1.unparse(p, 0);
-		p.print(" - ");
-		myExp2.unparse(p, 0);
-		p.print(")");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.MINUS, 0, 0, 0, children());
     }
 }
 
@@ -2160,23 +1540,12 @@ public static class TimesNode extends ArithmeticExpNode {
         super(exp1, exp2);
     }
 
-    @Override
-    public void codeGen(PrintWriter p) {
-        myExp1.codeGen(p);
-        myExp2.codeGen(p);
-        Codegen.genPop(p,Codegen.T1);
-        Codegen.genPop(p,Codegen.T0);
-        Codegen.generate(p,"mul", Codegen.T0, Codegen.T0, Codegen.T1);
-        Codegen.genPush(p,Codegen.T0);
+    public void accept(Visitor v) {
+        v.visitTimesNode(this);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-	    p.print("(");
-		myExp1.unparse(p, 0);
-		p.print(" * ");
-		myExp2.unparse(p, 0);
-		p.print(")");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.TIMES, 0, 0, 0, children());
     }
 }
 
@@ -2186,23 +1555,12 @@ public static class DivideNode extends ArithmeticExpNode {
         super(exp1, exp2);
     }
 
-    @Override
-    public void codeGen(PrintWriter p) {
-        myExp1.codeGen(p);
-        myExp2.codeGen(p);
-        Codegen.genPop(p,Codegen.T1);
-        Codegen.genPop(p,Codegen.T0);
-        Codegen.generate(p,"div", Codegen.T0, Codegen.T0, Codegen.T1);
-        Codegen.genPush(p,Codegen.T0);
+    public void accept(Visitor v) {
+        v.visitDivideNode(this);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-	    p.print("(");
-		myExp1.unparse(p, 0);
-		p.print(" / ");
-		myExp2.unparse(p, 0);
-		p.print(")");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.DIVIDE, 0, 0, 0, children());
     }
 }
 
@@ -2212,30 +1570,12 @@ public static class AndNode extends LogicalExpNode {
         super(exp1, exp2);
     }
 
-    @Override
-    public void codeGen(PrintWriter p) {
-        String shortLabel = Codegen.nextLabel();
-        String exitLabel = Codegen.nextLabel();
-        
-        this.myExp1.codeGen(p);
-        Codegen.genPop(p,Codegen.T0);
-        Codegen.generate(p,"bne",Codegen.T0, "0", shortLabel); // If not false, use RHS as solution
-        // the left is 0
-        Codegen.genPush(p,Codegen.T0); // Uses LHS as solution
-        Codegen.generate(p,"b", exitLabel);
-        // the left is not 0,so start short label
-        Codegen.genLabel(p,shortLabel);
-        this.myExp2.codeGen(p); // Just leave RHS on stack as solution
-        Codegen.genLabel(p,exitLabel);
+    public void accept(Visitor v) {
+        v.visitAndNode(this);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-	    p.print("(");
-		myExp1.unparse(p, 0);
-		p.print(" && ");
-		myExp2.unparse(p, 0);
-		p.print(")");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.AND, 0, 0, 0, children());
     }
 }
 
@@ -2245,30 +1585,12 @@ public static class OrNode extends LogicalExpNode {
         super(exp1, exp2);
     }
 
-    @Override
-    public void codeGen(PrintWriter p) {
-        String shortLabel = Codegen.nextLabel();
-        String exitLabel = Codegen.nextLabel();
-        
-        this.myExp1.codeGen(p);
-        Codegen.genPop(p,Codegen.T0);
-        Codegen.generate(p,"bne",Codegen.T0, "1", shortLabel); //If not true, use RHS as solution
-
-        Codegen.genPush(p,Codegen.T0); //Uses LHS as solution
-        Codegen.generate(p,"b", exitLabel);
-        
-        Codegen.genLabel(p,shortLabel);
-        this.myExp2.codeGen(p); //Just leave RHS on stack as solution
-        Codegen.genLabel(p,exitLabel);    
+    public void accept(Visitor v) {
+        v.visitOrNode(this);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-	    p.print("(");
-		myExp1.unparse(p, 0);
-		p.print(" || ");
-		myExp2.unparse(p, 0);
-		p.print(")");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.OR, 0, 0, 0, children());
     }
 }
 
@@ -2278,36 +1600,12 @@ public static class EqualsNode extends EqualityExpNode {
         super(exp1, exp2);
     }
 
-    @Override
-    public void codeGen(PrintWriter p){
-        String trueLabel = Codegen.nextLabel();
-        String exitLabel = Codegen.nextLabel();
-        
-        this.myExp1.codeGen(p);
-        this.myExp2.codeGen(p);
-        Codegen.genPop(p,Codegen.T1);
-        Codegen.genPop(p,Codegen.T0);
-        
-        Codegen.generate(p,"beq",Codegen.T0, Codegen.T1, trueLabel); 
-        
-        //Set false
-        Codegen.generate(p,"li",Codegen.T0, 0); 
-        Codegen.generate(p,"b",exitLabel);    
-        
-        Codegen.genLabel(p,trueLabel);
-        Codegen.generate(p,"li",Codegen.T0, 1);
-       
-        Codegen.genLabel(p,exitLabel);
-        Codegen.genPush(p,Codegen.T0);    
+    public void accept(Visitor v) {
+        v.visitEqualsNode(this);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-	    p.print("(");
-		myExp1.unparse(p, 0);
-		p.print(" == ");
-		myExp2.unparse(p, 0);
-		p.print(")");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.EQUALS, 0, 0, 0, children());
     }
 }
 
@@ -2317,37 +1615,12 @@ public static class NotEqualsNode extends EqualityExpNode {
         super(exp1, exp2);
     }
 
-    @Override
-    public void codeGen(PrintWriter p){
-        String trueLabel = Codegen.nextLabel();
-        String exitLabel = Codegen.nextLabel();
-        
-        
-        this.myExp1.codeGen(p);
-        this.myExp2.codeGen(p);
-        Codegen.genPop(p,Codegen.T1);
-        Codegen.genPop(p,Codegen.T0);
-        
-        Codegen.generate(p,"bne",Codegen.T0, Codegen.T1, trueLabel); 
-       
-        //Set false
-        Codegen.generate(p,"li",Codegen.T0, 0); 
-        Codegen.generate(p,"b",exitLabel);    
-        
-        Codegen.genLabel(p,trueLabel);
-        Codegen.generate(p,"li",Codegen.T0, 1);
-       
-        Codegen.genLabel(p,exitLabel);
-        Codegen.genPush(p,Codegen.T0);    
+    public void accept(Visitor v) {
+        v.visitNotEqualsNode(this);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-	    p.print("(");
-		myExp1.unparse(p, 0);
-		p.print(" != ");
-		myExp2.unparse(p, 0);
-		p.print(")");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.NOT_EQUALS, 0, 0, 0, children());
     }
 }
 
@@ -2357,38 +1630,12 @@ public static class LessNode extends RelationalExpNode {
         super(exp1, exp2);
     }
 
-    @Override
-    public void codeGen(PrintWriter p) {
-        String falseLabel = Codegen.nextLabel();
-        String exitLabel = Codegen.nextLabel();
-        
-        this.myExp1.codeGen(p);
-        this.myExp2.codeGen(p);
-        Codegen.genPop(p,Codegen.T1);
-        Codegen.genPop(p,Codegen.T0);
-        
-        //T0 > T1 -> !(0 <= T1-T0)
-        Codegen.generate(p,"sub",Codegen.T0, Codegen.T0, Codegen.T1); 
-        Codegen.generate(p,"bgez",Codegen.T0, falseLabel); 
-       
-       //Set false
-        Codegen.generate(p,"li",Codegen.T0, 1); 
-        Codegen.generate(p,"b",exitLabel);    
-        
-        Codegen.genLabel(p,falseLabel);
-        Codegen.generate(p,"li",Codegen.T0, 0);
-       
-        Codegen.genLabel(p,exitLabel);
-        Codegen.genPush(p,Codegen.T0);
+    public void accept(Visitor v) {
+        v.visitLessNode(this);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-	    p.print("(");
-		myExp1.unparse(p, 0);
-		p.print(" < ");
-		myExp2.unparse(p, 0);
-		p.print(")");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.LESS, 0, 0, 0, children());
     }
 }
 
@@ -2398,38 +1645,12 @@ public static class GreaterNode extends RelationalExpNode {
         super(exp1, exp2);
     }
 
-    @Override
-    public void codeGen(PrintWriter p) {
-        String falseLabel = Codegen.nextLabel();
-        String exitLabel = Codegen.nextLabel();
-        
-        this.myExp1.codeGen(p);
-        this.myExp2.codeGen(p);
-        Codegen.genPop(p,Codegen.T1);
-        Codegen.genPop(p,Codegen.T0);
-        
-        //T0 > T1 -> !(0 <= T1-T0)
-        Codegen.generate(p,"sub",Codegen.T0, Codegen.T1, Codegen.T0); 
-        Codegen.generate(p,"bgez",Codegen.T0, falseLabel); 
-       
-        //Set false
-        Codegen.generate(p,"li",Codegen.T0, 1); 
-        Codegen.generate(p,"b",exitLabel);    
-        
-        Codegen.genLabel(p,falseLabel);
-        Codegen.generate(p,"li",Codegen.T0, 0);
-       
-        Codegen.genLabel(p,exitLabel);
-        Codegen.genPush(p,Codegen.T0);
+    public void accept(Visitor v) {
+        v.visitGreaterNode(this);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-	    p.print("(");
-		myExp1.unparse(p, 0);
-		p.print(" > ");
-		myExp2.unparse(p, 0);
-		p.print(")");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.GREATER, 0, 0, 0, children());
     }
 }
 
@@ -2439,37 +1660,12 @@ public static class LessEqNode extends RelationalExpNode {
         super(exp1, exp2);
     }
 
-    @Override
-    public void codeGen(PrintWriter p) {
-        String trueLabel = Codegen.nextLabel();
-        String exitLabel = Codegen.nextLabel();
-        
-        this.myExp1.codeGen(p);
-        this.myExp2.codeGen(p);
-        Codegen.genPop(p,Codegen.T1);
-        Codegen.genPop(p,Codegen.T0);
-        
-        Codegen.generate(p,"sub",Codegen.T0, Codegen.T1, Codegen.T0); 
-        Codegen.generate(p,"bgez",Codegen.T0, trueLabel); 
-       
-       //Set false
-        Codegen.generate(p,"li",Codegen.T0, 0); 
-        Codegen.generate(p,"b",exitLabel);    
-        
-        Codegen.genLabel(p,trueLabel);
-        Codegen.generate(p,"li",Codegen.T0, 1);
-       
-        Codegen.genLabel(p,exitLabel);
-        Codegen.genPush(p,Codegen.T0);
+    public void accept(Visitor v) {
+        v.visitLessEqNode(this);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-	    p.print("(");
-		myExp1.unparse(p, 0);
-		p.print(" <= ");
-		myExp2.unparse(p, 0);
-		p.print(")");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.LESS_EQ, 0, 0, 0, children());
     }
 }
 
@@ -2479,37 +1675,12 @@ public static class GreaterEqNode extends RelationalExpNode {
         super(exp1, exp2);
     }
 
-    @Override
-    public void codeGen(PrintWriter p) {
-        String trueLabel = Codegen.nextLabel();
-        String exitLabel = Codegen.nextLabel();
-        
-        this.myExp1.codeGen(p);
-        this.myExp2.codeGen(p);
-        Codegen.genPop(p,Codegen.T1);
-        Codegen.genPop(p,Codegen.T0);
-        
-        Codegen.generate(p,"sub",Codegen.T0, Codegen.T0, Codegen.T1); 
-        Codegen.generate(p,"bgez",Codegen.T0, trueLabel); 
-       
-       //Set false
-        Codegen.generate(p,"li",Codegen.T0, 0); 
-        Codegen.generate(p,"b",exitLabel);    
-        
-        Codegen.genLabel(p,trueLabel);
-        Codegen.generate(p,"li",Codegen.T0, 1);
-       
-        Codegen.genLabel(p,exitLabel);
-        Codegen.genPush(p,Codegen.T0);        
+    public void accept(Visitor v) {
+        v.visitGreaterEqNode(this);
     }
 
-    @Override
-    public void unparse(PrintWriter p, int indent) {
-	    p.print("(");
-		myExp1.unparse(p, 0);
-		p.print(" >= ");
-	 	myExp2.unparse(p, 0);
-		p.print(")");
+    public void flatten(FlatAST flat) {
+        flat.node(FlatAST.GREATER_EQ, 0, 0, 0, children());
     }
 }
 }
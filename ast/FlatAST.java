@@ -0,0 +1,504 @@
+package ast;
+
+import java.util.*;
+import symtable.*;
+
+/**
+ * The FlatAST class holds the AST of a whole program in parallel int arrays
+ * instead of one object per node.
+ *
+ * A node is an index into the arrays, which hold:
+ *     kind        - one of the node kinds below (a byte), with the
+ *                   HAS_CHILDREN bit set if the node has a child; since
+ *                   the nodes are numbered in pre-order, the first child
+ *                   of node i is then node i+1
+ *     nextSibling - index of the next child of the same parent, or -1
+ *     line        - line number (ExpNode.lineNum, ReturnStmtNode line)
+ *     column      - character number
+ *     payload     - INT_LIT: the int value itself
+ *                   ID, STRING_LIT: an index into the interned string table
+ *                   VAR_DECL: the size given to the VarDeclNode
+ *                   other nodes: unused (0)
+ * that is 17 bytes per node.
+ *
+ * The children of a node are in the same order as the fields of the
+ * corresponding AST class, and a null child (the expression of a return
+ * without value) is left out. Node 0 is the DECL_LIST of the program.
+ *
+ * The nodes of a top-level declaration are contiguous. The passes run over the program one
+ * top-level declaration at a time: the nodes of the declaration are
+ * expanded into AST objects (a linear scan of its range of indexes), the
+ * pass runs on them, and the objects are dropped. The symbol linked to each
+ * ID by name analysis is kept in a side array, so only one declaration is
+ * ever held as objects.
+ *
+ * The saving is therefore per declaration: the program is compact between
+ * the passes, but while a pass runs, the declaration it works on is held
+ * both ways, so a program made of one large function takes more memory
+ * than its tree of objects, and one of many small functions hardly less,
+ * the symbols and the code written being the same.
+ */
+public class FlatAST implements Program {
+
+    // node kinds
+    public static final int DECL_LIST = 0;
+    public static final int FORMALS_LIST = 1;
+    public static final int FN_BODY = 2;
+    public static final int STMT_LIST = 3;
+    public static final int EXP_LIST = 4;
+    public static final int VAR_DECL = 5;
+    public static final int FN_DECL = 6;
+    public static final int FORMAL_DECL = 7;
+    public static final int STRUCT_DECL = 8;
+    public static final int INT = 9;
+    public static final int BOOL = 10;
+    public static final int VOID = 11;
+    public static final int STRUCT = 12;
+    public static final int ASSIGN_STMT = 13;
+    public static final int POST_INC_STMT = 14;
+    public static final int POST_DEC_STMT = 15;
+    public static final int READ_STMT = 16;
+    public static final int WRITE_STMT = 17;
+    public static final int IF_STMT = 18;
+    public static final int IF_ELSE_STMT = 19;
+    public static final int WHILE_STMT = 20;
+    public static final int CALL_STMT = 21;
+    public static final int RETURN_STMT = 22;
+    public static final int INT_LIT = 23;
+    public static final int STRING_LIT = 24;
+    public static final int TRUE = 25;
+    public static final int FALSE = 26;
+    public static final int ID = 27;
+    public static final int DOT_ACCESS = 28;
+    public static final int ASSIGN = 29;
+    public static final int CALL = 30;
+    public static final int UNARY_MINUS = 31;
+    public static final int NOT = 32;
+    public static final int PLUS = 33;
+    public static final int MINUS = 34;
+    public static final int TIMES = 35;
+    public static final int DIVIDE = 36;
+    public static final int AND = 37;
+    public static final int OR = 38;
+    public static final int EQUALS = 39;
+    public static final int NOT_EQUALS = 40;
+    public static final int LESS = 41;
+    public static final int GREATER = 42;
+    public static final int LESS_EQ = 43;
+    public static final int GREATER_EQ = 44;
+
+    private static final int HAS_CHILDREN = 0x40;
+    private static final int KIND_MASK = 0x3f;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private byte[] kinds;
+    private int[] nextSiblings;
+    private int[] lines;
+    private int[] columns;
+    private int[] payloads;
+    private int size;
+
+    // interned side table for identifier and string literal values
+    private List<String> strings;
+    private Map<String,Integer> stringIndex;
+
+    // symbol linked to each ID node by name analysis (null before)
+    private SymInfo[] infos;
+
+    /**
+     * Node of the AST waiting to be added, with the indexes needed to link
+     * it to its parent and to its previous sibling
+     */
+    private static class Item {
+        Item(AST.ASTnode node, int parent, Item prev) {
+            this.node = node;
+            this.parent = parent;
+            this.prev = prev;
+        }
+
+        AST.ASTnode node;
+        int parent;   // -1 for a top-level declaration
+        Item prev;    // previous sibling, or null for the first child
+        int index;    // index given to the node once added
+    }
+
+    private ArrayDeque<Item> work = new ArrayDeque<Item>();
+    private Item current;   // item of the node being flattened
+    private int lastDecl = -1;  // last top-level declaration
+
+    /**
+     * Create a FlatAST for a program with no declaration
+     */
+    public FlatAST() {
+        kinds = new byte[INITIAL_CAPACITY];
+        nextSiblings = new int[INITIAL_CAPACITY];
+        lines = new int[INITIAL_CAPACITY];
+        columns = new int[INITIAL_CAPACITY];
+        payloads = new int[INITIAL_CAPACITY];
+        size = 0;
+        strings = new ArrayList<String>();
+        stringIndex = new HashMap<String,Integer>();
+        alloc(DECL_LIST, 0, 0, 0);
+    }
+
+    /**
+     * Append a top-level declaration to the program. The declaration is
+     * copied, the AST objects can be dropped afterwards.
+     */
+    public void add(AST.DeclNode decl) {
+        Item item = new Item(decl, -1, null);
+        work.push(item);
+        while (!work.isEmpty()) {
+            current = work.pop();
+            current.node.flatten(this);
+            current.node = null;
+        }
+        current = null;
+        if (lastDecl == -1) {
+            kinds[0] |= HAS_CHILDREN;
+        }
+        else {
+            nextSiblings[lastDecl] = item.index;
+        }
+        lastDecl = item.index;
+    }
+
+    /**
+     * Called by ASTnode.flatten: add the node being flattened, then
+     * schedule its children (null children are left out)
+     */
+    void node(int kind, int line, int column, int payload, AST.ASTnode... children) {
+        node(kind, line, column, payload, Arrays.asList(children));
+    }
+
+    void node(int kind, int line, int column, int payload,
+              List<? extends AST.ASTnode> children) {
+        Item item = current;
+        item.index = alloc(kind, line, column, payload);
+        if (item.prev != null) {
+            nextSiblings[item.prev.index] = item.index;
+        }
+        else if (item.parent != -1) {
+            kinds[item.parent] |= HAS_CHILDREN;
+        }
+
+        List<Item> items = new ArrayList<Item>(children.size());
+        Item prev = null;
+        for (AST.ASTnode child : children) {
+            if (child != null) {
+                prev = new Item(child, item.index, prev);
+                items.add(prev);
+            }
+        }
+        for (int k = items.size() - 1; k >= 0; k--) {
+            work.push(items.get(k));
+        }
+    }
+
+    /**
+     * Called by IdNode.flatten: keep the symbol linked to the ID just
+     * added
+     */
+    void link(SymInfo info) {
+        setInfo(current.index, info);
+    }
+
+    /**
+     * Intern a string value; returns its payload
+     */
+    int string(String str) {
+        Integer index = stringIndex.get(str);
+        if (index == null) {
+            index = strings.size();
+            strings.add(str);
+            stringIndex.put(str, index);
+        }
+        return index;
+    }
+
+    private int alloc(int kind, int line, int column, int payload) {
+        if (size == kinds.length) {
+            int capacity = kinds.length * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+            payloads = Arrays.copyOf(payloads, capacity);
+            if (infos != null) {
+                infos = Arrays.copyOf(infos, capacity);
+            }
+        }
+        kinds[size] = (byte) kind;
+        nextSiblings[size] = -1;
+        lines[size] = line;
+        columns[size] = column;
+        payloads[size] = payload;
+        return size++;
+    }
+
+    /**
+     * Release the unused capacity of the arrays (once the program is
+     * complete)
+     */
+    public void trimToSize() {
+        kinds = Arrays.copyOf(kinds, size);
+        nextSiblings = Arrays.copyOf(nextSiblings, size);
+        lines = Arrays.copyOf(lines, size);
+        columns = Arrays.copyOf(columns, size);
+        payloads = Arrays.copyOf(payloads, size);
+        if (infos != null) {
+            infos = Arrays.copyOf(infos, size);
+        }
+    }
+
+    /**
+     * Number of nodes (including the root DECL_LIST)
+     */
+    public int size() {
+        return size;
+    }
+
+    public int kind(int i) {
+        return kinds[i] & KIND_MASK;
+    }
+
+    public int firstChild(int i) {
+        return (kinds[i] & HAS_CHILDREN) != 0 ? i + 1 : -1;
+    }
+
+    public int nextSibling(int i) {
+        return nextSiblings[i];
+    }
+
+    public int line(int i) {
+        return lines[i];
+    }
+
+    public int column(int i) {
+        return columns[i];
+    }
+
+    /**
+     * Value of an INT_LIT node, size of a VAR_DECL node
+     */
+    public int intVal(int i) {
+        return payloads[i];
+    }
+
+    /**
+     * Value of an ID or STRING_LIT node (interned)
+     */
+    public String strVal(int i) {
+        return strings.get(payloads[i]);
+    }
+
+    // **********************************************************************
+    // passes
+    // **********************************************************************
+
+    /**
+     * Run the pass on each top-level declaration, expanded into AST
+     * objects (the whole declaration, however large). The symbols linked
+     * to the IDs are kept; the declarations returned by a pass that
+     * transforms the program are flattened into new arrays.
+     */
+    public void apply(Pass pass) {
+        pass.begin();
+        if (!pass.transforms()) {
+            for (int d = firstChild(0); d != -1; d = nextSibling(d)) {
+                AST.ASTnode[] nodes = expand(d);
+                pass.run((AST.DeclNode) nodes[0]);
+                for (int i = d; i < d + nodes.length; i++) {
+                    if (kind(i) == ID) {
+                        setInfo(i, ((AST.IdNode) nodes[i - d]).info());
+                    }
+                }
+            }
+        }
+        else {
+            FlatAST result = new FlatAST();
+            for (int d = firstChild(0); d != -1; d = nextSibling(d)) {
+                AST.DeclNode decl = pass.run((AST.DeclNode) expand(d)[0]);
+                if (decl != null) {
+                    result.add(decl);
+                }
+            }
+            result.trimToSize();
+            take(result);
+        }
+        pass.end();
+    }
+
+    private void take(FlatAST other) {
+        kinds = other.kinds;
+        nextSiblings = other.nextSiblings;
+        lines = other.lines;
+        columns = other.columns;
+        payloads = other.payloads;
+        size = other.size;
+        strings = other.strings;
+        stringIndex = other.stringIndex;
+        infos = other.infos;
+        lastDecl = other.lastDecl;
+    }
+
+    private void setInfo(int i, SymInfo info) {
+        if (infos == null) {
+            if (info == null) {
+                return;
+            }
+            infos = new SymInfo[kinds.length];
+        }
+        infos[i] = info;
+    }
+
+    /**
+     * Build the AST objects of the top-level declaration at index root;
+     * element k of the result is the object of node root+k. The IDs are
+     * linked to the symbols found by name analysis, if it was done.
+     */
+    private AST.ASTnode[] expand(int root) {
+        int end = nextSibling(root) != -1 ? nextSibling(root) : size;
+        AST.ASTnode[] nodes = new AST.ASTnode[end - root];
+        List<AST.ASTnode> children = new ArrayList<AST.ASTnode>();
+        // the children of a node come after it
+        for (int i = end - 1; i >= root; i--) {
+            children.clear();
+            for (int c = firstChild(i); c != -1; c = nextSibling(c)) {
+                children.add(nodes[c - root]);
+            }
+            nodes[i - root] = build(i, children);
+        }
+        return nodes;
+    }
+
+    /**
+     * Build the AST object of node i from the objects of its children
+     */
+    private AST.ASTnode build(int i, List<AST.ASTnode> c) {
+        switch (kind(i)) {
+            case DECL_LIST:
+                return new AST.DeclListNode(FlatAST.<AST.DeclNode>list(c));
+            case FORMALS_LIST:
+                return new AST.FormalsListNode(FlatAST.<AST.FormalDeclNode>list(c));
+            case FN_BODY:
+                return new AST.FnBodyNode((AST.DeclListNode) c.get(0),
+                                          (AST.StmtListNode) c.get(1));
+            case STMT_LIST:
+                return new AST.StmtListNode(FlatAST.<AST.StmtNode>list(c));
+            case EXP_LIST:
+                return new AST.ExpListNode(FlatAST.<AST.ExpNode>list(c));
+            case VAR_DECL:
+                return new AST.VarDeclNode((AST.TypeNode) c.get(0),
+                                           (AST.IdNode) c.get(1), payloads[i]);
+            case FN_DECL:
+                return new AST.FnDeclNode((AST.TypeNode) c.get(0), (AST.IdNode) c.get(1),
+                                          (AST.FormalsListNode) c.get(2),
+                                          (AST.FnBodyNode) c.get(3));
+            case FORMAL_DECL:
+                return new AST.FormalDeclNode((AST.TypeNode) c.get(0),
+                                              (AST.IdNode) c.get(1));
+            case STRUCT_DECL:
+                return new AST.StructDeclNode((AST.IdNode) c.get(0),
+                                              (AST.DeclListNode) c.get(1));
+            case INT:
+                return new AST.IntNode();
+            case BOOL:
+                return new AST.BoolNode();
+            case VOID:
+                return new AST.VoidNode();
+            case STRUCT:
+                return new AST.StructNode((AST.IdNode) c.get(0));
+            case ASSIGN_STMT:
+                return new AST.AssignStmtNode((AST.AssignNode) c.get(0));
+            case POST_INC_STMT:
+                return new AST.PostIncStmtNode(exp(c, 0));
+            case POST_DEC_STMT:
+                return new AST.PostDecStmtNode(exp(c, 0));
+            case READ_STMT:
+                return new AST.ReadStmtNode(exp(c, 0));
+            case WRITE_STMT:
+                return new AST.WriteStmtNode(exp(c, 0));
+            case IF_STMT:
+                return new AST.IfStmtNode(exp(c, 0), (AST.DeclListNode) c.get(1),
+                                          (AST.StmtListNode) c.get(2));
+            case IF_ELSE_STMT:
+                return new AST.IfElseStmtNode(exp(c, 0),
+                                              (AST.DeclListNode) c.get(1),
+                                              (AST.StmtListNode) c.get(2),
+                                              (AST.DeclListNode) c.get(3),
+                                              (AST.StmtListNode) c.get(4));
+            case WHILE_STMT:
+                return new AST.WhileStmtNode(exp(c, 0), (AST.DeclListNode) c.get(1),
+                                             (AST.StmtListNode) c.get(2));
+            case CALL_STMT:
+                return new AST.CallStmtNode((AST.CallExpNode) c.get(0));
+            case RETURN_STMT:
+                return new AST.ReturnStmtNode(c.isEmpty() ? null : exp(c, 0),
+                                              columns[i], lines[i]);
+            case INT_LIT:
+                return new AST.IntLitNode(lines[i], columns[i], payloads[i]);
+            case STRING_LIT:
+                return new AST.StringLitNode(lines[i], columns[i], strVal(i));
+            case TRUE:
+                return new AST.TrueNode(lines[i], columns[i]);
+            case FALSE:
+                return new AST.FalseNode(lines[i], columns[i]);
+            case ID:
+                AST.IdNode id = new AST.IdNode(lines[i], columns[i], strVal(i));
+                if (infos != null && infos[i] != null) {
+                    id.link(infos[i]);
+                }
+                return id;
+            case DOT_ACCESS:
+                return new AST.DotAccessExpNode(exp(c, 0), (AST.IdNode) c.get(1));
+            case ASSIGN:
+                return new AST.AssignNode(exp(c, 0), exp(c, 1));
+            case CALL:
+                return new AST.CallExpNode((AST.IdNode) c.get(0),
+                                           (AST.ExpListNode) c.get(1));
+            case UNARY_MINUS:
+                return new AST.UnaryMinusNode(exp(c, 0));
+            case NOT:
+                return new AST.NotNode(exp(c, 0));
+            case PLUS:
+                return new AST.PlusNode(exp(c, 0), exp(c, 1));
+            case MINUS:
+                return new AST.MinusNode(exp(c, 0), exp(c, 1));
+            case TIMES:
+                return new AST.TimesNode(exp(c, 0), exp(c, 1));
+            case DIVIDE:
+                return new AST.DivideNode(exp(c, 0), exp(c, 1));
+            case AND:
+                return new AST.AndNode(exp(c, 0), exp(c, 1));
+            case OR:
+                return new AST.OrNode(exp(c, 0), exp(c, 1));
+            case EQUALS:
+                return new AST.EqualsNode(exp(c, 0), exp(c, 1));
+            case NOT_EQUALS:
+                return new AST.NotEqualsNode(exp(c, 0), exp(c, 1));
+            case LESS:
+                return new AST.LessNode(exp(c, 0), exp(c, 1));
+            case GREATER:
+                return new AST.GreaterNode(exp(c, 0), exp(c, 1));
+            case LESS_EQ:
+                return new AST.LessEqNode(exp(c, 0), exp(c, 1));
+            case GREATER_EQ:
+                return new AST.GreaterEqNode(exp(c, 0), exp(c, 1));
+            default:
+                System.err.println("unexpected node kind " + kind(i) + " in FlatAST");
+                System.exit(-1);
+                return null;
+        }
+    }
+
+    private static AST.ExpNode exp(List<AST.ASTnode> c, int k) {
+        return (AST.ExpNode) c.get(k);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends AST.ASTnode> List<T> list(List<AST.ASTnode> c) {
+        return new ArrayList<T>((List<T>) (List<?>) c);
+    }
+}
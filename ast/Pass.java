@@ -0,0 +1,49 @@
+package ast;
+
+/**
+ * A pass over the program, run by the PassManager.
+ *
+ * The program (a ProgramNode or a FlatAST) calls begin, then run on each
+ * of its top-level declarations in order, then end. run returns the
+ * declaration to keep in place of the one given: the same one, a new
+ * one, or null to remove it. A pass that may return anything but the
+ * declaration it was given, or change it, must say so with transforms.
+ */
+public interface Pass {
+
+    /**
+     * The name of the pass, used to enable or disable it from the
+     * command line
+     */
+    String name();
+
+    default void begin() {}
+
+    AST.DeclNode run(AST.DeclNode decl);
+
+    default void end() {}
+
+    /**
+     * false if the pass must not run on a program with errors (the
+     * PassManager stops before it)
+     */
+    default boolean runsOnErrors() {
+        return true;
+    }
+
+    /**
+     * true if the pass may change, replace or remove declarations
+     */
+    default boolean transforms() {
+        return false;
+    }
+
+    /**
+     * A pass to run over the whole program just before this one, for a
+     * pass that must know all the declarations before it runs on the
+     * first one; null if there is none
+     */
+    default Pass analysis() {
+        return null;
+    }
+}
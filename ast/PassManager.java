@@ -0,0 +1,130 @@
+package ast;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import lexer.*;
+
+/**
+ * The PassManager runs the registered passes over a program, in the order
+ * they were added.
+ *
+ * A pass can be disabled (or enabled again) by name. Before each pass
+ * that does not run on errors, the manager stops if errors were reported.
+ * The analysis a pass needs is run with it. For each pass run, the
+ * manager records the time taken and, if the JVM can measure it, the
+ * number of bytes allocated by the thread.
+ */
+public class PassManager {
+
+    private static class Entry {
+        Entry(Pass pass, boolean enabled) {
+            this.pass = pass;
+            this.enabled = enabled;
+        }
+
+        Pass pass;
+        boolean enabled;
+        boolean ran;
+        long nanos;
+        long bytes;      // -1 if not measured
+    }
+
+    private List<Entry> entries = new ArrayList<Entry>();
+    private com.sun.management.ThreadMXBean threads;
+
+    public PassManager() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            threads = (com.sun.management.ThreadMXBean) bean;
+            if (!threads.isThreadAllocatedMemorySupported()) {
+                threads = null;
+            }
+            else if (!threads.isThreadAllocatedMemoryEnabled()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+            }
+        }
+    }
+
+    public void add(Pass pass) {
+        add(pass, true);
+    }
+
+    public void add(Pass pass, boolean enabled) {
+        entries.add(new Entry(pass, enabled));
+    }
+
+    /**
+     * Enable or disable the pass with the given name; returns false if
+     * there is no such pass
+     */
+    public boolean setEnabled(String name, boolean enabled) {
+        boolean found = false;
+        for (Entry entry : entries) {
+            if (entry.pass.name().equals(name)) {
+                entry.enabled = enabled;
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Run the enabled passes over the program; returns false on errors,
+     * whether it stopped because of them or the last pass reported them
+     */
+    public boolean run(Program program) {
+        for (Entry entry : entries) {
+            entry.ran = false;
+        }
+        for (Entry entry : entries) {
+            if (!entry.enabled) {
+                continue;
+            }
+            if (!entry.pass.runsOnErrors() && ErrMsg.hasFatalError()) {
+                return false;
+            }
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            if (entry.pass.analysis() != null) {
+                program.apply(entry.pass.analysis());
+            }
+            program.apply(entry.pass);
+            entry.nanos = System.nanoTime() - start;
+            entry.bytes = bytes < 0 ? -1 : allocatedBytes() - bytes;
+            entry.ran = true;
+        }
+        return !ErrMsg.hasFatalError();
+    }
+
+    private long allocatedBytes() {
+        if (threads == null) {
+            return -1;
+        }
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Print the time and allocation of each pass of the last run
+     */
+    public void printStats(PrintStream out) {
+        long totalNanos = 0;
+        for (Entry entry : entries) {
+            String name = entry.pass.name();
+            if (!entry.enabled) {
+                out.println(String.format("%-16s disabled", name));
+            }
+            else if (!entry.ran) {
+                out.println(String.format("%-16s not run", name));
+            }
+            else {
+                totalNanos += entry.nanos;
+                String bytes = entry.bytes < 0 ? "n/a"
+                    : String.format("%,d bytes", entry.bytes);
+                out.println(String.format("%-16s %10.3f ms  %s", name,
+                                          entry.nanos / 1e6, bytes));
+            }
+        }
+        out.println(String.format("%-16s %10.3f ms", "total", totalNanos / 1e6));
+    }
+}
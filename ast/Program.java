@@ -0,0 +1,12 @@
+package ast;
+
+/**
+ * A whole program, whichever way its AST is stored
+ */
+public interface Program {
+
+    /**
+     * Run the pass on the top-level declarations of the program (see Pass)
+     */
+    void apply(Pass pass);
+}
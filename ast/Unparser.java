@@ -0,0 +1,359 @@
+package ast;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Pass writing the program back as C-- source (each ID followed by its
+ * offset in brackets). The argument of the walk is the indentation.
+ */
+public class Unparser extends AST.VisitorWalk implements Pass {
+
+    public Unparser(PrintWriter p) {
+        this.p = p;
+    }
+
+    public String name() {
+        return "unparse";
+    }
+
+    public AST.DeclNode run(AST.DeclNode decl) {
+        walk(decl, 0);
+        return decl;
+    }
+
+    public boolean runsOnErrors() {
+        return false;
+    }
+
+    private PrintWriter p;
+
+    private void doIndent(int indent) {
+        for (int k=0; k<indent; k++) p.print(" ");
+    }
+
+    protected void defaultVisit(AST.ASTnode node) {
+    }
+
+    // print a node that schedules nothing (a type, an ID) right away
+    private void print(AST.ASTnode node) {
+        node.accept(this);
+    }
+
+    public void visitProgramNode(AST.ProgramNode node) {
+        visit(node.declList(), arg());
+    }
+
+    public void visitDeclListNode(AST.DeclListNode node) {
+        int indent = arg();
+        for (AST.DeclNode decl : node.getList()) {
+            visit(decl, indent);
+        }
+    }
+
+    public void visitFormalsListNode(AST.FormalsListNode node) {
+        visitCommaList(node.getList(), arg());
+    }
+
+    public void visitFnBodyNode(AST.FnBodyNode node) {
+        int indent = arg();
+        visit(node.declList(), indent);
+        visit(node.stmtList(), indent);
+    }
+
+    public void visitStmtListNode(AST.StmtListNode node) {
+        int indent = arg();
+        for (AST.StmtNode stmt : node.getList()) {
+            visit(stmt, indent);
+        }
+    }
+
+    public void visitExpListNode(AST.ExpListNode node) {
+        visitCommaList(node.getList(), arg());
+    }
+
+    private void visitCommaList(List<? extends AST.ASTnode> list, int indent) {
+        Iterator<? extends AST.ASTnode> it = list.iterator();
+        if (it.hasNext()) { // if there is at least one element
+            visit(it.next(), indent);
+            while (it.hasNext()) {  // print the rest of the list
+                then(() -> p.print(", "));
+                visit(it.next(), indent);
+            }
+        }
+    }
+
+    public void visitVarDeclNode(AST.VarDeclNode node) {
+        doIndent(arg());
+        print(node.typeNode());
+        p.print(" ");
+        print(node.getMyId());
+        p.println(";");
+    }
+
+    public void visitFnDeclNode(AST.FnDeclNode node) {
+        int indent = arg();
+        doIndent(indent);
+        print(node.typeNode());
+        p.print(" ");
+        print(node.idNode());
+        p.print("(");
+        visit(node.formalsList(), 0);
+        then(() -> p.println(") {"));
+        visit(node.body(), indent+4);
+        then(() -> p.println("}\n"));
+    }
+
+    public void visitFormalDeclNode(AST.FormalDeclNode node) {
+        print(node.typeNode());
+        p.print(" ");
+        print(node.idNode());
+    }
+
+    public void visitStructDeclNode(AST.StructDeclNode node) {
+        int indent = arg();
+        doIndent(indent);
+        p.print("struct ");
+        print(node.idNode());
+        p.println("{");
+        visit(node.declList(), indent+4);
+        then(() -> {
+            doIndent(indent);
+            p.println("};\n");
+        });
+    }
+
+    public void visitIntNode(AST.IntNode node) {
+        p.print("int");
+    }
+
+    public void visitBoolNode(AST.BoolNode node) {
+        p.print("bool");
+    }
+
+    public void visitVoidNode(AST.VoidNode node) {
+        p.print("void");
+    }
+
+    public void visitStructNode(AST.StructNode node) {
+        p.print("struct ");
+        print(node.idNode());
+    }
+
+    public void visitAssignStmtNode(AST.AssignStmtNode node) {
+        doIndent(arg());
+        visit(node.assign(), -1); // no parentheses
+        then(() -> p.println(";"));
+    }
+
+    public void visitPostIncStmtNode(AST.PostIncStmtNode node) {
+        doIndent(arg());
+        visit(node.exp(), 0);
+        then(() -> p.println("++;"));
+    }
+
+    public void visitPostDecStmtNode(AST.PostDecStmtNode node) {
+        doIndent(arg());
+        visit(node.exp(), 0);
+        then(() -> p.println("--;"));
+    }
+
+    public void visitReadStmtNode(AST.ReadStmtNode node) {
+        doIndent(arg());
+        p.print("cin >> ");
+        visit(node.exp(), 0);
+        then(() -> p.println(";"));
+    }
+
+    public void visitWriteStmtNode(AST.WriteStmtNode node) {
+        doIndent(arg());
+        p.print("cout << ");
+        visit(node.exp(), 0);
+        then(() -> p.println(";"));
+    }
+
+    public void visitIfStmtNode(AST.IfStmtNode node) {
+        int indent = arg();
+        doIndent(indent);
+        p.print("if (");
+        visit(node.exp(), 0);
+        then(() -> p.println(") {"));
+        visit(node.declList(), indent+4);
+        visit(node.stmtList(), indent+4);
+        then(() -> {
+            doIndent(indent);
+            p.println("}");
+        });
+    }
+
+    public void visitIfElseStmtNode(AST.IfElseStmtNode node) {
+        int indent = arg();
+        doIndent(indent);
+        p.print("if (");
+        visit(node.exp(), 0);
+        then(() -> p.println(") {"));
+        visit(node.thenDeclList(), indent+4);
+        visit(node.thenStmtList(), indent+4);
+        then(() -> {
+            doIndent(indent);
+            p.println("}");
+            doIndent(indent);
+            p.println("else {");
+        });
+        visit(node.elseDeclList(), indent+4);
+        visit(node.elseStmtList(), indent+4);
+        then(() -> {
+            doIndent(indent);
+            p.println("}");
+        });
+    }
+
+    public void visitWhileStmtNode(AST.WhileStmtNode node) {
+        int indent = arg();
+        doIndent(indent);
+        p.print("while (");
+        visit(node.exp(), 0);
+        then(() -> p.println(") {"));
+        visit(node.declList(), indent+4);
+        visit(node.stmtList(), indent+4);
+        then(() -> {
+            doIndent(indent);
+            p.println("}");
+        });
+    }
+
+    public void visitCallStmtNode(AST.CallStmtNode node) {
+        int indent = arg();
+        doIndent(indent);
+        visit(node.call(), indent);
+        then(() -> p.println(";"));
+    }
+
+    public void visitReturnStmtNode(AST.ReturnStmtNode node) {
+        doIndent(arg());
+        p.print("return");
+        if (node.exp() != null) {
+            p.print(" ");
+            visit(node.exp(), 0);
+        }
+        then(() -> p.println(";"));
+    }
+
+    public void visitIntLitNode(AST.IntLitNode node) {
+        p.print(node.intVal());
+    }
+
+    public void visitStringLitNode(AST.StringLitNode node) {
+        p.print(node.strVal());
+    }
+
+    public void visitTrueNode(AST.TrueNode node) {
+        p.print("true");
+    }
+
+    public void visitFalseNode(AST.FalseNode node) {
+        p.print("false");
+    }
+
+    public void visitIdNode(AST.IdNode node) {
+        p.print(node.name() + "[" + node.info().getOffset() + "]");
+    }
+
+    public void visitDotAccessExpNode(AST.DotAccessExpNode node) {
+        p.print("(");
+        visit(node.lhs(), 0);
+        then(() -> {
+            p.print(").");
+            print(node.idNode());
+        });
+    }
+
+    public void visitAssignNode(AST.AssignNode node) {
+        int indent = arg();
+        if (indent != -1)  p.print("(");
+        visit(node.lhs(), 0);
+        then(() -> p.print(" = "));
+        visit(node.rhs(), 0);
+        then(() -> {
+            if (indent != -1)  p.print(")");
+        });
+    }
+
+    public void visitCallExpNode(AST.CallExpNode node) {
+        print(node.idNode());
+        p.print("(");
+        if (node.expList() != null) {
+            visit(node.expList(), 0);
+        }
+        then(() -> p.print(")"));
+    }
+
+    public void visitUnaryMinusNode(AST.UnaryMinusNode node) {
+        p.print("(-");
+        visit(node.exp(), 0);
+        then(() -> p.print(")"));
+    }
+
+    public void visitNotNode(AST.NotNode node) {
+        p.print("(!");
+        visit(node.exp(), 0);
+        then(() -> p.print(")"));
+    }
+
+    // the operands with the operator between them
+    private void visitBinary(AST.BinaryExpNode node, String op) {
+        p.print("(");
+        visit(node.exp1(), 0);
+        then(() -> p.print(op));
+        visit(node.exp2(), 0);
+        then(() -> p.print(")"));
+    }
+
+    public void visitPlusNode(AST.PlusNode node) {
+        visitBinary(node, " + ");
+    }
+
+    public void visitMinusNode(AST.MinusNode node) {
+        visitBinary(node, " - ");
+    }
+
+    public void visitTimesNode(AST.TimesNode node) {
+        visitBinary(node, " * ");
+    }
+
+    public void visitDivideNode(AST.DivideNode node) {
+        visitBinary(node, " / ");
+    }
+
+    public void visitAndNode(AST.AndNode node) {
+        visitBinary(node, " && ");
+    }
+
+    public void visitOrNode(AST.OrNode node) {
+        visitBinary(node, " || ");
+    }
+
+    public void visitEqualsNode(AST.EqualsNode node) {
+        visitBinary(node, " == ");
+    }
+
+    public void visitNotEqualsNode(AST.NotEqualsNode node) {
+        visitBinary(node, " != ");
+    }
+
+    public void visitLessNode(AST.LessNode node) {
+        visitBinary(node, " < ");
+    }
+
+    public void visitGreaterNode(AST.GreaterNode node) {
+        visitBinary(node, " > ");
+    }
+
+    public void visitLessEqNode(AST.LessEqNode node) {
+        visitBinary(node, " <= ");
+    }
+
+    public void visitGreaterEqNode(AST.GreaterEqNode node) {
+        visitBinary(node, " >= ");
+    }
+}
@@ -0,0 +1,819 @@
+package codegen;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A writer assembling the MIPS code written through it, a line at a time
+ * as the generate methods of Codegen write it, into MIPS32 machine code,
+ * written as an ELF32 relocatable object (see ElfWriter) when the writer
+ * is closed.
+ *
+ * A line is a label, a directive (.text, .data, .globl, .align, .space,
+ * .word, .ascii, .asciiz or .set) or an instruction, its comment dropped.
+ * The pseudo-instructions are expanded as SPIM does, with AT: li, la, a
+ * load or a store of a label, move, mul, div and rem of three operands,
+ * the set and branch comparisons, and an immediate in place of a register.
+ * As SPIM assembles the code for a pipeline without delay slots, a nop is
+ * put in the delay slot of each branch and jump, but between .set
+ * noreorder and .set reorder, where the code is taken as written.
+ *
+ * The branches are resolved here. The other references to the labels (by
+ * la, a load or a store, j, jal and .word) are relocated: the ones to a
+ * local label against the symbol of its section, its offset in the
+ * field, the ones to a global (.globl) or undefined label against its
+ * symbol. Every label is in the symbol table: the globals, the strings,
+ * the functions and the labels of their code. A line which cannot be
+ * assembled is reported, and no object is written.
+ */
+public class Assembler extends Writer {
+
+    private static final int ZERO = 0, AT = 1, RA = 31;
+    private static final Map<String, Integer> REGISTERS = new HashMap<String, Integer>();
+    static {
+        String[] names = { "zero", "at", "v0", "v1", "a0", "a1", "a2", "a3",
+                           "t0", "t1", "t2", "t3", "t4", "t5", "t6", "t7",
+                           "s0", "s1", "s2", "s3", "s4", "s5", "s6", "s7",
+                           "t8", "t9", "k0", "k1", "gp", "sp", "fp", "ra" };
+        for (int k = 0; k < names.length; k++) {
+            REGISTERS.put("$" + names[k], k);
+            REGISTERS.put("$" + k, k);
+        }
+        REGISTERS.put("$s8", 30);
+    }
+
+    // the opcodes
+    private static final int SPECIAL = 0x00, REGIMM = 0x01, J = 0x02, JAL = 0x03;
+    private static final int BEQ = 0x04, BNE = 0x05, BLEZ = 0x06, BGTZ = 0x07;
+    private static final int ADDI = 0x08, ADDIU = 0x09, SLTI = 0x0a, SLTIU = 0x0b;
+    private static final int ANDI = 0x0c, ORI = 0x0d, XORI = 0x0e, LUI = 0x0f;
+    private static final int SPECIAL2 = 0x1c;
+
+    // the functions of SPECIAL (and MUL of SPECIAL2)
+    private static final int SLL = 0x00, SRL = 0x02, SRA = 0x03, JR = 0x08, JALR = 0x09;
+    private static final int SYSCALL = 0x0c, BREAK = 0x0d, MFHI = 0x10, MFLO = 0x12;
+    private static final int MULT = 0x18, MULTU = 0x19, DIV = 0x1a, DIVU = 0x1b;
+    private static final int ADD = 0x20, ADDU = 0x21, SUB = 0x22, SUBU = 0x23;
+    private static final int AND = 0x24, OR = 0x25, XOR = 0x26, NOR = 0x27;
+    private static final int SLT = 0x2a, SLTU = 0x2b, TEQ = 0x34, MUL = 0x02;
+
+    // the operations of three registers, by their function, and their
+    // opcode with an immediate (for sub and subu, that of the addition
+    // of its negation)
+    private static final Map<String, Integer> FUNCTIONS = new HashMap<String, Integer>();
+    private static final Map<String, Integer> IMMEDIATES = new HashMap<String, Integer>();
+    private static final Map<String, Integer> SHIFTS = new HashMap<String, Integer>();
+    private static final Map<String, Integer> LOADS_STORES = new HashMap<String, Integer>();
+    static {
+        String[] names = { "add", "addu", "sub", "subu", "and", "or", "xor", "nor", "slt", "sltu" };
+        int[] functions = { ADD, ADDU, SUB, SUBU, AND, OR, XOR, NOR, SLT, SLTU };
+        int[] immediates = { ADDI, ADDIU, ADDI, ADDIU, ANDI, ORI, XORI, -1, SLTI, SLTIU };
+        for (int k = 0; k < names.length; k++) {
+            FUNCTIONS.put(names[k], functions[k]);
+            if (immediates[k] >= 0) {
+                IMMEDIATES.put(names[k], immediates[k]);
+            }
+        }
+        SHIFTS.put("sll", SLL);
+        SHIFTS.put("srl", SRL);
+        SHIFTS.put("sra", SRA);
+        String[] memory = { "lb", "lh", "lw", "lbu", "lhu", "sb", "sh", "sw" };
+        int[] opcodes = { 0x20, 0x21, 0x23, 0x24, 0x25, 0x28, 0x29, 0x2b };
+        for (int k = 0; k < memory.length; k++) {
+            LOADS_STORES.put(memory[k], opcodes[k]);
+        }
+    }
+
+    // the kind of a fixup resolved here, the others being relocations
+    private static final int BRANCH = 0;
+
+    // a field to fill once the labels are known: the offset of a branch,
+    // or a field relocated, to hold the addend
+    private static class Fixup {
+        final ElfWriter.Section section;
+        final int offset;
+        final int kind;
+        final ElfWriter.Symbol symbol;
+        final int addend;
+        final String line;
+
+        Fixup(ElfWriter.Section section, int kind, ElfWriter.Symbol symbol, int addend,
+              String line) {
+            this.section = section;
+            this.offset = section.size();
+            this.kind = kind;
+            this.symbol = symbol;
+            this.addend = addend;
+            this.line = line;
+        }
+    }
+
+    // an address operand: off(base), (base), label, label+off or label(base)
+    private static class Address {
+        String label = null;
+        int offset = 0;
+        int base = ZERO;
+    }
+
+    private OutputStream out;
+    private StringBuilder line = new StringBuilder();
+    private String text; // the line assembled
+    private ElfWriter.Section code = new ElfWriter.Section(".text", true);
+    private ElfWriter.Section data = new ElfWriter.Section(".data", false);
+    private ElfWriter.Section section = code;
+    private Map<String, ElfWriter.Symbol> symbols = new LinkedHashMap<String, ElfWriter.Symbol>();
+    private List<Fixup> fixups = new ArrayList<Fixup>();
+    private boolean reorder = true;
+    private boolean noreorder = false; // if the code has .set noreorder
+    private boolean failed = false;
+
+    public Assembler(OutputStream out) {
+        this.out = out;
+    }
+
+    public void write(int c) throws IOException {
+        see((char) c);
+    }
+
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int k = off; k < off + len; k++) {
+            see(cbuf[k]);
+        }
+    }
+
+    public void write(String str, int off, int len) throws IOException {
+        for (int k = off; k < off + len; k++) {
+            see(str.charAt(k));
+        }
+    }
+
+    /**
+     * Nothing to do: the object is written when the writer is closed
+     */
+    public void flush() throws IOException {
+    }
+
+    public void close() throws IOException {
+        if (line.length() > 0) {
+            see('\n');
+        }
+        for (Fixup fixup : fixups) {
+            resolve(fixup);
+        }
+        if (!failed) {
+            for (ElfWriter.Symbol symbol : symbols.values()) {
+                if (symbol.section == null) {
+                    symbol.global = true;
+                }
+            }
+            new ElfWriter(Arrays.asList(code, data), symbols.values(), noreorder).write(out);
+        }
+        out.close();
+    }
+
+    private void see(char c) {
+        if (c != '\n') {
+            line.append(c);
+            return;
+        }
+        text = line.toString();
+        line.setLength(0);
+        try {
+            assemble(text);
+        }
+        catch (IllegalArgumentException ex) {
+            error(text, ex.getMessage());
+        }
+    }
+
+    private void error(String text, String msg) {
+        System.err.println("Cannot assemble \"" + text.trim() + "\": " + msg);
+        failed = true;
+    }
+
+    private void assemble(String text) {
+        String s = stripComment(text);
+        if (!s.isEmpty() && !Character.isWhitespace(s.charAt(0))) {
+            int colon = s.indexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("no colon after the label");
+            }
+            define(s.substring(0, colon));
+            s = s.substring(colon + 1);
+        }
+        s = s.trim();
+        if (s.isEmpty()) {
+            return;
+        }
+        int space = 0;
+        while (space < s.length() && !Character.isWhitespace(s.charAt(space))) {
+            space++;
+        }
+        String op = s.substring(0, space);
+        String rest = s.substring(space).trim();
+        if (op.startsWith(".")) {
+            directive(op, rest);
+            return;
+        }
+        if (section != code) {
+            throw new IllegalArgumentException("instruction out of .text");
+        }
+        String[] args = rest.isEmpty() ? new String[0] : rest.split(",");
+        for (int k = 0; k < args.length; k++) {
+            args[k] = args[k].trim();
+        }
+        instruction(op, args);
+    }
+
+    // the line without its comment, a # in a string being kept
+    private static String stripComment(String s) {
+        boolean quoted = false;
+        for (int k = 0; k < s.length(); k++) {
+            char c = s.charAt(k);
+            if (quoted && c == '\\') {
+                k++;
+            }
+            else if (c == '"') {
+                quoted = !quoted;
+            }
+            else if (c == '#' && !quoted) {
+                return s.substring(0, k);
+            }
+        }
+        return s;
+    }
+
+    private void directive(String op, String rest) {
+        switch (op) {
+        case ".text":
+            section = code;
+            break;
+        case ".data":
+            section = data;
+            break;
+        case ".globl":
+            symbol(rest).global = true;
+            break;
+        case ".align":
+            int align = 1 << (int) number(rest);
+            section.align = Math.max(section.align, align);
+            while (section.size() % align != 0) {
+                section.putByte(0);
+            }
+            break;
+        case ".space":
+            for (long k = number(rest); k > 0; k--) {
+                section.putByte(0);
+            }
+            break;
+        case ".word":
+            for (String word : rest.split(",")) {
+                word = word.trim();
+                if (isNumber(word)) {
+                    section.putWord((int) number(word));
+                }
+                else {
+                    fixup(ElfWriter.R_MIPS_32, address(word));
+                    section.putWord(0);
+                }
+            }
+            break;
+        case ".ascii":
+        case ".asciiz":
+            string(rest);
+            if (op.equals(".asciiz")) {
+                section.putByte(0);
+            }
+            break;
+        case ".set":
+            if (rest.equals("noreorder")) {
+                reorder = false;
+                noreorder = true;
+            }
+            else if (rest.equals("reorder")) {
+                reorder = true;
+            }
+            else {
+                throw new IllegalArgumentException("unknown .set " + rest);
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("unknown directive " + op);
+        }
+    }
+
+    // put the bytes of the string literal, its escapes decoded
+    private void string(String s) {
+        if (s.length() < 2 || s.charAt(0) != '"' || s.charAt(s.length() - 1) != '"') {
+            throw new IllegalArgumentException("bad string " + s);
+        }
+        for (int k = 1; k < s.length() - 1; k++) {
+            char c = s.charAt(k);
+            if (c == '\\') {
+                c = s.charAt(++k);
+                switch (c) {
+                case 'n': c = '\n'; break;
+                case 't': c = '\t'; break;
+                case 'r': c = '\r'; break;
+                case '0': c = '\0'; break;
+                default: break;     // \\, \" and \' are the character
+                }
+            }
+            section.putByte(c);
+        }
+    }
+
+    private void instruction(String op, String[] args) {
+        switch (op) {
+        case "nop":
+            operands(args, 0);
+            emit(0);
+            break;
+        case "syscall":
+            operands(args, 0);
+            emit(SYSCALL);
+            break;
+        case "break":
+            emit((args.length == 0 ? 0 : (int) number(args[0])) << 16 | BREAK);
+            break;
+        case "li":
+            operands(args, 2);
+            li(register(args[0]), (int) number(args[1]));
+            break;
+        case "la":
+            operands(args, 2);
+            la(register(args[0]), address(args[1]));
+            break;
+        case "move":
+            operands(args, 2);
+            emit(typeR(register(args[1]), ZERO, register(args[0]), 0, ADDU));
+            break;
+        case "neg":
+        case "negu":
+            operands(args, 2);
+            emit(typeR(ZERO, register(args[1]), register(args[0]), 0,
+                       op.equals("neg") ? SUB : SUBU));
+            break;
+        case "not":
+            operands(args, 2);
+            emit(typeR(register(args[1]), ZERO, register(args[0]), 0, NOR));
+            break;
+        case "mul":
+            operands(args, 3);
+            emit(SPECIAL2 << 26
+                 | typeR(register(args[1]), operand(args[2]), register(args[0]), 0, MUL));
+            break;
+        case "mult":
+        case "multu":
+            operands(args, 2);
+            emit(typeR(register(args[0]), register(args[1]), ZERO, 0,
+                       op.equals("mult") ? MULT : MULTU));
+            break;
+        case "div":
+        case "divu":
+        case "rem":
+        case "remu":
+            divide(op, args);
+            break;
+        case "mfhi":
+        case "mflo":
+            operands(args, 1);
+            emit(typeR(ZERO, ZERO, register(args[0]), 0, op.equals("mfhi") ? MFHI : MFLO));
+            break;
+        case "seq":
+        case "sne":
+        case "sgt":
+        case "sge":
+        case "sle":
+            operands(args, 3);
+            set(op, register(args[0]), register(args[1]), args[2]);
+            break;
+        case "b":
+            operands(args, 1);
+            branch(BEQ, ZERO, ZERO, args[0]);
+            break;
+        case "beq":
+        case "bne":
+            operands(args, 3);
+            branch(op.equals("beq") ? BEQ : BNE, register(args[0]), operand(args[1]), args[2]);
+            break;
+        case "beqz":
+        case "bnez":
+            operands(args, 2);
+            branch(op.equals("beqz") ? BEQ : BNE, register(args[0]), ZERO, args[1]);
+            break;
+        case "bltz":
+        case "bgez":
+            operands(args, 2);
+            branch(REGIMM, register(args[0]), op.equals("bltz") ? 0 : 1, args[1]);
+            break;
+        case "blez":
+        case "bgtz":
+            operands(args, 2);
+            branch(op.equals("blez") ? BLEZ : BGTZ, register(args[0]), ZERO, args[1]);
+            break;
+        case "blt":
+        case "bge":
+        case "bgt":
+        case "ble":
+            operands(args, 3);
+            compareBranch(op, register(args[0]), args[1], args[2]);
+            break;
+        case "j":
+        case "jr":
+            operands(args, 1);
+            if (isRegister(args[0])) {
+                emit(typeR(register(args[0]), ZERO, ZERO, 0, JR));
+                delaySlot();
+            }
+            else if (op.equals("j")) {
+                jump(J, args[0]);
+            }
+            else {
+                throw new IllegalArgumentException("jr of a label");
+            }
+            break;
+        case "jal":
+            operands(args, 1);
+            jump(JAL, args[0]);
+            break;
+        case "jalr":
+            if (args.length == 1) {
+                emit(typeR(register(args[0]), ZERO, RA, 0, JALR));
+            }
+            else {
+                operands(args, 2);
+                emit(typeR(register(args[1]), ZERO, register(args[0]), 0, JALR));
+            }
+            delaySlot();
+            break;
+        default:
+            if (FUNCTIONS.containsKey(op)) {
+                arithmetic(op, args);
+            }
+            else if (SHIFTS.containsKey(op)) {
+                operands(args, 3);
+                shift(SHIFTS.get(op), register(args[0]), register(args[1]), args[2]);
+            }
+            else if (LOADS_STORES.containsKey(op)) {
+                operands(args, 2);
+                loadStore(LOADS_STORES.get(op), register(args[0]), address(args[1]));
+            }
+            else {
+                throw new IllegalArgumentException("unknown instruction " + op);
+            }
+        }
+    }
+
+    private static void operands(String[] args, int count) {
+        if (args.length != count) {
+            throw new IllegalArgumentException(count + " operands expected");
+        }
+    }
+
+    private static int typeR(int rs, int rt, int rd, int shamt, int function) {
+        return SPECIAL << 26 | rs << 21 | rt << 16 | rd << 11 | shamt << 6 | function;
+    }
+
+    private static int typeI(int opcode, int rs, int rt, int immediate) {
+        return opcode << 26 | rs << 21 | rt << 16 | (immediate & 0xffff);
+    }
+
+    private void emit(int word) {
+        section.putWord(word);
+    }
+
+    private void delaySlot() {
+        if (reorder) {
+            emit(0);
+        }
+    }
+
+    private void li(int rd, int value) {
+        if (isSigned16(value)) {
+            emit(typeI(ADDIU, ZERO, rd, value));
+        }
+        else if (isUnsigned16(value)) {
+            emit(typeI(ORI, ZERO, rd, value));
+        }
+        else {
+            emit(typeI(LUI, ZERO, rd, value >>> 16));
+            if ((value & 0xffff) != 0) {
+                emit(typeI(ORI, rd, rd, value));
+            }
+        }
+    }
+
+    private void la(int rd, Address address) {
+        if (address.label != null) {
+            fixup(ElfWriter.R_MIPS_HI16, address);
+            emit(typeI(LUI, ZERO, rd, 0));
+            if (address.base != ZERO) {
+                emit(typeR(rd, address.base, rd, 0, ADDU));
+            }
+            fixup(ElfWriter.R_MIPS_LO16, address);
+            emit(typeI(ADDIU, rd, rd, 0));
+        }
+        else if (isSigned16(address.offset)) {
+            emit(typeI(ADDIU, address.base, rd, address.offset));
+        }
+        else {
+            li(AT, address.offset);
+            emit(typeR(address.base, AT, rd, 0, ADDU));
+        }
+    }
+
+    private void loadStore(int opcode, int rt, Address address) {
+        if (address.label != null) {
+            fixup(ElfWriter.R_MIPS_HI16, address);
+            emit(typeI(LUI, ZERO, AT, 0));
+            if (address.base != ZERO) {
+                emit(typeR(AT, address.base, AT, 0, ADDU));
+            }
+            fixup(ElfWriter.R_MIPS_LO16, address);
+            emit(typeI(opcode, AT, rt, 0));
+        }
+        else if (isSigned16(address.offset)) {
+            emit(typeI(opcode, address.base, rt, address.offset));
+        }
+        else {
+            emit(typeI(LUI, ZERO, AT, (address.offset + 0x8000) >>> 16));
+            if (address.base != ZERO) {
+                emit(typeR(AT, address.base, AT, 0, ADDU));
+            }
+            emit(typeI(opcode, AT, rt, address.offset));
+        }
+    }
+
+    // rd = rs op the register or the immediate; sub and subu of an
+    // immediate add its negation
+    private void arithmetic(String op, String[] args) {
+        if (args.length == 2) {
+            args = new String[] { args[0], args[0], args[1] };
+        }
+        operands(args, 3);
+        int rd = register(args[0]);
+        int rs = register(args[1]);
+        if (isRegister(args[2])) {
+            emit(typeR(rs, register(args[2]), rd, 0, FUNCTIONS.get(op)));
+            return;
+        }
+        long value = number(args[2]);
+        long immediate = op.startsWith("sub") ? -value : value;
+        Integer opcode = IMMEDIATES.get(op);
+        boolean logical = opcode != null && (opcode == ANDI || opcode == ORI || opcode == XORI);
+        if (opcode != null && (logical ? isUnsigned16(immediate) : isSigned16(immediate))) {
+            emit(typeI(opcode, rs, rd, (int) immediate));
+        }
+        else {
+            li(AT, (int) value);
+            emit(typeR(rs, AT, rd, 0, FUNCTIONS.get(op)));
+        }
+    }
+
+    private void shift(int function, int rd, int rt, String amount) {
+        if (isRegister(amount)) {
+            // sllv, srlv and srav
+            emit(typeR(register(amount), rt, rd, 0, function + 4));
+            return;
+        }
+        long shamt = number(amount);
+        if (shamt < 0 || shamt > 31) {
+            throw new IllegalArgumentException("bad shift amount " + amount);
+        }
+        emit(typeR(ZERO, rt, rd, (int) shamt, function));
+    }
+
+    // div and divu of two registers, or div, divu, rem and remu of three
+    // operands: the division, a trap if the divisor is 0, and the
+    // quotient or the remainder moved to rd
+    private void divide(String op, String[] args) {
+        boolean unsigned = op.endsWith("u");
+        if (args.length == 2 && op.startsWith("div")) {
+            emit(typeR(register(args[0]), register(args[1]), ZERO, 0, unsigned ? DIVU : DIV));
+            return;
+        }
+        operands(args, 3);
+        int rd = register(args[0]);
+        int rs = register(args[1]);
+        int rt = operand(args[2]);
+        emit(typeR(rs, rt, ZERO, 0, unsigned ? DIVU : DIV));
+        emit(typeR(rt, ZERO, 0, 7, TEQ));
+        emit(typeR(ZERO, ZERO, rd, 0, op.startsWith("div") ? MFLO : MFHI));
+    }
+
+    // rd = rs op the register or the immediate, as 1 or 0
+    private void set(String op, int rd, int rs, String arg) {
+        if (op.equals("seq") || op.equals("sne")) {
+            // the difference in rd, 0 if they are equal
+            int difference = rd;
+            if (isRegister(arg)) {
+                emit(typeR(rs, register(arg), rd, 0, XOR));
+            }
+            else {
+                long value = number(arg);
+                if (value == 0) {
+                    difference = rs;
+                }
+                else if (isSigned16(-value)) {
+                    emit(typeI(ADDIU, rs, rd, (int) -value));
+                }
+                else if (isUnsigned16(value)) {
+                    emit(typeI(XORI, rs, rd, (int) value));
+                }
+                else {
+                    li(AT, (int) value);
+                    emit(typeR(rs, AT, rd, 0, XOR));
+                }
+            }
+            emit(op.equals("seq") ? typeI(SLTIU, difference, rd, 1)
+                                  : typeR(ZERO, difference, rd, 0, SLTU));
+            return;
+        }
+        int rt = operand(arg);
+        if (op.equals("sge")) {
+            emit(typeR(rs, rt, rd, 0, SLT));
+        }
+        else {
+            emit(typeR(rt, rs, rd, 0, SLT));
+        }
+        if (!op.equals("sgt")) {
+            emit(typeI(XORI, rd, rd, 1));
+        }
+    }
+
+    private void branch(int opcode, int rs, int rt, String label) {
+        fixups.add(new Fixup(section, BRANCH, symbol(label), 0, text));
+        emit(typeI(opcode, rs, rt, 0));
+        delaySlot();
+    }
+
+    // blt, bge, bgt and ble: AT = the comparison, then the branch on it
+    private void compareBranch(String op, int rs, String arg, String label) {
+        boolean less = op.equals("blt") || op.equals("bge");
+        if (less && !isRegister(arg) && isSigned16(number(arg))) {
+            emit(typeI(SLTI, rs, AT, (int) number(arg)));
+        }
+        else if (less) {
+            emit(typeR(rs, operand(arg), AT, 0, SLT));
+        }
+        else {
+            emit(typeR(operand(arg), rs, AT, 0, SLT));
+        }
+        branch(op.equals("blt") || op.equals("bgt") ? BNE : BEQ, AT, ZERO, label);
+    }
+
+    private void jump(int opcode, String label) {
+        fixups.add(new Fixup(section, ElfWriter.R_MIPS_26, symbol(label), 0, text));
+        emit(opcode << 26);
+        delaySlot();
+    }
+
+    private void fixup(int kind, Address address) {
+        fixups.add(new Fixup(section, kind, symbol(address.label), address.offset, text));
+    }
+
+    // fill the field of the fixup: the offset of the branch, or the
+    // addend of the relocation, added to its section
+    private void resolve(Fixup fixup) {
+        ElfWriter.Symbol symbol = fixup.symbol;
+        int word = fixup.section.word(fixup.offset);
+        if (fixup.kind == BRANCH) {
+            if (symbol.section != fixup.section) {
+                error(fixup.line, symbol.section == null ? "undefined label " + symbol.name
+                                                         : "branch out of its section");
+                return;
+            }
+            int distance = (symbol.value - fixup.offset - 4) >> 2;
+            if (!isSigned16(distance)) {
+                error(fixup.line, "branch too far");
+                return;
+            }
+            fixup.section.setWord(fixup.offset, word | (distance & 0xffff));
+            return;
+        }
+        int addend = fixup.addend;
+        if (symbol.section != null && !symbol.global) {
+            addend += symbol.value;
+            symbol = symbol.section.symbol;
+        }
+        switch (fixup.kind) {
+        case ElfWriter.R_MIPS_26:
+            word |= (addend >>> 2) & 0x3ffffff;
+            break;
+        case ElfWriter.R_MIPS_HI16:
+            word |= ((addend + 0x8000) >>> 16) & 0xffff;
+            break;
+        case ElfWriter.R_MIPS_LO16:
+            word |= addend & 0xffff;
+            break;
+        default:
+            word = addend;
+        }
+        fixup.section.setWord(fixup.offset, word);
+        fixup.section.relocations.add(new ElfWriter.Relocation(fixup.offset, symbol, fixup.kind));
+    }
+
+    private void define(String label) {
+        ElfWriter.Symbol symbol = symbol(label);
+        if (symbol.section != null) {
+            throw new IllegalArgumentException("label " + label + " defined twice");
+        }
+        symbol.section = section;
+        symbol.value = section.size();
+    }
+
+    private ElfWriter.Symbol symbol(String label) {
+        if (label.isEmpty() || !isLabelChar(label.charAt(0)) || Character.isDigit(label.charAt(0))) {
+            throw new IllegalArgumentException("bad label " + label);
+        }
+        for (int k = 1; k < label.length(); k++) {
+            if (!isLabelChar(label.charAt(k))) {
+                throw new IllegalArgumentException("bad label " + label);
+            }
+        }
+        ElfWriter.Symbol symbol = symbols.get(label);
+        if (symbol == null) {
+            symbol = new ElfWriter.Symbol(label);
+            symbols.put(label, symbol);
+        }
+        return symbol;
+    }
+
+    private static boolean isLabelChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '$';
+    }
+
+    private Address address(String s) {
+        Address address = new Address();
+        int paren = s.indexOf('(');
+        if (paren >= 0) {
+            if (!s.endsWith(")")) {
+                throw new IllegalArgumentException("bad address " + s);
+            }
+            address.base = register(s.substring(paren + 1, s.length() - 1).trim());
+            s = s.substring(0, paren).trim();
+        }
+        if (s.isEmpty()) {
+            return address;
+        }
+        if (isNumber(s)) {
+            address.offset = (int) number(s);
+            return address;
+        }
+        int sign = Math.max(s.lastIndexOf('+'), s.lastIndexOf('-'));
+        if (sign > 0) {
+            address.offset = (int) number(s.substring(sign));
+            s = s.substring(0, sign).trim();
+        }
+        address.label = s;
+        return address;
+    }
+
+    private static boolean isRegister(String s) {
+        return s.startsWith("$");
+    }
+
+    private static int register(String s) {
+        Integer register = REGISTERS.get(s);
+        if (register == null) {
+            throw new IllegalArgumentException("bad register " + s);
+        }
+        return register;
+    }
+
+    // the register of the operand, an immediate (but 0) being put in AT
+    private int operand(String s) {
+        if (isRegister(s)) {
+            return register(s);
+        }
+        int value = (int) number(s);
+        if (value == 0) {
+            return ZERO;
+        }
+        li(AT, value);
+        return AT;
+    }
+
+    private static boolean isNumber(String s) {
+        return !s.isEmpty() && (Character.isDigit(s.charAt(0))
+                                || s.charAt(0) == '-' || s.charAt(0) == '+');
+    }
+
+    private static long number(String s) {
+        try {
+            return Long.decode(s.trim());
+        }
+        catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("bad number " + s);
+        }
+    }
+
+    private static boolean isSigned16(long value) {
+        return value >= -32768 && value <= 32767;
+    }
+
+    private static boolean isUnsigned16(long value) {
+        return value >= 0 && value <= 65535;
+    }
+}
@@ -0,0 +1,528 @@
+package codegen;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The writer of a Java class file (version 52, Java 8): its constant
+ * pool, its static fields and its methods, the code of each written
+ * with a Method.
+ *
+ * A Method keeps the depth of the operand stack as its code is written,
+ * for max_stack and for the frames of the StackMapTable, written at each
+ * label bound. The frames say that all the locals (setLocals) are ints,
+ * as are the values on the stack: the code must hold no reference on the
+ * stack across a jump, and set all its locals before its first label.
+ * The code following a goto or a return is dropped until a label jumped
+ * to is bound, as the verifier wants a frame for it otherwise.
+ */
+class ClassFile {
+
+    static final int ACC_PUBLIC = 0x0001, ACC_PRIVATE = 0x0002, ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+    // the opcodes used
+    static final int ICONST_M1 = 0x02, ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11;
+    static final int LDC = 0x12, LDC_W = 0x13, ILOAD = 0x15, ALOAD_0 = 0x2a, ISTORE = 0x36;
+    static final int POP = 0x57, DUP = 0x59, IADD = 0x60, ISUB = 0x64, IMUL = 0x68;
+    static final int IDIV = 0x6c, INEG = 0x74, IXOR = 0x82, IINC = 0x84;
+    static final int IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e;
+    static final int IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0, IF_ICMPLT = 0xa1, IF_ICMPGE = 0xa2;
+    static final int IF_ICMPGT = 0xa3, IF_ICMPLE = 0xa4, GOTO = 0xa7;
+    static final int IRETURN = 0xac, RETURN = 0xb1, GETSTATIC = 0xb2, PUTSTATIC = 0xb3;
+    static final int INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8;
+    static final int NEW = 0xbb, WIDE = 0xc4;
+
+    private static final int MAX_CODE = 65535;
+
+    /**
+     * The opcode of the jump taken when the one of opcode is not
+     */
+    static int negate(int opcode) {
+        int first = opcode >= IF_ICMPEQ ? IF_ICMPEQ : IFEQ;
+        return first + ((opcode - first) ^ 1);
+    }
+
+    /**
+     * A place in the code, bound once; the stack has the same depth at
+     * each jump to it
+     */
+    static class Label {
+        private int offset = -1;
+        private int stack = -1;
+        private boolean jumpedTo = false;
+    }
+
+    // a jump to patch when its label is bound
+    private static class Jump {
+        final int at;
+        final Label label;
+
+        Jump(int at, Label label) {
+            this.at = at;
+            this.label = label;
+        }
+    }
+
+    /**
+     * The code of a method
+     */
+    class Method {
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private byte[] code = new byte[256];
+        private int size = 0;
+        private int stack = 0;
+        private int maxStack = 0;
+        private int locals;
+        private boolean reachable = true;
+        private List<Jump> jumps = new ArrayList<Jump>();
+        private TreeMap<Integer, Integer> frames = new TreeMap<Integer, Integer>(); // depth
+
+        private Method(int access, String name, String descriptor) {
+            this.access = access;
+            this.name = utf8(name);
+            this.descriptor = utf8(descriptor);
+            this.locals = argumentWords(descriptor) + ((access & ACC_STATIC) == 0 ? 1 : 0);
+        }
+
+        /**
+         * The locals of the method, all ints, the arguments first
+         */
+        void setLocals(int locals) {
+            this.locals = locals;
+        }
+
+        /**
+         * false after a goto or a return, until a label jumped to
+         */
+        boolean isReachable() {
+            return reachable;
+        }
+
+        void op(int opcode) {
+            if (!reachable) {
+                return;
+            }
+            byte1(opcode);
+            switch (opcode) {
+            case POP:
+            case IADD:
+            case ISUB:
+            case IMUL:
+            case IDIV:
+            case IXOR:
+                adjust(-1);
+                break;
+            case DUP:
+            case ALOAD_0:
+                adjust(1);
+                break;
+            case INEG:
+                break;
+            case IRETURN:
+            case RETURN:
+                stack = 0;
+                reachable = false;
+                break;
+            default:
+                if (opcode >= ICONST_M1 && opcode <= ICONST_0 + 5) {
+                    adjust(1);
+                    break;
+                }
+                throw new IllegalArgumentException("opcode " + opcode);
+            }
+        }
+
+        void push(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value);
+            }
+            else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                withOperand(BIPUSH, 1, value, 1);
+            }
+            else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                withOperand(SIPUSH, 2, value, 1);
+            }
+            else {
+                ldc(integer(value));
+            }
+        }
+
+        void push(String value) {
+            ldc(string(value));
+        }
+
+        private void ldc(int index) {
+            if (index < 256) {
+                withOperand(LDC, 1, index, 1);
+            }
+            else {
+                withOperand(LDC_W, 2, index, 1);
+            }
+        }
+
+        void load(int slot) {
+            local(ILOAD, 0x1a, slot, 1);
+        }
+
+        void store(int slot) {
+            local(ISTORE, 0x3b, slot, -1);
+        }
+
+        // iload or istore, in the short form for the slots 0-3
+        private void local(int opcode, int short0, int slot, int effect) {
+            if (slot < 4) {
+                if (reachable) {
+                    byte1(short0 + slot);
+                    adjust(effect);
+                }
+            }
+            else if (slot < 256) {
+                withOperand(opcode, 1, slot, effect);
+            }
+            else if (reachable) {
+                byte1(WIDE);
+                withOperand(opcode, 2, slot, effect);
+            }
+        }
+
+        void iinc(int slot, int delta) {
+            if (!reachable) {
+                return;
+            }
+            if (slot < 256 && delta >= Byte.MIN_VALUE && delta <= Byte.MAX_VALUE) {
+                byte1(IINC);
+                byte1(slot);
+                byte1(delta);
+            }
+            else {
+                byte1(WIDE);
+                byte1(IINC);
+                byte2(slot);
+                byte2(delta);
+            }
+        }
+
+        void field(int opcode, String owner, String name, String descriptor) {
+            int words = descriptor.equals("J") || descriptor.equals("D") ? 2 : 1;
+            withOperand(opcode, 2, fieldRef(owner, name, descriptor),
+                        opcode == GETSTATIC ? words : -words);
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            int effect = returnWords(descriptor) - argumentWords(descriptor)
+                - (opcode == INVOKESTATIC ? 0 : 1);
+            withOperand(opcode, 2, methodRef(owner, name, descriptor), effect);
+        }
+
+        void newObject(String type) {
+            withOperand(NEW, 2, classRef(type), 1);
+        }
+
+        void jump(int opcode, Label label) {
+            if (!reachable) {
+                return;
+            }
+            if (opcode >= IF_ICMPEQ && opcode <= IF_ICMPLE) {
+                adjust(-2);
+            }
+            else if (opcode != GOTO) {
+                adjust(-1);
+            }
+            if (label.stack >= 0 && label.stack != stack) {
+                throw new IllegalStateException("stack depth differs at a label");
+            }
+            if (label.offset >= 0 && !frames.containsKey(label.offset)) {
+                throw new IllegalStateException("jump back to unreachable code");
+            }
+            label.stack = stack;
+            label.jumpedTo = true;
+            jumps.add(new Jump(size, label));
+            byte1(opcode);
+            byte2(0);
+            if (opcode == GOTO) {
+                stack = 0;
+                reachable = false;
+            }
+        }
+
+        void bind(Label label) {
+            if (reachable && label.jumpedTo && label.stack != stack) {
+                throw new IllegalStateException("stack depth differs at a label");
+            }
+            if (!reachable && label.jumpedTo) {
+                stack = label.stack;
+                reachable = true;
+            }
+            label.offset = size;
+            if (reachable) {
+                label.stack = stack;
+                frames.put(size, stack);
+            }
+        }
+
+        private void withOperand(int opcode, int bytes, int operand, int effect) {
+            if (!reachable) {
+                return;
+            }
+            byte1(opcode);
+            if (bytes == 1) {
+                byte1(operand);
+            }
+            else {
+                byte2(operand);
+            }
+            adjust(effect);
+        }
+
+        private void adjust(int effect) {
+            stack += effect;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void byte1(int b) {
+            if (size == code.length) {
+                code = Arrays.copyOf(code, 2 * size);
+            }
+            code[size++] = (byte) b;
+        }
+
+        private void byte2(int b) {
+            byte1(b >> 8);
+            byte1(b);
+        }
+
+        /**
+         * false if the code is too large for a method, or has a jump too
+         * far from its label for its 16-bit offset
+         */
+        boolean fits() {
+            if (size > MAX_CODE) {
+                return false;
+            }
+            for (Jump jump : jumps) {
+                int distance = jump.label.offset - jump.at;
+                if (distance != (short) distance) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // the Code attribute, with its StackMapTable
+        private byte[] attribute() throws IOException {
+            if (size > MAX_CODE) {
+                throw new IllegalStateException("code too large for a method");
+            }
+            for (Jump jump : jumps) {
+                int distance = jump.label.offset - jump.at;
+                if (jump.label.offset < 0 || distance != (short) distance) {
+                    throw new IllegalStateException("jump out of reach");
+                }
+                code[jump.at + 1] = (byte) (distance >> 8);
+                code[jump.at + 2] = (byte) distance;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeShort(utf8("Code"));
+            ByteArrayOutputStream table = new ByteArrayOutputStream();
+            if (!frames.isEmpty()) {
+                DataOutputStream map = new DataOutputStream(table);
+                map.writeShort(frames.size());
+                int last = -1;
+                for (Map.Entry<Integer, Integer> frame : frames.entrySet()) {
+                    map.writeByte(255);     // full_frame
+                    map.writeShort(frame.getKey() - last - 1);
+                    map.writeShort(locals);
+                    for (int k = 0; k < locals; k++) {
+                        map.writeByte(1);   // ITEM_Integer
+                    }
+                    map.writeShort(frame.getValue());
+                    for (int k = 0; k < frame.getValue(); k++) {
+                        map.writeByte(1);
+                    }
+                    last = frame.getKey();
+                }
+            }
+            int tableSize = table.size() == 0 ? 0 : 6 + table.size();
+            out.writeInt(12 + size + tableSize);
+            out.writeShort(maxStack);
+            out.writeShort(locals);
+            out.writeInt(size);
+            out.write(code, 0, size);
+            out.writeShort(0);              // no exception table
+            out.writeShort(table.size() == 0 ? 0 : 1);
+            if (table.size() > 0) {
+                out.writeShort(utf8("StackMapTable"));
+                out.writeInt(table.size());
+                table.writeTo(out);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    private final String name;
+    private ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private DataOutputStream poolOut = new DataOutputStream(pool);
+    private int poolCount = 1;
+    private Map<String, Integer> constants = new HashMap<String, Integer>();
+    private List<int[]> fields = new ArrayList<int[]>(); // access, name, descriptor
+    private List<Method> methods = new ArrayList<Method>();
+
+    /**
+     * A public class of the name, extending Object
+     */
+    ClassFile(String name) {
+        this.name = name;
+    }
+
+    String name() {
+        return name;
+    }
+
+    void field(int access, String name, String descriptor) {
+        fields.add(new int[] { access, utf8(name), utf8(descriptor) });
+    }
+
+    Method method(int access, String name, String descriptor) {
+        Method method = new Method(access, name, descriptor);
+        methods.add(method);
+        return method;
+    }
+
+    void write(OutputStream stream) throws IOException {
+        List<byte[]> codes = new ArrayList<byte[]>();
+        for (Method method : methods) {
+            codes.add(method.attribute());
+        }
+        int thisClass = classRef(name);
+        int superClass = classRef("java/lang/Object");
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(0xcafebabe);
+        out.writeShort(0);
+        out.writeShort(52);
+        out.writeShort(poolCount);
+        pool.writeTo(out);
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(0);                  // no interfaces
+        out.writeShort(fields.size());
+        for (int[] field : fields) {
+            out.writeShort(field[0]);
+            out.writeShort(field[1]);
+            out.writeShort(field[2]);
+            out.writeShort(0);
+        }
+        out.writeShort(methods.size());
+        for (int k = 0; k < methods.size(); k++) {
+            Method method = methods.get(k);
+            out.writeShort(method.access);
+            out.writeShort(method.name);
+            out.writeShort(method.descriptor);
+            out.writeShort(1);
+            out.write(codes.get(k));
+        }
+        out.writeShort(0);                  // no attributes
+        out.flush();
+    }
+
+    // the constants, added to the pool when first used
+
+    private int utf8(String s) {
+        Integer index = constants.get("U" + s);
+        if (index != null) {
+            return index;
+        }
+        try {
+            poolOut.writeByte(1);
+            poolOut.writeUTF(s);            // the modified UTF-8 of the class files
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return add("U" + s);
+    }
+
+    private int integer(int value) {
+        Integer index = constants.get("I" + value);
+        if (index != null) {
+            return index;
+        }
+        entry(3, value >>> 16, value & 0xffff);
+        return add("I" + value);
+    }
+
+    private int classRef(String type) {
+        return ref(7, "C" + type, utf8(type));
+    }
+
+    private int string(String s) {
+        return ref(8, "S" + s, utf8(s));
+    }
+
+    private int fieldRef(String owner, String name, String descriptor) {
+        return ref(9, "F" + owner + "." + name + ":" + descriptor,
+                   classRef(owner), nameAndType(name, descriptor));
+    }
+
+    private int methodRef(String owner, String name, String descriptor) {
+        return ref(10, "M" + owner + "." + name + ":" + descriptor,
+                   classRef(owner), nameAndType(name, descriptor));
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        return ref(12, "N" + name + ":" + descriptor, utf8(name), utf8(descriptor));
+    }
+
+    // the entry of the tag and of the indexes of other entries
+    private int ref(int tag, String key, int... indexes) {
+        Integer index = constants.get(key);
+        if (index != null) {
+            return index;
+        }
+        entry(tag, indexes);
+        return add(key);
+    }
+
+    private void entry(int tag, int... shorts) {
+        try {
+            poolOut.writeByte(tag);
+            for (int s : shorts) {
+                poolOut.writeShort(s);
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private int add(String key) {
+        int index = poolCount++;
+        constants.put(key, index);
+        return index;
+    }
+
+    // the words taken by the arguments, or the result, of a method
+    private static int argumentWords(String descriptor) {
+        int words = 0;
+        for (int k = 1; descriptor.charAt(k) != ')'; k++) {
+            char c = descriptor.charAt(k);
+            words += c == 'J' || c == 'D' ? 2 : 1;
+            while (descriptor.charAt(k) == '[') {
+                k++;
+            }
+            if (descriptor.charAt(k) == 'L') {
+                k = descriptor.indexOf(';', k);
+            }
+        }
+        return words;
+    }
+
+    private static int returnWords(String descriptor) {
+        char c = descriptor.charAt(descriptor.indexOf(')') + 1);
+        return c == 'V' ? 0 : c == 'J' || c == 'D' ? 2 : 1;
+    }
+}
@@ -0,0 +1,1016 @@
+package codegen;
+
+import java.io.*;
+import java.util.*;
+import ast.*;
+import symtable.*;
+
+/**
+ * Code generation pass: writes the MIPS code of the program. The code of
+ * an expression leaves its value on the stack. A dot-access, however
+ * long its chain, is a field at a constant offset from its struct
+ * variable (as laid out by OffsetResolver), loaded or stored by a single
+ * instruction.
+ *
+ * By default, the arguments of a call are passed on the stack. With the
+ * register calling convention, they are passed in registers, the
+ * variables of each function are kept in registers as laid out by Frame,
+ * and the calls in return statements are tail calls (see Frame).
+ *
+ * With strength reduction, the multiplications and divisions by a
+ * constant are done with shifts and adds (see StrengthReduction).
+ *
+ * With scheduling, the code is written through a Scheduler, which
+ * reorders the instructions of each basic block for the pipeline and
+ * may fill the delay slots of the branches.
+ *
+ * With smallData, the globals are written first, in one data block laid
+ * out by DataLayout, main points GP to the block, and a global in the
+ * reach of a 16-bit offset is loaded or stored off GP in one instruction
+ * rather than by its label, which takes two. Else each global is written
+ * where it is declared, as the original code generator did. A string literal
+ * is written once, where it is first used, the later uses of the same
+ * literal sharing its label.
+ *
+ * With bufferedIO, cin and cout call the routines of IoRuntime, written
+ * after the program, which buffer the input and the output, rather than
+ * making a syscall each; main flushes the output before exiting.
+ */
+public class CodeGenerator extends AST.VisitorWalk implements Pass {
+
+    /**
+     * The code generation flags, all false by default
+     */
+    public static class Options {
+        public boolean registerCalls;
+        public boolean reduceStrength;
+        public boolean schedule;
+        public boolean fillDelaySlots;  // with schedule only
+        public boolean smallData;
+        public boolean bufferedIO;
+    }
+
+    public CodeGenerator(PrintWriter p, Options options) {
+        this.p = options.schedule && p != null
+            ? new PrintWriter(new Scheduler(p, options.fillDelaySlots)) : p;
+        this.registerCalls = options.registerCalls;
+        this.reduceStrength = options.reduceStrength;
+        this.schedule = options.schedule;
+        this.smallData = options.smallData;
+        this.bufferedIO = options.bufferedIO;
+    }
+
+    public String name() {
+        return "codegen";
+    }
+
+    public Pass analysis() {
+        return layout;
+    }
+
+    public void begin() {
+        List<AST.VarDeclNode> globals = layout.globals();
+        if (!smallData || globals.isEmpty()) {
+            return;
+        }
+        Codegen.generate(p, ".data");
+        Codegen.generateWithComment(p, ".align 2", "align on a word boundary");
+        Codegen.genLabel(p, DataLayout.BLOCK);
+        for (AST.VarDeclNode decl : globals) {
+            SymInfo info = decl.getMyId().info();
+            Codegen.generateLabeled(p, "_" + decl.getMyId().name(),
+                                    ".space " + OffsetResolver.size(info), "");
+        }
+    }
+
+    public AST.DeclNode run(AST.DeclNode decl) {
+        walk(decl);
+        if (!registerCalls) {
+            genReturn();
+        }
+        if (schedule) {
+            p.flush();  // the last block
+        }
+        return decl;
+    }
+
+    public void end() {
+        if (!bufferedIO) {
+            return;
+        }
+        IoRuntime.genOutput(p);
+        if (reads) {
+            IoRuntime.genInput(p);
+        }
+        p.flush();
+    }
+
+    public boolean runsOnErrors() {
+        return false;
+    }
+
+    private PrintWriter p;
+    private boolean registerCalls;
+    private boolean reduceStrength;
+    private boolean schedule;
+    private boolean smallData;
+    private boolean bufferedIO;
+    private boolean reads = false; // calls IoRuntime.GETINT
+    private DataLayout layout = new DataLayout();
+    private Map<String, String> strings = new HashMap<String, String>(); // labels of the literals
+    private String exitLabel; // label of the exit code of the function being generated
+    private Frame frame;      // of the function being generated, with registerCalls
+
+    /**
+     * Code generated after each declaration of a list
+     */
+    private void genReturn() {
+        //function
+        Codegen.genLabel(p, Codegen.nextReturnLabel());
+        Codegen.generateIndexed(p, "lw", Codegen.RA, Codegen.FP, 0, "load return address");
+        Codegen.generateWithComment(p, "move", "store address from FP to SP",  Codegen.T0, Codegen.FP);
+        Codegen.generateIndexed(p, "lw", Codegen.FP, Codegen.FP, -4, "restore FP");
+        Codegen.generateWithComment(p, "move", "restore SP",  Codegen.SP, Codegen.T0);
+        Codegen.generate(p, "jr", Codegen.RA);
+    }
+
+    // the label of the function
+    private static String label(AST.IdNode id) {
+        String fn = id.name();
+        if(!fn.equals("main")){
+            fn = "_" + fn;
+        }
+        return fn;
+    }
+
+    // the operand loading or storing the word at offset bytes into the
+    // global: off GP if it is in reach, else by its label
+    private String global(AST.IdNode id, int offset) {
+        int at = id.info().getOffset() + offset;
+        if (smallData && DataLayout.isSmall(at)) {
+            return at + "(" + Codegen.GP + ")";
+        }
+        return "_" + id.name() + (offset == 0 ? "" : "+" + offset);
+    }
+
+    // with smallData, point GP to the globals, on entering main
+    private void genGlobalPointer(String name) {
+        if (smallData && name.equals("main") && !layout.globals().isEmpty()) {
+            Codegen.generate(p, "la", Codegen.GP, DataLayout.BLOCK);
+        }
+    }
+
+    private void genJumpAndLink(AST.IdNode id) {
+        String fn = label(id);
+        if (registerCalls) {
+            Codegen.generate(p, "jal", fn);
+            return;
+        }
+        Codegen.generate(p, "la", Codegen.T0, fn);
+        Codegen.generate(p, "jalr", Codegen.T0);
+    }
+
+    // the register of a variable, null if it is in memory
+    private String home(AST.IdNode id) {
+        return frame == null ? null : frame.home(id.info());
+    }
+
+    // store the register in the variable
+    private void genStore(AST.IdNode id, String reg) {
+        String home = home(id);
+        if (home != null) {
+            Codegen.generate(p, "move", home, reg);
+        }
+        else if (id.info().isGlobal()) {
+            Codegen.generate(p, "sw", reg, global(id, 0));
+        }
+        else {
+            Codegen.generateIndexed(p, "sw", reg, Codegen.FP, -id.info().getOffset());
+        }
+    }
+
+    /**
+     * With registerCalls, load a literal, a variable of type int or bool or
+     * a field straight into the register; false if the expression is not
+     * one
+     */
+    private boolean genLoad(AST.ExpNode exp, String reg) {
+        if (!registerCalls) {
+            return false;
+        }
+        if (exp instanceof AST.IntLitNode) {
+            Codegen.generate(p, "li", reg, ((AST.IntLitNode) exp).intVal());
+        }
+        else if (exp instanceof AST.TrueNode || exp instanceof AST.FalseNode) {
+            Codegen.generate(p, "li", reg, exp instanceof AST.TrueNode ? 1 : 0);
+        }
+        else if (exp instanceof AST.DotAccessExpNode) {
+            genField("lw", reg, (AST.DotAccessExpNode) exp);
+        }
+        else if (exp instanceof AST.IdNode && isScalar((AST.IdNode) exp)) {
+            AST.IdNode id = (AST.IdNode) exp;
+            String home = home(id);
+            if (home != null) {
+                Codegen.generate(p, "move", reg, home);
+            }
+            else if (id.info().isGlobal()) {
+                Codegen.generate(p, "lw", reg, global(id, 0));
+            }
+            else {
+                Codegen.generateIndexed(p, "lw", reg, Codegen.FP, -id.info().getOffset());
+            }
+        }
+        else {
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean isScalar(AST.IdNode id) {
+        SymInfo info = id.info();
+        return !(info instanceof StructInfo)
+            && (info.getType().isIntType() || info.getType().isBoolType());
+    }
+
+    /**
+     * true if the argument is loaded in its register just before the call
+     * rather than pushed: a literal, or a variable when evaluating the
+     * other arguments cannot change it (no assignment nor call in them)
+     */
+    private boolean isDirect(AST.ExpNode exp, int k, boolean quiet) {
+        if (k >= Frame.ARGS.length) {
+            return false;
+        }
+        if (exp instanceof AST.IntLitNode || exp instanceof AST.TrueNode
+            || exp instanceof AST.FalseNode) {
+            return true;
+        }
+        // not a formal still in its argument register, which the other
+        // arguments may overwrite before (in tail calls)
+        return quiet && exp instanceof AST.IdNode && isScalar((AST.IdNode) exp)
+            && !Arrays.asList(Frame.ARGS).contains(home((AST.IdNode) exp));
+    }
+
+    // true if no argument has an assignment or a call
+    static boolean isQuiet(AST.ExpListNode args) {
+        Deque<AST.ASTnode> nodes = new ArrayDeque<AST.ASTnode>(args.children());
+        while (!nodes.isEmpty()) {
+            AST.ASTnode node = nodes.pop();
+            if (node instanceof AST.AssignNode || node instanceof AST.CallExpNode) {
+                return false;
+            }
+            nodes.addAll(node.children());
+        }
+        return true;
+    }
+
+    private void genAddr(AST.IdNode id) {
+        if(id.info().isGlobal()) {
+            Codegen.generate(p,"la", Codegen.T0, global(id, 0));
+            Codegen.genPush(p,Codegen.T0);
+        } else {
+            Codegen.generateIndexed(p,"la", Codegen.T0, Codegen.FP,
+                    -id.info().getOffset(), "Generate Address");
+            Codegen.genPush(p,Codegen.T0);
+        }
+    }
+
+    // load (lw) or store (sw) the register from or to the field, the
+    // offsets of the fields of the chain added up
+    private void genField(String op, String reg, AST.DotAccessExpNode node) {
+        int offset = 0;
+        AST.ExpNode exp = node;
+        while (exp instanceof AST.DotAccessExpNode) {
+            AST.DotAccessExpNode dot = (AST.DotAccessExpNode) exp;
+            offset += dot.idNode().info().getOffset();
+            exp = dot.lhs();
+        }
+        AST.IdNode id = (AST.IdNode) exp;
+        if (id.info().isGlobal()) {
+            Codegen.generate(p, op, reg, global(id, offset));
+        }
+        else {
+            Codegen.generateIndexed(p, op, reg, Codegen.FP,
+                                    offset - id.info().getOffset());
+        }
+    }
+
+    // the bytes of the locals declared in the body of a function
+    private static int localsSize(AST.FnBodyNode body) {
+        int size = 0;
+        for (AST.DeclNode decl : body.declList().getList()) {
+            size += OffsetResolver.size(((AST.VarDeclNode) decl).getMyId().info());
+        }
+        return size;
+    }
+
+    protected void defaultVisit(AST.ASTnode node) {
+    }
+
+    public void visitDeclListNode(AST.DeclListNode node) {
+        for (AST.DeclNode decl : node.getList()) {
+            visit(decl);
+            if (!registerCalls) {
+                then(() -> genReturn());
+            }
+        }
+    }
+
+    public void visitVarDeclNode(AST.VarDeclNode node) {
+        SymInfo info = node.getMyId().info();
+        if (!smallData && info.isGlobal()) {
+            Codegen.generate(p, ".data");
+            Codegen.generateWithComment(p, ".align 2", "align on a word boundary");
+            Codegen.generateLabeled(p, "_" + node.getMyId().name(),
+                                    ".space " + OffsetResolver.size(info), "");
+        }
+    }
+
+    public void visitFormalsListNode(AST.FormalsListNode node) {
+        visitChildren(node);
+    }
+
+    public void visitFnBodyNode(AST.FnBodyNode node) {
+        visitChildren(node);
+    }
+
+    public void visitStmtListNode(AST.StmtListNode node) {
+        visitChildren(node);
+    }
+
+    public void visitExpListNode(AST.ExpListNode node) {
+        int space = 4;
+        for ( int i = node.size() - 1; i >= 0; i-- ) {
+            AST.ExpNode exp = node.getList().get(i);
+            int slot = space;
+            visit(exp);
+            then(() -> {
+                Codegen.genPop(p, Codegen.T0);
+                Codegen.generateIndexed(p, "sw", Codegen.T0, Codegen.SP, slot);
+            });
+            space += 4;
+        }
+    }
+
+    public void visitFnDeclNode(AST.FnDeclNode node) {
+        if (registerCalls) {
+            genRegisterFnDecl(node);
+            return;
+        }
+        String name = node.idNode().name();
+        p.print("\t.text\n");
+
+        if(name.equals("main")) {
+            p.print("\t.globl main\n");
+            Codegen.genLabel(p,name);
+            genGlobalPointer(name);
+        }
+         else {
+             // PROJECT
+            Codegen.generate(p, "j", name);
+            Codegen.genLabel(p, "_" + name);
+         }
+        Codegen.genPush(p, Codegen.RA);
+        Codegen.genPush(p, Codegen.FP);
+        String exitLabel = "exit_" + name;
+        p.println("# Push space for the locals");
+        Codegen.generate(p,"subu",
+            Codegen.SP,Codegen.SP,localsSize(node.body()));
+        //Body
+        this.exitLabel = exitLabel;
+        visit(node.body());
+        then(() -> {
+            //label for return
+            Codegen.genLabel(p,exitLabel);
+            // PROJECT
+
+            if(name.equals("main")) {
+                genExit();
+            }
+             else {
+                 // PROJECT;
+                // function isn't main
+                Codegen.generate(p, "j", Codegen.V1);
+                Codegen.generate(p,"function call");
+             }
+        });
+    }
+
+    private void genRegisterFnDecl(AST.FnDeclNode node) {
+        String name = node.idNode().name();
+        Frame frame = new Frame(node, bufferedIO);
+        p.print("\t.text\n");
+        if (name.equals("main")) {
+            p.print("\t.globl main\n");
+            Codegen.genLabel(p, name);
+        }
+        else {
+            Codegen.genLabel(p, "_" + name);
+        }
+        genGlobalPointer(name);
+        genPrologue(frame);
+        String exitLabel = "exit_" + name;
+        this.exitLabel = exitLabel;
+        this.frame = frame;
+        visit(node.body());
+        then(() -> {
+            Codegen.genLabel(p, exitLabel);
+            if (name.equals("main")) {
+                genExit();
+            }
+            else {
+                genEpilogue(frame);
+            }
+            this.frame = null;
+        });
+    }
+
+    private void genExit() {
+        if (bufferedIO) {
+            Codegen.generate(p, "jal", IoRuntime.FLUSH);
+        }
+        Codegen.generate(p, "li", Codegen.V0, "10");
+        Codegen.generate(p, "syscall");
+    }
+
+    private void genPrologue(Frame frame) {
+        if (frame.hasFrame()) {
+            if (frame.savesReturnAddress()) {
+                Codegen.generateIndexed(p, "sw", Codegen.RA, Codegen.SP, 0, "save RA");
+            }
+            Codegen.generateIndexed(p, "sw", Codegen.FP, Codegen.SP, -4, "save FP");
+            Codegen.generate(p, "move", Codegen.FP, Codegen.SP);
+            Codegen.generate(p, "subu", Codegen.SP, Codegen.SP, frame.size());
+            for (Map.Entry<String, Integer> reg : frame.saved().entrySet()) {
+                Codegen.generateIndexed(p, "sw", reg.getKey(), Codegen.FP,
+                                        -reg.getValue(), "save " + reg.getKey());
+            }
+        }
+        if (frame.tailLabel() != null) {
+            Codegen.genLabel(p, frame.tailLabel());
+        }
+        // before any push, SP is where FP would be
+        String base = frame.hasFrame() ? Codegen.FP : Codegen.SP;
+        for (Frame.Formal formal : frame.entry()) {
+            if (formal.home == null) {
+                if (formal.passed != null) {
+                    Codegen.generateIndexed(p, "sw", formal.passed, Codegen.FP,
+                                            -formal.offset);
+                }
+            }
+            else if (formal.passed != null) {
+                Codegen.generate(p, "move", formal.home, formal.passed);
+            }
+            else {
+                Codegen.generateIndexed(p, "lw", formal.home, base, -formal.offset);
+            }
+        }
+    }
+
+    private void genEpilogue(Frame frame) {
+        genRestore(frame);
+        Codegen.generate(p, "jr", Codegen.RA);
+    }
+
+    // give back the frame and the registers saved, before returning
+    private void genRestore(Frame frame) {
+        if (frame.hasFrame()) {
+            for (Map.Entry<String, Integer> reg : frame.saved().entrySet()) {
+                Codegen.generateIndexed(p, "lw", reg.getKey(), Codegen.FP,
+                                        -reg.getValue(), "restore " + reg.getKey());
+            }
+            if (frame.savesReturnAddress()) {
+                Codegen.generateIndexed(p, "lw", Codegen.RA, Codegen.FP, 0, "load return address");
+            }
+            Codegen.generateWithComment(p, "move", "restore SP", Codegen.SP, Codegen.FP);
+            Codegen.generateIndexed(p, "lw", Codegen.FP, Codegen.SP, -4, "restore FP");
+        }
+    }
+
+    public void visitAssignStmtNode(AST.AssignStmtNode node) {
+        visit(node.assign());
+        then(() -> Codegen.genPop(p,Codegen.T0));
+    }
+
+    public void visitPostIncStmtNode(AST.PostIncStmtNode node) {
+        genPostStep(node.exp(), "add");
+    }
+
+    public void visitPostDecStmtNode(AST.PostDecStmtNode node) {
+        genPostStep(node.exp(), "sub");
+    }
+
+    // load the ID or the field, add or sub 1 and store it back
+    private void genPostStep(AST.ExpNode exp, String op) {
+        if (exp instanceof AST.DotAccessExpNode) {
+            genField("lw", Codegen.T0, (AST.DotAccessExpNode) exp);
+            Codegen.generate(p, op, Codegen.T0, Codegen.T0, 1);
+            genField("sw", Codegen.T0, (AST.DotAccessExpNode) exp);
+            return;
+        }
+        AST.IdNode idExp = (AST.IdNode) exp;
+        String home = home(idExp);
+        if (home != null) {
+            Codegen.generate(p, op, home, home, 1);
+            return;
+        }
+        visitIdNode(idExp);
+        Codegen.genPop(p,Codegen.T0);
+        Codegen.generate(p,op, Codegen.T0, Codegen.T0, 1);
+
+        SymInfo info = idExp.info();
+        if(info.isGlobal())
+            Codegen.generate(p, "sw", Codegen.T0, global(idExp, 0));
+        else
+            Codegen.generateIndexed(p,"sw",Codegen.T0,Codegen.FP,-info.getOffset());
+    }
+
+    public void visitReadStmtNode(AST.ReadStmtNode node) {
+        if(node.exp() instanceof AST.IdNode){
+            genReadInt();
+            if (registerCalls) {
+                genStore((AST.IdNode) node.exp(), Codegen.V0);
+                return;
+            }
+            genAddr((AST.IdNode) node.exp());
+            Codegen.genPop(p,Codegen.T0);
+            Codegen.generateIndexed(p,"sw", Codegen.V0, Codegen.T0, 0 );
+        }
+        else if (node.exp() instanceof AST.DotAccessExpNode) {
+            genReadInt();
+            genField("sw", Codegen.V0, (AST.DotAccessExpNode) node.exp());
+        }
+    }
+
+    // the int read in V0
+    private void genReadInt() {
+        if (bufferedIO) {
+            Codegen.generate(p, "jal", IoRuntime.GETINT);
+            reads = true;
+            return;
+        }
+        Codegen.generate(p, "li", Codegen.V0, 5);
+        Codegen.generate(p, "syscall");
+    }
+
+    public void visitWriteStmtNode(AST.WriteStmtNode node) {
+        AST.ExpNode exp = node.exp();
+        visit(exp);
+        then(() -> {
+            Codegen.genPop(p,Codegen.A0);
+
+            if (bufferedIO) {
+                Codegen.generate(p, "jal", exp instanceof AST.StringLitNode
+                                           ? IoRuntime.PUTS : IoRuntime.PUTINT);
+                return;
+            }
+            if( exp instanceof AST.StringLitNode ) {
+                Codegen.generate(p,"li", Codegen.V0, 4);
+            }
+            else {
+                Codegen.generate(p,"li", Codegen.V0, 1);  //int
+            }
+            Codegen.generate(p,"syscall");
+        });
+    }
+
+    // the condition tested is in T0; with registerCalls, it is popped too,
+    // so that a function without frame gives back the stack as it got it
+    private void genPopCondition() {
+        if (registerCalls) {
+            Codegen.genPop(p, Codegen.T0);
+        }
+    }
+
+    public void visitIfStmtNode(AST.IfStmtNode node) {
+        String endiflabel = Codegen.nextEndifLabel();
+        visit(node.exp());
+        then(() -> {
+            genPopCondition();
+            Codegen.generate(p,"li",Codegen.T1,1);
+            Codegen.generate(p,"bne", Codegen.T0, Codegen.T1, endiflabel);
+            p.println();
+        });
+        visit(node.stmtList());
+        then(() -> {
+            Codegen.generate(p,"nop");
+            Codegen.genLabel(p,endiflabel);
+        });
+    }
+
+    public void visitIfElseStmtNode(AST.IfElseStmtNode node) {
+        visit(node.exp());
+        then(() -> {
+            genPopCondition();
+            String elselabel = Codegen.nextElseLabel();
+            Codegen.generate(p,"li",Codegen.T1,1);
+            Codegen.generate(p,"bne", Codegen.T0, Codegen.T1,elselabel);
+
+            visit(node.thenStmtList());
+            then(() -> {
+                String endiflabel = Codegen.nextEndifLabel();
+
+                Codegen.generate(p,"j", endiflabel);
+
+                Codegen.genLabel(p,elselabel);
+                visit(node.elseStmtList());
+                then(() -> Codegen.genLabel(p,endiflabel));
+            });
+        });
+    }
+
+    public void visitWhileStmtNode(AST.WhileStmtNode node) {
+        String nextLoopLabel = Codegen.nextLoopLabel();
+        String endlloopLabel = Codegen.nextEndloopLabel();
+        Codegen.genLabel(p,nextLoopLabel);
+        visit(node.exp());
+        then(() -> {
+            genPopCondition();
+            Codegen.generate(p,"li",Codegen.T1,1);
+            Codegen.generate(p,"bne", Codegen.T0, Codegen.T1, endlloopLabel);
+        });
+        visit(node.stmtList());
+        then(() -> {
+            Codegen.generate(p,"j", nextLoopLabel);
+            Codegen.genLabel(p,endlloopLabel);
+        });
+    }
+
+    public void visitCallStmtNode(AST.CallStmtNode node) {
+        if (registerCalls) {
+            genCall(node.call(), false);
+            return;
+        }
+        visit(node.call());
+        then(() -> Codegen.genPop(p,Codegen.T0));
+    }
+
+    public void visitReturnStmtNode(AST.ReturnStmtNode node) {
+        if (frame != null && frame.isTailCall(node)) {
+            genTailCall((AST.CallExpNode) node.exp());
+            return;
+        }
+        String exitLabel = this.exitLabel;
+        if (node.exp() != null && !genLoad(node.exp(), Codegen.V0)) {
+            visit(node.exp());
+            then(() -> Codegen.genPop(p,Codegen.V0));
+        }
+        then(() -> Codegen.generate(p,"j", exitLabel));
+    }
+
+    public void visitIntLitNode(AST.IntLitNode node) {
+        Codegen.generate(p,"li", Codegen.T0, node.intVal());
+        Codegen.genPush(p,Codegen.T0);
+    }
+
+    public void visitStringLitNode(AST.StringLitNode node) {
+        String strlabel = strings.get(node.strVal());
+        if (strlabel == null) {
+            strlabel = Codegen.StringLabel();
+            strings.put(node.strVal(), strlabel);
+            p.println("\t.data");
+            Codegen.generateLabeled(p,strlabel, ".asciiz " + node.strVal(), "");
+            p.println("\t.text");
+        }
+        Codegen.generate(p,"la", Codegen.T0, strlabel);
+        Codegen.genPush(p,Codegen.T0);
+    }
+
+    public void visitTrueNode(AST.TrueNode node) {
+        Codegen.generate(p,"li", Codegen.T0, 1);
+        Codegen.genPush(p,Codegen.T0);
+    }
+
+    public void visitFalseNode(AST.FalseNode node) {
+        Codegen.generate(p,"li", Codegen.T0, 0);
+        Codegen.genPush(p,Codegen.T0);
+    }
+
+    public void visitIdNode(AST.IdNode node) {
+        String home = home(node);
+        if (home != null) {
+            Codegen.genPush(p, home);
+        }
+        else if(node.info().isGlobal()) {
+            Codegen.generate(p,"lw", Codegen.T0, global(node, 0));
+            Codegen.genPush(p,Codegen.T0);
+        }
+        else {
+            Codegen.generateIndexed(p,"lw", Codegen.T0, Codegen.FP,
+                    - node.info().getOffset());
+            Codegen.genPush(p,Codegen.T0);
+        }
+    }
+
+    public void visitDotAccessExpNode(AST.DotAccessExpNode node) {
+        genField("lw", Codegen.T0, node);
+        Codegen.genPush(p, Codegen.T0);
+    }
+
+    public void visitAssignNode(AST.AssignNode node) {
+        AST.ExpNode lhs = node.lhs();
+        visit(node.rhs());
+        if (lhs instanceof AST.DotAccessExpNode) {
+            then(() -> {
+                Codegen.genPop(p, Codegen.T0);
+                genField("sw", Codegen.T0, (AST.DotAccessExpNode) lhs);
+                Codegen.genPush(p, Codegen.T0);
+            });
+            return;
+        }
+        if (registerCalls && lhs instanceof AST.IdNode) {
+            then(() -> {
+                Codegen.genPop(p, Codegen.T0);
+                genStore((AST.IdNode) lhs, Codegen.T0);
+                Codegen.genPush(p, Codegen.T0);
+            });
+            return;
+        }
+        then(() -> {
+            Codegen.genPop(p, Codegen.T1);
+
+            if (lhs instanceof AST.IdNode){
+                genAddr((AST.IdNode) lhs);
+                Codegen.genPop(p,Codegen.T1);
+                Codegen.genPop(p,Codegen.T0);
+                Codegen.generateIndexed(p,"sw", Codegen.T0, Codegen.T1, 0);
+                Codegen.genPush(p,Codegen.T0);
+                Codegen.genPop(p,Codegen.T1);
+            }
+            else {
+                Codegen.genPop(p,Codegen.T1);
+            }
+        });
+    }
+
+    public void visitCallExpNode(AST.CallExpNode node) {
+        if (registerCalls) {
+            genCall(node, true);
+            return;
+        }
+        visit(node.expList());
+        then(() -> {
+            genJumpAndLink(node.idNode());
+            Codegen.genPush(p, Codegen.V0); //push return value and pop it in CallStmtNode
+        });
+    }
+
+    // with registerCalls, evaluate the arguments: those not direct are left
+    // on the stack, the first on top
+    private void genArgs(AST.CallExpNode node, boolean quiet) {
+        List<AST.ExpNode> args = node.expList().getList();
+        for (int i = args.size() - 1; i >= 0; i--) {
+            AST.ExpNode exp = args.get(i);
+            if (!isDirect(exp, i, quiet)) {
+                visit(exp);
+            }
+        }
+    }
+
+    // then put the first ones in A0-A3, leaving the others on the stack
+    private void genPassArgs(AST.CallExpNode node, boolean quiet) {
+        List<AST.ExpNode> args = node.expList().getList();
+        for (int k = 0; k < Math.min(args.size(), Frame.ARGS.length); k++) {
+            if (!isDirect(args.get(k), k, quiet)) {
+                Codegen.genPop(p, Frame.ARGS[k]);
+            }
+        }
+        for (int k = 0; k < Math.min(args.size(), Frame.ARGS.length); k++) {
+            if (isDirect(args.get(k), k, quiet)) {
+                genLoad(args.get(k), Frame.ARGS[k]);
+            }
+        }
+    }
+
+    // with registerCalls, the result in V0 is pushed if push is true
+    private void genCall(AST.CallExpNode node, boolean push) {
+        List<AST.ExpNode> args = node.expList().getList();
+        boolean quiet = isQuiet(node.expList());
+        genArgs(node, quiet);
+        then(() -> {
+            genPassArgs(node, quiet);
+            genJumpAndLink(node.idNode());
+            if (args.size() > Frame.ARGS.length) {
+                Codegen.generate(p, "addu", Codegen.SP, Codegen.SP,
+                                 4 * (args.size() - Frame.ARGS.length));
+            }
+            if (push) {
+                Codegen.genPush(p, Codegen.V0);
+            }
+        });
+    }
+
+    /**
+     * Jump to the function called, with the arguments. Calling itself,
+     * the function overwrites the arguments it got on the stack with the
+     * new ones and jumps after its prologue; else it gives back its frame
+     * first, the function called returning to its caller.
+     */
+    private void genTailCall(AST.CallExpNode node) {
+        Frame frame = this.frame;
+        boolean quiet = isQuiet(node.expList());
+        genArgs(node, quiet);
+        then(() -> {
+            genPassArgs(node, quiet);
+            if (!frame.isSelf(node)) {
+                genRestore(frame);
+                Codegen.generate(p, "j", label(node.idNode()));
+                return;
+            }
+            int pushed = 4 * Math.max(node.expList().size() - Frame.ARGS.length, 0);
+            for (int slot = 4; slot <= pushed; slot += 4) {
+                Codegen.generateIndexed(p, "lw", Codegen.T0, Codegen.SP, slot);
+                if (frame.hasFrame()) {
+                    Codegen.generateIndexed(p, "sw", Codegen.T0, Codegen.FP, slot);
+                }
+                else {
+                    Codegen.generateIndexed(p, "sw", Codegen.T0, Codegen.SP, pushed + slot);
+                }
+            }
+            if (pushed > 0) {
+                Codegen.generate(p, "addu", Codegen.SP, Codegen.SP, pushed);
+            }
+            Codegen.generate(p, "j", frame.tailLabel());
+        });
+    }
+
+    public void visitUnaryMinusNode(AST.UnaryMinusNode node) {
+        visit(node.exp());
+        then(() -> {
+            Codegen.genPop(p,Codegen.T0);
+            Codegen.generate(p,"li", Codegen.T1,0);
+            Codegen.generate(p,node.wraps() ? "subu" : "sub",Codegen.T0, Codegen.T1, Codegen.T0);
+            Codegen.genPush(p,Codegen.T0);
+        });
+    }
+
+    public void visitNotNode(AST.NotNode node) {
+        visit(node.exp());
+        then(() -> {
+            Codegen.genPop(p,Codegen.T0);
+            Codegen.generate(p,"seq",Codegen.T0, Codegen.T0, "0");
+            Codegen.genPush(p,Codegen.T0);
+        });
+    }
+
+    // pop the operands into T0 and T1, apply op and push the result
+    private void genArithmetic(AST.BinaryExpNode node, String op) {
+        visit(node.exp1());
+        visit(node.exp2());
+        then(() -> {
+            Codegen.genPop(p,Codegen.T1);
+            Codegen.genPop(p,Codegen.T0);
+            Codegen.generate(p,op, Codegen.T0, Codegen.T0, Codegen.T1);
+            Codegen.genPush(p,Codegen.T0);
+        });
+    }
+
+    public void visitPlusNode(AST.PlusNode node) {
+        genArithmetic(node, node.wraps() ? "addu" : "add");
+    }
+
+    public void visitMinusNode(AST.MinusNode node) {
+        genArithmetic(node, node.wraps() ? "subu" : "sub");
+    }
+
+    public void visitTimesNode(AST.TimesNode node) {
+        Integer c2 = constant(node.exp2());
+        Integer c1 = constant(node.exp1());
+        if (!reduceStrength || (c1 == null && c2 == null)) {
+            genArithmetic(node, "mul");
+            return;
+        }
+        int c = c2 != null ? c2 : c1;
+        visit(c2 != null ? node.exp1() : node.exp2());
+        then(() -> {
+            Codegen.genPop(p, Codegen.T0);
+            if (!StrengthReduction.genMultiply(p, c)) {
+                Codegen.generate(p, "mul", Codegen.T0, Codegen.T0, c);
+            }
+            Codegen.genPush(p, Codegen.T0);
+        });
+    }
+
+    public void visitDivideNode(AST.DivideNode node) {
+        Integer d = constant(node.exp2());
+        if (!reduceStrength || d == null || d == 0) {
+            genArithmetic(node, "div");
+            return;
+        }
+        visit(node.exp1());
+        then(() -> {
+            Codegen.genPop(p, Codegen.T0);
+            StrengthReduction.genDivide(p, d);
+            Codegen.genPush(p, Codegen.T0);
+        });
+    }
+
+    // the value of an integer literal, or of its negation; else null
+    private static Integer constant(AST.ExpNode exp) {
+        if (exp instanceof AST.IntLitNode) {
+            return ((AST.IntLitNode) exp).intVal();
+        }
+        if (exp instanceof AST.UnaryMinusNode
+            && ((AST.UnaryMinusNode) exp).exp() instanceof AST.IntLitNode) {
+            return -((AST.IntLitNode) ((AST.UnaryMinusNode) exp).exp()).intVal();
+        }
+        return null;
+    }
+
+    public void visitAndNode(AST.AndNode node) {
+        String shortLabel = Codegen.nextLabel();
+        String exitLabel = Codegen.nextLabel();
+
+        visit(node.exp1());
+        then(() -> {
+            Codegen.genPop(p,Codegen.T0);
+            Codegen.generate(p,"bne",Codegen.T0, "0", shortLabel); // If not false, use RHS as solution
+            // the left is 0
+            Codegen.genPush(p,Codegen.T0); // Uses LHS as solution
+            Codegen.generate(p,"b", exitLabel);
+            // the left is not 0,so start short label
+            Codegen.genLabel(p,shortLabel);
+        });
+        visit(node.exp2()); // Just leave RHS on stack as solution
+        then(() -> Codegen.genLabel(p,exitLabel));
+    }
+
+    public void visitOrNode(AST.OrNode node) {
+        String shortLabel = Codegen.nextLabel();
+        String exitLabel = Codegen.nextLabel();
+
+        visit(node.exp1());
+        then(() -> {
+            Codegen.genPop(p,Codegen.T0);
+            Codegen.generate(p,"bne",Codegen.T0, "1", shortLabel); //If not true, use RHS as solution
+
+            Codegen.genPush(p,Codegen.T0); //Uses LHS as solution
+            Codegen.generate(p,"b", exitLabel);
+
+            Codegen.genLabel(p,shortLabel);
+        });
+        visit(node.exp2()); //Just leave RHS on stack as solution
+        then(() -> Codegen.genLabel(p,exitLabel));
+    }
+
+    /**
+     * Compare the operands and push "branched" if the branch is taken,
+     * "fell" otherwise. If sub1 is not null, T0 = sub1 - sub2 is tested
+     * by the branch (bgez); else T0 is compared to operand2.
+     */
+    private void genCompare(AST.BinaryExpNode node, String sub1, String sub2,
+                            String branch, String operand2, int branched, int fell) {
+        String branchLabel = Codegen.nextLabel();
+        String exitLabel = Codegen.nextLabel();
+
+        visit(node.exp1());
+        visit(node.exp2());
+        then(() -> {
+            Codegen.genPop(p,Codegen.T1);
+            Codegen.genPop(p,Codegen.T0);
+
+            if (sub1 != null) {
+                Codegen.generate(p,"sub",Codegen.T0, sub1, sub2);
+                Codegen.generate(p,branch,Codegen.T0, branchLabel);
+            }
+            else {
+                Codegen.generate(p,branch,Codegen.T0, operand2, branchLabel);
+            }
+
+            Codegen.generate(p,"li",Codegen.T0, fell);
+            Codegen.generate(p,"b",exitLabel);
+
+            Codegen.genLabel(p,branchLabel);
+            Codegen.generate(p,"li",Codegen.T0, branched);
+
+            Codegen.genLabel(p,exitLabel);
+            Codegen.genPush(p,Codegen.T0);
+        });
+    }
+
+    public void visitEqualsNode(AST.EqualsNode node) {
+        genCompare(node, null, null, "beq", Codegen.T1, 1, 0);
+    }
+
+    public void visitNotEqualsNode(AST.NotEqualsNode node) {
+        genCompare(node, null, null, "bne", Codegen.T1, 1, 0);
+    }
+
+    public void visitLessNode(AST.LessNode node) {
+        // T0 < T1 -> !(0 <= T0-T1)
+        genCompare(node, Codegen.T0, Codegen.T1, "bgez", null, 0, 1);
+    }
+
+    public void visitGreaterNode(AST.GreaterNode node) {
+        // T0 > T1 -> !(0 <= T1-T0)
+        genCompare(node, Codegen.T1, Codegen.T0, "bgez", null, 0, 1);
+    }
+
+    public void visitLessEqNode(AST.LessEqNode node) {
+        genCompare(node, Codegen.T1, Codegen.T0, "bgez", null, 1, 0);
+    }
+
+    public void visitGreaterEqNode(AST.GreaterEqNode node) {
+        genCompare(node, Codegen.T0, Codegen.T1, "bgez", null, 1, 0);
+    }
+}
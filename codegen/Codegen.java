@@ -7,7 +7,7 @@ import java.io.*;
 // generation.
 //
 // The constants are:
-//     Registers: FP, SP, RA, V0, V1, A0, T0, T1
+//     Registers: FP, SP, GP, RA, V0, V1, A0-A3, T0-T9, S0-S7
 //     Values: TRUE, FALSE
 //
 // The operations are include various "generate" methods to print nicely
@@ -35,12 +35,32 @@ public class Codegen {
     // registers
     public static final String FP = "$fp";
     public static final String SP = "$sp";
+    public static final String GP = "$gp";
     public static final String RA = "$ra";
     public static final String V0 = "$v0";
     public static final String V1 = "$v1";
     public static final String A0 = "$a0";
+    public static final String A1 = "$a1";
+    public static final String A2 = "$a2";
+    public static final String A3 = "$a3";
     public static final String T0 = "$t0";
     public static final String T1 = "$t1";
+    public static final String T2 = "$t2";
+    public static final String T3 = "$t3";
+    public static final String T4 = "$t4";
+    public static final String T5 = "$t5";
+    public static final String T6 = "$t6";
+    public static final String T7 = "$t7";
+    public static final String T8 = "$t8";
+    public static final String T9 = "$t9";
+    public static final String S0 = "$s0";
+    public static final String S1 = "$s1";
+    public static final String S2 = "$s2";
+    public static final String S3 = "$s3";
+    public static final String S4 = "$s4";
+    public static final String S5 = "$s5";
+    public static final String S6 = "$s6";
+    public static final String S7 = "$s7";
 
 
     // for pretty printing generated code
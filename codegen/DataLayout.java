@@ -0,0 +1,70 @@
+package codegen;
+
+import java.util.*;
+import ast.*;
+import symtable.*;
+
+/**
+ * Analysis pass laying out the global variables in one data block, at
+ * the label BLOCK. The globals of C-- have no initializer, so all of them
+ * start as zeros and are given .space: the words first, then the
+ * structs, the smallest first, so that as many globals as possible are
+ * in the first SMALL bytes. The offset of each global is set to its
+ * offset in the block, from which the code generator may address it off
+ * $gp, pointing to the block, in a single instruction. The block is
+ * written only with smallData.
+ */
+class DataLayout implements Pass {
+
+    static final String BLOCK = "globals";
+    static final int SMALL = 32768; // the offsets a 16-bit immediate reaches
+
+    private List<AST.VarDeclNode> globals;
+
+    public String name() {
+        return "layout-data";
+    }
+
+    public void begin() {
+        globals = new ArrayList<AST.VarDeclNode>();
+    }
+
+    public AST.DeclNode run(AST.DeclNode decl) {
+        if (decl instanceof AST.VarDeclNode) {
+            globals.add((AST.VarDeclNode) decl);
+        }
+        return decl;
+    }
+
+    public boolean runsOnErrors() {
+        return false;
+    }
+
+    public void end() {
+        // a stable sort, the globals of a size staying in their order
+        globals.sort((a, b) -> size(a) - size(b));
+        int offset = 0;
+        for (AST.VarDeclNode decl : globals) {
+            decl.getMyId().info().setOffset(offset);
+            offset += size(decl);
+        }
+    }
+
+    private static int size(AST.VarDeclNode decl) {
+        return OffsetResolver.size(decl.getMyId().info());
+    }
+
+    /**
+     * The globals, in their order in the block
+     */
+    List<AST.VarDeclNode> globals() {
+        return globals;
+    }
+
+    /**
+     * true if the byte at the offset in the block can be addressed off $gp
+     */
+    static boolean isSmall(int offset) {
+        return offset < SMALL;
+    }
+}
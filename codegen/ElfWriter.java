@@ -0,0 +1,291 @@
+package codegen;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The writer of an ELF32 relocatable object for MIPS32 (o32, big-endian):
+ * the sections of code and data assembled, a .rel section for each of
+ * them with relocations, the symbol table and the string tables. The
+ * relocations are REL ones, their addend kept in the field relocated.
+ */
+class ElfWriter {
+
+    static final int R_MIPS_32 = 2;
+    static final int R_MIPS_26 = 4;
+    static final int R_MIPS_HI16 = 5;
+    static final int R_MIPS_LO16 = 6;
+
+    // the values of the header and of the section headers used
+    private static final int EF_MIPS_NOREORDER = 0x1;
+    private static final int EF_MIPS_ABI_O32 = 0x1000;
+    private static final int EF_MIPS_ARCH_32 = 0x50000000;
+    private static final int SHT_PROGBITS = 1, SHT_SYMTAB = 2, SHT_STRTAB = 3, SHT_REL = 9;
+    private static final int SHF_WRITE = 1, SHF_ALLOC = 2, SHF_EXECINSTR = 4;
+    private static final int HEADER_SIZE = 52, SECTION_HEADER_SIZE = 40;
+    private static final int SYMBOL_SIZE = 16, REL_SIZE = 8;
+
+    /**
+     * A section of code or data, its bytes growing as it is assembled
+     */
+    static class Section {
+        final String name;
+        final boolean code;
+        final Symbol symbol; // the section symbol, for the relocations
+        final List<Relocation> relocations = new ArrayList<Relocation>();
+        int align = 4;
+        private byte[] bytes = new byte[1024];
+        private int size = 0;
+
+        Section(String name, boolean code) {
+            this.name = name;
+            this.code = code;
+            symbol = new Symbol(name);
+            symbol.section = this;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void putByte(int b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, 2 * size);
+            }
+            bytes[size++] = (byte) b;
+        }
+
+        void putWord(int w) {
+            putByte(w >>> 24);
+            putByte(w >>> 16);
+            putByte(w >>> 8);
+            putByte(w);
+        }
+
+        int word(int offset) {
+            return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16
+                | (bytes[offset + 2] & 0xff) << 8 | (bytes[offset + 3] & 0xff);
+        }
+
+        void setWord(int offset, int w) {
+            bytes[offset] = (byte) (w >>> 24);
+            bytes[offset + 1] = (byte) (w >>> 16);
+            bytes[offset + 2] = (byte) (w >>> 8);
+            bytes[offset + 3] = (byte) w;
+        }
+    }
+
+    /**
+     * A label, defined in a section at its value (its offset there) or
+     * undefined (section null), which makes it global
+     */
+    static class Symbol {
+        final String name;
+        Section section = null;
+        int value = 0;
+        boolean global = false;
+
+        Symbol(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * The relocation of the field at the offset of a section
+     */
+    static class Relocation {
+        final int offset;
+        final Symbol symbol;
+        final int type;
+
+        Relocation(int offset, Symbol symbol, int type) {
+            this.offset = offset;
+            this.symbol = symbol;
+            this.type = type;
+        }
+    }
+
+    private final List<Section> sections;
+    private final List<Symbol> symbols = new ArrayList<Symbol>(); // in the table
+    private final Map<Symbol, Integer> indexes = new IdentityHashMap<Symbol, Integer>();
+    private int locals; // the index of the first global symbol
+    private final boolean noreorder;
+
+    /**
+     * The object of the sections, which define the labels, local ones
+     * first (with the section symbols), in their order; noreorder if the
+     * code has .set noreorder
+     */
+    ElfWriter(List<Section> sections, Collection<Symbol> labels, boolean noreorder) {
+        this.sections = sections;
+        this.noreorder = noreorder;
+        symbols.add(null);
+        for (Section section : sections) {
+            symbols.add(section.symbol);
+        }
+        for (Symbol label : labels) {
+            if (!label.global) {
+                symbols.add(label);
+            }
+        }
+        locals = symbols.size();
+        for (Symbol label : labels) {
+            if (label.global) {
+                symbols.add(label);
+            }
+        }
+        for (int k = 1; k < symbols.size(); k++) {
+            indexes.put(symbols.get(k), k);
+        }
+    }
+
+    void write(OutputStream stream) throws IOException {
+        // the section headers: null, the sections, their .rel sections,
+        // .symtab, .strtab and .shstrtab
+        List<Section> relocated = new ArrayList<Section>();
+        for (Section section : sections) {
+            if (!section.relocations.isEmpty()) {
+                relocated.add(section);
+            }
+        }
+        int symtab = 1 + sections.size() + relocated.size();
+        int strtab = symtab + 1;
+        int shstrtab = strtab + 1;
+
+        ByteArrayOutputStream names = new ByteArrayOutputStream();
+        names.write(0);
+        int[] sectionNames = new int[shstrtab + 1];
+        for (int k = 0; k < sections.size(); k++) {
+            sectionNames[1 + k] = string(names, sections.get(k).name);
+        }
+        for (int k = 0; k < relocated.size(); k++) {
+            sectionNames[1 + sections.size() + k] = string(names, ".rel" + relocated.get(k).name);
+        }
+        sectionNames[symtab] = string(names, ".symtab");
+        sectionNames[strtab] = string(names, ".strtab");
+        sectionNames[shstrtab] = string(names, ".shstrtab");
+
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        strings.write(0);
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        DataOutputStream entries = new DataOutputStream(table);
+        entries.write(new byte[SYMBOL_SIZE]);
+        for (int k = 1; k < symbols.size(); k++) {
+            Symbol symbol = symbols.get(k);
+            boolean isSection = symbol == sectionSymbol(symbol);
+            entries.writeInt(isSection ? 0 : string(strings, symbol.name));
+            entries.writeInt(symbol.value);
+            entries.writeInt(0);
+            entries.writeByte((symbol.global ? 1 : 0) << 4 | (isSection ? 3 : 0));
+            entries.writeByte(0);
+            entries.writeShort(symbol.section == null
+                               ? 0 : 1 + sections.indexOf(symbol.section));
+        }
+
+        DataOutputStream out = new DataOutputStream(stream);
+        int offset = HEADER_SIZE;
+        int[] offsets = new int[shstrtab + 1];
+        for (int k = 0; k < sections.size(); k++) {
+            offsets[1 + k] = offset;
+            offset = align(offset + sections.get(k).size(), 4);
+        }
+        for (int k = 0; k < relocated.size(); k++) {
+            offsets[1 + sections.size() + k] = offset;
+            offset += REL_SIZE * relocated.get(k).relocations.size();
+        }
+        offsets[symtab] = offset;
+        offset += table.size();
+        offsets[strtab] = offset;
+        offset += strings.size();
+        offsets[shstrtab] = offset;
+        offset += names.size();
+        int headers = align(offset, 4);
+
+        // the ELF header
+        out.write(new byte[] { 0x7f, 'E', 'L', 'F', 1, 2, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0 });
+        out.writeShort(1);                  // ET_REL
+        out.writeShort(8);                  // EM_MIPS
+        out.writeInt(1);                    // EV_CURRENT
+        out.writeInt(0);                    // no entry
+        out.writeInt(0);                    // no program headers
+        out.writeInt(headers);
+        out.writeInt(EF_MIPS_ARCH_32 | EF_MIPS_ABI_O32 | (noreorder ? EF_MIPS_NOREORDER : 0));
+        out.writeShort(HEADER_SIZE);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(SECTION_HEADER_SIZE);
+        out.writeShort(shstrtab + 1);
+        out.writeShort(shstrtab);
+
+        for (Section section : sections) {
+            out.write(section.bytes, 0, section.size);
+            out.write(new byte[align(section.size, 4) - section.size]);
+        }
+        for (Section section : relocated) {
+            for (Relocation relocation : section.relocations) {
+                out.writeInt(relocation.offset);
+                out.writeInt(indexes.get(relocation.symbol) << 8 | relocation.type);
+            }
+        }
+        table.writeTo(out);
+        strings.writeTo(out);
+        names.writeTo(out);
+        out.write(new byte[headers - offset]);
+
+        // the section headers
+        out.write(new byte[SECTION_HEADER_SIZE]);
+        for (int k = 0; k < sections.size(); k++) {
+            Section section = sections.get(k);
+            sectionHeader(out, sectionNames[1 + k], SHT_PROGBITS,
+                          SHF_ALLOC | (section.code ? SHF_EXECINSTR : SHF_WRITE),
+                          offsets[1 + k], section.size, 0, 0, section.align, 0);
+        }
+        for (int k = 0; k < relocated.size(); k++) {
+            Section section = relocated.get(k);
+            int index = 1 + sections.size() + k;
+            sectionHeader(out, sectionNames[index], SHT_REL, 0, offsets[index],
+                          REL_SIZE * section.relocations.size(), symtab,
+                          1 + sections.indexOf(section), 4, REL_SIZE);
+        }
+        sectionHeader(out, sectionNames[symtab], SHT_SYMTAB, 0, offsets[symtab],
+                      table.size(), strtab, locals, 4, SYMBOL_SIZE);
+        sectionHeader(out, sectionNames[strtab], SHT_STRTAB, 0, offsets[strtab],
+                      strings.size(), 0, 0, 1, 0);
+        sectionHeader(out, sectionNames[shstrtab], SHT_STRTAB, 0, offsets[shstrtab],
+                      names.size(), 0, 0, 1, 0);
+        out.flush();
+    }
+
+    private static Symbol sectionSymbol(Symbol symbol) {
+        return symbol.section == null ? null : symbol.section.symbol;
+    }
+
+    private static void sectionHeader(DataOutputStream out, int name, int type, int flags,
+                                      int offset, int size, int link, int info,
+                                      int align, int entrySize) throws IOException {
+        out.writeInt(name);
+        out.writeInt(type);
+        out.writeInt(flags);
+        out.writeInt(0);                    // no address in a relocatable
+        out.writeInt(offset);
+        out.writeInt(size);
+        out.writeInt(link);
+        out.writeInt(info);
+        out.writeInt(align);
+        out.writeInt(entrySize);
+    }
+
+    // add the string to the table, returning its offset there
+    private static int string(ByteArrayOutputStream table, String s) {
+        int offset = table.size();
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        table.write(bytes, 0, bytes.length);
+        table.write(0);
+        return offset;
+    }
+
+    private static int align(int offset, int align) {
+        return (offset + align - 1) / align * align;
+    }
+}
@@ -0,0 +1,294 @@
+package codegen;
+
+import java.util.*;
+import ast.*;
+import symtable.*;
+
+/**
+ * The frame of a function under the register calling convention: where
+ * each formal and local variable lives, and what the function saves.
+ *
+ * The first four arguments are passed in A0-A3, the others on the stack
+ * (the fifth on top). The variables of type int or bool are kept in
+ * registers while there are some: in a leaf function (one calling no
+ * function), in the temporaries T2-T9, the formals staying in the
+ * register they are passed in (but A0 when the function writes, as the
+ * syscall uses it); in the other functions, in the callee-saved S0-S7,
+ * saved by the function when it uses them, so only for the variables
+ * used often enough to pay for it (a use in a loop counting as LOOP).
+ * With ioCalls, cin and cout call the routines of IoRuntime, so that a
+ * function reading or writing is not a leaf function.
+ * The variables used most get the registers first. The other variables
+ * have a slot in the frame.
+ *
+ * A call in a return statement is a tail call (but in main, and with at
+ * most four arguments but to the function itself): the function jumps
+ * to the function called rather than calling it, which then returns
+ * directly to its caller. A call to itself jumps to tailLabel(), after
+ * the prologue, where the formals are moved to their home again. A
+ * function whose only calls are tail calls is a leaf function, RA being
+ * kept as is.
+ *
+ * A recursive function gains little else over the stack convention: its
+ * formals, used fewer than SAVE_COST times, stay in the frame across its
+ * calls, and most of a call is the evaluation of the expressions on the
+ * stack, as with the stack convention; its tail calls are what it gains.
+ *
+ * As laid out by OffsetResolver, FP points to the slot of the return
+ * address (which a leaf function does not save), the caller's FP is
+ * below it, then come the locals, the formals passed in registers but
+ * kept in memory, and the saved registers. A leaf function whose
+ * variables are all in registers has no frame.
+ */
+class Frame extends AST.VisitorWalk {
+
+    static final String[] ARGS = {
+        Codegen.A0, Codegen.A1, Codegen.A2, Codegen.A3
+    };
+    private static final String[] TEMPS = {
+        Codegen.T2, Codegen.T3, Codegen.T4, Codegen.T5,
+        Codegen.T6, Codegen.T7, Codegen.T8, Codegen.T9
+    };
+    private static final String[] SAVED = {
+        Codegen.S0, Codegen.S1, Codegen.S2, Codegen.S3,
+        Codegen.S4, Codegen.S5, Codegen.S6, Codegen.S7
+    };
+    private static final int LOOP = 8;      // uses counted for a use in a loop
+    private static final int SAVE_COST = 4; // uses paying for a saved register
+
+    private String name;
+    private boolean main;
+    private boolean selfCalls = false; // has tail calls to itself
+    private boolean ioCalls;
+    private boolean leaf = true;
+    private boolean writes = false;
+    private List<SymInfo> locals = new ArrayList<SymInfo>();
+    private Map<SymInfo, Integer> uses = new HashMap<SymInfo, Integer>();
+    private int loops = 0;          // depth of the loops around the walk
+    private int size = 8;           // bytes below FP, from the return address
+    private boolean inMemory = false;
+    private Map<SymInfo, String> homes = new HashMap<SymInfo, String>();
+    private Map<String, Integer> saved = new LinkedHashMap<String, Integer>();
+    private List<Formal> entry = new ArrayList<Formal>();
+
+    // a formal moved to its home on entry
+    static class Formal {
+        SymInfo info;
+        String home;    // its register, null if it lives in memory
+        String passed;  // the register it is passed in, null if pushed
+        int offset;     // from FP, as the offsets of the locals
+    }
+
+    Frame(AST.FnDeclNode fn, boolean ioCalls) {
+        this.ioCalls = ioCalls;
+        name = fn.idNode().name();
+        main = name.equals("main");
+        walk(fn.body());
+        List<AST.FormalDeclNode> formals = fn.formalsList().getList();
+        List<SymInfo> vars = new ArrayList<SymInfo>();
+        for (int k = 0; k < formals.size(); k++) {
+            SymInfo info = formals.get(k).idNode().info();
+            Formal formal = new Formal();
+            formal.info = info;
+            formal.passed = k < ARGS.length ? ARGS[k] : null;
+            if (leaf && formal.passed != null && !(k == 0 && writes)
+                && isScalar(info)) {
+                homes.put(info, formal.passed);
+                continue;
+            }
+            vars.add(info);
+            if (formal.passed == null) {
+                // the caller pushed it: above FP
+                formal.offset = -4 * (k - ARGS.length + 1);
+            }
+            entry.add(formal);
+        }
+        vars.addAll(locals);
+        Map<SymInfo, String> regs = allocate(vars);
+        for (Formal formal : entry) {
+            formal.home = regs.get(formal.info);
+        }
+        for (SymInfo info : locals) {
+            String home = regs.get(info);
+            if (home != null) {
+                homes.put(info, home);
+            }
+            else {
+                size = Math.max(size, info.getOffset() + 4);
+                inMemory = true;
+            }
+        }
+        for (Formal formal : entry) {
+            if (formal.home != null) {
+                homes.put(formal.info, formal.home);
+                continue;
+            }
+            if (formal.passed != null) {
+                formal.offset = size;
+                size += 4;
+            }
+            formal.info.setOffset(formal.offset);
+            inMemory = true;
+        }
+        if (!leaf && !main) {
+            for (String reg : SAVED) {
+                if (homes.containsValue(reg)) {
+                    saved.put(reg, size);
+                    size += 4;
+                }
+            }
+        }
+    }
+
+    // the registers of the variables kept in one, the most used first
+    private Map<SymInfo, String> allocate(List<SymInfo> vars) {
+        List<SymInfo> scalars = new ArrayList<SymInfo>();
+        for (SymInfo info : vars) {
+            if (isScalar(info) && (leaf || main || uses(info) > SAVE_COST)) {
+                scalars.add(info);
+            }
+        }
+        scalars.sort((a, b) -> uses(b) - uses(a));
+        List<String> free = new ArrayList<String>(Arrays.asList(leaf ? TEMPS : SAVED));
+        Map<SymInfo, String> regs = new HashMap<SymInfo, String>();
+        for (SymInfo info : scalars) {
+            String reg = take(free);
+            if (reg == null) {
+                break;
+            }
+            regs.put(info, reg);
+        }
+        return regs;
+    }
+
+    private int uses(SymInfo info) {
+        Integer n = uses.get(info);
+        return n == null ? 0 : n;
+    }
+
+    private static boolean isScalar(SymInfo info) {
+        return !(info instanceof StructInfo)
+            && (info.getType().isIntType() || info.getType().isBoolType());
+    }
+
+    private static String take(List<String> free) {
+        return free.isEmpty() ? null : free.remove(0);
+    }
+
+    /**
+     * true if the function sets FP (it has variables in memory or calls
+     * other functions)
+     */
+    boolean hasFrame() {
+        return !leaf || inMemory;
+    }
+
+    /**
+     * true if the function saves RA, which it changes when calling
+     */
+    boolean savesReturnAddress() {
+        return !leaf && !main;
+    }
+
+    /**
+     * true if the return statement is done as a tail call
+     */
+    boolean isTailCall(AST.ReturnStmtNode node) {
+        if (main || !(node.exp() instanceof AST.CallExpNode)) {
+            return false;
+        }
+        AST.CallExpNode call = (AST.CallExpNode) node.exp();
+        return isSelf(call) || call.expList().size() <= ARGS.length;
+    }
+
+    /**
+     * true if the call is to the function itself
+     */
+    boolean isSelf(AST.CallExpNode call) {
+        return call.idNode().name().equals(name);
+    }
+
+    /**
+     * The label tail calls to the function itself jump to, null if there
+     * are none
+     */
+    String tailLabel() {
+        return selfCalls ? "tail_" + name : null;
+    }
+
+    /**
+     * The bytes of the frame below FP
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * The register of the variable, null if it lives in memory
+     */
+    String home(SymInfo info) {
+        return homes.get(info);
+    }
+
+    /**
+     * The callee-saved registers used, with the offset of their slot
+     */
+    Map<String, Integer> saved() {
+        return saved;
+    }
+
+    /**
+     * The formals to move on entry
+     */
+    List<Formal> entry() {
+        return entry;
+    }
+
+    protected void defaultVisit(AST.ASTnode node) {
+        visitChildren(node);
+    }
+
+    public void visitVarDeclNode(AST.VarDeclNode node) {
+        locals.add(node.getMyId().info());
+    }
+
+    public void visitWriteStmtNode(AST.WriteStmtNode node) {
+        writes = true;
+        leaf &= !ioCalls;
+        visitChildren(node);
+    }
+
+    public void visitReadStmtNode(AST.ReadStmtNode node) {
+        leaf &= !ioCalls;
+        visitChildren(node);
+    }
+
+    public void visitCallExpNode(AST.CallExpNode node) {
+        leaf = false;
+        visit(node.expList());
+    }
+
+    public void visitReturnStmtNode(AST.ReturnStmtNode node) {
+        if (!isTailCall(node)) {
+            visitChildren(node);
+            return;
+        }
+        AST.CallExpNode call = (AST.CallExpNode) node.exp();
+        selfCalls |= isSelf(call);
+        visit(call.expList());
+    }
+
+    public void visitWhileStmtNode(AST.WhileStmtNode node) {
+        loops++;
+        visitChildren(node);
+        then(() -> loops--);
+    }
+
+    public void visitIdNode(AST.IdNode node) {
+        uses.put(node.info(), uses(node.info()) + (loops == 0 ? 1 : LOOP));
+    }
+
+    public void visitDotAccessExpNode(AST.DotAccessExpNode node) {
+        visit(node.lhs());
+    }
+}
@@ -0,0 +1,64 @@
+package codegen;
+
+import java.io.*;
+
+/**
+ * A writer counting the instructions of the code written through it: the
+ * lines indented by a tab (as by the generate methods of Codegen) but the
+ * directives, which start with a dot, and the comments. A
+ * pseudo-instruction counts as one.
+ */
+public class InstructionCounter extends FilterWriter {
+
+    private int count = 0;
+    private boolean lineStart = true;
+    private boolean indented = false;   // the line starts with a tab
+
+    public InstructionCounter(Writer out) {
+        super(out);
+    }
+
+    /**
+     * The instructions written so far
+     */
+    public int count() {
+        return count;
+    }
+
+    public void write(int c) throws IOException {
+        see((char) c);
+        out.write(c);
+    }
+
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int k = off; k < off + len; k++) {
+            see(cbuf[k]);
+        }
+        out.write(cbuf, off, len);
+    }
+
+    public void write(String str, int off, int len) throws IOException {
+        for (int k = off; k < off + len; k++) {
+            see(str.charAt(k));
+        }
+        out.write(str, off, len);
+    }
+
+    private void see(char c) {
+        if (c == '\n') {
+            lineStart = true;
+            indented = false;
+        }
+        else if (lineStart) {
+            lineStart = false;
+            indented = c == '\t';
+        }
+        else if (indented) {
+            // the first character after the tab
+            if (c != '.' && c != '#' && c != '\t' && c != ' ') {
+                count++;
+            }
+            indented = false;
+        }
+    }
+}
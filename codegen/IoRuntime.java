@@ -0,0 +1,228 @@
+package codegen;
+
+import java.io.*;
+
+/**
+ * The MIPS runtime of the buffered input and output, written with the
+ * program when the code generator calls it for cin and cout instead of
+ * making a syscall for each.
+ *
+ * The writes go to a buffer of OUT_SIZE bytes, written out by a single
+ * syscall (15, write to stdout) when it is full and when main exits:
+ * PUTS copies the string at A0, PUTINT converts the int in A0 to decimal
+ * (dividing by 10 with a multiplication by its reciprocal, as
+ * StrengthReduction does). The reads come from a buffer of IN_SIZE bytes,
+ * filled by a single syscall (14, read from stdin) when it is empty:
+ * GETINT skips to the next digits, a '-' just before them making the int
+ * negative, and leaves their value in V0, 0 at the end of the input.
+ * So the ints read may be separated by any blanks, not by newlines only
+ * as with the syscall 5.
+ *
+ * The routines are called with jal and follow the calling convention:
+ * they may change V0, A0-A2 and T0-T9, but not the S registers, FP, SP
+ * or GP. Their labels have a '.', which no C-- identifier has.
+ */
+class IoRuntime {
+
+    static final String PUTS = "io.puts";
+    static final String PUTINT = "io.putint";
+    static final String GETINT = "io.getint";
+    static final String FLUSH = "io.flush";
+
+    private static final int OUT_SIZE = 4096;
+    private static final int IN_SIZE = 4096;
+    private static final int INT_SIZE = 11;          // characters of an int at most
+    private static final String TENTH = "0xCCCCCCCD"; // 2^35 / 10, rounded up
+
+    private static final String DRAIN = "io.drain";
+    private static final String FILL = "io.fill";
+    private static final String OUT_BUF = "io.outbuf";
+    private static final String OUT_LEN = "io.outlen";
+    private static final String DIGITS = "io.digits";
+    private static final String IN_BUF = "io.inbuf";
+    private static final String IN_POS = "io.inpos";
+    private static final String IN_LEN = "io.inlen";
+
+    // to hide the implicit constructor
+    private IoRuntime() {}
+
+    /**
+     * The data and code of the output routines: PUTS, PUTINT and FLUSH
+     */
+    static void genOutput(PrintWriter p) {
+        Codegen.generate(p, ".data");
+        Codegen.generateWithComment(p, ".align 2", "align on a word boundary");
+        Codegen.generateLabeled(p, OUT_LEN, ".word 0", "bytes in the buffer");
+        Codegen.generateLabeled(p, DIGITS, ".space " + (INT_SIZE + 1), "");
+        Codegen.generateLabeled(p, OUT_BUF, ".space " + OUT_SIZE, "");
+        Codegen.generate(p, ".text");
+
+        // T2: the buffer, T1: the end of its bytes; T1 = T2 after, and
+        // A0 is kept
+        Codegen.genLabel(p, DRAIN, "write the buffer out");
+        Codegen.generate(p, "move", Codegen.T8, Codegen.A0);
+        Codegen.generateWithComment(p, "li", "stdout", Codegen.A0, "1");
+        Codegen.generate(p, "move", Codegen.A1, Codegen.T2);
+        Codegen.generate(p, "subu", Codegen.A2, Codegen.T1, Codegen.T2);
+        Codegen.generateWithComment(p, "li", "write", Codegen.V0, "15");
+        Codegen.generate(p, "syscall");
+        Codegen.generate(p, "move", Codegen.A0, Codegen.T8);
+        Codegen.generate(p, "move", Codegen.T1, Codegen.T2);
+        Codegen.generate(p, "jr", Codegen.RA);
+
+        Codegen.genLabel(p, FLUSH, "write out what is buffered");
+        genOutBuffer(p);
+        Codegen.generate(p, "move", Codegen.T9, Codegen.RA);
+        Codegen.generate(p, "jal", DRAIN);
+        Codegen.generate(p, "move", Codegen.RA, Codegen.T9);
+        Codegen.generate(p, "sw", "$zero", OUT_LEN);
+        Codegen.generate(p, "jr", Codegen.RA);
+
+        Codegen.genLabel(p, PUTS, "write the string at A0");
+        genOutBuffer(p);
+        Codegen.generate(p, "addu", Codegen.T3, Codegen.T2, OUT_SIZE);
+        Codegen.genLabel(p, "io.puts_byte");
+        Codegen.generateIndexed(p, "lbu", Codegen.T0, Codegen.A0, 0);
+        Codegen.generate(p, "beqz", Codegen.T0, "io.puts_end");
+        Codegen.generate(p, "bne", Codegen.T1, Codegen.T3, "io.puts_room");
+        Codegen.generate(p, "move", Codegen.T9, Codegen.RA);
+        Codegen.generate(p, "jal", DRAIN);
+        Codegen.generate(p, "move", Codegen.RA, Codegen.T9);
+        Codegen.genLabel(p, "io.puts_room");
+        Codegen.generateIndexed(p, "sb", Codegen.T0, Codegen.T1, 0);
+        Codegen.generate(p, "addu", Codegen.T1, Codegen.T1, 1);
+        Codegen.generate(p, "addu", Codegen.A0, Codegen.A0, 1);
+        Codegen.generate(p, "b", "io.puts_byte");
+        Codegen.genLabel(p, "io.puts_end");
+        genOutLength(p);
+        Codegen.generate(p, "jr", Codegen.RA);
+
+        Codegen.genLabel(p, PUTINT, "write the int in A0");
+        genOutBuffer(p);
+        Codegen.generate(p, "addu", Codegen.T3, Codegen.T2, OUT_SIZE - INT_SIZE);
+        Codegen.generate(p, "sltu", Codegen.T0, Codegen.T1, Codegen.T3);
+        Codegen.generate(p, "bnez", Codegen.T0, "io.putint_room");
+        Codegen.generate(p, "move", Codegen.T9, Codegen.RA);
+        Codegen.generate(p, "jal", DRAIN);
+        Codegen.generate(p, "move", Codegen.RA, Codegen.T9);
+        Codegen.genLabel(p, "io.putint_room");
+        Codegen.generate(p, "bgez", Codegen.A0, "io.putint_abs");
+        Codegen.generateWithComment(p, "li", "'-'", Codegen.T0, "45");
+        Codegen.generateIndexed(p, "sb", Codegen.T0, Codegen.T1, 0);
+        Codegen.generate(p, "addu", Codegen.T1, Codegen.T1, 1);
+        Codegen.generateWithComment(p, "negu", "-2^31 is 2^31 unsigned",
+                                    Codegen.A0, Codegen.A0);
+        Codegen.genLabel(p, "io.putint_abs");
+        // the digits from the last, backward from the end of DIGITS (T5)
+        Codegen.generate(p, "la", Codegen.T5, DIGITS + "+" + (INT_SIZE + 1));
+        Codegen.generate(p, "move", Codegen.T4, Codegen.T5);
+        Codegen.generate(p, "li", Codegen.T6, TENTH);
+        Codegen.genLabel(p, "io.putint_digit");
+        Codegen.generate(p, "multu", Codegen.A0, Codegen.T6);
+        Codegen.generate(p, "mfhi", Codegen.T7);
+        Codegen.generateWithComment(p, "srl", "A0 / 10", Codegen.T7, Codegen.T7, "3");
+        Codegen.generate(p, "sll", Codegen.T0, Codegen.T7, 2);
+        Codegen.generate(p, "addu", Codegen.T0, Codegen.T0, Codegen.T7);
+        Codegen.generate(p, "sll", Codegen.T0, Codegen.T0, 1);
+        Codegen.generateWithComment(p, "subu", "A0 % 10", Codegen.T0, Codegen.A0, Codegen.T0);
+        Codegen.generate(p, "addu", Codegen.T0, Codegen.T0, 48);
+        Codegen.generate(p, "subu", Codegen.T4, Codegen.T4, 1);
+        Codegen.generateIndexed(p, "sb", Codegen.T0, Codegen.T4, 0);
+        Codegen.generate(p, "move", Codegen.A0, Codegen.T7);
+        Codegen.generate(p, "bnez", Codegen.A0, "io.putint_digit");
+        Codegen.genLabel(p, "io.putint_copy");
+        Codegen.generateIndexed(p, "lbu", Codegen.T0, Codegen.T4, 0);
+        Codegen.generate(p, "addu", Codegen.T4, Codegen.T4, 1);
+        Codegen.generateIndexed(p, "sb", Codegen.T0, Codegen.T1, 0);
+        Codegen.generate(p, "addu", Codegen.T1, Codegen.T1, 1);
+        Codegen.generate(p, "bne", Codegen.T4, Codegen.T5, "io.putint_copy");
+        genOutLength(p);
+        Codegen.generate(p, "jr", Codegen.RA);
+    }
+
+    // T2 = the output buffer, T1 = the end of its bytes
+    private static void genOutBuffer(PrintWriter p) {
+        Codegen.generate(p, "la", Codegen.T2, OUT_BUF);
+        Codegen.generate(p, "lw", Codegen.T1, OUT_LEN);
+        Codegen.generate(p, "addu", Codegen.T1, Codegen.T1, Codegen.T2);
+    }
+
+    private static void genOutLength(PrintWriter p) {
+        Codegen.generate(p, "subu", Codegen.T1, Codegen.T1, Codegen.T2);
+        Codegen.generate(p, "sw", Codegen.T1, OUT_LEN);
+    }
+
+    /**
+     * The data and code of the input routine GETINT
+     */
+    static void genInput(PrintWriter p) {
+        Codegen.generate(p, ".data");
+        Codegen.generateWithComment(p, ".align 2", "align on a word boundary");
+        Codegen.generateLabeled(p, IN_POS, ".word 0", "bytes of the buffer read");
+        Codegen.generateLabeled(p, IN_LEN, ".word 0", "bytes in the buffer");
+        Codegen.generateLabeled(p, IN_BUF, ".space " + IN_SIZE, "");
+        Codegen.generate(p, ".text");
+
+        // T2: the buffer; T1 = T2, T3 = the end of the bytes read
+        Codegen.genLabel(p, FILL, "read in the buffer");
+        Codegen.generateWithComment(p, "li", "stdin", Codegen.A0, "0");
+        Codegen.generate(p, "move", Codegen.A1, Codegen.T2);
+        Codegen.generate(p, "li", Codegen.A2, IN_SIZE);
+        Codegen.generateWithComment(p, "li", "read", Codegen.V0, "14");
+        Codegen.generate(p, "syscall");
+        Codegen.generate(p, "bgez", Codegen.V0, "io.fill_read");
+        Codegen.generateWithComment(p, "li", "an error ends the input", Codegen.V0, "0");
+        Codegen.genLabel(p, "io.fill_read");
+        Codegen.generate(p, "sw", Codegen.V0, IN_LEN);
+        Codegen.generate(p, "move", Codegen.T1, Codegen.T2);
+        Codegen.generate(p, "addu", Codegen.T3, Codegen.T2, Codegen.V0);
+        Codegen.generate(p, "jr", Codegen.RA);
+
+        Codegen.genLabel(p, GETINT, "read an int in V0");
+        Codegen.generate(p, "la", Codegen.T2, IN_BUF);
+        Codegen.generate(p, "lw", Codegen.T1, IN_POS);
+        Codegen.generate(p, "addu", Codegen.T1, Codegen.T1, Codegen.T2);
+        Codegen.generate(p, "lw", Codegen.T3, IN_LEN);
+        Codegen.generate(p, "addu", Codegen.T3, Codegen.T3, Codegen.T2);
+        Codegen.generateWithComment(p, "li", "the value", Codegen.T4, "0");
+        Codegen.generateWithComment(p, "li", "1 if negative", Codegen.T5, "0");
+        Codegen.genLabel(p, "io.getint_skip");
+        genNextByte(p, "io.getint_first", "io.getint_end");
+        Codegen.generate(p, "subu", Codegen.T0, Codegen.T0, 48);
+        Codegen.generate(p, "sltu", Codegen.T6, Codegen.T0, "10");
+        Codegen.generate(p, "bnez", Codegen.T6, "io.getint_digit");
+        Codegen.generateWithComment(p, "seq", "a '-' (45 - 48)", Codegen.T5, Codegen.T0, "-3");
+        Codegen.generate(p, "b", "io.getint_skip");
+        Codegen.genLabel(p, "io.getint_digit");
+        Codegen.generate(p, "sll", Codegen.T6, Codegen.T4, 2);
+        Codegen.generate(p, "addu", Codegen.T4, Codegen.T4, Codegen.T6);
+        Codegen.generate(p, "sll", Codegen.T4, Codegen.T4, 1);
+        Codegen.generate(p, "addu", Codegen.T4, Codegen.T4, Codegen.T0);
+        genNextByte(p, "io.getint_next", "io.getint_end");
+        Codegen.generate(p, "subu", Codegen.T0, Codegen.T0, 48);
+        Codegen.generate(p, "sltu", Codegen.T6, Codegen.T0, "10");
+        Codegen.generate(p, "bnez", Codegen.T6, "io.getint_digit");
+        Codegen.genLabel(p, "io.getint_end");
+        Codegen.generate(p, "subu", Codegen.T1, Codegen.T1, Codegen.T2);
+        Codegen.generate(p, "sw", Codegen.T1, IN_POS);
+        Codegen.generate(p, "move", Codegen.V0, Codegen.T4);
+        Codegen.generate(p, "beqz", Codegen.T5, "io.getint_ret");
+        Codegen.generate(p, "negu", Codegen.V0, Codegen.V0);
+        Codegen.genLabel(p, "io.getint_ret");
+        Codegen.generate(p, "jr", Codegen.RA);
+    }
+
+    // T0 = the next byte of the input (T1), filling the buffer first if
+    // it is empty; to end at the end of the input (with T4 still 0 if no
+    // digit was read)
+    private static void genNextByte(PrintWriter p, String read, String end) {
+        Codegen.generate(p, "bne", Codegen.T1, Codegen.T3, read);
+        Codegen.generate(p, "move", Codegen.T9, Codegen.RA);
+        Codegen.generate(p, "jal", FILL);
+        Codegen.generate(p, "move", Codegen.RA, Codegen.T9);
+        Codegen.generate(p, "beq", Codegen.T1, Codegen.T3, end);
+        Codegen.genLabel(p, read);
+        Codegen.generateIndexed(p, "lbu", Codegen.T0, Codegen.T1, 0);
+        Codegen.generate(p, "addu", Codegen.T1, Codegen.T1, 1);
+    }
+}
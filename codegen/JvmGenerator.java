@@ -0,0 +1,689 @@
+package codegen;
+
+import java.io.*;
+import java.util.*;
+import ast.*;
+import lexer.*;
+import symtable.*;
+
+/**
+ * Code generation pass writing the program as a Java class file (see
+ * ClassFile), to be run by a JVM rather than on MIPS: java -cp DIR NAME.
+ *
+ * A function is a static method of its name, its ints and bools being
+ * ints. A global is a static field of its name, and a local a local
+ * slot, the formals first; the locals of all the blocks of a function
+ * have their own slots, set to 0 on entering it. A struct variable is
+ * flattened into a field or a slot for each of its words, the field of
+ * a dot-access chain being at the offset OffsetResolver gave it: the word
+ * k of the global s is the field s$k. The names with a $ are those of the
+ * runtime, which no name of the program can take.
+ *
+ * The conditions of the if and while statements are compiled to jumps,
+ * && and || short-circuiting to their label; a condition used as a value
+ * is made 1 or 0 by the same jumps. As the code generator does, the
+ * arguments of a call are evaluated from the last: into slots of the
+ * caller when one may have a side effect on the others (see
+ * CodeGenerator.isQuiet), else straight onto the stack.
+ *
+ * cin and cout go through the runtime methods of the class, reading and
+ * writing System.in and System.out through buffers: $getint reads an int
+ * as IoRuntime does (the next digits, a '-' just before them making it
+ * negative, 0 at the end of the input), $putint and $puts write, and the main method of the
+ * class calls main then flushes the output with $flush.
+ *
+ * A function whose code does not fit in a method (64 KB, jumps of 32 KB)
+ * is an error: no class is written.
+ */
+public class JvmGenerator extends AST.VisitorWalk implements Pass {
+
+    // the names of the runtime
+    private static final String OUT = "$out", IN = "$in";
+    private static final String PUTINT = "$putint", PUTS = "$puts", GETINT = "$getint";
+    private static final String FLUSH = "$flush";
+    private static final String PRINT_STREAM = "java/io/PrintStream";
+    private static final String INPUT_STREAM = "java/io/InputStream";
+    private static final int BUFFER = 1 << 16;
+
+    // the jump of each comparison, taken when it holds
+    private static final Map<Class<?>, Integer> COMPARISONS = new HashMap<Class<?>, Integer>();
+    static {
+        COMPARISONS.put(AST.EqualsNode.class, ClassFile.IF_ICMPEQ);
+        COMPARISONS.put(AST.NotEqualsNode.class, ClassFile.IF_ICMPNE);
+        COMPARISONS.put(AST.LessNode.class, ClassFile.IF_ICMPLT);
+        COMPARISONS.put(AST.GreaterEqNode.class, ClassFile.IF_ICMPGE);
+        COMPARISONS.put(AST.GreaterNode.class, ClassFile.IF_ICMPGT);
+        COMPARISONS.put(AST.LessEqNode.class, ClassFile.IF_ICMPLE);
+    }
+
+    private OutputStream out;
+    private ClassFile classFile;
+    private boolean reads = false; // calls GETINT
+    private ClassFile.Method method; // of the function being generated
+    private Map<SymInfo, Integer> slots; // of its formals and locals
+    private int nextTemp; // its next slot for the arguments of a call
+
+    /**
+     * The pass writing the class of the name to out
+     */
+    public JvmGenerator(OutputStream out, String className) {
+        this.out = out;
+        classFile = new ClassFile(className);
+    }
+
+    public String name() {
+        return "codegen";
+    }
+
+    public AST.DeclNode run(AST.DeclNode decl) {
+        walk(decl);
+        return decl;
+    }
+
+    /**
+     * Write the class, unless a function did not fit in a method
+     */
+    public void end() {
+        if (ErrMsg.hasFatalError()) {
+            return;
+        }
+        genRuntime();
+        try {
+            classFile.write(out);
+        }
+        catch (IllegalStateException ex) {
+            ErrMsg.fatal(0, 0, "Cannot write class " + classFile.name() + ": " + ex.getMessage());
+        }
+        catch (IOException ex) {
+            ErrMsg.fatal(0, 0, "Error while writing class " + classFile.name());
+        }
+    }
+
+    public boolean runsOnErrors() {
+        return false;
+    }
+
+    protected void defaultVisit(AST.ASTnode node) {
+    }
+
+    public void visitVarDeclNode(AST.VarDeclNode node) {
+        // a global
+        SymInfo info = node.getMyId().info();
+        String name = node.getMyId().name();
+        if (!(info instanceof StructInfo)) {
+            classFile.field(ClassFile.ACC_STATIC, name, "I");
+            return;
+        }
+        for (int k = 0; k < OffsetResolver.size(info) / 4; k++) {
+            classFile.field(ClassFile.ACC_STATIC, name + "$" + k, "I");
+        }
+    }
+
+    public void visitFnDeclNode(AST.FnDeclNode node) {
+        FnInfo info = (FnInfo) node.idNode().info();
+        String name = node.idNode().name();
+        method = classFile.method(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, name,
+                                  descriptor(info));
+        slots = new IdentityHashMap<SymInfo, Integer>();
+        int slot = 0;
+        for (AST.FormalDeclNode formal : node.formalsList().getList()) {
+            slots.put(formal.idNode().info(), slot++);
+        }
+        int formals = slot;
+        // the locals of all the blocks, then the slots of the arguments
+        Deque<AST.ASTnode> nodes = new ArrayDeque<AST.ASTnode>();
+        nodes.push(node.body());
+        int temps = 0;
+        while (!nodes.isEmpty()) {
+            AST.ASTnode n = nodes.pop();
+            if (n instanceof AST.VarDeclNode) {
+                SymInfo local = ((AST.VarDeclNode) n).getMyId().info();
+                slots.put(local, slot);
+                slot += OffsetResolver.size(local) / 4;
+            }
+            else if (n instanceof AST.CallExpNode && inSlots((AST.CallExpNode) n)) {
+                temps += ((AST.CallExpNode) n).expList().size();
+            }
+            nodes.addAll(n.children());
+        }
+        nextTemp = slot;
+        method.setLocals(slot + temps);
+        for (int k = formals; k < slot + temps; k++) {
+            method.push(0);
+            method.store(k);
+        }
+        visit(node.body().stmtList());
+        then(() -> {
+            // falling off the end
+            if (method.isReachable()) {
+                genReturn(info);
+            }
+            if (!method.fits()) {
+                ErrMsg.fatal(node.idNode().lineNum(), node.idNode().charNum(),
+                             "Function " + name + " too large for a JVM method");
+            }
+            method = null;
+            slots = null;
+        });
+    }
+
+    private static String descriptor(FnInfo info) {
+        StringBuilder descriptor = new StringBuilder("(");
+        for (int k = 0; k < info.getNumParams(); k++) {
+            descriptor.append('I');
+        }
+        descriptor.append(info.getReturnType().isVoidType() ? ")V" : ")I");
+        return descriptor.toString();
+    }
+
+    private void genReturn(FnInfo info) {
+        if (info.getReturnType().isVoidType()) {
+            method.op(ClassFile.RETURN);
+            return;
+        }
+        method.push(0);
+        method.op(ClassFile.IRETURN);
+    }
+
+    // true if the arguments of the call are evaluated into slots
+    private static boolean inSlots(AST.CallExpNode call) {
+        return call.expList().size() > 1 && !CodeGenerator.isQuiet(call.expList());
+    }
+
+    public void visitStmtListNode(AST.StmtListNode node) {
+        visitChildren(node);
+    }
+
+    public void visitAssignStmtNode(AST.AssignStmtNode node) {
+        visit(node.assign().rhs());
+        then(() -> genStore(node.assign().lhs()));
+    }
+
+    public void visitPostIncStmtNode(AST.PostIncStmtNode node) {
+        genStep(node.exp(), 1);
+    }
+
+    public void visitPostDecStmtNode(AST.PostDecStmtNode node) {
+        genStep(node.exp(), -1);
+    }
+
+    // add delta to the variable or the field
+    private void genStep(AST.ExpNode exp, int delta) {
+        int slot = slot(exp);
+        if (slot >= 0) {
+            method.iinc(slot, delta);
+            return;
+        }
+        genLoad(exp);
+        method.push(delta);
+        method.op(ClassFile.IADD);
+        genStore(exp);
+    }
+
+    public void visitReadStmtNode(AST.ReadStmtNode node) {
+        reads = true;
+        method.invoke(ClassFile.INVOKESTATIC, classFile.name(), GETINT, "()I");
+        genStore(node.exp());
+    }
+
+    public void visitWriteStmtNode(AST.WriteStmtNode node) {
+        AST.ExpNode exp = node.exp();
+        if (exp instanceof AST.StringLitNode) {
+            method.push(string(((AST.StringLitNode) exp).strVal()));
+            method.invoke(ClassFile.INVOKESTATIC, classFile.name(), PUTS,
+                          "(Ljava/lang/String;)V");
+            return;
+        }
+        visit(exp);
+        then(() -> method.invoke(ClassFile.INVOKESTATIC, classFile.name(), PUTINT, "(I)V"));
+    }
+
+    public void visitIfStmtNode(AST.IfStmtNode node) {
+        ClassFile.Label end = new ClassFile.Label();
+        genJump(node.exp(), false, end);
+        visit(node.stmtList());
+        then(() -> method.bind(end));
+    }
+
+    public void visitIfElseStmtNode(AST.IfElseStmtNode node) {
+        ClassFile.Label otherwise = new ClassFile.Label();
+        ClassFile.Label end = new ClassFile.Label();
+        genJump(node.exp(), false, otherwise);
+        visit(node.thenStmtList());
+        then(() -> {
+            method.jump(ClassFile.GOTO, end);
+            method.bind(otherwise);
+        });
+        visit(node.elseStmtList());
+        then(() -> method.bind(end));
+    }
+
+    public void visitWhileStmtNode(AST.WhileStmtNode node) {
+        ClassFile.Label loop = new ClassFile.Label();
+        ClassFile.Label end = new ClassFile.Label();
+        method.bind(loop);
+        genJump(node.exp(), false, end);
+        visit(node.stmtList());
+        then(() -> {
+            method.jump(ClassFile.GOTO, loop);
+            method.bind(end);
+        });
+    }
+
+    public void visitCallStmtNode(AST.CallStmtNode node) {
+        visit(node.call());
+        then(() -> {
+            if (!((FnInfo) node.call().idNode().info()).getReturnType().isVoidType()) {
+                method.op(ClassFile.POP);
+            }
+        });
+    }
+
+    public void visitReturnStmtNode(AST.ReturnStmtNode node) {
+        if (node.exp() == null) {
+            method.op(ClassFile.RETURN);
+            return;
+        }
+        visit(node.exp());
+        then(() -> method.op(ClassFile.IRETURN));
+    }
+
+    /**
+     * Jump to the label if the condition is when, else fall through; the
+     * code is written by actions, in the order of the walk
+     */
+    private void genJump(AST.ExpNode exp, boolean when, ClassFile.Label label) {
+        if (exp instanceof AST.NotNode) {
+            genJump(((AST.NotNode) exp).exp(), !when, label);
+            return;
+        }
+        if (exp instanceof AST.TrueNode || exp instanceof AST.FalseNode) {
+            if ((exp instanceof AST.TrueNode) == when) {
+                then(() -> method.jump(ClassFile.GOTO, label));
+            }
+            return;
+        }
+        if (exp instanceof AST.AndNode || exp instanceof AST.OrNode) {
+            AST.BinaryExpNode binary = (AST.BinaryExpNode) exp;
+            if ((exp instanceof AST.AndNode) != when) {
+                // either operand decides: a false one of &&, a true one of ||
+                genJump(binary.exp1(), when, label);
+                genJump(binary.exp2(), when, label);
+                return;
+            }
+            ClassFile.Label decided = new ClassFile.Label();
+            genJump(binary.exp1(), !when, decided);
+            genJump(binary.exp2(), when, label);
+            then(() -> method.bind(decided));
+            return;
+        }
+        Integer comparison = COMPARISONS.get(exp.getClass());
+        if (comparison != null) {
+            AST.BinaryExpNode binary = (AST.BinaryExpNode) exp;
+            visit(binary.exp1());
+            visit(binary.exp2());
+            then(() -> method.jump(when ? comparison : ClassFile.negate(comparison), label));
+            return;
+        }
+        visit(exp);
+        then(() -> method.jump(when ? ClassFile.IFNE : ClassFile.IFEQ, label));
+    }
+
+    // push 1 if the condition holds, else 0
+    private void genCondition(AST.ExpNode exp) {
+        ClassFile.Label holds = new ClassFile.Label();
+        ClassFile.Label end = new ClassFile.Label();
+        genJump(exp, true, holds);
+        then(() -> {
+            method.push(0);
+            method.jump(ClassFile.GOTO, end);
+            method.bind(holds);
+            method.push(1);
+            method.bind(end);
+        });
+    }
+
+    public void visitIntLitNode(AST.IntLitNode node) {
+        method.push(node.intVal());
+    }
+
+    public void visitTrueNode(AST.TrueNode node) {
+        method.push(1);
+    }
+
+    public void visitFalseNode(AST.FalseNode node) {
+        method.push(0);
+    }
+
+    public void visitIdNode(AST.IdNode node) {
+        genLoad(node);
+    }
+
+    public void visitDotAccessExpNode(AST.DotAccessExpNode node) {
+        genLoad(node);
+    }
+
+    public void visitAssignNode(AST.AssignNode node) {
+        visit(node.rhs());
+        then(() -> {
+            method.op(ClassFile.DUP);
+            genStore(node.lhs());
+        });
+    }
+
+    public void visitCallExpNode(AST.CallExpNode node) {
+        List<AST.ExpNode> args = node.expList().getList();
+        String name = node.idNode().name();
+        String descriptor = descriptor((FnInfo) node.idNode().info());
+        if (!inSlots(node)) {
+            for (AST.ExpNode arg : args) {
+                visit(arg);
+            }
+            then(() -> method.invoke(ClassFile.INVOKESTATIC, classFile.name(), name, descriptor));
+            return;
+        }
+        int first = nextTemp;
+        nextTemp += args.size();
+        for (int k = args.size() - 1; k >= 0; k--) {
+            int slot = first + k;
+            visit(args.get(k));
+            then(() -> method.store(slot));
+        }
+        then(() -> {
+            for (int k = 0; k < args.size(); k++) {
+                method.load(first + k);
+            }
+            method.invoke(ClassFile.INVOKESTATIC, classFile.name(), name, descriptor);
+        });
+    }
+
+    public void visitUnaryMinusNode(AST.UnaryMinusNode node) {
+        visit(node.exp());
+        then(() -> method.op(ClassFile.INEG));
+    }
+
+    public void visitNotNode(AST.NotNode node) {
+        visit(node.exp());
+        then(() -> {
+            method.push(1);
+            method.op(ClassFile.IXOR);
+        });
+    }
+
+    private void genArithmetic(AST.BinaryExpNode node, int opcode) {
+        visit(node.exp1());
+        visit(node.exp2());
+        then(() -> method.op(opcode));
+    }
+
+    public void visitPlusNode(AST.PlusNode node) {
+        genArithmetic(node, ClassFile.IADD);
+    }
+
+    public void visitMinusNode(AST.MinusNode node) {
+        genArithmetic(node, ClassFile.ISUB);
+    }
+
+    public void visitTimesNode(AST.TimesNode node) {
+        genArithmetic(node, ClassFile.IMUL);
+    }
+
+    public void visitDivideNode(AST.DivideNode node) {
+        genArithmetic(node, ClassFile.IDIV);
+    }
+
+    public void visitAndNode(AST.AndNode node) {
+        genCondition(node);
+    }
+
+    public void visitOrNode(AST.OrNode node) {
+        genCondition(node);
+    }
+
+    public void visitEqualsNode(AST.EqualsNode node) {
+        genCondition(node);
+    }
+
+    public void visitNotEqualsNode(AST.NotEqualsNode node) {
+        genCondition(node);
+    }
+
+    public void visitLessNode(AST.LessNode node) {
+        genCondition(node);
+    }
+
+    public void visitGreaterNode(AST.GreaterNode node) {
+        genCondition(node);
+    }
+
+    public void visitLessEqNode(AST.LessEqNode node) {
+        genCondition(node);
+    }
+
+    public void visitGreaterEqNode(AST.GreaterEqNode node) {
+        genCondition(node);
+    }
+
+    // the variable of an ID or a dot-access chain, and the offset of the
+    // word in it
+    private static AST.IdNode variable(AST.ExpNode exp) {
+        while (exp instanceof AST.DotAccessExpNode) {
+            exp = ((AST.DotAccessExpNode) exp).lhs();
+        }
+        return (AST.IdNode) exp;
+    }
+
+    private static int offset(AST.ExpNode exp) {
+        int offset = 0;
+        while (exp instanceof AST.DotAccessExpNode) {
+            AST.DotAccessExpNode dot = (AST.DotAccessExpNode) exp;
+            offset += dot.idNode().info().getOffset();
+            exp = dot.lhs();
+        }
+        return offset;
+    }
+
+    // the slot of the word, -1 if it is in a global
+    private int slot(AST.ExpNode exp) {
+        AST.IdNode id = variable(exp);
+        if (id.info().isGlobal()) {
+            return -1;
+        }
+        return slots.get(id.info()) + offset(exp) / 4;
+    }
+
+    // the static field of the word, in a global
+    private static String field(AST.ExpNode exp) {
+        AST.IdNode id = variable(exp);
+        if (id.info() instanceof StructInfo) {
+            return id.name() + "$" + offset(exp) / 4;
+        }
+        return id.name();
+    }
+
+    private void genLoad(AST.ExpNode exp) {
+        int slot = slot(exp);
+        if (slot >= 0) {
+            method.load(slot);
+        }
+        else {
+            method.field(ClassFile.GETSTATIC, classFile.name(), field(exp), "I");
+        }
+    }
+
+    private void genStore(AST.ExpNode exp) {
+        int slot = slot(exp);
+        if (slot >= 0) {
+            method.store(slot);
+        }
+        else {
+            method.field(ClassFile.PUTSTATIC, classFile.name(), field(exp), "I");
+        }
+    }
+
+    // the text of a string literal, its escapes decoded
+    private static String string(String literal) {
+        StringBuilder text = new StringBuilder();
+        for (int k = 1; k < literal.length() - 1; k++) {
+            char c = literal.charAt(k);
+            if (c == '\\') {
+                c = literal.charAt(++k);
+                if (c == 'n') {
+                    c = '\n';
+                }
+                else if (c == 't') {
+                    c = '\t';
+                }
+            }
+            text.append(c);
+        }
+        return text.toString();
+    }
+
+    /**
+     * The runtime: the streams, opened by the static initializer, the
+     * methods reading and writing them, and the main method of the class
+     */
+    private void genRuntime() {
+        String name = classFile.name();
+        int statics = ClassFile.ACC_PRIVATE | ClassFile.ACC_STATIC;
+        classFile.field(statics, OUT, "L" + PRINT_STREAM + ";");
+        if (reads) {
+            classFile.field(statics, IN, "L" + INPUT_STREAM + ";");
+        }
+
+        ClassFile.Method init = classFile.method(ClassFile.ACC_STATIC, "<clinit>", "()V");
+        genStream(init, PRINT_STREAM, "java/io/BufferedOutputStream",
+                  "java/io/FileOutputStream", "out", "java/io/OutputStream");
+        init.field(ClassFile.PUTSTATIC, name, OUT, "L" + PRINT_STREAM + ";");
+        if (reads) {
+            genStream(init, null, "java/io/BufferedInputStream",
+                      "java/io/FileInputStream", "in", INPUT_STREAM);
+            init.field(ClassFile.PUTSTATIC, name, IN, "L" + INPUT_STREAM + ";");
+        }
+        init.op(ClassFile.RETURN);
+
+        ClassFile.Method putint = classFile.method(statics, PUTINT, "(I)V");
+        putint.field(ClassFile.GETSTATIC, name, OUT, "L" + PRINT_STREAM + ";");
+        putint.load(0);
+        putint.invoke(ClassFile.INVOKEVIRTUAL, PRINT_STREAM, "print", "(I)V");
+        putint.op(ClassFile.RETURN);
+
+        ClassFile.Method puts = classFile.method(statics, PUTS, "(Ljava/lang/String;)V");
+        puts.field(ClassFile.GETSTATIC, name, OUT, "L" + PRINT_STREAM + ";");
+        puts.op(ClassFile.ALOAD_0);
+        puts.invoke(ClassFile.INVOKEVIRTUAL, PRINT_STREAM, "print", "(Ljava/lang/String;)V");
+        puts.op(ClassFile.RETURN);
+
+        ClassFile.Method flush = classFile.method(statics, FLUSH, "()V");
+        flush.field(ClassFile.GETSTATIC, name, OUT, "L" + PRINT_STREAM + ";");
+        flush.invoke(ClassFile.INVOKEVIRTUAL, PRINT_STREAM, "flush", "()V");
+        flush.op(ClassFile.RETURN);
+
+        if (reads) {
+            genGetInt(classFile.method(statics, GETINT, "()I"));
+        }
+
+        ClassFile.Method entry = classFile.method(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC,
+                                                  "main", "([Ljava/lang/String;)V");
+        entry.invoke(ClassFile.INVOKESTATIC, name, "main", "()V");
+        entry.invoke(ClassFile.INVOKESTATIC, name, FLUSH, "()V");
+        entry.op(ClassFile.RETURN);
+    }
+
+    // push a buffered stream (in print if not null) on the file stream of
+    // FileDescriptor.descriptor
+    private static void genStream(ClassFile.Method code, String print, String buffered,
+                                  String file, String descriptor, String base) {
+        if (print != null) {
+            code.newObject(print);
+            code.op(ClassFile.DUP);
+        }
+        code.newObject(buffered);
+        code.op(ClassFile.DUP);
+        code.newObject(file);
+        code.op(ClassFile.DUP);
+        code.field(ClassFile.GETSTATIC, "java/io/FileDescriptor", descriptor,
+                   "Ljava/io/FileDescriptor;");
+        code.invoke(ClassFile.INVOKESPECIAL, file, "<init>", "(Ljava/io/FileDescriptor;)V");
+        code.push(BUFFER);
+        code.invoke(ClassFile.INVOKESPECIAL, buffered, "<init>", "(L" + base + ";I)V");
+        if (print != null) {
+            code.push(0);   // no autoflush
+            code.invoke(ClassFile.INVOKESPECIAL, print, "<init>", "(Ljava/io/OutputStream;Z)V");
+        }
+    }
+
+    // $getint: skip to the next digits, a '-' just before them making the
+    // int negative, then read them; in the slots the byte read, the int
+    // and its sign
+    private void genGetInt(ClassFile.Method code) {
+        final int c = 0, n = 1, negative = 2;
+        code.setLocals(3);
+        for (int slot = 0; slot < 3; slot++) {
+            code.push(0);
+            code.store(slot);
+        }
+        ClassFile.Label skip = new ClassFile.Label();
+        ClassFile.Label other = new ClassFile.Label();
+        ClassFile.Label notMinus = new ClassFile.Label();
+        ClassFile.Label digit = new ClassFile.Label();
+        ClassFile.Label end = new ClassFile.Label();
+        ClassFile.Label positive = new ClassFile.Label();
+        code.bind(skip);
+        genRead(code, c);
+        code.load(c);
+        code.jump(ClassFile.IFLT, end);
+        genIfDigit(code, c, digit, other);
+        code.bind(other);
+        code.load(c);
+        code.push('-');
+        code.jump(ClassFile.IF_ICMPNE, notMinus);
+        code.push(1);
+        code.store(negative);
+        code.jump(ClassFile.GOTO, skip);
+        code.bind(notMinus);
+        code.push(0);
+        code.store(negative);
+        code.jump(ClassFile.GOTO, skip);
+        code.bind(digit);
+        code.load(n);
+        code.push(10);
+        code.op(ClassFile.IMUL);
+        code.load(c);
+        code.op(ClassFile.IADD);
+        code.push('0');
+        code.op(ClassFile.ISUB);
+        code.store(n);
+        genRead(code, c);
+        genIfDigit(code, c, digit, end);
+        code.bind(end);
+        code.load(negative);
+        code.jump(ClassFile.IFEQ, positive);
+        code.load(n);
+        code.op(ClassFile.INEG);
+        code.op(ClassFile.IRETURN);
+        code.bind(positive);
+        code.load(n);
+        code.op(ClassFile.IRETURN);
+    }
+
+    // jump to digit if the byte in the slot is a digit, else to other
+    private static void genIfDigit(ClassFile.Method code, int slot, ClassFile.Label digit,
+                                   ClassFile.Label other) {
+        code.load(slot);
+        code.push('0');
+        code.jump(ClassFile.IF_ICMPLT, other);
+        code.load(slot);
+        code.push('9');
+        code.jump(ClassFile.IF_ICMPLE, digit);
+        code.jump(ClassFile.GOTO, other);
+    }
+
+    // the next byte of the input (-1 at its end) in the slot
+    private void genRead(ClassFile.Method code, int slot) {
+        code.field(ClassFile.GETSTATIC, classFile.name(), IN, "L" + INPUT_STREAM + ";");
+        code.invoke(ClassFile.INVOKEVIRTUAL, INPUT_STREAM, "read", "()I");
+        code.store(slot);
+    }
+}
@@ -0,0 +1,130 @@
+package codegen;
+
+import ast.*;
+import symtable.*;
+
+/**
+ * Pass giving its offset in the frame to each local variable, and laying
+ * out the structs. The argument of the walk is the next free offset, and
+ * each node pushes the next free offset after it.
+ *
+ * The fields of a struct follow each other in the order declared, from
+ * offset 0, a field of struct type taking the size of its struct inline;
+ * the size of the struct is set in its StructDefInfo. A struct variable
+ * is addressed by its first byte, the lowest: a local struct takes the
+ * offset of its last word, so that -offset(FP) is its address, and a
+ * field is then at its offset from there.
+ */
+public class OffsetResolver extends AST.VisitorWalk implements Pass {
+
+    private int offset;
+
+    public String name() {
+        return "resolve-offset";
+    }
+
+    public void begin() {
+        offset = 0;
+    }
+
+    public AST.DeclNode run(AST.DeclNode decl) {
+        walk(decl, offset);
+        offset = popOffset();
+        return decl;
+    }
+
+    private int popOffset() {
+        return (Integer) pop();
+    }
+
+    protected void defaultVisit(AST.ASTnode node) {
+        push(arg());
+    }
+
+    public void visitDeclListNode(AST.DeclListNode node) {
+        push(arg());
+        for (AST.DeclNode decl : node.getList()) {
+            then(() -> visit(decl, popOffset()));
+        }
+    }
+
+    public void visitFnBodyNode(AST.FnBodyNode node) {
+        visitBlock(node.declList(), node.stmtList(), arg());
+    }
+
+    private void visitBlock(AST.DeclListNode declList, AST.StmtListNode stmtList,
+                            int offset) {
+        visit(declList, offset);
+        then(() -> visit(stmtList, popOffset()));
+    }
+
+    public void visitStmtListNode(AST.StmtListNode node) {
+        int offset = arg();
+        for (AST.StmtNode stmt : node.getList()) {
+            visit(stmt, offset);
+            then(() -> popOffset());
+        }
+        then(() -> push(offset));
+    }
+
+    /**
+     * The bytes taken by a variable or a field: those of its struct, or a
+     * word
+     */
+    public static int size(SymInfo info) {
+        if (info instanceof StructInfo) {
+            return ((StructInfo) info).getSize();
+        }
+        return 4;
+    }
+
+    public void visitVarDeclNode(AST.VarDeclNode node) {
+        SymInfo info = node.getMyId().info();
+        if(info.isGlobal()){
+            push(arg());
+        }
+        else{
+            info.setOffset(arg() + size(info) - 4);
+            push(arg() + size(info));
+        }
+    }
+
+    public void visitStructDeclNode(AST.StructDeclNode node) {
+        // a struct is declared before the structs using it, so their
+        // fields of its type find its size already set
+        int size = 0;
+        for (AST.DeclNode decl : node.declList().getList()) {
+            SymInfo info = ((AST.VarDeclNode) decl).getMyId().info();
+            if (info != null) {
+                info.setOffset(size);
+                size += size(info);
+            }
+        }
+        if (node.idNode().info() instanceof StructDefInfo) {
+            ((StructDefInfo) node.idNode().info()).setSize(size);
+        }
+        push(arg());
+    }
+
+    public void visitFnDeclNode(AST.FnDeclNode node) {
+        visit(node.body(), 8);
+    }
+
+    public void visitFormalDeclNode(AST.FormalDeclNode node) {
+        node.idNode().info().setOffset(arg());
+        push(arg() + 4);
+    }
+
+    public void visitIfStmtNode(AST.IfStmtNode node) {
+        visitBlock(node.declList(), node.stmtList(), arg());
+    }
+
+    public void visitIfElseStmtNode(AST.IfElseStmtNode node) {
+        visitBlock(node.thenDeclList(), node.thenStmtList(), arg());
+        then(() -> visitBlock(node.elseDeclList(), node.elseStmtList(), popOffset()));
+    }
+
+    public void visitWhileStmtNode(AST.WhileStmtNode node) {
+        visitBlock(node.declList(), node.stmtList(), arg());
+    }
+}
@@ -0,0 +1,461 @@
+package codegen;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A writer scheduling the instructions of the code written through it,
+ * for the pipeline of the MIPS R2000-R3000: the result of a load is
+ * available after one more instruction (the load delay slot), that of a
+ * mult after about 12 cycles and that of a div after about 35; an
+ * instruction waits for its operands.
+ *
+ * The code is cut into basic blocks at the labels, the directives and
+ * the branches, jumps, calls and syscalls (each ending its block), and
+ * into windows of at most WINDOW instructions, so that the code is
+ * written as it comes. The instructions of a window are list scheduled:
+ * in the order of their dependences (on registers, HI and LO, and on
+ * memory, two accesses from the same base register at different offsets
+ * being independent), the one on the longest path to the end of the
+ * block first among those whose operands are ready, so that the loads
+ * and multiplications start early and their results are not waited for.
+ * The instruction ending the block stays last. The nop instructions are
+ * dropped.
+ *
+ * By default the branches are left to the assembler, which fills their
+ * delay slot (with a nop) as for the synthetic branches of SPIM and
+ * MARS. With fillDelaySlots, an instruction of the block the branch does
+ * not depend on is moved to its delay slot, between .set noreorder and
+ * .set reorder; it must be a single machine instruction, and not a load,
+ * whose delay slot would be in the next block.
+ */
+class Scheduler extends FilterWriter {
+
+    private static final int WINDOW = 64;       // instructions scheduled together
+    private static final int LOAD_LATENCY = 2;
+    private static final int MULT_LATENCY = 12;
+    private static final int DIV_LATENCY = 35;
+    private static final String HILO = "hilo";  // the registers HI and LO
+
+    private static final Set<String> BRANCHES = set(
+        "b", "j", "jr", "jal", "jalr", "beq", "bne", "bgez", "bgtz", "blez",
+        "bltz", "beqz", "bnez", "blt", "bgt", "ble", "bge");
+    // the instructions writing their first operand
+    private static final Set<String> WRITES_FIRST = set(
+        "add", "addu", "addi", "addiu", "sub", "subu", "and", "andi", "or",
+        "ori", "xor", "xori", "nor", "slt", "slti", "sltu", "sltiu", "sll",
+        "srl", "sra", "sllv", "srlv", "srav", "seq", "sne", "sgt", "sge",
+        "sle", "mul", "rem", "negu", "neg", "not", "move", "li", "lui", "la",
+        "lw", "mfhi", "mflo");
+    // the machine instructions (not macros) that may fill a delay slot,
+    // with immediates of 16 bits
+    private static final Set<String> SINGLE = set(
+        "add", "addu", "addi", "addiu", "sub", "subu", "and", "andi", "or",
+        "ori", "xor", "xori", "nor", "slt", "slti", "sltu", "sltiu", "sll",
+        "srl", "sra", "sllv", "srlv", "srav", "negu", "move", "li", "mfhi",
+        "mflo", "sw");
+
+    private static Set<String> set(String... ops) {
+        return new HashSet<String>(Arrays.asList(ops));
+    }
+
+    // an instruction of the window
+    private static class Insn {
+        String line;
+        String op;
+        List<String> args;
+        Set<String> uses = new HashSet<String>();
+        Set<String> defs = new HashSet<String>();
+        int latency = 1;
+        boolean load;
+        boolean store;
+        String base;        // of the memory operand: a register or a label
+        int version;        // of the base register in the window
+        int offset;
+        // for the scheduling
+        int index;
+        int height;         // cycles to the end of the block
+        int ready;          // cycle its operands are ready
+        int preds;          // not scheduled yet
+        List<Insn> succs = new ArrayList<Insn>();
+        List<Integer> latencies = new ArrayList<Integer>();
+    }
+
+    private boolean fillDelaySlots;
+    private StringBuilder line = new StringBuilder();
+    private List<Insn> window = new ArrayList<Insn>();
+    private Map<String, Integer> versions = new HashMap<String, Integer>();
+
+    Scheduler(Writer out, boolean fillDelaySlots) {
+        super(out);
+        this.fillDelaySlots = fillDelaySlots;
+    }
+
+    public void write(int c) throws IOException {
+        see((char) c);
+    }
+
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int k = off; k < off + len; k++) {
+            see(cbuf[k]);
+        }
+    }
+
+    public void write(String str, int off, int len) throws IOException {
+        for (int k = off; k < off + len; k++) {
+            see(str.charAt(k));
+        }
+    }
+
+    public void flush() throws IOException {
+        schedule(null);
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    private void see(char c) throws IOException {
+        if (c != '\n') {
+            line.append(c);
+            return;
+        }
+        String text = line.toString();
+        line.setLength(0);
+        Insn insn = parse(text);
+        if (insn == null) {
+            schedule(null);
+            out.write(text + "\n");
+        }
+        else if (insn.op.equals("nop")) {
+            return;
+        }
+        else if (BRANCHES.contains(insn.op) || insn.op.equals("syscall")) {
+            schedule(insn);
+        }
+        else {
+            window.add(insn);
+            for (String reg : insn.defs) {
+                versions.merge(reg, 1, Integer::sum);
+            }
+            if (window.size() == WINDOW) {
+                schedule(null);
+            }
+        }
+    }
+
+    // the instruction of a line, null if it is not an instruction or
+    // one the scheduler does not know
+    private Insn parse(String text) {
+        if (!text.startsWith("\t")) {
+            return null;
+        }
+        String code = text.substring(1);
+        int comment = code.indexOf('#');
+        if (comment >= 0) {
+            code = code.substring(0, comment);
+        }
+        code = code.trim();
+        if (code.isEmpty() || code.startsWith(".")) {
+            return null;
+        }
+        Insn insn = new Insn();
+        insn.line = text;
+        String[] parts = code.split("\\s+", 2);
+        insn.op = parts[0];
+        insn.args = new ArrayList<String>();
+        if (parts.length > 1) {
+            for (String arg : parts[1].split(",")) {
+                insn.args.add(arg.trim());
+            }
+        }
+        String op = insn.op;
+        List<String> args = insn.args;
+        if (op.equals("nop")) {
+            return insn;
+        }
+        if (op.equals("syscall")) {
+            insn.uses.add(Codegen.V0);
+            insn.uses.add(Codegen.A0);
+            insn.defs.add(Codegen.V0);
+            return insn;
+        }
+        if (BRANCHES.contains(op)) {
+            for (String arg : args) {
+                use(insn, arg);
+            }
+            if (op.equals("jal") || op.equals("jalr")) {
+                insn.defs.add(Codegen.RA);
+            }
+            return insn;
+        }
+        boolean divide = op.equals("div") || op.equals("divu");
+        if (op.equals("mult") || op.equals("multu") || (divide && args.size() == 2)) {
+            for (String arg : args) {
+                use(insn, arg);
+            }
+            insn.defs.add(HILO);
+            insn.latency = divide ? DIV_LATENCY : MULT_LATENCY;
+            return insn;
+        }
+        if (op.equals("sw")) {
+            if (args.size() != 2) {
+                return null;
+            }
+            use(insn, args.get(0));
+            use(insn, args.get(1));
+            insn.store = true;
+            memory(insn, args.get(1));
+            return insn;
+        }
+        if (!(WRITES_FIRST.contains(op) || divide) || args.isEmpty()) {
+            return null;
+        }
+        if (!isRegister(args.get(0))) {
+            return null;
+        }
+        if (!args.get(0).equals("$zero")) {
+            insn.defs.add(args.get(0));
+        }
+        for (String arg : args.subList(1, args.size())) {
+            use(insn, arg);
+        }
+        if (op.equals("lw")) {
+            if (args.size() != 2) {
+                return null;
+            }
+            insn.load = true;
+            insn.latency = LOAD_LATENCY;
+            memory(insn, args.get(1));
+        }
+        else if (op.equals("mfhi") || op.equals("mflo")) {
+            insn.uses.add(HILO);
+        }
+        else if (op.equals("mul")) {
+            insn.defs.add(HILO);
+            insn.latency = MULT_LATENCY;
+        }
+        else if (divide || op.equals("rem")) {
+            insn.defs.add(HILO);
+            insn.latency = DIV_LATENCY;
+        }
+        return insn;
+    }
+
+    private static boolean isRegister(String arg) {
+        return arg.startsWith("$");
+    }
+
+    // the base register of offset(reg), null for another operand
+    private static String baseOf(String arg) {
+        int open = arg.indexOf('(');
+        return open >= 0 && arg.endsWith(")") ? arg.substring(open + 1, arg.length() - 1)
+                                              : null;
+    }
+
+    private static void use(Insn insn, String arg) {
+        String reg = isRegister(arg) ? arg : baseOf(arg);
+        if (reg != null && !reg.equals("$zero")) {
+            insn.uses.add(reg);
+        }
+    }
+
+    private void memory(Insn insn, String arg) {
+        String base = baseOf(arg);
+        if (base == null) {
+            insn.base = arg;    // a label
+            insn.version = -1;
+            return;
+        }
+        insn.base = base;
+        Integer version = versions.get(base);
+        insn.version = version == null ? 0 : version;
+        try {
+            String offset = arg.substring(0, arg.indexOf('('));
+            insn.offset = offset.isEmpty() ? 0 : Integer.parseInt(offset);
+        } catch (NumberFormatException ex) {
+            insn.base = null;   // unknown address
+        }
+    }
+
+    // true if the two accesses to memory may touch the same word
+    private static boolean mayAlias(Insn a, Insn b) {
+        if (a.base == null || b.base == null) {
+            return true;
+        }
+        if (a.version < 0 || b.version < 0) {
+            // two different labels are different variables
+            return a.version != b.version || a.base.equals(b.base);
+        }
+        return !a.base.equals(b.base) || a.version != b.version
+            || Math.abs(a.offset - b.offset) < 4;
+    }
+
+    // the latency of the dependence of b on a, -1 if there is none
+    private static int dependence(Insn a, Insn b) {
+        int latency = -1;
+        if (!Collections.disjoint(a.defs, b.uses)) {
+            latency = a.latency;
+        }
+        if (!Collections.disjoint(a.defs, b.defs)) {
+            latency = Math.max(latency, 1);
+        }
+        if (!Collections.disjoint(a.uses, b.defs)) {
+            latency = Math.max(latency, 0);
+        }
+        if ((a.store || b.store) && (a.load || a.store) && (b.load || b.store)
+            && mayAlias(a, b)) {
+            latency = Math.max(latency, a.store && b.load ? 1 : 0);
+        }
+        return latency;
+    }
+
+    // write the window scheduled, then the instruction ending the block
+    private void schedule(Insn end) throws IOException {
+        List<Insn> insns = new ArrayList<Insn>(window);
+        window.clear();
+        versions.clear();
+        if (end != null) {
+            insns.add(end);
+        }
+        if (insns.isEmpty()) {
+            return;
+        }
+        int n = insns.size();
+        for (int i = 0; i < n; i++) {
+            insns.get(i).index = i;
+        }
+        for (int i = 0; i < n; i++) {
+            Insn a = insns.get(i);
+            for (int j = i + 1; j < n; j++) {
+                Insn b = insns.get(j);
+                int latency = dependence(a, b);
+                if (latency < 0 && b == end) {
+                    latency = 0;    // stays last
+                }
+                if (latency >= 0) {
+                    a.succs.add(b);
+                    a.latencies.add(latency);
+                    b.preds++;
+                }
+            }
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            Insn a = insns.get(i);
+            for (int k = 0; k < a.succs.size(); k++) {
+                a.height = Math.max(a.height, a.latencies.get(k) + a.succs.get(k).height);
+            }
+        }
+        // list scheduling, one instruction per cycle
+        List<Insn> order = new ArrayList<Insn>();
+        List<Insn> ready = new ArrayList<Insn>();
+        for (Insn insn : insns) {
+            if (insn.preds == 0) {
+                ready.add(insn);
+            }
+        }
+        int cycle = 0;
+        while (!ready.isEmpty()) {
+            Insn best = null;
+            for (Insn insn : ready) {
+                if (best == null || better(insn, best, cycle)) {
+                    best = insn;
+                }
+            }
+            ready.remove(best);
+            order.add(best);
+            cycle = Math.max(cycle, best.ready) + 1;
+            for (int k = 0; k < best.succs.size(); k++) {
+                Insn succ = best.succs.get(k);
+                succ.ready = Math.max(succ.ready, cycle - 1 + best.latencies.get(k));
+                if (--succ.preds == 0) {
+                    ready.add(succ);
+                }
+            }
+        }
+        Insn slot = null;
+        if (fillDelaySlots && end != null && BRANCHES.contains(end.op)) {
+            slot = delaySlot(order, end);
+        }
+        for (Insn insn : order) {
+            if (insn == end) {
+                if (slot != null) {
+                    out.write("\t.set noreorder\n");
+                    out.write(end.line + "\n");
+                    out.write(slot.line + "\n");
+                    out.write("\t.set reorder\n");
+                    continue;
+                }
+            }
+            if (insn != slot) {
+                out.write(insn.line + "\n");
+            }
+        }
+    }
+
+    // true if a is to be scheduled before b at the cycle: ready first,
+    // then on the longest path, then first in the code
+    private static boolean better(Insn a, Insn b, int cycle) {
+        boolean readyA = a.ready <= cycle;
+        boolean readyB = b.ready <= cycle;
+        if (readyA != readyB) {
+            return readyA;
+        }
+        if (!readyA && a.ready != b.ready) {
+            return a.ready < b.ready;
+        }
+        if (a.height != b.height) {
+            return a.height > b.height;
+        }
+        return a.index < b.index;
+    }
+
+    // an instruction of the block that can be moved to the delay slot of
+    // the branch ending it, null if there is none; not one separating a
+    // load from the use of its result
+    private static Insn delaySlot(List<Insn> order, Insn branch) {
+        for (int k = order.size() - 2; k >= 0; k--) {
+            Insn insn = order.get(k);
+            if (insn.succs.size() == 1 && isSingle(insn)
+                && Collections.disjoint(insn.defs, branch.uses)
+                && Collections.disjoint(insn.uses, branch.defs)
+                && Collections.disjoint(insn.defs, branch.defs)
+                && !(k > 0 && order.get(k - 1).load
+                     && !Collections.disjoint(order.get(k - 1).defs,
+                                              order.get(k + 1).uses))) {
+                return insn;
+            }
+        }
+        return null;
+    }
+
+    // true if the instruction is a machine instruction, not a macro
+    private static boolean isSingle(Insn insn) {
+        if (!SINGLE.contains(insn.op) || insn.load) {
+            return false;
+        }
+        for (String arg : insn.args) {
+            if (isRegister(arg)) {
+                continue;
+            }
+            String value = arg;
+            if (baseOf(arg) != null) {
+                value = arg.substring(0, arg.indexOf('('));
+                if (value.isEmpty()) {
+                    continue;
+                }
+            }
+            try {
+                int immediate = Integer.parseInt(value);
+                if (immediate < -32768 || immediate > 32767) {
+                    return false;
+                }
+            } catch (NumberFormatException ex) {
+                return false;   // a label
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,187 @@
+package codegen;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Code for the multiplication and division of T0 by a constant without
+ * the slow mult and div instructions (mult takes about 12 cycles on the
+ * R2000-R3000, div about 35), the result being left in T0 and T1 used as
+ * scratch register.
+ *
+ * A multiplication is done with shifts and adds, following the digits of
+ * the constant in non-adjacent form (in -1, 0, 1, no two adjacent ones
+ * nonzero) from the highest: x * 14 is ((x << 4) - x) << 1... when it
+ * takes at most MAX_STEPS instructions.
+ *
+ * A division by a power of two is an arithmetic shift, after adding 2^k-1
+ * to a negative dividend so that the quotient is rounded toward zero as
+ * div does. A division by another constant is a multiplication by its
+ * "magic" reciprocal, keeping the high word of the product (Granlund and
+ * Montgomery, as in Hacker's Delight 10-1). A division by zero is left to
+ * div.
+ */
+class StrengthReduction {
+
+    private static final int MAX_STEPS = 5;
+
+    // to hide the implicit constructor
+    private StrengthReduction() {}
+
+    /**
+     * T0 = T0 * c; false if no code is generated, a mult being cheaper
+     */
+    static boolean genMultiply(PrintWriter p, int c) {
+        boolean negative = c < 0;
+        long abs = Math.abs((long) c);
+        if (abs == 0) {
+            Codegen.generate(p, "li", Codegen.T0, 0);
+            return true;
+        }
+        List<Integer> digits = digits(abs);
+        // Horner's rule from the highest digit (a 1): a shift and an add
+        // for each other nonzero digit, and a shift for the last zeros
+        int adds = 0;
+        for (int k = digits.size() - 2; k >= 0; k--) {
+            adds += digits.get(k) != 0 ? 1 : 0;
+        }
+        int steps = (adds > 0 ? 1 + 2 * adds : 0)
+            + (digits.get(0) == 0 ? 1 : 0) + (negative ? 1 : 0);
+        if (steps > MAX_STEPS) {
+            return false;
+        }
+        if (adds > 0) {
+            Codegen.generate(p, "move", Codegen.T1, Codegen.T0);
+        }
+        int shift = 0;
+        for (int k = digits.size() - 2; k >= 0; k--) {
+            shift++;
+            int digit = digits.get(k);
+            if (digit != 0) {
+                Codegen.generate(p, "sll", Codegen.T0, Codegen.T0, shift);
+                Codegen.generate(p, digit > 0 ? "addu" : "subu",
+                                 Codegen.T0, Codegen.T0, Codegen.T1);
+                shift = 0;
+            }
+        }
+        if (shift > 0) {
+            Codegen.generate(p, "sll", Codegen.T0, Codegen.T0, shift);
+        }
+        if (negative) {
+            Codegen.generate(p, "negu", Codegen.T0, Codegen.T0);
+        }
+        return true;
+    }
+
+    // the digits of n > 0 in non-adjacent form, the lowest first
+    private static List<Integer> digits(long n) {
+        List<Integer> digits = new ArrayList<Integer>();
+        while (n > 0) {
+            int digit = 0;
+            if ((n & 1) != 0) {
+                digit = (n & 3) == 3 ? -1 : 1;
+                n -= digit;
+            }
+            digits.add(digit);
+            n >>= 1;
+        }
+        return digits;
+    }
+
+    /**
+     * T0 = T0 / d, rounded toward zero; false if no code is generated (d
+     * is 0)
+     */
+    static boolean genDivide(PrintWriter p, int d) {
+        if (d == 0) {
+            return false;
+        }
+        if (d == 1) {
+            return true;
+        }
+        if (d == -1) {
+            Codegen.generate(p, "negu", Codegen.T0, Codegen.T0);
+            return true;
+        }
+        if (d == Integer.MIN_VALUE) {
+            // 1 for the dividend MIN_VALUE, 0 for the others
+            Codegen.generate(p, "li", Codegen.T1, d);
+            Codegen.generate(p, "seq", Codegen.T0, Codegen.T0, Codegen.T1);
+            return true;
+        }
+        int abs = Math.abs(d);
+        if ((abs & (abs - 1)) == 0) {
+            int k = Integer.numberOfTrailingZeros(abs);
+            if (k > 1) {
+                Codegen.generate(p, "sra", Codegen.T1, Codegen.T0, 31);
+                Codegen.generate(p, "srl", Codegen.T1, Codegen.T1, 32 - k);
+            }
+            else {
+                Codegen.generate(p, "srl", Codegen.T1, Codegen.T0, 31);
+            }
+            Codegen.generate(p, "addu", Codegen.T0, Codegen.T0, Codegen.T1);
+            Codegen.generate(p, "sra", Codegen.T0, Codegen.T0, k);
+            if (d < 0) {
+                Codegen.generate(p, "negu", Codegen.T0, Codegen.T0);
+            }
+            return true;
+        }
+        int[] magic = magic(d);
+        int m = magic[0];
+        Codegen.generate(p, "li", Codegen.T1, m);
+        Codegen.generate(p, "mult", Codegen.T0, Codegen.T1);
+        Codegen.generate(p, "mfhi", Codegen.T1);
+        if (d > 0 && m < 0) {
+            Codegen.generate(p, "addu", Codegen.T1, Codegen.T1, Codegen.T0);
+        }
+        else if (d < 0 && m > 0) {
+            Codegen.generate(p, "subu", Codegen.T1, Codegen.T1, Codegen.T0);
+        }
+        if (magic[1] > 0) {
+            Codegen.generate(p, "sra", Codegen.T1, Codegen.T1, magic[1]);
+        }
+        // add 1 to a negative quotient
+        Codegen.generate(p, "srl", Codegen.T0, Codegen.T1, 31);
+        Codegen.generate(p, "addu", Codegen.T0, Codegen.T1, Codegen.T0);
+        return true;
+    }
+
+    /**
+     * The magic number and the shift of the division by d (2 <= |d| and
+     * not a power of two), computed in unsigned 32-bit arithmetic
+     */
+    static int[] magic(int d) {
+        final long two31 = 0x80000000L;
+        final long mask = 0xffffffffL;
+        long ad = Math.abs((long) d);
+        long t = two31 + ((d & mask) >>> 31);
+        long anc = t - 1 - t % ad;      // |nc|
+        int shift = 31;
+        long q1 = two31 / anc;          // 2^p / |nc|
+        long r1 = two31 - q1 * anc;
+        long q2 = two31 / ad;           // 2^p / |d|
+        long r2 = two31 - q2 * ad;
+        long delta;
+        do {
+            shift++;
+            q1 = 2 * q1 & mask;
+            r1 = 2 * r1 & mask;
+            if (r1 >= anc) {
+                q1 = q1 + 1 & mask;
+                r1 = r1 - anc & mask;
+            }
+            q2 = 2 * q2 & mask;
+            r2 = 2 * r2 & mask;
+            if (r2 >= ad) {
+                q2 = q2 + 1 & mask;
+                r2 = r2 - ad & mask;
+            }
+            delta = ad - r2;
+        } while (q1 < delta || (q1 == delta && r1 == 0));
+        long m = q2 + 1;
+        if (d < 0) {
+            m = -m;
+        }
+        return new int[] { (int) m, shift - 32 };
+    }
+}
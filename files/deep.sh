@@ -0,0 +1,33 @@
+#!/bin/sh
+# write the deeply nested programs of check-deep to DIR: sh deep.sh DIR [DEPTH]
+#   parens.cmm  x = ((...(1)...));
+#   minus.cmm   x = - - ... - 1;
+#   plus.cmm    x = 1 + 1 + ... + 1;
+#   assign.cmm  x = x = ... = 1;
+#   blocks.cmm  if (x == 1) { while (x == 1) { if ... { x = 2; } ... } }
+dir=$1
+depth=${2:-1000000}
+awk -v n=$depth 'BEGIN {
+    printf "void main() {\n    int x;\n    x = ";
+    for (i = 0; i < n; i++) printf "(";
+    printf "1";
+    for (i = 0; i < n; i++) printf ")";
+    printf ";\n    cout << x;\n}\n" }' > $dir/parens.cmm
+awk -v n=$depth 'BEGIN {
+    printf "void main() {\n    int x;\n    x = ";
+    for (i = 0; i < n; i++) printf "- ";
+    printf "1;\n    cout << x;\n}\n" }' > $dir/minus.cmm
+awk -v n=$depth 'BEGIN {
+    printf "void main() {\n    int x;\n    x = 1";
+    for (i = 1; i < n; i++) printf " + 1";
+    printf ";\n    cout << x;\n}\n" }' > $dir/plus.cmm
+awk -v n=$depth 'BEGIN {
+    printf "void main() {\n    int x;\n    ";
+    for (i = 0; i < n; i++) printf "x = ";
+    printf "1;\n    cout << x;\n}\n" }' > $dir/assign.cmm
+awk -v n=$depth 'BEGIN {
+    printf "void main() {\n    int x;\n    x = 1;\n";
+    for (i = 0; i < n; i++) printf (i % 2 ? "while (x == 1) {\n" : "if (x == 1) {\n");
+    printf "x = 2;\n";
+    for (i = 0; i < n; i++) printf "}\n";
+    printf "    cout << x;\n}\n" }' > $dir/blocks.cmm
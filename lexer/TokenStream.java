@@ -0,0 +1,152 @@
+package lexer;
+
+import java.io.*;
+import java.util.*;
+import java_cup.runtime.*;
+import parser.sym;
+
+/**
+ * The TokenStream class holds a whole pre-lexed file in parallel int arrays
+ * instead of one Symbol (and one TokenVal) per token.
+ *
+ * For the i-th token the arrays hold:
+ *     kind   - the token code from parser.sym
+ *     line   - line number (same value as TokenVal.linenum)
+ *     column - character number (same value as TokenVal.charnum)
+ *     value  - INTLITERAL: the int value itself
+ *              ID, STRINGLITERAL: an index into the interned string table
+ *              other tokens: unused (0)
+ *
+ * The last token of a stream is always sym.EOF.
+ */
+public class TokenStream {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private int[] kinds;
+    private int[] lines;
+    private int[] columns;
+    private int[] values;
+    private int size;
+
+    // interned side table for identifier and string literal values
+    private List<String> strings;
+    private Map<String,Integer> stringIndex;
+
+    private TokenStream() {
+        kinds = new int[INITIAL_CAPACITY];
+        lines = new int[INITIAL_CAPACITY];
+        columns = new int[INITIAL_CAPACITY];
+        values = new int[INITIAL_CAPACITY];
+        size = 0;
+        strings = new ArrayList<String>();
+        stringIndex = new HashMap<String,Integer>();
+    }
+
+    /**
+     * Tokenize the whole input with the generated scanner and return the
+     * resulting stream (the Symbols produced by the scanner are dropped as
+     * soon as they are copied into the arrays)
+     */
+    public static TokenStream lex(Reader in) throws IOException {
+        TokenStream ts = new TokenStream();
+        Yylex scanner = new Yylex(in);
+        Symbol s;
+        do {
+            s = scanner.next_token();
+            ts.add(s);
+        } while (s.sym != sym.EOF);
+        return ts;
+    }
+
+    private void add(Symbol s) {
+        if (size == kinds.length) {
+            int capacity = kinds.length * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        kinds[size] = s.sym;
+        if (s.value instanceof TokenVal) {
+            TokenVal tv = (TokenVal) s.value;
+            lines[size] = tv.linenum;
+            columns[size] = tv.charnum;
+            if (tv instanceof IntLitTokenVal) {
+                values[size] = ((IntLitTokenVal) tv).intVal;
+            }
+            else if (tv instanceof IdTokenVal) {
+                values[size] = intern(((IdTokenVal) tv).idVal);
+            }
+            else if (tv instanceof StrLitTokenVal) {
+                values[size] = intern(((StrLitTokenVal) tv).strVal);
+            }
+        }
+        size++;
+    }
+
+    private int intern(String str) {
+        Integer index = stringIndex.get(str);
+        if (index == null) {
+            index = strings.size();
+            strings.add(str);
+            stringIndex.put(str, index);
+        }
+        return index;
+    }
+
+    /**
+     * Number of tokens in the stream (including the final EOF)
+     */
+    public int size() {
+        return size;
+    }
+
+    public int kind(int i) {
+        return kinds[i];
+    }
+
+    public int line(int i) {
+        return lines[i];
+    }
+
+    public int column(int i) {
+        return columns[i];
+    }
+
+    /**
+     * Value of an INTLITERAL token
+     */
+    public int intVal(int i) {
+        return values[i];
+    }
+
+    /**
+     * Value of an ID or STRINGLITERAL token (interned)
+     */
+    public String strVal(int i) {
+        return strings.get(values[i]);
+    }
+
+    /**
+     * Build the Symbol the generated scanner would have returned for the
+     * i-th token (used by the adapter feeding the CUP parser)
+     */
+    public Symbol symbol(int i) {
+        switch (kinds[i]) {
+            case sym.EOF:
+                return new Symbol(sym.EOF);
+            case sym.ID:
+                return new Symbol(sym.ID,
+                                  new IdTokenVal(lines[i], columns[i], strVal(i)));
+            case sym.INTLITERAL:
+                return new Symbol(sym.INTLITERAL,
+                                  new IntLitTokenVal(lines[i], columns[i], values[i]));
+            case sym.STRINGLITERAL:
+                return new Symbol(sym.STRINGLITERAL,
+                                  new StrLitTokenVal(lines[i], columns[i], strVal(i)));
+            default:
+                return new Symbol(kinds[i], new TokenVal(lines[i], columns[i]));
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package lexer;
+
+import java_cup.runtime.*;
+import parser.sym;
+
+/**
+ * Adapter that lets the CUP parser read its tokens from a TokenStream.
+ * The scanner can be restricted to a range of the stream, in which case
+ * it returns EOF when it reaches the end of the range.
+ */
+public class TokenStreamScanner implements Scanner {
+
+    private TokenStream tokens;
+    private int pos;
+    private int end;
+
+    public TokenStreamScanner(TokenStream tokens) {
+        this(tokens, 0, tokens.size());
+    }
+
+    public TokenStreamScanner(TokenStream tokens, int start, int end) {
+        this.tokens = tokens;
+        this.pos = start;
+        this.end = end;
+    }
+
+    public Symbol next_token() {
+        if (pos >= end || tokens.kind(pos) == sym.EOF) {
+            return new Symbol(sym.EOF);
+        }
+        return tokens.symbol(pos++);
+    }
+}
@@ -0,0 +1,231 @@
+package opt;
+
+import java.util.*;
+import ast.*;
+import symtable.*;
+
+/**
+ * Analysis pass building the call graph of the program from the calls
+ * found in each function, and the functions reachable from main.
+ *
+ * It also finds the global variables read by the reachable functions. A
+ * global is not read by a store that can be dropped: x = e with e
+ * without side effects, x++ and x--. The globals are the variables
+ * declared at the top level: the fields of a struct, though in a global
+ * symbol table, are not (using one reads its struct variable). For a given function, it tells the
+ * globals it may read or assign, itself or through the functions it
+ * calls, even indirectly.
+ */
+public class CallGraph extends AST.VisitorWalk implements Pass {
+
+    private Map<SymInfo, List<SymInfo>> calls; // call sites in each function
+    private Map<SymInfo, Set<SymInfo>> reads;  // globals read by each function
+    private Map<SymInfo, Set<SymInfo>> assigns; // globals assigned by each one
+    private Set<SymInfo> globals; // declared so far
+    private SymInfo main;
+    private SymInfo current;
+
+    // computed at the end
+    private Set<SymInfo> reachable;
+    private Set<SymInfo> read;
+    private Map<SymInfo, Integer> sites;
+    private Map<SymInfo, Set<SymInfo>> mayRead;   // found so far
+    private Map<SymInfo, Set<SymInfo>> mayAssign;
+
+    public String name() {
+        return "call-graph";
+    }
+
+    public void begin() {
+        calls = new HashMap<SymInfo, List<SymInfo>>();
+        reads = new HashMap<SymInfo, Set<SymInfo>>();
+        assigns = new HashMap<SymInfo, Set<SymInfo>>();
+        globals = new HashSet<SymInfo>();
+        main = null;
+    }
+
+    public AST.DeclNode run(AST.DeclNode decl) {
+        if (decl instanceof AST.FnDeclNode) {
+            walk(decl);
+        }
+        else if (decl instanceof AST.VarDeclNode) {
+            globals.add(((AST.VarDeclNode) decl).getMyId().info());
+        }
+        return decl;
+    }
+
+    public boolean runsOnErrors() {
+        return false;
+    }
+
+    public void end() {
+        reachable = new HashSet<SymInfo>();
+        read = new HashSet<SymInfo>();
+        sites = new HashMap<SymInfo, Integer>();
+        Deque<SymInfo> work = new ArrayDeque<SymInfo>();
+        if (main != null) {
+            reachable.add(main);
+            work.push(main);
+        }
+        while (!work.isEmpty()) {
+            SymInfo fn = work.pop();
+            read.addAll(reads.get(fn));
+            for (SymInfo callee : calls.get(fn)) {
+                Integer count = sites.get(callee);
+                sites.put(callee, count == null ? 1 : count + 1);
+                if (reachable.add(callee)) {
+                    work.push(callee);
+                }
+            }
+        }
+        mayRead = new HashMap<SymInfo, Set<SymInfo>>();
+        mayAssign = new HashMap<SymInfo, Set<SymInfo>>();
+    }
+
+    /**
+     * true if the function can be called when main runs
+     */
+    public boolean isReachable(SymInfo fn) {
+        return reachable.contains(fn);
+    }
+
+    /**
+     * true if the variable is declared at the top level (not a field of a
+     * struct)
+     */
+    public boolean isGlobal(SymInfo info) {
+        return globals.contains(info);
+    }
+
+    /**
+     * true if a reachable function reads the global variable
+     */
+    public boolean isRead(SymInfo global) {
+        return read.contains(global);
+    }
+
+    /**
+     * The number of calls of the function in the reachable functions
+     */
+    public int callSites(SymInfo fn) {
+        Integer count = sites.get(fn);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * The globals the function or the functions it calls may read
+     */
+    public Set<SymInfo> mayRead(SymInfo fn) {
+        return closure(fn, reads, mayRead);
+    }
+
+    /**
+     * The globals the function or the functions it calls may assign
+     */
+    public Set<SymInfo> mayAssign(SymInfo fn) {
+        return closure(fn, assigns, mayAssign);
+    }
+
+    // the union of the sets of the functions fn calls, even indirectly,
+    // and its own
+    private Set<SymInfo> closure(SymInfo fn, Map<SymInfo, Set<SymInfo>> sets,
+                                 Map<SymInfo, Set<SymInfo>> found) {
+        Set<SymInfo> closure = found.get(fn);
+        if (closure != null) {
+            return closure;
+        }
+        closure = new HashSet<SymInfo>();
+        Set<SymInfo> seen = new HashSet<SymInfo>();
+        Deque<SymInfo> work = new ArrayDeque<SymInfo>();
+        seen.add(fn);
+        work.push(fn);
+        while (!work.isEmpty()) {
+            SymInfo caller = work.pop();
+            closure.addAll(sets.get(caller));
+            for (SymInfo callee : calls.get(caller)) {
+                if (seen.add(callee)) {
+                    work.push(callee);
+                }
+            }
+        }
+        found.put(fn, closure);
+        return closure;
+    }
+
+    public void visitFnDeclNode(AST.FnDeclNode node) {
+        current = node.idNode().info();
+        calls.put(current, new ArrayList<SymInfo>());
+        reads.put(current, new HashSet<SymInfo>());
+        assigns.put(current, new HashSet<SymInfo>());
+        if (node.idNode().name().equals("main")) {
+            main = current;
+        }
+        visit(node.body());
+    }
+
+    public void visitVarDeclNode(AST.VarDeclNode node) {
+    }
+
+    // the target of a store that can be dropped if it is not read
+    private boolean isGlobal(AST.ExpNode target) {
+        return target instanceof AST.IdNode && isGlobal(((AST.IdNode) target).info());
+    }
+
+    private void assigned(AST.ExpNode target) {
+        if (isGlobal(target)) {
+            assigns.get(current).add(((AST.IdNode) target).info());
+        }
+    }
+
+    public void visitAssignStmtNode(AST.AssignStmtNode node) {
+        AST.AssignNode assign = node.assign();
+        if (isGlobal(assign.lhs()) && Effects.of(assign.rhs()).isPure()) {
+            assigned(assign.lhs());
+            visit(assign.rhs());
+        }
+        else {
+            visitChildren(node);
+        }
+    }
+
+    public void visitAssignNode(AST.AssignNode node) {
+        assigned(node.lhs());
+        visitChildren(node);
+    }
+
+    public void visitPostIncStmtNode(AST.PostIncStmtNode node) {
+        assigned(node.exp());
+        if (!isGlobal(node.exp())) {
+            visitChildren(node);
+        }
+    }
+
+    public void visitPostDecStmtNode(AST.PostDecStmtNode node) {
+        assigned(node.exp());
+        if (!isGlobal(node.exp())) {
+            visitChildren(node);
+        }
+    }
+
+    public void visitReadStmtNode(AST.ReadStmtNode node) {
+        assigned(node.exp());
+        visitChildren(node);
+    }
+
+    public void visitIdNode(AST.IdNode node) {
+        if (isGlobal(node.info())) {
+            reads.get(current).add(node.info());
+        }
+    }
+
+    public void visitDotAccessExpNode(AST.DotAccessExpNode node) {
+        visit(node.lhs());
+    }
+
+    public void visitCallExpNode(AST.CallExpNode node) {
+        calls.get(current).add(node.idNode().info());
+        if (node.expList() != null) {
+            visit(node.expList());
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package opt;
+
+import java.util.*;
+import java.util.function.BinaryOperator;
+import ast.*;
+import symtable.*;
+
+/**
+ * Walk copying a block of code (declarations, statements, expressions).
+ *
+ * Each variable declared in the code copied gets a new symbol and name
+ * (see Temps), used by the copies of its IDs. The IDs of other variables
+ * can be given a new variable, or an expression whose copy replaces
+ * them; the others are linked to the same symbol as the original.
+ *
+ * Each node pushes its copy on the value stack after its children.
+ */
+public class Cloner extends AST.VisitorWalk {
+
+    private Map<SymInfo, AST.IdNode> vars;
+    private Map<SymInfo, AST.ExpNode> exps;
+
+    public Cloner() {
+        this(new IdentityHashMap<SymInfo, AST.IdNode>());
+    }
+
+    /**
+     * To copy the IDs of each key of vars with the ID of the variable it
+     * maps to (the variables declared in the code are added)
+     */
+    public Cloner(Map<SymInfo, AST.IdNode> vars) {
+        this(vars, new IdentityHashMap<SymInfo, AST.ExpNode>());
+    }
+
+    /**
+     * To replace the IDs of each key of exps by a copy of its expression
+     */
+    public Cloner(Map<SymInfo, AST.IdNode> vars, Map<SymInfo, AST.ExpNode> exps) {
+        this.vars = vars;
+        this.exps = exps;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends AST.ASTnode> T copy(T node) {
+        walk(node);
+        return (T) pop();
+    }
+
+    protected void defaultVisit(AST.ASTnode node) {
+        throw new UnsupportedOperationException("cannot copy " + node);
+    }
+
+    // the copies of n nodes pushed, in order
+    @SuppressWarnings("unchecked")
+    private <T> List<T> popList(int n) {
+        List<T> list = new ArrayList<T>(Collections.nCopies(n, (T) null));
+        for (int k = n - 1; k >= 0; k--) {
+            list.set(k, (T) pop());
+        }
+        return list;
+    }
+
+    private <T> T popNode() {
+        List<T> nodes = popList(1);
+        return nodes.get(0);
+    }
+
+    public void visitDeclListNode(AST.DeclListNode node) {
+        visitChildren(node);
+        int n = node.getList().size();
+        then(() -> push(new AST.DeclListNode(popList(n))));
+    }
+
+    public void visitStmtListNode(AST.StmtListNode node) {
+        visitChildren(node);
+        int n = node.getList().size();
+        then(() -> push(new AST.StmtListNode(popList(n))));
+    }
+
+    public void visitExpListNode(AST.ExpListNode node) {
+        visitChildren(node);
+        int n = node.getList().size();
+        then(() -> push(new AST.ExpListNode(popList(n))));
+    }
+
+    public void visitVarDeclNode(AST.VarDeclNode node) {
+        visit(node.typeNode());
+        then(() -> {
+            AST.TypeNode type = popNode();
+            AST.IdNode id = node.getMyId();
+            SymInfo info = id.info();
+            SymInfo copy = info instanceof StructInfo
+                ? new StructInfo(((StructInfo) info).getStructType())
+                : new SymInfo(info.getType());
+            AST.IdNode newId = Temps.rename(id, copy);
+            vars.put(info, newId);
+            push(new AST.VarDeclNode(type, newId, node.size()));
+        });
+    }
+
+    public void visitIntNode(AST.IntNode node) {
+        push(new AST.IntNode());
+    }
+
+    public void visitBoolNode(AST.BoolNode node) {
+        push(new AST.BoolNode());
+    }
+
+    public void visitVoidNode(AST.VoidNode node) {
+        push(new AST.VoidNode());
+    }
+
+    public void visitStructNode(AST.StructNode node) {
+        visit(node.idNode());
+        then(() -> push(new AST.StructNode(popNode())));
+    }
+
+    public void visitAssignStmtNode(AST.AssignStmtNode node) {
+        visitChildren(node);
+        then(() -> push(new AST.AssignStmtNode(popNode())));
+    }
+
+    public void visitPostIncStmtNode(AST.PostIncStmtNode node) {
+        visitChildren(node);
+        then(() -> push(new AST.PostIncStmtNode(popNode())));
+    }
+
+    public void visitPostDecStmtNode(AST.PostDecStmtNode node) {
+        visitChildren(node);
+        then(() -> push(new AST.PostDecStmtNode(popNode())));
+    }
+
+    public void visitReadStmtNode(AST.ReadStmtNode node) {
+        visitChildren(node);
+        then(() -> push(new AST.ReadStmtNode(popNode())));
+    }
+
+    public void visitWriteStmtNode(AST.WriteStmtNode node) {
+        visitChildren(node);
+        then(() -> push(new AST.WriteStmtNode(popNode())));
+    }
+
+    public void visitIfStmtNode(AST.IfStmtNode node) {
+        visit(node.exp());
+        visit(node.declList());
+        visit(node.stmtList());
+        then(() -> {
+            AST.StmtListNode stmtList = popNode();
+            AST.DeclListNode declList = popNode();
+            push(new AST.IfStmtNode(popNode(), declList, stmtList));
+        });
+    }
+
+    public void visitIfElseStmtNode(AST.IfElseStmtNode node) {
+        visit(node.exp());
+        visit(node.thenDeclList());
+        visit(node.thenStmtList());
+        visit(node.elseDeclList());
+        visit(node.elseStmtList());
+        then(() -> {
+            AST.StmtListNode elseStmtList = popNode();
+            AST.DeclListNode elseDeclList = popNode();
+            AST.StmtListNode thenStmtList = popNode();
+            AST.DeclListNode thenDeclList = popNode();
+            push(new AST.IfElseStmtNode(popNode(), thenDeclList, thenStmtList,
+                                        elseDeclList, elseStmtList));
+        });
+    }
+
+    public void visitWhileStmtNode(AST.WhileStmtNode node) {
+        visit(node.exp());
+        visit(node.declList());
+        visit(node.stmtList());
+        then(() -> {
+            AST.StmtListNode stmtList = popNode();
+            AST.DeclListNode declList = popNode();
+            push(new AST.WhileStmtNode(popNode(), declList, stmtList));
+        });
+    }
+
+    public void visitCallStmtNode(AST.CallStmtNode node) {
+        visitChildren(node);
+        then(() -> push(new AST.CallStmtNode(popNode())));
+    }
+
+    public void visitReturnStmtNode(AST.ReturnStmtNode node) {
+        visitChildren(node);
+        then(() -> {
+            AST.ExpNode exp = node.exp() == null ? null : popNode();
+            push(new AST.ReturnStmtNode(exp, node.charNum(), node.lineNum()));
+        });
+    }
+
+    public void visitIntLitNode(AST.IntLitNode node) {
+        push(new AST.IntLitNode(node.lineNum(), node.charNum(), node.intVal()));
+    }
+
+    public void visitStringLitNode(AST.StringLitNode node) {
+        push(new AST.StringLitNode(node.lineNum(), node.charNum(), node.strVal()));
+    }
+
+    public void visitTrueNode(AST.TrueNode node) {
+        push(new AST.TrueNode(node.lineNum(), node.charNum()));
+    }
+
+    public void visitFalseNode(AST.FalseNode node) {
+        push(new AST.FalseNode(node.lineNum(), node.charNum()));
+    }
+
+    public void visitIdNode(AST.IdNode node) {
+        SymInfo info = node.info();
+        AST.ExpNode exp = exps.get(info);
+        if (exp != null) {
+            push(new Cloner(vars).copy(exp));
+            return;
+        }
+        AST.IdNode var = vars.get(info);
+        AST.IdNode id = new AST.IdNode(node.lineNum(), node.charNum(),
+                                       var != null ? var.name() : node.name());
+        id.link(var != null ? var.info() : info);
+        push(id);
+    }
+
+    public void visitDotAccessExpNode(AST.DotAccessExpNode node) {
+        visit(node.lhs());
+        then(() -> {
+            AST.IdNode field = node.idNode();
+            AST.IdNode id = new AST.IdNode(field.lineNum(), field.charNum(),
+                                           field.name());
+            id.link(field.info());
+            AST.DotAccessExpNode copy = new AST.DotAccessExpNode(popNode(), id);
+            copy.link(node.info());
+            copy.setBadAccess(node.badAccess());
+            push(copy);
+        });
+    }
+
+    public void visitAssignNode(AST.AssignNode node) {
+        visit(node.lhs());
+        visit(node.rhs());
+        then(() -> {
+            AST.ExpNode rhs = popNode();
+            push(new AST.AssignNode(popNode(), rhs));
+        });
+    }
+
+    public void visitCallExpNode(AST.CallExpNode node) {
+        visitChildren(node);
+        then(() -> {
+            AST.ExpListNode expList = popNode();
+            push(new AST.CallExpNode(popNode(), expList));
+        });
+    }
+
+    public void visitUnaryMinusNode(AST.UnaryMinusNode node) {
+        visitChildren(node);
+        then(() -> {
+            AST.UnaryMinusNode copy = new AST.UnaryMinusNode(popNode());
+            copy.setWraps(node.wraps());
+            push(copy);
+        });
+    }
+
+    public void visitNotNode(AST.NotNode node) {
+        visitChildren(node);
+        then(() -> push(new AST.NotNode(popNode())));
+    }
+
+    private void visitBinary(AST.BinaryExpNode node,
+                             BinaryOperator<AST.ExpNode> make) {
+        visitChildren(node);
+        then(() -> {
+            AST.ExpNode exp2 = popNode();
+            AST.ExpNode copy = make.apply(popNode(), exp2);
+            if (node instanceof AST.ArithmeticExpNode) {
+                ((AST.ArithmeticExpNode) copy)
+                    .setWraps(((AST.ArithmeticExpNode) node).wraps());
+            }
+            push(copy);
+        });
+    }
+
+    public void visitPlusNode(AST.PlusNode node) {
+        visitBinary(node, AST.PlusNode::new);
+    }
+
+    public void visitMinusNode(AST.MinusNode node) {
+        visitBinary(node, AST.MinusNode::new);
+    }
+
+    public void visitTimesNode(AST.TimesNode node) {
+        visitBinary(node, AST.TimesNode::new);
+    }
+
+    public void visitDivideNode(AST.DivideNode node) {
+        visitBinary(node, AST.DivideNode::new);
+    }
+
+    public void visitAndNode(AST.AndNode node) {
+        visitBinary(node, AST.AndNode::new);
+    }
+
+    public void visitOrNode(AST.OrNode node) {
+        visitBinary(node, AST.OrNode::new);
+    }
+
+    public void visitEqualsNode(AST.EqualsNode node) {
+        visitBinary(node, AST.EqualsNode::new);
+    }
+
+    public void visitNotEqualsNode(AST.NotEqualsNode node) {
+        visitBinary(node, AST.NotEqualsNode::new);
+    }
+
+    public void visitLessNode(AST.LessNode node) {
+        visitBinary(node, AST.LessNode::new);
+    }
+
+    public void visitGreaterNode(AST.GreaterNode node) {
+        visitBinary(node, AST.GreaterNode::new);
+    }
+
+    public void visitLessEqNode(AST.LessEqNode node) {
+        visitBinary(node, AST.LessEqNode::new);
+    }
+
+    public void visitGreaterEqNode(AST.GreaterEqNode node) {
+        visitBinary(node, AST.GreaterEqNode::new);
+    }
+}
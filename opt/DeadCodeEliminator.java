@@ -0,0 +1,443 @@
+package opt;
+
+import java.util.*;
+import ast.*;
+import symtable.*;
+
+/**
+ * Dead code elimination.
+ *
+ * With the call graph, the functions main never calls (even indirectly)
+ * are removed, and so are the global variables no reachable function
+ * reads, with their stores.
+ *
+ * In each function, the statements are walked backward keeping the set
+ * of the local variables live after the statement (whose value may be
+ * read later). A store to a variable that is not live is removed when
+ * its value has no side effect. The body of a while is walked once, with
+ * every variable read in the loop live at its end. The statements after
+ * a return (or an if-else returning in both branches) are removed, an if
+ * or while whose condition is false is removed, and an if whose branch
+ * always runs is replaced by that branch. At last, the local variables
+ * not used anymore are removed.
+ *
+ * The set is not copied for the blocks: its changes are logged, undone
+ * at the end of a loop and scanned at the end of an if, so that deeply
+ * nested blocks cost only their own changes.
+ */
+public class DeadCodeEliminator extends AST.VisitorWalk implements Pass {
+
+    // the declarations and statements of a branch
+    private static class Block {
+        Block(AST.DeclListNode declList, AST.StmtListNode stmtList) {
+            this.declList = declList;
+            this.stmtList = stmtList;
+        }
+
+        AST.DeclListNode declList;
+        AST.StmtListNode stmtList;
+    }
+
+    // the live variables, and the log of their changes: a variable added,
+    // or one removed with the position of its addition, which tells if it
+    // was live at a mark (a position in the log)
+    private static class Live {
+        private Map<SymInfo, Integer> vars = new IdentityHashMap<SymInfo, Integer>();
+        private List<SymInfo> changed = new ArrayList<SymInfo>();
+        private List<Integer> added = new ArrayList<Integer>(); // -1 if added
+        private List<Integer> removals = new ArrayList<Integer>(); // in the log
+
+        boolean contains(SymInfo info) {
+            return vars.containsKey(info);
+        }
+
+        void add(SymInfo info) {
+            revive(info, changed.size());
+        }
+
+        // add back a variable lost, as added where it was first
+        void revive(SymInfo info, int at) {
+            if (!vars.containsKey(info)) {
+                vars.put(info, at);
+                log(info, -1);
+            }
+        }
+
+        void addAll(Collection<SymInfo> infos) {
+            for (SymInfo info : infos) {
+                add(info);
+            }
+        }
+
+        void remove(SymInfo info) {
+            Integer at = vars.remove(info);
+            if (at != null) {
+                removals.add(changed.size());
+                log(info, at);
+            }
+        }
+
+        void clear() {
+            for (SymInfo info : new ArrayList<SymInfo>(vars.keySet())) {
+                remove(info);
+            }
+        }
+
+        private void log(SymInfo info, int at) {
+            changed.add(info);
+            added.add(at);
+        }
+
+        int mark() {
+            return changed.size();
+        }
+
+        // undo the changes since the mark
+        void undo(int mark) {
+            while (changed.size() > mark) {
+                int k = changed.size() - 1;
+                SymInfo info = changed.remove(k);
+                int at = added.remove(k);
+                if (at < 0) {
+                    vars.remove(info);
+                }
+                else {
+                    vars.put(info, at);
+                    int last = removals.size() - 1;
+                    if (last >= 0 && removals.get(last) == k) {
+                        removals.remove(last);
+                    }
+                }
+            }
+        }
+
+        // the first of the removals since the mark
+        private int since(int mark) {
+            int k = Collections.binarySearch(removals, mark);
+            return k >= 0 ? k : -k - 1;
+        }
+
+        // the number of removals since the mark
+        int removed(int mark) {
+            return removals.size() - since(mark);
+        }
+
+        // the variables live at the mark and not anymore, with the
+        // positions of their additions
+        Map<SymInfo, Integer> lost(int mark) {
+            Map<SymInfo, Integer> lost = new IdentityHashMap<SymInfo, Integer>();
+            for (int k = since(mark); k < removals.size(); k++) {
+                int removal = removals.get(k);
+                SymInfo info = changed.get(removal);
+                if (added.get(removal) < mark && !vars.containsKey(info)) {
+                    lost.put(info, added.get(removal));
+                }
+            }
+            return lost;
+        }
+
+        // the variables not live at the mark and live now: those whose
+        // first change since the mark is an addition
+        List<SymInfo> gained(int mark) {
+            Set<SymInfo> seen = Collections.newSetFromMap(
+                new IdentityHashMap<SymInfo, Boolean>());
+            List<SymInfo> gained = new ArrayList<SymInfo>();
+            for (int k = mark; k < changed.size(); k++) {
+                SymInfo info = changed.get(k);
+                if (seen.add(info) && added.get(k) < 0 && vars.containsKey(info)) {
+                    gained.add(info);
+                }
+            }
+            return gained;
+        }
+
+        // add back the variables live at the mark, after the branch of an
+        // if: its removals do not matter anymore to the blocks around
+        void restore(int mark) {
+            lost(mark).forEach(this::revive);
+            removals.subList(since(mark), removals.size()).clear();
+        }
+    }
+
+    private CallGraph graph = new CallGraph();
+    private AST.FnDeclNode fn;
+    private Live live;
+    private Deque<Integer> loops;            // the marks of the loops walked
+    private Set<AST.StmtNode> dead;          // statements to remove
+    private Map<AST.StmtNode, Block> taken;  // ifs to replace by a branch
+    private Set<AST.ASTnode> returning;      // lists and if-elses that return
+    private List<AST.DeclListNode> declLists;
+    private Map<AST.ASTnode, Effects> effects; // of the loops
+
+    public String name() {
+        return "dce";
+    }
+
+    public Pass analysis() {
+        return graph;
+    }
+
+    public AST.DeclNode run(AST.DeclNode decl) {
+        if (decl instanceof AST.FnDeclNode) {
+            if (!graph.isReachable(((AST.FnDeclNode) decl).idNode().info())) {
+                return null;
+            }
+            walk(decl);
+        }
+        else if (decl instanceof AST.VarDeclNode) {
+            if (!graph.isRead(((AST.VarDeclNode) decl).getMyId().info())) {
+                return null;
+            }
+        }
+        return decl;
+    }
+
+    public boolean runsOnErrors() {
+        return false;
+    }
+
+    public boolean transforms() {
+        return true;
+    }
+
+    protected void defaultVisit(AST.ASTnode node) {
+    }
+
+    public void visitFnDeclNode(AST.FnDeclNode node) {
+        fn = node;
+        live = new Live();
+        loops = new ArrayDeque<Integer>();
+        dead = new HashSet<AST.StmtNode>();
+        taken = new HashMap<AST.StmtNode, Block>();
+        returning = new HashSet<AST.ASTnode>();
+        declLists = new ArrayList<AST.DeclListNode>();
+        declLists.add(node.body().declList());
+        effects = Effects.ofParts(node.body().stmtList());
+        visit(node.body().stmtList());
+        then(() -> {
+            removeUnused();
+            fn = null;
+            live = null;
+            loops = null;
+            dead = null;
+            taken = null;
+            returning = null;
+            declLists = null;
+            effects = null;
+        });
+    }
+
+    // the local variables neither read nor assigned
+    private void removeUnused() {
+        Effects used = Effects.of(fn.body());
+        for (AST.DeclListNode declList : declLists) {
+            declList.getList().removeIf(decl -> {
+                SymInfo info = ((AST.VarDeclNode) decl).getMyId().info();
+                return !used.read().contains(info)
+                    && !used.assigned().contains(info);
+            });
+        }
+    }
+
+    // the statements backward, then the list is rebuilt without the dead
+    // ones and what follows a return
+    public void visitStmtListNode(AST.StmtListNode node) {
+        List<AST.StmtNode> stmts = node.getList();
+        for (int k = stmts.size() - 1; k >= 0; k--) {
+            visit(stmts.get(k));
+        }
+        then(() -> sweep(node));
+    }
+
+    private void sweep(AST.StmtListNode node) {
+        List<AST.StmtNode> stmts = new ArrayList<AST.StmtNode>();
+        for (AST.StmtNode stmt : node.getList()) {
+            Block block = taken.get(stmt);
+            if (block != null) {
+                fn.body().getDeclList().addAll(block.declList.getList());
+                stmts.addAll(block.stmtList.getList());
+            }
+            else if (!dead.contains(stmt)) {
+                stmts.add(stmt);
+            }
+        }
+        for (int k = 0; k < stmts.size(); k++) {
+            AST.StmtNode stmt = stmts.get(k);
+            if (stmt instanceof AST.ReturnStmtNode || returning.contains(stmt)) {
+                stmts.subList(k + 1, stmts.size()).clear();
+                returning.add(node);
+            }
+        }
+        node.getList().clear();
+        node.getList().addAll(stmts);
+    }
+
+    private static boolean isLocal(SymInfo info) {
+        return !info.isGlobal() && !(info instanceof StructInfo);
+    }
+
+    // a store to the variable whose value is never read
+    private boolean isDead(AST.ExpNode target) {
+        if (!(target instanceof AST.IdNode)) {
+            return false;
+        }
+        SymInfo info = ((AST.IdNode) target).info();
+        if (info.isGlobal()) {
+            return !graph.isRead(info);
+        }
+        return isLocal(info) && !live.contains(info);
+    }
+
+    private void define(AST.ExpNode target) {
+        if (target instanceof AST.IdNode) {
+            live.remove(((AST.IdNode) target).info());
+        }
+    }
+
+    private void use(AST.ASTnode node) {
+        live.addAll(Effects.of(node).read());
+    }
+
+    public void visitAssignStmtNode(AST.AssignStmtNode node) {
+        AST.AssignNode assign = node.assign();
+        if (isDead(assign.lhs()) && Effects.of(assign.rhs()).isPure()) {
+            dead.add(node);
+        }
+        else {
+            define(assign.lhs());
+            use(assign);
+        }
+    }
+
+    public void visitPostIncStmtNode(AST.PostIncStmtNode node) {
+        if (isDead(node.exp())) {
+            dead.add(node);
+        }
+        else {
+            use(node);
+        }
+    }
+
+    public void visitPostDecStmtNode(AST.PostDecStmtNode node) {
+        if (isDead(node.exp())) {
+            dead.add(node);
+        }
+        else {
+            use(node);
+        }
+    }
+
+    public void visitReadStmtNode(AST.ReadStmtNode node) {
+        define(node.exp());
+        use(node);
+    }
+
+    public void visitWriteStmtNode(AST.WriteStmtNode node) {
+        use(node);
+    }
+
+    public void visitCallStmtNode(AST.CallStmtNode node) {
+        use(node);
+    }
+
+    public void visitReturnStmtNode(AST.ReturnStmtNode node) {
+        live.clear();
+        if (node.exp() != null) {
+            use(node.exp());
+        }
+    }
+
+    // the branch always run
+    private void take(AST.StmtNode node, AST.DeclListNode declList,
+                      AST.StmtListNode stmtList) {
+        taken.put(node, new Block(declList, stmtList));
+        visit(stmtList);
+    }
+
+    public void visitIfStmtNode(AST.IfStmtNode node) {
+        if (node.exp() instanceof AST.FalseNode) {
+            dead.add(node);
+        }
+        else if (node.exp() instanceof AST.TrueNode) {
+            take(node, node.declList(), node.stmtList());
+        }
+        else {
+            declLists.add(node.declList());
+            int mark = live.mark();
+            visit(node.stmtList());
+            then(() -> {
+                live.restore(mark);
+                use(node.exp());
+            });
+        }
+    }
+
+    public void visitIfElseStmtNode(AST.IfElseStmtNode node) {
+        if (node.exp() instanceof AST.TrueNode) {
+            take(node, node.thenDeclList(), node.thenStmtList());
+        }
+        else if (node.exp() instanceof AST.FalseNode) {
+            take(node, node.elseDeclList(), node.elseStmtList());
+        }
+        else {
+            declLists.add(node.thenDeclList());
+            declLists.add(node.elseDeclList());
+            // live before the else branch: live before the then branch
+            // plus what it gained and minus what it lost
+            int mark = live.mark();
+            visit(node.thenStmtList());
+            then(() -> {
+                push(live.gained(mark));
+                push(live.lost(mark));
+                live.undo(mark);
+            });
+            visit(node.elseStmtList());
+            then(() -> {
+                @SuppressWarnings("unchecked")
+                Map<SymInfo, Integer> thenLost = (Map<SymInfo, Integer>) pop();
+                @SuppressWarnings("unchecked")
+                List<SymInfo> thenGained = (List<SymInfo>) pop();
+                live.lost(mark).forEach((info, at) -> {
+                    if (!thenLost.containsKey(info)) {
+                        live.revive(info, at);
+                    }
+                });
+                live.addAll(thenGained);
+                use(node.exp());
+                if (returning.contains(node.thenStmtList())
+                    && returning.contains(node.elseStmtList())) {
+                    returning.add(node);
+                }
+            });
+        }
+    }
+
+    public void visitWhileStmtNode(AST.WhileStmtNode node) {
+        if (node.exp() instanceof AST.FalseNode) {
+            dead.add(node);
+            return;
+        }
+        // live at the end of the body and before the loop; in a loop, the
+        // variables read were live at its start, if not removed since
+        declLists.add(node.declList());
+        Effects loop = effects.get(node);
+        Integer outer = loops.peek();
+        if (outer == null || loop.readEvents() <= live.removed(outer)) {
+            live.addAll(loop.read());
+        }
+        else {
+            live.lost(outer).forEach((info, at) -> {
+                if (loop.reads(info)) {
+                    live.revive(info, at);
+                }
+            });
+        }
+        int mark = live.mark();
+        loops.push(mark);
+        visit(node.stmtList());
+        then(() -> {
+            loops.pop();
+            live.undo(mark);
+        });
+    }
+}
@@ -0,0 +1,345 @@
+package opt;
+
+import java.util.*;
+import ast.*;
+import symtable.*;
+
+/**
+ * The side effects of a piece of code: the variables it may assign (by
+ * an assignment, ++, -- or cin; a struct variable is assigned with its
+ * fields) and the functions it calls, which may assign any global
+ * variable; and the variables it reads.
+ *
+ * The effects of the parts of a function (see ofParts) share the events
+ * found in them: the variables of each part, in the order of the parts
+ * (numbered in preorder, so that the parts nested in a part follow it).
+ * A part is a range of them, whose distinct variables are found at each
+ * call, in time proportional to their number; deeply nested loops take
+ * memory linear in their size, and not in the size times the depth.
+ */
+public class Effects {
+
+    private Set<SymInfo> assigned = new HashSet<SymInfo>();
+    private Set<SymInfo> read = new HashSet<SymInfo>();
+    private Set<SymInfo> called = new HashSet<SymInfo>();
+    // of a part: the events of the parts, its number and that of the last
+    // part nested in it; else null
+    private Events[] events;
+    private int first;
+    private int last;
+
+    private static final int ASSIGNED = 0;
+    private static final int READ = 1;
+    private static final int CALLED = 2;
+
+    public static Effects of(AST.ASTnode node) {
+        Collector collector = new Collector(false);
+        collector.walk(node);
+        return collector.all;
+    }
+
+    /**
+     * The effects of each while loop and of each list of arguments of a
+     * call in node, found in one walk (nested loops are not walked again)
+     */
+    public static Map<AST.ASTnode, Effects> ofParts(AST.ASTnode node) {
+        Collector collector = new Collector(true);
+        collector.walk(node);
+        List<Effects> numbered = collector.numbered;
+        Events[] events = {
+            new Events(numbered, ASSIGNED), new Events(numbered, READ),
+            new Events(numbered, CALLED)
+        };
+        for (Effects effects : numbered) {
+            effects.assigned = null;
+            effects.read = null;
+            effects.called = null;
+            effects.events = events;
+        }
+        return collector.parts;
+    }
+
+    public Set<SymInfo> assigned() {
+        return events == null ? assigned : events[ASSIGNED].distinct(first, last);
+    }
+
+    public boolean calls() {
+        return events == null ? !called.isEmpty() : events[CALLED].any(first, last);
+    }
+
+    /**
+     * The functions called
+     */
+    public Set<SymInfo> called() {
+        return events == null ? called : events[CALLED].distinct(first, last);
+    }
+
+    /**
+     * The variables read (a struct variable is read when one of its
+     * fields is used)
+     */
+    public Set<SymInfo> read() {
+        return events == null ? read : events[READ].distinct(first, last);
+    }
+
+    /**
+     * true if the variable may be assigned
+     */
+    public boolean assigns(SymInfo info) {
+        return events == null ? assigned.contains(info)
+                              : events[ASSIGNED].contains(info, first, last);
+    }
+
+    /**
+     * true if the variable is read
+     */
+    public boolean reads(SymInfo info) {
+        return events == null ? read.contains(info)
+                              : events[READ].contains(info, first, last);
+    }
+
+    /**
+     * The number of variables read, counted once in each part (at least
+     * that of read(), found in constant time)
+     */
+    public int readEvents() {
+        return events == null ? read.size() : events[READ].count(first, last);
+    }
+
+    /**
+     * true if the code does nothing but compute a value
+     */
+    public boolean isPure() {
+        boolean assigns = events == null ? !assigned.isEmpty()
+                                         : events[ASSIGNED].any(first, last);
+        return !assigns && !calls();
+    }
+
+    private Set<SymInfo> own(int kind) {
+        return kind == ASSIGNED ? assigned : kind == READ ? read : called;
+    }
+
+    // the variables of one kind of the parts, part after part; the
+    // position of the previous event of each variable (-1 if none) tells
+    // its first event in a range: the distinct variables of a range are
+    // those of its events whose previous one is before it, found with a
+    // segment tree giving the event of smallest previous position
+    private static class Events {
+
+        Events(List<Effects> parts, int kind) {
+            starts = new int[parts.size() + 1];
+            List<SymInfo> list = new ArrayList<SymInfo>();
+            for (int k = 0; k < parts.size(); k++) {
+                starts[k] = list.size();
+                list.addAll(parts.get(k).own(kind));
+            }
+            starts[parts.size()] = list.size();
+            vars = list.toArray(new SymInfo[list.size()]);
+            prev = new int[vars.length];
+            Map<SymInfo, Integer> seen = new IdentityHashMap<SymInfo, Integer>();
+            Map<SymInfo, Integer> counts = new IdentityHashMap<SymInfo, Integer>();
+            for (int k = 0; k < vars.length; k++) {
+                Integer before = seen.put(vars[k], k);
+                prev[k] = before == null ? -1 : before;
+                counts.merge(vars[k], 1, Integer::sum);
+            }
+            for (Map.Entry<SymInfo, Integer> entry : counts.entrySet()) {
+                positions.put(entry.getKey(), new int[entry.getValue()]);
+            }
+            for (int k = vars.length - 1; k >= 0; k--) {
+                int[] at = positions.get(vars[k]);
+                at[counts.merge(vars[k], -1, Integer::sum)] = k;
+            }
+            size = 1;
+            while (size < vars.length) {
+                size *= 2;
+            }
+            tree = new int[2 * size];
+            Arrays.fill(tree, -1);
+            for (int k = 0; k < vars.length; k++) {
+                tree[size + k] = k;
+            }
+            for (int k = size - 1; k > 0; k--) {
+                tree[k] = smaller(tree[2 * k], tree[2 * k + 1]);
+            }
+        }
+
+        private SymInfo[] vars;
+        private int[] prev;
+        private int[] starts;  // of the events of each part
+        private Map<SymInfo, int[]> positions = // of the events of each variable
+            new IdentityHashMap<SymInfo, int[]>();
+        private int size;
+        private int[] tree;
+
+        // the event of smaller previous position (-1 for none)
+        private int smaller(int a, int b) {
+            if (a < 0 || (b >= 0 && prev[b] < prev[a])) {
+                return b;
+            }
+            return a;
+        }
+
+        // the event of smallest previous position in [from, to)
+        private int smallest(int from, int to) {
+            int found = -1;
+            for (int lo = from + size, hi = to + size; lo < hi; lo /= 2, hi /= 2) {
+                if (lo % 2 == 1) {
+                    found = smaller(found, tree[lo++]);
+                }
+                if (hi % 2 == 1) {
+                    found = smaller(found, tree[--hi]);
+                }
+            }
+            return found;
+        }
+
+        // the variables of the parts first to last
+        Set<SymInfo> distinct(int first, int last) {
+            Set<SymInfo> found = new HashSet<SymInfo>();
+            int from = starts[first];
+            Deque<int[]> ranges = new ArrayDeque<int[]>();
+            ranges.push(new int[] { from, starts[last + 1] });
+            while (!ranges.isEmpty()) {
+                int[] range = ranges.pop();
+                if (range[0] >= range[1]) {
+                    continue;
+                }
+                int event = smallest(range[0], range[1]);
+                if (prev[event] < from) {
+                    found.add(vars[event]);
+                    ranges.push(new int[] { range[0], event });
+                    ranges.push(new int[] { event + 1, range[1] });
+                }
+            }
+            return found;
+        }
+
+        boolean contains(SymInfo info, int first, int last) {
+            int[] at = positions.get(info);
+            if (at == null) {
+                return false;
+            }
+            int k = Arrays.binarySearch(at, starts[first]);
+            k = k >= 0 ? k : -k - 1;
+            return k < at.length && at[k] < starts[last + 1];
+        }
+
+        boolean any(int first, int last) {
+            return count(first, last) > 0;
+        }
+
+        int count(int first, int last) {
+            return starts[last + 1] - starts[first];
+        }
+    }
+
+    // the effects are recorded in the innermost part being walked (the
+    // whole code when not by parts)
+    private static class Collector extends AST.VisitorWalk {
+
+        Collector(boolean byParts) {
+            this.byParts = byParts;
+            open.push(all);
+        }
+
+        private boolean byParts;
+        private Effects all = new Effects();
+        private Map<AST.ASTnode, Effects> parts =
+            new IdentityHashMap<AST.ASTnode, Effects>();
+        private List<Effects> numbered = new ArrayList<Effects>(); // in preorder
+        private Deque<Effects> open = new ArrayDeque<Effects>();
+
+        private void part(AST.ASTnode node) {
+            if (!byParts) {
+                visitChildren(node);
+                return;
+            }
+            Effects effects = new Effects();
+            effects.first = numbered.size();
+            numbered.add(effects);
+            parts.put(node, effects);
+            open.push(effects);
+            visitChildren(node);
+            then(() -> {
+                effects.last = numbered.size() - 1;
+                open.pop();
+            });
+        }
+
+        // a field of a struct is not a variable of its own: its struct
+        // variable is read, and assigned
+        private void target(AST.ExpNode exp) {
+            if (exp instanceof AST.IdNode) {
+                open.peek().assigned.add(((AST.IdNode) exp).info());
+            }
+            else {
+                AST.ExpNode base = exp;
+                while (base instanceof AST.DotAccessExpNode) {
+                    base = ((AST.DotAccessExpNode) base).lhs();
+                }
+                if (base instanceof AST.IdNode) {
+                    open.peek().assigned.add(((AST.IdNode) base).info());
+                }
+                visit(exp);
+            }
+        }
+
+        // the target of ++ and -- is read too
+        private void step(AST.ExpNode exp) {
+            target(exp);
+            if (exp instanceof AST.IdNode) {
+                visit(exp);
+            }
+        }
+
+        public void visitVarDeclNode(AST.VarDeclNode node) {
+        }
+
+        public void visitFormalDeclNode(AST.FormalDeclNode node) {
+        }
+
+        public void visitStructDeclNode(AST.StructDeclNode node) {
+        }
+
+        public void visitIdNode(AST.IdNode node) {
+            open.peek().read.add(node.info());
+        }
+
+        public void visitDotAccessExpNode(AST.DotAccessExpNode node) {
+            visit(node.lhs());
+        }
+
+        public void visitAssignNode(AST.AssignNode node) {
+            target(node.lhs());
+            visit(node.rhs());
+        }
+
+        public void visitPostIncStmtNode(AST.PostIncStmtNode node) {
+            step(node.exp());
+        }
+
+        public void visitPostDecStmtNode(AST.PostDecStmtNode node) {
+            step(node.exp());
+        }
+
+        public void visitReadStmtNode(AST.ReadStmtNode node) {
+            target(node.exp());
+        }
+
+        public void visitCallExpNode(AST.CallExpNode node) {
+            open.peek().called.add(node.idNode().info());
+            if (node.expList() != null) {
+                visit(node.expList());
+            }
+        }
+
+        public void visitWhileStmtNode(AST.WhileStmtNode node) {
+            part(node);
+        }
+
+        public void visitExpListNode(AST.ExpListNode node) {
+            part(node);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package opt;
+
+import java.util.*;
+import ast.*;
+import symtable.*;
+
+/**
+ * Promotion of the global variables to locals in the loops.
+ *
+ * In a while loop, a global variable of type int or bool is kept in a
+ * local (a temporary, which the code generator may keep in a register)
+ * when no function the loop calls may assign it, itself or through the
+ * functions it calls, as told by the call graph; nor read it, if the
+ * loop assigns it. The local is loaded from the global before the loop,
+ * and, if the loop assigns the global, stored back after it and before
+ * each return in it (the global is not promoted if a returned expression
+ * assigns it). A global no function reads is left for DCE to drop, and
+ * no global is promoted once the function has REGISTERS variables of
+ * type int or bool, as the local would then likely take its register
+ * from one of them. In a loop where no global is promoted, the inner
+ * loops are tried: the globals used in each loop, and its returns, are
+ * found once for the function, in one walk.
+ */
+public class GlobalPromotion extends AST.VisitorWalk implements Pass {
+
+    private static final int REGISTERS = 8; // for the variables of a function
+
+    private CallGraph graph = new CallGraph();
+    private AST.FnDeclNode fn;
+    private Map<AST.ASTnode, Effects> effects; // of the loops of fn
+    private Uses uses; // in the loops of fn
+    private int scalars; // variables of fn of type int or bool
+
+    public String name() {
+        return "promote";
+    }
+
+    public Pass analysis() {
+        return graph;
+    }
+
+    public AST.DeclNode run(AST.DeclNode decl) {
+        if (decl instanceof AST.FnDeclNode) {
+            walk(decl);
+        }
+        return decl;
+    }
+
+    public boolean runsOnErrors() {
+        return false;
+    }
+
+    public boolean transforms() {
+        return true;
+    }
+
+    protected void defaultVisit(AST.ASTnode node) {
+    }
+
+    public void visitFnDeclNode(AST.FnDeclNode node) {
+        fn = node;
+        effects = Effects.ofParts(node.body());
+        uses = new Uses(graph);
+        uses.walk(node.body().stmtList());
+        scalars = node.formalsList().getList().size();
+        for (AST.DeclNode decl : node.body().getDeclList()) {
+            if (((AST.VarDeclNode) decl).size() == AST.VarDeclNode.NOT_STRUCT) {
+                scalars++;
+            }
+        }
+        visit(node.body().stmtList());
+        then(() -> {
+            fn = null;
+            effects = null;
+            uses = null;
+        });
+    }
+
+    public void visitStmtListNode(AST.StmtListNode node) {
+        List<AST.StmtNode> stmts = new ArrayList<AST.StmtNode>();
+        for (AST.StmtNode stmt : node.getList()) {
+            if (!(stmt instanceof AST.WhileStmtNode)
+                || !promote((AST.WhileStmtNode) stmt, stmts)) {
+                stmts.add(stmt);
+                visit(stmt);
+            }
+        }
+        node.getList().clear();
+        node.getList().addAll(stmts);
+    }
+
+    public void visitIfStmtNode(AST.IfStmtNode node) {
+        visit(node.stmtList());
+    }
+
+    public void visitIfElseStmtNode(AST.IfElseStmtNode node) {
+        visit(node.thenStmtList());
+        visit(node.elseStmtList());
+    }
+
+    public void visitWhileStmtNode(AST.WhileStmtNode node) {
+        visit(node.stmtList());
+    }
+
+    // the uses of the globals of type int or bool (an ID of each, and
+    // the positions of its uses) and the returns, numbered in preorder:
+    // those in a loop are a range of positions
+    private static class Uses extends AST.VisitorWalk {
+
+        Uses(CallGraph graph) {
+            this.graph = graph;
+        }
+
+        private CallGraph graph;
+        private int position;
+        private Map<AST.WhileStmtNode, int[]> loops = // range of each one
+            new IdentityHashMap<AST.WhileStmtNode, int[]>();
+        private Map<SymInfo, AST.IdNode> ids = new LinkedHashMap<SymInfo, AST.IdNode>();
+        private Map<SymInfo, List<Integer>> positions =
+            new IdentityHashMap<SymInfo, List<Integer>>();
+        private List<Integer> returns = new ArrayList<Integer>();
+        private List<Integer> assigning = new ArrayList<Integer>(); // returns
+        private List<Set<SymInfo>> assigned = new ArrayList<Set<SymInfo>>(); // by them
+
+        // the globals used in the loop, by their first use
+        List<AST.IdNode> globals(AST.WhileStmtNode loop) {
+            int[] range = loops.get(loop);
+            List<AST.IdNode> globals = new ArrayList<AST.IdNode>();
+            Map<AST.IdNode, Integer> first = new IdentityHashMap<AST.IdNode, Integer>();
+            for (Map.Entry<SymInfo, AST.IdNode> entry : ids.entrySet()) {
+                List<Integer> at = positions.get(entry.getKey());
+                int k = from(at, range[0]);
+                if (k < at.size() && at.get(k) < range[1]) {
+                    globals.add(entry.getValue());
+                    first.put(entry.getValue(), at.get(k));
+                }
+            }
+            globals.sort(Comparator.comparing(first::get));
+            return globals;
+        }
+
+        boolean returns(AST.WhileStmtNode loop) {
+            int[] range = loops.get(loop);
+            int k = from(returns, range[0]);
+            return k < returns.size() && returns.get(k) < range[1];
+        }
+
+        // the variables assigned by the expressions returned in the loop
+        Set<SymInfo> returned(AST.WhileStmtNode loop) {
+            int[] range = loops.get(loop);
+            Set<SymInfo> returned = new HashSet<SymInfo>();
+            for (int k = from(assigning, range[0]);
+                 k < assigning.size() && assigning.get(k) < range[1]; k++) {
+                returned.addAll(assigned.get(k));
+            }
+            return returned;
+        }
+
+        // the index of the first position at least start
+        private static int from(List<Integer> positions, int start) {
+            int k = Collections.binarySearch(positions, start);
+            return k >= 0 ? k : -k - 1;
+        }
+
+        public void visitDotAccessExpNode(AST.DotAccessExpNode node) {
+            visit(node.lhs()); // the field is not a variable
+        }
+
+        public void visitIdNode(AST.IdNode node) {
+            SymInfo info = node.info();
+            if (graph.isGlobal(info) && !(info instanceof StructInfo)
+                && (info.getType().isIntType() || info.getType().isBoolType())) {
+                ids.putIfAbsent(info, node);
+                positions.computeIfAbsent(info, k -> new ArrayList<Integer>())
+                    .add(position++);
+            }
+        }
+
+        public void visitReturnStmtNode(AST.ReturnStmtNode node) {
+            if (node.exp() != null) {
+                Set<SymInfo> assigns = Effects.of(node.exp()).assigned();
+                if (!assigns.isEmpty()) {
+                    assigning.add(position);
+                    assigned.add(assigns);
+                }
+            }
+            returns.add(position++);
+            visitChildren(node);
+        }
+
+        public void visitWhileStmtNode(AST.WhileStmtNode node) {
+            int[] range = { position, position };
+            loops.put(node, range);
+            visitChildren(node);
+            then(() -> range[1] = position);
+        }
+    }
+
+    // replace the loop by its copy using locals for the globals promoted,
+    // added to stmts with the loads and stores around it; false if no
+    // global can be promoted
+    private boolean promote(AST.WhileStmtNode loop, List<AST.StmtNode> stmts) {
+        if (scalars >= REGISTERS) {
+            return false;
+        }
+        Effects loopEffects = effects.get(loop);
+        Set<SymInfo> mayRead = new HashSet<SymInfo>();
+        Set<SymInfo> mayAssign = new HashSet<SymInfo>();
+        for (SymInfo callee : loopEffects.called()) {
+            mayRead.addAll(graph.mayRead(callee));
+            mayAssign.addAll(graph.mayAssign(callee));
+        }
+        Set<SymInfo> returned = uses.returned(loop); // assigned by a return
+        Map<SymInfo, AST.IdNode> locals = new IdentityHashMap<SymInfo, AST.IdNode>();
+        List<AST.IdNode[]> stores = new ArrayList<AST.IdNode[]>(); // global, local
+        for (AST.IdNode global : uses.globals(loop)) {
+            SymInfo info = global.info();
+            boolean assigned = loopEffects.assigns(info);
+            if (scalars >= REGISTERS || !graph.isRead(info) || mayAssign.contains(info)
+                || (assigned && mayRead.contains(info)) || returned.contains(info)) {
+                continue;
+            }
+            AST.IdNode local = Temps.declare(fn, info.getType(), global.name());
+            scalars++;
+            locals.put(info, local);
+            stmts.add(new AST.AssignStmtNode(
+                new AST.AssignNode(Temps.use(local), Temps.use(global))));
+            if (assigned) {
+                stores.add(new AST.IdNode[] { global, local });
+            }
+        }
+        if (locals.isEmpty()) {
+            return false;
+        }
+        AST.WhileStmtNode copy = new Cloner(locals).copy(loop);
+        if (!stores.isEmpty() && uses.returns(loop)) {
+            storeBeforeReturns(copy, stores);
+        }
+        stmts.add(copy);
+        stmts.addAll(stores(stores));
+        return true;
+    }
+
+    // the statements storing the locals back in their globals
+    private static List<AST.StmtNode> stores(List<AST.IdNode[]> stores) {
+        List<AST.StmtNode> stmts = new ArrayList<AST.StmtNode>();
+        for (AST.IdNode[] store : stores) {
+            stmts.add(new AST.AssignStmtNode(
+                new AST.AssignNode(Temps.use(store[0]), Temps.use(store[1]))));
+        }
+        return stmts;
+    }
+
+    private static void storeBeforeReturns(AST.WhileStmtNode loop,
+                                           List<AST.IdNode[]> stores) {
+        Deque<AST.ASTnode> nodes = new ArrayDeque<AST.ASTnode>();
+        nodes.push(loop);
+        while (!nodes.isEmpty()) {
+            AST.ASTnode node = nodes.pop();
+            if (node instanceof AST.StmtListNode) {
+                List<AST.StmtNode> list = ((AST.StmtListNode) node).getList();
+                List<AST.StmtNode> stmts = new ArrayList<AST.StmtNode>();
+                for (AST.StmtNode stmt : list) {
+                    if (stmt instanceof AST.ReturnStmtNode) {
+                        stmts.addAll(stores(stores));
+                    }
+                    stmts.add(stmt);
+                }
+                list.clear();
+                list.addAll(stmts);
+            }
+            if (!(node instanceof AST.ExpNode)) {
+                nodes.addAll(node.children());
+            }
+        }
+    }
+}
@@ -0,0 +1,581 @@
+package opt;
+
+import java.util.*;
+import java.util.function.Consumer;
+import ast.*;
+import symtable.*;
+
+/**
+ * Function inlining, bottom-up: callees are declared before their
+ * callers, so a call is replaced by the body of its callee as already
+ * inlined.
+ *
+ * A function whose body is return e; with e without side effects (and
+ * small) is replaced by e anywhere in an expression, its formals by the
+ * arguments when these have no side effects either (and are simple when
+ * the formal is used more than once).
+ *
+ * Other calls are inlined when they make a statement: f(args);, x =
+ * f(args);, cout << f(args); and return f(args);. The formals and the
+ * local variables of the callee (of type int or bool) become new locals
+ * of the caller, the formals are assigned the arguments, last to first,
+ * the locals are cleared as at the start of a call, then come the
+ * statements of the callee, whose returns must all be in tail position:
+ * return e; is replaced by the statement with e in place of the call.
+ *
+ * The cost model is the size of the callee (its statements and
+ * expressions): small functions calling no other function are inlined,
+ * and so are larger ones called from a single place. The code a
+ * function can gain is limited too. Recursive functions and main are
+ * never inlined; the functions no longer called are left to dce.
+ */
+public class Inliner implements Pass {
+
+    private static final int EXP_SIZE = 10;    // returning an expression
+    private static final int LEAF_SIZE = 30;   // calling no function
+    private static final int ONCE_SIZE = 300;  // called from a single place
+    private static final int GROWTH = 1000;    // code added to a function
+
+    private CallGraph graph = new CallGraph();
+    private Map<SymInfo, Callee> callees;
+    private AST.FnDeclNode fn;
+    private int budget;
+
+    public String name() {
+        return "inline";
+    }
+
+    public Pass analysis() {
+        return graph;
+    }
+
+    public void begin() {
+        callees = new HashMap<SymInfo, Callee>();
+    }
+
+    public AST.DeclNode run(AST.DeclNode decl) {
+        if (decl instanceof AST.FnDeclNode) {
+            fn = (AST.FnDeclNode) decl;
+            budget = GROWTH;
+            inline();
+            if (!fn.idNode().name().equals("main")) {
+                callees.put(fn.idNode().info(), new Callee(fn));
+            }
+            fn = null;
+        }
+        return decl;
+    }
+
+    public void end() {
+        callees = null;
+    }
+
+    public boolean runsOnErrors() {
+        return false;
+    }
+
+    public boolean transforms() {
+        return true;
+    }
+
+    // what is known of a function that may be inlined, found in one walk
+    // of its body; the argument of the walk is 1 for a statement in tail
+    // position (the last to run in the function)
+    private static class Callee extends AST.VisitorWalk {
+
+        Callee(AST.FnDeclNode fn) {
+            this.fn = fn;
+            for (AST.FormalDeclNode formal : fn.formalsList().getList()) {
+                scalar = scalar && isScalar(formal.idNode().info());
+            }
+            walk(fn.body(), 1);
+            assigned = Effects.of(fn.body()).assigned();
+        }
+
+        AST.FnDeclNode fn;
+        int size = 0;
+        boolean calls = false;
+        boolean recursive = false;
+        boolean scalar = true;          // formals and locals of int or bool
+        boolean tailReturns = true;     // every return in tail position
+        Map<SymInfo, Integer> uses = new HashMap<SymInfo, Integer>();
+        Set<SymInfo> assigned;
+
+        /**
+         * The expression returned when the body is return e; and e has no
+         * side effect, null otherwise
+         */
+        AST.ExpNode exp() {
+            List<AST.StmtNode> stmts = fn.body().stmtList().getList();
+            if (size > EXP_SIZE || !fn.body().getDeclList().isEmpty()
+                || stmts.size() != 1
+                || !(stmts.get(0) instanceof AST.ReturnStmtNode)) {
+                return null;
+            }
+            AST.ExpNode exp = ((AST.ReturnStmtNode) stmts.get(0)).exp();
+            return exp != null && Effects.of(exp).isPure() ? exp : null;
+        }
+
+        /**
+         * true if each way through the body ends with a return
+         */
+        boolean alwaysReturns() {
+            Deque<AST.StmtListNode> lists = new ArrayDeque<AST.StmtListNode>();
+            lists.push(fn.body().stmtList());
+            while (!lists.isEmpty()) {
+                List<AST.StmtNode> stmts = lists.pop().getList();
+                AST.StmtNode last = stmts.isEmpty() ? null
+                                                    : stmts.get(stmts.size() - 1);
+                if (last instanceof AST.IfElseStmtNode) {
+                    lists.push(((AST.IfElseStmtNode) last).thenStmtList());
+                    lists.push(((AST.IfElseStmtNode) last).elseStmtList());
+                }
+                else if (!(last instanceof AST.ReturnStmtNode)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        protected void defaultVisit(AST.ASTnode node) {
+            size++;
+            visitChildren(node);
+        }
+
+        public void visitDeclListNode(AST.DeclListNode node) {
+            visitChildren(node);
+        }
+
+        public void visitStmtListNode(AST.StmtListNode node) {
+            boolean tail = arg() == 1;
+            List<AST.StmtNode> stmts = node.getList();
+            for (int k = 0; k < stmts.size(); k++) {
+                visit(stmts.get(k), tail && k == stmts.size() - 1 ? 1 : 0);
+            }
+        }
+
+        public void visitExpListNode(AST.ExpListNode node) {
+            visitChildren(node);
+        }
+
+        public void visitVarDeclNode(AST.VarDeclNode node) {
+            size++;
+            scalar = scalar && isScalar(node.getMyId().info());
+        }
+
+        public void visitWhileStmtNode(AST.WhileStmtNode node) {
+            size++;
+            visit(node.exp());
+            visit(node.declList());
+            visit(node.stmtList());
+        }
+
+        public void visitReturnStmtNode(AST.ReturnStmtNode node) {
+            tailReturns = tailReturns && arg() == 1;
+            defaultVisit(node);
+        }
+
+        public void visitIdNode(AST.IdNode node) {
+            size++;
+            Integer count = uses.get(node.info());
+            uses.put(node.info(), count == null ? 1 : count + 1);
+        }
+
+        public void visitCallExpNode(AST.CallExpNode node) {
+            size++;
+            calls = true;
+            recursive = recursive || node.idNode().info() == fn.idNode().info();
+            visit(node.expList());
+        }
+    }
+
+    private static boolean isScalar(SymInfo info) {
+        return !(info instanceof StructInfo)
+            && (info.getType().isIntType() || info.getType().isBoolType());
+    }
+
+    // the calls in the statements of a function: the calls in expressions,
+    // innermost first, with the setter replacing each in its parent, and
+    // the statements made of a call, with their list
+    private static class Sites extends AST.VisitorWalk {
+
+        List<AST.CallExpNode> calls = new ArrayList<AST.CallExpNode>();
+        Map<AST.ExpNode, Consumer<AST.ExpNode>> slots =
+            new IdentityHashMap<AST.ExpNode, Consumer<AST.ExpNode>>();
+        Map<AST.StmtNode, AST.StmtListNode> stmts =
+            new LinkedHashMap<AST.StmtNode, AST.StmtListNode>();
+
+        private void visitExp(AST.ExpNode exp, Consumer<AST.ExpNode> slot) {
+            slots.put(exp, slot);
+            visit(exp);
+        }
+
+        public void visitStmtListNode(AST.StmtListNode node) {
+            for (AST.StmtNode stmt : node.getList()) {
+                if (callOf(stmt) != null) {
+                    stmts.put(stmt, node);
+                }
+                visit(stmt);
+            }
+        }
+
+        public void visitWriteStmtNode(AST.WriteStmtNode node) {
+            visitExp(node.exp(), node::setExp);
+        }
+
+        public void visitIfStmtNode(AST.IfStmtNode node) {
+            visitExp(node.exp(), node::setExp);
+            visit(node.stmtList());
+        }
+
+        public void visitIfElseStmtNode(AST.IfElseStmtNode node) {
+            visitExp(node.exp(), node::setExp);
+            visit(node.thenStmtList());
+            visit(node.elseStmtList());
+        }
+
+        public void visitWhileStmtNode(AST.WhileStmtNode node) {
+            visitExp(node.exp(), node::setExp);
+            visit(node.stmtList());
+        }
+
+        public void visitReturnStmtNode(AST.ReturnStmtNode node) {
+            if (node.exp() != null) {
+                visitExp(node.exp(), node::setExp);
+            }
+        }
+
+        public void visitAssignNode(AST.AssignNode node) {
+            visit(node.lhs());
+            visitExp(node.rhs(), node::setRhs);
+        }
+
+        public void visitExpListNode(AST.ExpListNode node) {
+            List<AST.ExpNode> args = node.getList();
+            for (int k = 0; k < args.size(); k++) {
+                int index = k;
+                visitExp(args.get(k), exp -> args.set(index, exp));
+            }
+        }
+
+        public void visitCallExpNode(AST.CallExpNode node) {
+            visit(node.expList());
+            then(() -> calls.add(node));
+        }
+
+        private void visitUnary(AST.UnaryExpNode node) {
+            visitExp(node.exp(), node::setExp);
+        }
+
+        private void visitBinary(AST.BinaryExpNode node) {
+            visitExp(node.exp1(), node::setExp1);
+            visitExp(node.exp2(), node::setExp2);
+        }
+
+        public void visitUnaryMinusNode(AST.UnaryMinusNode node) {
+            visitUnary(node);
+        }
+
+        public void visitNotNode(AST.NotNode node) {
+            visitUnary(node);
+        }
+
+        public void visitPlusNode(AST.PlusNode node) {
+            visitBinary(node);
+        }
+
+        public void visitMinusNode(AST.MinusNode node) {
+            visitBinary(node);
+        }
+
+        public void visitTimesNode(AST.TimesNode node) {
+            visitBinary(node);
+        }
+
+        public void visitDivideNode(AST.DivideNode node) {
+            visitBinary(node);
+        }
+
+        public void visitAndNode(AST.AndNode node) {
+            visitBinary(node);
+        }
+
+        public void visitOrNode(AST.OrNode node) {
+            visitBinary(node);
+        }
+
+        public void visitEqualsNode(AST.EqualsNode node) {
+            visitBinary(node);
+        }
+
+        public void visitNotEqualsNode(AST.NotEqualsNode node) {
+            visitBinary(node);
+        }
+
+        public void visitLessNode(AST.LessNode node) {
+            visitBinary(node);
+        }
+
+        public void visitGreaterNode(AST.GreaterNode node) {
+            visitBinary(node);
+        }
+
+        public void visitLessEqNode(AST.LessEqNode node) {
+            visitBinary(node);
+        }
+
+        public void visitGreaterEqNode(AST.GreaterEqNode node) {
+            visitBinary(node);
+        }
+    }
+
+    // the call a statement is made of, or null
+    private static AST.CallExpNode callOf(AST.StmtNode stmt) {
+        AST.ExpNode exp = null;
+        if (stmt instanceof AST.CallStmtNode) {
+            exp = ((AST.CallStmtNode) stmt).call();
+        }
+        else if (stmt instanceof AST.AssignStmtNode) {
+            exp = ((AST.AssignStmtNode) stmt).assign().rhs();
+        }
+        else if (stmt instanceof AST.WriteStmtNode) {
+            exp = ((AST.WriteStmtNode) stmt).exp();
+        }
+        else if (stmt instanceof AST.ReturnStmtNode) {
+            exp = ((AST.ReturnStmtNode) stmt).exp();
+        }
+        return exp instanceof AST.CallExpNode ? (AST.CallExpNode) exp : null;
+    }
+
+    private void inline() {
+        Sites sites = new Sites();
+        sites.walk(fn.body().stmtList());
+        for (AST.CallExpNode call : sites.calls) {
+            Consumer<AST.ExpNode> slot = sites.slots.get(call);
+            if (slot != null) {
+                AST.ExpNode exp = inlineExp(call);
+                if (exp != null) {
+                    slot.accept(exp);
+                }
+            }
+        }
+
+        Map<AST.StmtNode, List<AST.StmtNode>> inlined =
+            new IdentityHashMap<AST.StmtNode, List<AST.StmtNode>>();
+        Set<AST.StmtListNode> lists = new LinkedHashSet<AST.StmtListNode>();
+        for (Map.Entry<AST.StmtNode, AST.StmtListNode> site
+                 : sites.stmts.entrySet()) {
+            List<AST.StmtNode> stmts = expand(site.getKey());
+            if (stmts != null) {
+                inlined.put(site.getKey(), stmts);
+                lists.add(site.getValue());
+            }
+        }
+        for (AST.StmtListNode list : lists) {
+            List<AST.StmtNode> stmts = new ArrayList<AST.StmtNode>();
+            for (AST.StmtNode stmt : list.getList()) {
+                List<AST.StmtNode> body = inlined.get(stmt);
+                if (body != null) {
+                    stmts.addAll(body);
+                }
+                else {
+                    stmts.add(stmt);
+                }
+            }
+            list.getList().clear();
+            list.getList().addAll(stmts);
+        }
+    }
+
+    // the expression replacing the call, or null
+    private AST.ExpNode inlineExp(AST.CallExpNode call) {
+        Callee callee = callees.get(call.idNode().info());
+        AST.ExpNode exp = callee == null ? null : callee.exp();
+        if (exp == null || !callee.scalar || callee.size > budget) {
+            return null;
+        }
+        Map<SymInfo, AST.ExpNode> args = new IdentityHashMap<SymInfo, AST.ExpNode>();
+        List<AST.FormalDeclNode> formals = callee.fn.formalsList().getList();
+        for (int k = 0; k < formals.size(); k++) {
+            SymInfo formal = formals.get(k).idNode().info();
+            AST.ExpNode arg = call.expList().getList().get(k);
+            Integer uses = callee.uses.get(formal);
+            if (!Effects.of(arg).isPure()
+                || (uses != null && uses > 1 && !isSimple(arg))) {
+                return null;
+            }
+            args.put(formal, arg);
+        }
+        budget -= callee.size;
+        return new Cloner(new IdentityHashMap<SymInfo, AST.IdNode>(), args)
+            .copy(exp);
+    }
+
+    // a literal, or a local variable of the caller not assigned
+    private static boolean isConstant(AST.ExpNode exp, Set<SymInfo> assigned) {
+        if (exp instanceof AST.IdNode) {
+            SymInfo info = ((AST.IdNode) exp).info();
+            return !info.isGlobal() && isScalar(info) && !assigned.contains(info);
+        }
+        return exp instanceof AST.IntLitNode || exp instanceof AST.TrueNode
+            || exp instanceof AST.FalseNode;
+    }
+
+    private static boolean isSimple(AST.ExpNode exp) {
+        return exp instanceof AST.IdNode || exp instanceof AST.IntLitNode
+            || exp instanceof AST.TrueNode || exp instanceof AST.FalseNode;
+    }
+
+    // the statements replacing a statement made of a call, or null: the
+    // call inlined, then the calls assigned to the formals of the callee
+    private List<AST.StmtNode> expand(AST.StmtNode stmt) {
+        Set<AST.StmtNode> formals =
+            Collections.newSetFromMap(new IdentityHashMap<AST.StmtNode, Boolean>());
+        Deque<AST.StmtNode> work = new ArrayDeque<AST.StmtNode>();
+        work.push(stmt);
+        formals.add(stmt);
+        List<AST.StmtNode> stmts = new ArrayList<AST.StmtNode>();
+        while (!work.isEmpty()) {
+            AST.StmtNode next = work.pop();
+            List<AST.StmtNode> body = formals.contains(next)
+                ? inlineStmt(next, formals) : null;
+            if (body == null) {
+                stmts.add(next);
+            }
+            else {
+                for (int k = body.size() - 1; k >= 0; k--) {
+                    work.push(body.get(k));
+                }
+            }
+        }
+        return stmts.size() == 1 && stmts.get(0) == stmt ? null : stmts;
+    }
+
+    // the statements replacing a statement made of a call, or null; the
+    // assignments of the formals are added to formals
+    private List<AST.StmtNode> inlineStmt(AST.StmtNode stmt,
+                                          Set<AST.StmtNode> formals) {
+        AST.CallExpNode call = callOf(stmt);
+        Callee callee = call == null ? null : callees.get(call.idNode().info());
+        if (callee == null || callee.recursive || !callee.scalar
+            || !callee.tailReturns || callee.size > budget
+            || (!(stmt instanceof AST.CallStmtNode) && !callee.alwaysReturns())) {
+            return null;
+        }
+        SymInfo info = callee.fn.idNode().info();
+        if (!(!callee.calls && callee.size <= LEAF_SIZE)
+            && !(graph.callSites(info) == 1 && callee.size <= ONCE_SIZE)) {
+            return null;
+        }
+        budget -= callee.size;
+
+        // a formal the callee does not assign is replaced by a constant or
+        // local variable passed, which the callee cannot assign either
+        List<AST.StmtNode> stmts = new ArrayList<AST.StmtNode>();
+        Map<SymInfo, AST.IdNode> vars = new IdentityHashMap<SymInfo, AST.IdNode>();
+        Map<SymInfo, AST.ExpNode> passed = new IdentityHashMap<SymInfo, AST.ExpNode>();
+        Set<SymInfo> argsAssigned = Effects.of(call.expList()).assigned();
+        List<AST.FormalDeclNode> params = callee.fn.formalsList().getList();
+        List<AST.ExpNode> args = call.expList().getList();
+        for (int k = params.size() - 1; k >= 0; k--) {
+            AST.IdNode formal = params.get(k).idNode();
+            AST.ExpNode arg = args.get(k);
+            if (!callee.assigned.contains(formal.info())
+                && isConstant(arg, argsAssigned)) {
+                passed.put(formal.info(), arg);
+                continue;
+            }
+            AST.IdNode local = Temps.declare(fn, formal.info().getType(),
+                                             formal.name());
+            vars.put(formal.info(), local);
+            AST.StmtNode assign = new AST.AssignStmtNode(
+                new AST.AssignNode(Temps.use(local), arg));
+            stmts.add(assign);
+            formals.add(assign);
+        }
+
+        Cloner cloner = new Cloner(vars, passed);
+        AST.DeclListNode declList = cloner.copy(callee.fn.body().declList());
+        AST.StmtListNode body = cloner.copy(callee.fn.body().stmtList());
+        List<AST.DeclNode> locals = new ArrayList<AST.DeclNode>(declList.getList());
+        new AST.VisitorWalk() {
+            public void visitDeclListNode(AST.DeclListNode node) {
+                locals.addAll(node.getList());
+                node.getList().clear();
+            }
+        }.walk(body);
+        for (AST.DeclNode decl : locals) {
+            AST.IdNode local = ((AST.VarDeclNode) decl).getMyId();
+            AST.ExpNode zero = local.info().getType().isBoolType()
+                ? new AST.FalseNode(local.lineNum(), local.charNum())
+                : new AST.IntLitNode(local.lineNum(), local.charNum(), 0);
+            fn.body().getDeclList().add(decl);
+            stmts.add(new AST.AssignStmtNode(
+                new AST.AssignNode(Temps.use(local), zero)));
+        }
+
+        replaceReturns(body, stmt, ((FnInfo) info).getReturnType());
+        stmts.addAll(body.getList());
+        return stmts;
+    }
+
+    // replace the returns in tail position of the body inlined in place of
+    // stmt, by stmt with the returned expression in place of the call
+    private void replaceReturns(AST.StmtListNode body, AST.StmtNode stmt,
+                                Type.AbstractType type) {
+        Deque<AST.StmtListNode> lists = new ArrayDeque<AST.StmtListNode>();
+        lists.push(body);
+        while (!lists.isEmpty()) {
+            List<AST.StmtNode> stmts = lists.pop().getList();
+            int last = stmts.size() - 1;
+            AST.StmtNode tail = last < 0 ? null : stmts.get(last);
+            if (tail instanceof AST.IfStmtNode) {
+                lists.push(((AST.IfStmtNode) tail).stmtList());
+            }
+            else if (tail instanceof AST.IfElseStmtNode) {
+                lists.push(((AST.IfElseStmtNode) tail).thenStmtList());
+                lists.push(((AST.IfElseStmtNode) tail).elseStmtList());
+            }
+            else if (tail instanceof AST.ReturnStmtNode) {
+                AST.ExpNode exp = ((AST.ReturnStmtNode) tail).exp();
+                AST.StmtNode result = returned(exp, stmt, type);
+                if (result != null) {
+                    stmts.set(last, result);
+                }
+                else {
+                    stmts.remove(last);
+                }
+            }
+        }
+    }
+
+    // the statement doing with exp what stmt does with the value of its
+    // call, null if there is nothing to do
+    private AST.StmtNode returned(AST.ExpNode exp, AST.StmtNode stmt,
+                                  Type.AbstractType type) {
+        if (stmt instanceof AST.AssignStmtNode) {
+            AST.ExpNode lhs = ((AST.AssignStmtNode) stmt).assign().lhs();
+            return new AST.AssignStmtNode(
+                new AST.AssignNode(new Cloner().copy(lhs), exp));
+        }
+        if (stmt instanceof AST.WriteStmtNode) {
+            return new AST.WriteStmtNode(exp);
+        }
+        if (stmt instanceof AST.ReturnStmtNode) {
+            AST.ReturnStmtNode ret = (AST.ReturnStmtNode) stmt;
+            return new AST.ReturnStmtNode(exp, ret.charNum(), ret.lineNum());
+        }
+        // the value of a call statement is dropped, not its side effects
+        if (exp == null || Effects.of(exp).isPure()) {
+            return null;
+        }
+        if (exp instanceof AST.CallExpNode) {
+            return new AST.CallStmtNode((AST.CallExpNode) exp);
+        }
+        if (exp instanceof AST.AssignNode) {
+            return new AST.AssignStmtNode((AST.AssignNode) exp);
+        }
+        return new AST.AssignStmtNode(
+            new AST.AssignNode(Temps.use(Temps.declare(fn, type, "ret")), exp));
+    }
+}
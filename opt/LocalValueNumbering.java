@@ -0,0 +1,607 @@
+package opt;
+
+import java.util.*;
+import java.util.function.Consumer;
+import ast.*;
+import symtable.*;
+
+/**
+ * Common subexpression elimination by value numbering, one function at a
+ * time.
+ *
+ * Each expression gets a value number, equal for two expressions that
+ * compute the same value: a constant, the current value of a variable,
+ * or an operator applied to value numbers. A pure expression (of int and
+ * bool variables, literals and operators) whose value is held by a
+ * variable (after x = e) is replaced by the variable; otherwise, if it
+ * was computed before, it is a use of that first computation, which
+ * keeps its value in a temporary when it pays off: (t = a*b) and then t
+ * at each use.
+ *
+ * There is no control flow graph: the values computed before a statement
+ * are available in the blocks of an if or a while, which they dominate.
+ * A value is forgotten when one of its variables is assigned (=, ++, --,
+ * cin), and a call forgets the values of the global variables. A while
+ * first forgets the variables assigned in the loop, and what is learnt in
+ * a block is undone at its end, where the variables it assigned are
+ * forgotten. Only the values computed
+ * in code that always runs are reused: not in the right operand of && or
+ * || nor in the arguments of a call, which may be evaluated in any
+ * order.
+ *
+ * The argument of the walk is 1 in such conditional code, 0 elsewhere.
+ */
+public class LocalValueNumbering extends AST.VisitorWalk implements Pass {
+
+    // the cost of an expression: one for each operand and operator
+    private static final int ASSIGN_COST = 1; // store in the temporary
+    private static final int LOAD_COST = 1;   // load of the temporary
+
+    // the value of an expression, pushed on the value stack of the walk
+    private static class Value {
+        Value(int number, boolean pure, int cost, int first) {
+            this.number = number;
+            this.pure = pure;
+            this.cost = cost;
+            this.first = first;
+        }
+
+        int number;
+        boolean pure;    // no side effect and no struct field
+        int cost;
+        int first;       // first occurrence found in the expression
+    }
+
+    // an expression to rewrite: the first computation of a value (def and
+    // holder null), a use of it, or an expression held by a variable
+    private static class Occurrence {
+        Occurrence(AST.ExpNode node, Consumer<AST.ExpNode> slot, int number,
+                   int cost) {
+            this.node = node;
+            this.slot = slot;
+            this.number = number;
+            this.cost = cost;
+        }
+
+        AST.ExpNode node;
+        Consumer<AST.ExpNode> slot;  // to replace the node in its parent
+        int number;
+        int cost;
+        Occurrence def;
+        AST.IdNode holder;
+        List<Occurrence> uses = new ArrayList<Occurrence>();
+    }
+
+    // a change of one of the maps of what is known, to undo
+    private static class Change {
+        Change(Map<?, ?> map, Object key, Object old) {
+            this.map = map;
+            this.key = key;
+            this.old = old;
+        }
+
+        Map<?, ?> map;
+        Object key;
+        Object old;      // null if the key was not in the map
+
+        @SuppressWarnings("unchecked")
+        void undo() {
+            Map<Object, Object> map = (Map<Object, Object>) this.map;
+            if (old == null) {
+                map.remove(key);
+            }
+            else {
+                map.put(key, old);
+            }
+        }
+    }
+
+    // a block being walked: where its changes start in the log, and at its
+    // end the variables it changed
+    private static class Block {
+        Block(int start, int globals) {
+            this.start = start;
+            this.globals = globals;
+        }
+
+        int start;
+        int globals;
+        boolean called;
+        Map<SymInfo, Integer> changed = new IdentityHashMap<SymInfo, Integer>();
+    }
+
+    private Map<String, Integer> numbers;  // value of each expression key
+    private Map<SymInfo, Integer> symbols; // number of each variable
+    private int nextNumber;
+    // what is known at the current point of the function
+    private Map<SymInfo, Integer> vars;     // value of each variable
+    private Map<Integer, Occurrence> avail; // first computation of a value
+    private Map<Integer, AST.IdNode> holders; // variable holding a value
+    private int globals;                    // generation of the globals
+    private List<Change> log;
+    private List<Occurrence> occurrences;  // in the order found
+    private Map<AST.ExpNode, Consumer<AST.ExpNode>> slots;
+    private Map<AST.ASTnode, Effects> effects; // of loops and arguments
+    private AST.FnDeclNode fn;
+
+    public String name() {
+        return "cse";
+    }
+
+    public AST.DeclNode run(AST.DeclNode decl) {
+        if (decl instanceof AST.FnDeclNode) {
+            walk(decl);
+        }
+        return decl;
+    }
+
+    public boolean runsOnErrors() {
+        return false;
+    }
+
+    public boolean transforms() {
+        return true;
+    }
+
+    protected void defaultVisit(AST.ASTnode node) {
+    }
+
+    public void visitFnDeclNode(AST.FnDeclNode node) {
+        fn = node;
+        numbers = new HashMap<String, Integer>();
+        symbols = new IdentityHashMap<SymInfo, Integer>();
+        nextNumber = 0;
+        vars = new IdentityHashMap<SymInfo, Integer>();
+        avail = new HashMap<Integer, Occurrence>();
+        holders = new HashMap<Integer, AST.IdNode>();
+        globals = 0;
+        log = new ArrayList<Change>();
+        occurrences = new ArrayList<Occurrence>();
+        slots = new IdentityHashMap<AST.ExpNode, Consumer<AST.ExpNode>>();
+        effects = Effects.ofParts(node.body().stmtList());
+        visit(node.body().stmtList());
+        then(() -> {
+            rewrite();
+            fn = null;
+            numbers = null;
+            symbols = null;
+            vars = null;
+            avail = null;
+            holders = null;
+            log = null;
+            occurrences = null;
+            slots = null;
+            effects = null;
+        });
+    }
+
+    public void visitStmtListNode(AST.StmtListNode node) {
+        visitChildren(node);
+    }
+
+    private int fresh() {
+        return nextNumber++;
+    }
+
+    private int number(String key) {
+        Integer number = numbers.get(key);
+        if (number == null) {
+            number = fresh();
+            numbers.put(key, number);
+        }
+        return number;
+    }
+
+    private <K, V> void put(Map<K, V> map, K key, V value) {
+        log.add(new Change(map, key, map.put(key, value)));
+    }
+
+    private <K, V> void remove(Map<K, V> map, K key) {
+        V old = map.remove(key);
+        if (old != null) {
+            log.add(new Change(map, key, old));
+        }
+    }
+
+    // the value number of a variable: a variable not assigned yet has
+    // its initial value (or the value of the globals after the last call)
+    private int varNumber(SymInfo info) {
+        Integer number = vars.get(info);
+        if (number != null) {
+            return number;
+        }
+        Integer symbol = symbols.get(info);
+        if (symbol == null) {
+            symbol = symbols.size();
+            symbols.put(info, symbol);
+        }
+        return number("v" + symbol + "@" + (info.isGlobal() ? globals : 0));
+    }
+
+    private void kill(SymInfo info) {
+        put(vars, info, fresh());
+    }
+
+    // after a call, which may assign any global
+    private void killGlobals() {
+        globals = fresh();
+        List<SymInfo> assigned = new ArrayList<SymInfo>();
+        for (SymInfo info : vars.keySet()) {
+            if (info.isGlobal()) {
+                assigned.add(info);
+            }
+        }
+        for (SymInfo info : assigned) {
+            remove(vars, info);
+        }
+    }
+
+    private void kill(Effects effects) {
+        for (SymInfo info : effects.assigned()) {
+            kill(info);
+        }
+        if (effects.calls()) {
+            killGlobals();
+        }
+    }
+
+    private void enterBlock() {
+        push(new Block(log.size(), globals));
+    }
+
+    // undo the changes of the block ended
+    private Block exitBlock() {
+        Block block = (Block) pop();
+        for (int k = block.start; k < log.size(); k++) {
+            Change change = log.get(k);
+            if (change.map == vars) {
+                SymInfo info = (SymInfo) change.key;
+                block.changed.put(info, vars.get(info));
+            }
+        }
+        block.called = globals != block.globals;
+        while (log.size() > block.start) {
+            log.remove(log.size() - 1).undo();
+        }
+        globals = block.globals;
+        return block;
+    }
+
+    // forget the variables whose value changed in the block
+    private void forget(Block block) {
+        for (Map.Entry<SymInfo, Integer> entry : block.changed.entrySet()) {
+            SymInfo info = entry.getKey();
+            Integer number = entry.getValue();
+            if (!(block.called && info.isGlobal())
+                && (number == null || number != varNumber(info))) {
+                kill(info);
+            }
+        }
+        if (block.called) {
+            killGlobals();
+        }
+    }
+
+    private void visitExp(AST.ExpNode exp, Consumer<AST.ExpNode> slot) {
+        slots.put(exp, slot);
+        visit(exp, 0);
+        then(() -> pop());
+    }
+
+    private Value popValue() {
+        return (Value) pop();
+    }
+
+    public void visitAssignStmtNode(AST.AssignStmtNode node) {
+        visit(node.assign(), 0);
+        then(() -> pop());
+    }
+
+    public void visitPostIncStmtNode(AST.PostIncStmtNode node) {
+        assign(node.exp(), fresh());
+    }
+
+    public void visitPostDecStmtNode(AST.PostDecStmtNode node) {
+        assign(node.exp(), fresh());
+    }
+
+    public void visitReadStmtNode(AST.ReadStmtNode node) {
+        assign(node.exp(), fresh());
+    }
+
+    public void visitWriteStmtNode(AST.WriteStmtNode node) {
+        visitExp(node.exp(), node::setExp);
+    }
+
+    public void visitIfStmtNode(AST.IfStmtNode node) {
+        visitExp(node.exp(), node::setExp);
+        then(() -> enterBlock());
+        visit(node.stmtList());
+        then(() -> forget(exitBlock()));
+    }
+
+    public void visitIfElseStmtNode(AST.IfElseStmtNode node) {
+        visitExp(node.exp(), node::setExp);
+        then(() -> enterBlock());
+        visit(node.thenStmtList());
+        then(() -> {
+            Block thenBlock = exitBlock();
+            enterBlock();
+            push(thenBlock);
+        });
+        visit(node.elseStmtList());
+        then(() -> {
+            Block thenBlock = (Block) pop();
+            Block elseBlock = exitBlock();
+            forget(thenBlock);
+            forget(elseBlock);
+        });
+    }
+
+    public void visitWhileStmtNode(AST.WhileStmtNode node) {
+        // what is known on each evaluation of the condition, and at the end
+        kill(effects.get(node));
+        visitExp(node.exp(), node::setExp);
+        then(() -> enterBlock());
+        visit(node.stmtList());
+        then(() -> exitBlock());
+    }
+
+    public void visitCallStmtNode(AST.CallStmtNode node) {
+        visit(node.call(), 0);
+        then(() -> pop());
+    }
+
+    public void visitReturnStmtNode(AST.ReturnStmtNode node) {
+        if (node.exp() != null) {
+            visitExp(node.exp(), node::setExp);
+        }
+    }
+
+    // give the value number to the target of an assignment
+    private void assign(AST.ExpNode lhs, int number) {
+        if (lhs instanceof AST.IdNode) {
+            put(vars, ((AST.IdNode) lhs).info(), number);
+        }
+    }
+
+    private void leaf(int number, boolean pure) {
+        push(new Value(number, pure, 1, occurrences.size()));
+    }
+
+    public void visitIntLitNode(AST.IntLitNode node) {
+        leaf(number("i" + node.intVal()), true);
+    }
+
+    public void visitStringLitNode(AST.StringLitNode node) {
+        leaf(fresh(), false);
+    }
+
+    public void visitTrueNode(AST.TrueNode node) {
+        leaf(number("true"), true);
+    }
+
+    public void visitFalseNode(AST.FalseNode node) {
+        leaf(number("false"), true);
+    }
+
+    public void visitIdNode(AST.IdNode node) {
+        leaf(varNumber(node.info()), true);
+    }
+
+    public void visitDotAccessExpNode(AST.DotAccessExpNode node) {
+        leaf(fresh(), false);
+    }
+
+    public void visitAssignNode(AST.AssignNode node) {
+        int conditional = arg();
+        slots.put(node.rhs(), node::setRhs);
+        visit(node.rhs(), conditional);
+        then(() -> {
+            Value rhs = popValue();
+            if (conditional == 0) {
+                assign(node.lhs(), rhs.number);
+                if (node.lhs() instanceof AST.IdNode) {
+                    put(holders, rhs.number, (AST.IdNode) node.lhs());
+                }
+            }
+            else {
+                assign(node.lhs(), fresh());
+            }
+            push(new Value(rhs.number, false, rhs.cost + 1, rhs.first));
+        });
+    }
+
+    public void visitCallExpNode(AST.CallExpNode node) {
+        List<AST.ExpNode> args = new ArrayList<AST.ExpNode>();
+        if (node.expList() != null) {
+            args = node.expList().getList();
+            // any argument may be evaluated first
+            for (SymInfo info : effects.get(node.expList()).assigned()) {
+                kill(info);
+            }
+        }
+        for (int k = 0; k < args.size(); k++) {
+            List<AST.ExpNode> list = args;
+            int index = k;
+            slots.put(args.get(k), exp -> list.set(index, exp));
+            visit(args.get(k), 1);
+        }
+        int size = args.size();
+        then(() -> {
+            for (int k = 0; k < size; k++) {
+                pop();
+            }
+            killGlobals();
+            push(new Value(fresh(), false, 1, occurrences.size()));
+        });
+    }
+
+    public void visitUnaryMinusNode(AST.UnaryMinusNode node) {
+        visitUnary(node, "-");
+    }
+
+    public void visitNotNode(AST.NotNode node) {
+        visitUnary(node, "!");
+    }
+
+    private void visitUnary(AST.UnaryExpNode node, String op) {
+        int conditional = arg();
+        slots.put(node.exp(), node::setExp);
+        visit(node.exp(), conditional);
+        then(() -> {
+            Value exp = popValue();
+            Value value = new Value(number(op + "(" + exp.number + ")"),
+                                    exp.pure, exp.cost + 1, exp.first);
+            found(node, value, conditional);
+            push(value);
+        });
+    }
+
+    // the right operand of && and || is conditional
+    private void visitBinary(AST.BinaryExpNode node, String op,
+                             boolean commutative, boolean shortCircuit) {
+        int conditional = arg();
+        slots.put(node.exp1(), node::setExp1);
+        slots.put(node.exp2(), node::setExp2);
+        visit(node.exp1(), conditional);
+        visit(node.exp2(), shortCircuit ? 1 : conditional);
+        then(() -> {
+            Value exp2 = popValue();
+            Value exp1 = popValue();
+            int number1 = exp1.number;
+            int number2 = exp2.number;
+            if (commutative && number1 > number2) {
+                number1 = exp2.number;
+                number2 = exp1.number;
+            }
+            Value value = new Value(number("(" + number1 + op + number2 + ")"),
+                                    exp1.pure && exp2.pure,
+                                    exp1.cost + exp2.cost + 1, exp1.first);
+            found(node, value, conditional);
+            push(value);
+        });
+    }
+
+    public void visitPlusNode(AST.PlusNode node) {
+        visitBinary(node, "+", true, false);
+    }
+
+    public void visitMinusNode(AST.MinusNode node) {
+        visitBinary(node, "-", false, false);
+    }
+
+    public void visitTimesNode(AST.TimesNode node) {
+        visitBinary(node, "*", true, false);
+    }
+
+    public void visitDivideNode(AST.DivideNode node) {
+        visitBinary(node, "/", false, false);
+    }
+
+    public void visitAndNode(AST.AndNode node) {
+        visitBinary(node, "&&", true, true);
+    }
+
+    public void visitOrNode(AST.OrNode node) {
+        visitBinary(node, "||", true, true);
+    }
+
+    public void visitEqualsNode(AST.EqualsNode node) {
+        visitBinary(node, "==", true, false);
+    }
+
+    public void visitNotEqualsNode(AST.NotEqualsNode node) {
+        visitBinary(node, "!=", true, false);
+    }
+
+    public void visitLessNode(AST.LessNode node) {
+        visitBinary(node, "<", false, false);
+    }
+
+    public void visitGreaterNode(AST.GreaterNode node) {
+        visitBinary(node, ">", false, false);
+    }
+
+    public void visitLessEqNode(AST.LessEqNode node) {
+        visitBinary(node, "<=", false, false);
+    }
+
+    public void visitGreaterEqNode(AST.GreaterEqNode node) {
+        visitBinary(node, ">=", false, false);
+    }
+
+    // an operator applied to its operands: reuse its value if known
+    private void found(AST.ExpNode node, Value value, int conditional) {
+        if (!value.pure) {
+            return;
+        }
+        Occurrence occurrence = new Occurrence(node, slots.get(node),
+                                               value.number, value.cost);
+        AST.IdNode holder = holders.get(value.number);
+        Occurrence def = avail.get(value.number);
+        if (holder != null && varNumber(holder.info()) == value.number) {
+            drop(value.first);
+            occurrence.holder = holder;
+        }
+        else if (def != null) {
+            drop(value.first);
+            occurrence.def = def;
+            def.uses.add(occurrence);
+        }
+        else if (conditional == 0) {
+            put(avail, value.number, occurrence);
+        }
+        else {
+            return;
+        }
+        occurrences.add(occurrence);
+    }
+
+    // forget the occurrences found from first on: the expression
+    // containing them is replaced
+    private void drop(int first) {
+        while (occurrences.size() > first) {
+            Occurrence occurrence = occurrences.remove(occurrences.size() - 1);
+            if (occurrence.def != null) {
+                occurrence.def.uses.remove(occurrence);
+            }
+            else if (occurrence.holder == null
+                     && avail.get(occurrence.number) == occurrence) {
+                remove(avail, occurrence.number);
+            }
+        }
+    }
+
+    // replace the occurrences that pay off
+    private void rewrite() {
+        for (Occurrence occurrence : occurrences) {
+            if (occurrence.holder != null) {
+                occurrence.slot.accept(Temps.use(occurrence.holder));
+            }
+            else if (occurrence.def == null && savings(occurrence) > 0) {
+                AST.IdNode temp = Temps.declare(fn, type(occurrence.node), "cse");
+                occurrence.slot.accept(
+                    new AST.AssignNode(Temps.use(temp), occurrence.node));
+                for (Occurrence use : occurrence.uses) {
+                    use.slot.accept(Temps.use(temp));
+                }
+            }
+        }
+    }
+
+    private static int savings(Occurrence def) {
+        int savings = -ASSIGN_COST;
+        for (Occurrence use : def.uses) {
+            savings += use.cost - LOAD_COST;
+        }
+        return savings;
+    }
+
+    private static Type.AbstractType type(AST.ExpNode exp) {
+        if (exp instanceof AST.ArithmeticExpNode || exp instanceof AST.UnaryMinusNode) {
+            return new Type.IntType();
+        }
+        return new Type.BoolType();
+    }
+}
@@ -0,0 +1,673 @@
+package opt;
+
+import java.util.*;
+import java.util.function.Consumer;
+import ast.*;
+import symtable.*;
+
+/**
+ * Loop-invariant code motion and strength reduction of induction
+ * variables, one function at a time.
+ *
+ * There is no goto in C--: each while is a natural loop, entered only
+ * through its condition, and the code just before it is its preheader.
+ * The loops are found on the AST and their effects with Effects.
+ *
+ * An expression is invariant in a loop when none of its variables is
+ * assigned in it (nor a global one if the loop calls). A pure expression
+ * (of int and bool variables, literals and operators, dividing only by a
+ * literal other than 0 and -1) is computed once in the preheader of the
+ * outermost loop it is invariant in, in a temporary: t = e before the
+ * loop, and t in the loop. The loop may not run, so the moved expression
+ * must not fail: its + and - wrap around on overflow (addu and subu on
+ * MIPS) rather than trap, as in the VM. Only the largest such
+ * expressions are moved, an expression invariant in an inner loop only
+ * going to the preheader of that loop. The same expression moved out of
+ * a loop shares its temporary.
+ *
+ * A basic induction variable of a loop is a local int variable assigned
+ * in it only by statements of its body (not nested ones) i++, i--, or
+ * i = i + c, i = i - c with c a literal. A product i * c of it by a
+ * literal is then kept in a temporary k = i * c, set in the preheader and
+ * updated after each step of i (k = k + 8 after i++ when c is 8); it
+ * replaces the products when there are as many of them as steps. Its
+ * updates wrap around like the products they replace.
+ *
+ * Each expression pushes its Value on the value stack of the walk. The
+ * depth of a loop is the number of loops around it and itself; the level
+ * of an expression is the depth of the innermost loop assigning one of
+ * its variables, 0 if there is none.
+ */
+public class LoopOptimizer extends AST.VisitorWalk implements Pass {
+
+    // the value of an expression
+    private static class Value {
+        Value(int number, boolean pure, boolean leaf, int level) {
+            this.number = number;
+            this.pure = pure;
+            this.leaf = leaf;
+            this.level = level;
+        }
+
+        int number;      // equal for equal pure expressions
+        boolean pure;    // no side effect, cannot fail once wrapping
+        boolean leaf;    // a variable or a literal
+        int level;
+    }
+
+    // a step of a basic induction variable: a statement of the body
+    private static class Step {
+        Step(AST.StmtNode stmt, int step) {
+            this.stmt = stmt;
+            this.step = step;
+        }
+
+        AST.StmtNode stmt;
+        int step;
+    }
+
+    private static class Loop {
+        Loop(AST.WhileStmtNode node, Effects effects) {
+            this.node = node;
+            this.effects = effects;
+        }
+
+        AST.WhileStmtNode node;
+        Effects effects;
+        // the variables declared in the loop
+        Set<SymInfo> declared = new HashSet<SymInfo>();
+        // the variables assigned in the loop, and how many times
+        Map<SymInfo, Integer> assigns = new HashMap<SymInfo, Integer>();
+        // the candidate basic induction variables
+        Map<SymInfo, List<Step>> steps = new HashMap<SymInfo, List<Step>>();
+        // the expressions moved out, by number
+        Map<Integer, List<AST.ExpNode>> moved =
+            new LinkedHashMap<Integer, List<AST.ExpNode>>();
+        // the products of induction variables, by variable and literal
+        Map<SymInfo, Map<Integer, List<AST.ExpNode>>> products =
+            new LinkedHashMap<SymInfo, Map<Integer, List<AST.ExpNode>>>();
+    }
+
+    private AST.FnDeclNode fn;
+    private Map<String, Integer> numbers;
+    private Map<SymInfo, Integer> symbols;
+    private Map<AST.ASTnode, Effects> effects;  // of the loops
+    private List<Loop> loops;                   // around the walk
+    private Map<SymInfo, Deque<Integer>> levels; // depths of the loops
+                                                 // assigning each variable
+    private Deque<Integer> calls;               // depths of the loops calling
+    private Map<AST.ExpNode, Consumer<AST.ExpNode>> slots;
+    private Map<AST.WhileStmtNode, AST.StmtListNode> lists; // of each loop
+    private List<Loop> done;                    // the loops walked
+    private Map<AST.StmtNode, List<AST.StmtNode>> before;
+    private Map<AST.StmtNode, List<AST.StmtNode>> after;
+
+    public String name() {
+        return "licm";
+    }
+
+    public AST.DeclNode run(AST.DeclNode decl) {
+        if (decl instanceof AST.FnDeclNode) {
+            walk(decl);
+        }
+        return decl;
+    }
+
+    public boolean runsOnErrors() {
+        return false;
+    }
+
+    public boolean transforms() {
+        return true;
+    }
+
+    protected void defaultVisit(AST.ASTnode node) {
+    }
+
+    public void visitFnDeclNode(AST.FnDeclNode node) {
+        fn = node;
+        numbers = new HashMap<String, Integer>();
+        symbols = new IdentityHashMap<SymInfo, Integer>();
+        effects = Effects.ofParts(node.body().stmtList());
+        loops = new ArrayList<Loop>();
+        levels = new IdentityHashMap<SymInfo, Deque<Integer>>();
+        calls = new ArrayDeque<Integer>();
+        slots = new IdentityHashMap<AST.ExpNode, Consumer<AST.ExpNode>>();
+        lists = new IdentityHashMap<AST.WhileStmtNode, AST.StmtListNode>();
+        done = new ArrayList<Loop>();
+        before = new IdentityHashMap<AST.StmtNode, List<AST.StmtNode>>();
+        after = new IdentityHashMap<AST.StmtNode, List<AST.StmtNode>>();
+        visit(node.body().stmtList());
+        then(() -> {
+            rewrite();
+            fn = null;
+            numbers = null;
+            symbols = null;
+            effects = null;
+            loops = null;
+            levels = null;
+            calls = null;
+            slots = null;
+            lists = null;
+            done = null;
+            before = null;
+            after = null;
+        });
+    }
+
+    public void visitStmtListNode(AST.StmtListNode node) {
+        for (AST.StmtNode stmt : node.getList()) {
+            if (stmt instanceof AST.WhileStmtNode) {
+                lists.put((AST.WhileStmtNode) stmt, node);
+            }
+        }
+        visitChildren(node);
+    }
+
+    public void visitWhileStmtNode(AST.WhileStmtNode node) {
+        Loop loop = new Loop(node, effects.get(node));
+        loops.add(loop);
+        int depth = loops.size();
+        for (SymInfo info : loop.effects.assigned()) {
+            levels.computeIfAbsent(info, k -> new ArrayDeque<Integer>()).push(depth);
+        }
+        if (loop.effects.calls()) {
+            calls.push(depth);
+        }
+        findSteps(loop);
+        root(node.exp(), node::setExp);
+        visit(node.declList());
+        visit(node.stmtList());
+        then(() -> {
+            for (SymInfo info : loop.effects.assigned()) {
+                levels.get(info).pop();
+            }
+            for (SymInfo info : loop.declared) {
+                levels.get(info).pop();
+            }
+            if (loop.effects.calls()) {
+                calls.pop();
+            }
+            loops.remove(loops.size() - 1);
+            if (!loops.isEmpty()) {
+                Map<SymInfo, Integer> outer = loops.get(loops.size() - 1).assigns;
+                for (Map.Entry<SymInfo, Integer> entry : loop.assigns.entrySet()) {
+                    outer.merge(entry.getKey(), entry.getValue(), Integer::sum);
+                }
+            }
+            done.add(loop);
+        });
+    }
+
+    // the statements of the body stepping a local int variable
+    private void findSteps(Loop loop) {
+        for (AST.StmtNode stmt : loop.node.stmtList().getList()) {
+            AST.ExpNode target = null;
+            Integer step = null;
+            if (stmt instanceof AST.PostIncStmtNode) {
+                target = ((AST.PostIncStmtNode) stmt).exp();
+                step = 1;
+            }
+            else if (stmt instanceof AST.PostDecStmtNode) {
+                target = ((AST.PostDecStmtNode) stmt).exp();
+                step = -1;
+            }
+            else if (stmt instanceof AST.AssignStmtNode) {
+                AST.AssignNode assign = ((AST.AssignStmtNode) stmt).assign();
+                target = assign.lhs();
+                step = step(target, assign.rhs());
+            }
+            if (step == null || !(target instanceof AST.IdNode)) {
+                continue;
+            }
+            SymInfo info = ((AST.IdNode) target).info();
+            if (!info.isGlobal() && !(info instanceof StructInfo)
+                && info.getType().isIntType()) {
+                loop.steps.computeIfAbsent(info, k -> new ArrayList<Step>())
+                    .add(new Step(stmt, step));
+            }
+        }
+    }
+
+    // the step of i = i + c, i = c + i or i = i - c; else null
+    private static Integer step(AST.ExpNode target, AST.ExpNode rhs) {
+        if (!(target instanceof AST.IdNode)
+            || !(rhs instanceof AST.PlusNode || rhs instanceof AST.MinusNode)) {
+            return null;
+        }
+        SymInfo info = ((AST.IdNode) target).info();
+        AST.BinaryExpNode binary = (AST.BinaryExpNode) rhs;
+        Integer c2 = constant(binary.exp2());
+        if (isVar(binary.exp1(), info) && c2 != null) {
+            return rhs instanceof AST.PlusNode ? c2 : -c2;
+        }
+        Integer c1 = constant(binary.exp1());
+        if (rhs instanceof AST.PlusNode && c1 != null && isVar(binary.exp2(), info)) {
+            return c1;
+        }
+        return null;
+    }
+
+    private static boolean isVar(AST.ExpNode exp, SymInfo info) {
+        return exp instanceof AST.IdNode && ((AST.IdNode) exp).info() == info;
+    }
+
+    // the value of an integer literal, or of its negation; else null
+    private static Integer constant(AST.ExpNode exp) {
+        if (exp instanceof AST.IntLitNode) {
+            return ((AST.IntLitNode) exp).intVal();
+        }
+        if (exp instanceof AST.UnaryMinusNode
+            && ((AST.UnaryMinusNode) exp).exp() instanceof AST.IntLitNode) {
+            return -((AST.IntLitNode) ((AST.UnaryMinusNode) exp).exp()).intVal();
+        }
+        return null;
+    }
+
+    private void assigned(AST.ExpNode target) {
+        if (target instanceof AST.IdNode && !loops.isEmpty()) {
+            loops.get(loops.size() - 1).assigns.merge(
+                ((AST.IdNode) target).info(), 1, Integer::sum);
+        }
+    }
+
+    // an expression of a statement
+    private void root(AST.ExpNode exp, Consumer<AST.ExpNode> slot) {
+        int depth = loops.size();
+        slots.put(exp, slot);
+        visit(exp);
+        then(() -> consider(exp, (Value) pop(), null, depth));
+    }
+
+    // an operand, whose value is left on the stack
+    private void operand(AST.ExpNode exp, Consumer<AST.ExpNode> slot) {
+        slots.put(exp, slot);
+        visit(exp);
+    }
+
+    // move the expression out of the loops it is invariant in, unless its
+    // parent (of value parent, null if it cannot be moved) is moved with it
+    private void consider(AST.ExpNode exp, Value value, Value parent, int depth) {
+        if (!value.pure || value.leaf || value.level >= depth
+            || (parent != null && parent.pure && parent.level == value.level)) {
+            return;
+        }
+        Loop loop = loops.get(value.level);
+        loop.moved.computeIfAbsent(value.number, k -> new ArrayList<AST.ExpNode>())
+            .add(exp);
+    }
+
+    public void visitDeclListNode(AST.DeclListNode node) {
+        visitChildren(node);
+    }
+
+    // a variable declared in a loop has a new value in each iteration
+    public void visitVarDeclNode(AST.VarDeclNode node) {
+        if (!loops.isEmpty()) {
+            SymInfo info = node.getMyId().info();
+            levels.computeIfAbsent(info, k -> new ArrayDeque<Integer>())
+                .push(loops.size());
+            loops.get(loops.size() - 1).declared.add(info);
+        }
+    }
+
+    public void visitIfStmtNode(AST.IfStmtNode node) {
+        root(node.exp(), node::setExp);
+        visit(node.declList());
+        visit(node.stmtList());
+    }
+
+    public void visitIfElseStmtNode(AST.IfElseStmtNode node) {
+        root(node.exp(), node::setExp);
+        visit(node.thenDeclList());
+        visit(node.thenStmtList());
+        visit(node.elseDeclList());
+        visit(node.elseStmtList());
+    }
+
+    public void visitAssignStmtNode(AST.AssignStmtNode node) {
+        visit(node.assign());
+        then(() -> pop());
+    }
+
+    public void visitPostIncStmtNode(AST.PostIncStmtNode node) {
+        assigned(node.exp());
+    }
+
+    public void visitPostDecStmtNode(AST.PostDecStmtNode node) {
+        assigned(node.exp());
+    }
+
+    public void visitReadStmtNode(AST.ReadStmtNode node) {
+        assigned(node.exp());
+    }
+
+    public void visitWriteStmtNode(AST.WriteStmtNode node) {
+        root(node.exp(), node::setExp);
+    }
+
+    public void visitCallStmtNode(AST.CallStmtNode node) {
+        visit(node.call());
+        then(() -> pop());
+    }
+
+    public void visitReturnStmtNode(AST.ReturnStmtNode node) {
+        if (node.exp() != null) {
+            root(node.exp(), node::setExp);
+        }
+    }
+
+    private int number(String key) {
+        Integer number = numbers.get(key);
+        if (number == null) {
+            number = numbers.size();
+            numbers.put(key, number);
+        }
+        return number;
+    }
+
+    private Value impure() {
+        return new Value(number("#" + numbers.size()), false, true, 0);
+    }
+
+    public void visitIntLitNode(AST.IntLitNode node) {
+        push(new Value(number("i" + node.intVal()), true, true, 0));
+    }
+
+    public void visitStringLitNode(AST.StringLitNode node) {
+        push(impure());
+    }
+
+    public void visitTrueNode(AST.TrueNode node) {
+        push(new Value(number("true"), true, true, 0));
+    }
+
+    public void visitFalseNode(AST.FalseNode node) {
+        push(new Value(number("false"), true, true, 0));
+    }
+
+    public void visitIdNode(AST.IdNode node) {
+        SymInfo info = node.info();
+        if (info instanceof StructInfo
+            || !(info.getType().isIntType() || info.getType().isBoolType())) {
+            push(impure());
+            return;
+        }
+        Integer symbol = symbols.get(info);
+        if (symbol == null) {
+            symbol = symbols.size();
+            symbols.put(info, symbol);
+        }
+        Deque<Integer> assigning = levels.get(info);
+        int level = assigning == null || assigning.isEmpty() ? 0 : assigning.peek();
+        if (info.isGlobal() && !calls.isEmpty()) {
+            level = Math.max(level, calls.peek());
+        }
+        push(new Value(number("v" + symbol), true, true, level));
+    }
+
+    public void visitDotAccessExpNode(AST.DotAccessExpNode node) {
+        push(impure());
+    }
+
+    public void visitAssignNode(AST.AssignNode node) {
+        int depth = loops.size();
+        assigned(node.lhs());
+        operand(node.rhs(), node::setRhs);
+        then(() -> {
+            consider(node.rhs(), (Value) pop(), null, depth);
+            push(impure());
+        });
+    }
+
+    public void visitCallExpNode(AST.CallExpNode node) {
+        int depth = loops.size();
+        List<AST.ExpNode> args = node.expList() != null
+            ? node.expList().getList() : new ArrayList<AST.ExpNode>();
+        for (int k = 0; k < args.size(); k++) {
+            int index = k;
+            operand(args.get(k), exp -> args.set(index, exp));
+        }
+        then(() -> {
+            for (int k = args.size() - 1; k >= 0; k--) {
+                consider(args.get(k), (Value) pop(), null, depth);
+            }
+            push(impure());
+        });
+    }
+
+    public void visitUnaryMinusNode(AST.UnaryMinusNode node) {
+        visitUnary(node, "-");
+    }
+
+    public void visitNotNode(AST.NotNode node) {
+        visitUnary(node, "!");
+    }
+
+    private void visitUnary(AST.UnaryExpNode node, String op) {
+        int depth = loops.size();
+        operand(node.exp(), node::setExp);
+        then(() -> {
+            Value exp = (Value) pop();
+            Value value = exp.pure
+                ? new Value(number(op + "(" + exp.number + ")"), true, false, exp.level)
+                : impure();
+            consider(node.exp(), exp, value, depth);
+            push(value);
+        });
+    }
+
+    private void visitBinary(AST.BinaryExpNode node, String op) {
+        int depth = loops.size();
+        operand(node.exp1(), node::setExp1);
+        operand(node.exp2(), node::setExp2);
+        then(() -> {
+            Value exp2 = (Value) pop();
+            Value exp1 = (Value) pop();
+            boolean pure = exp1.pure && exp2.pure;
+            if (node instanceof AST.DivideNode) {
+                Integer divisor = constant(node.exp2());
+                pure = pure && divisor != null && divisor != 0 && divisor != -1;
+            }
+            Value value = pure
+                ? new Value(number("(" + exp1.number + op + exp2.number + ")"),
+                            true, false, Math.max(exp1.level, exp2.level))
+                : impure();
+            consider(node.exp1(), exp1, value, depth);
+            consider(node.exp2(), exp2, value, depth);
+            if (node instanceof AST.TimesNode) {
+                product((AST.TimesNode) node);
+            }
+            push(value);
+        });
+    }
+
+    // a product of an induction variable by a literal
+    private void product(AST.TimesNode node) {
+        AST.ExpNode var = node.exp1();
+        Integer c = constant(node.exp2());
+        if (c == null) {
+            var = node.exp2();
+            c = constant(node.exp1());
+        }
+        if (c == null || !(var instanceof AST.IdNode)) {
+            return;
+        }
+        SymInfo info = ((AST.IdNode) var).info();
+        Deque<Integer> assigning = levels.get(info);
+        if (assigning == null || assigning.isEmpty()) {
+            return;
+        }
+        // in the innermost loop assigning the variable
+        Loop loop = loops.get(assigning.peek() - 1);
+        if (loop.steps.containsKey(info)) {
+            loop.products.computeIfAbsent(info, k -> new LinkedHashMap<Integer, List<AST.ExpNode>>())
+                .computeIfAbsent(c, k -> new ArrayList<AST.ExpNode>())
+                .add(node);
+        }
+    }
+
+    public void visitPlusNode(AST.PlusNode node) {
+        visitBinary(node, "+");
+    }
+
+    public void visitMinusNode(AST.MinusNode node) {
+        visitBinary(node, "-");
+    }
+
+    public void visitTimesNode(AST.TimesNode node) {
+        visitBinary(node, "*");
+    }
+
+    public void visitDivideNode(AST.DivideNode node) {
+        visitBinary(node, "/");
+    }
+
+    public void visitAndNode(AST.AndNode node) {
+        visitBinary(node, "&&");
+    }
+
+    public void visitOrNode(AST.OrNode node) {
+        visitBinary(node, "||");
+    }
+
+    public void visitEqualsNode(AST.EqualsNode node) {
+        visitBinary(node, "==");
+    }
+
+    public void visitNotEqualsNode(AST.NotEqualsNode node) {
+        visitBinary(node, "!=");
+    }
+
+    public void visitLessNode(AST.LessNode node) {
+        visitBinary(node, "<");
+    }
+
+    public void visitGreaterNode(AST.GreaterNode node) {
+        visitBinary(node, ">");
+    }
+
+    public void visitLessEqNode(AST.LessEqNode node) {
+        visitBinary(node, "<=");
+    }
+
+    public void visitGreaterEqNode(AST.GreaterEqNode node) {
+        visitBinary(node, ">=");
+    }
+
+    // move the invariant expressions, then reduce the products, and
+    // rebuild the lists of statements changed
+    private void rewrite() {
+        Set<AST.StmtListNode> changed = Collections.newSetFromMap(
+            new IdentityHashMap<AST.StmtListNode, Boolean>());
+        for (Loop loop : done) {
+            for (List<AST.ExpNode> exps : loop.moved.values()) {
+                AST.ExpNode exp = exps.get(0);
+                AST.IdNode temp = Temps.declare(fn, type(exp), "licm");
+                for (AST.ExpNode use : exps) {
+                    slots.get(use).accept(Temps.use(temp));
+                }
+                wrap(exp);
+                AST.AssignNode assign = new AST.AssignNode(Temps.use(temp), exp);
+                slots.put(exp, assign::setRhs);
+                add(before, loop.node, new AST.AssignStmtNode(assign));
+                changed.add(lists.get(loop.node));
+            }
+        }
+        for (Loop loop : done) {
+            for (Map.Entry<SymInfo, Map<Integer, List<AST.ExpNode>>> entry
+                     : loop.products.entrySet()) {
+                SymInfo info = entry.getKey();
+                List<Step> steps = loop.steps.get(info);
+                if (loop.assigns.getOrDefault(info, 0) != steps.size()
+                    || loop.declared.contains(info)) {
+                    continue;   // assigned elsewhere, or has no value before
+                }
+                for (Map.Entry<Integer, List<AST.ExpNode>> product
+                         : entry.getValue().entrySet()) {
+                    if (product.getValue().size() < steps.size()) {
+                        continue;
+                    }
+                    reduce(loop, (AST.IdNode) var(product.getValue().get(0)),
+                           product.getKey(), product.getValue(), steps);
+                    changed.add(lists.get(loop.node));
+                    changed.add(loop.node.stmtList());
+                }
+            }
+        }
+        for (AST.StmtListNode list : changed) {
+            List<AST.StmtNode> stmts = new ArrayList<AST.StmtNode>();
+            for (AST.StmtNode stmt : list.getList()) {
+                stmts.addAll(before.getOrDefault(stmt, Collections.emptyList()));
+                stmts.add(stmt);
+                stmts.addAll(after.getOrDefault(stmt, Collections.emptyList()));
+            }
+            list.getList().clear();
+            list.getList().addAll(stmts);
+        }
+    }
+
+    // the induction variable of a product
+    private static AST.ExpNode var(AST.ExpNode product) {
+        AST.TimesNode times = (AST.TimesNode) product;
+        return constant(times.exp2()) != null ? times.exp1() : times.exp2();
+    }
+
+    // k = i * c in the preheader, k = k + step * c after each step
+    private void reduce(Loop loop, AST.IdNode var, int c, List<AST.ExpNode> products,
+                        List<Step> steps) {
+        AST.IdNode temp = Temps.declare(fn, new Type.IntType(), "iv");
+        for (AST.ExpNode product : products) {
+            slots.get(product).accept(Temps.use(temp));
+        }
+        add(before, loop.node, new AST.AssignStmtNode(new AST.AssignNode(
+            Temps.use(temp), new AST.TimesNode(Temps.use(var), literal(var, c)))));
+        for (Step step : steps) {
+            int delta = step.step * c;
+            AST.ArithmeticExpNode update = delta >= 0 || delta == Integer.MIN_VALUE
+                ? new AST.PlusNode(Temps.use(temp), literal(var, delta))
+                : new AST.MinusNode(Temps.use(temp), literal(var, -delta));
+            update.setWraps(true);
+            add(after, step.stmt, new AST.AssignStmtNode(
+                new AST.AssignNode(Temps.use(temp), update)));
+        }
+    }
+
+    // make the arithmetic of a moved expression wrap around
+    private static void wrap(AST.ExpNode exp) {
+        Deque<AST.ASTnode> open = new ArrayDeque<AST.ASTnode>();
+        open.push(exp);
+        while (!open.isEmpty()) {
+            AST.ASTnode node = open.pop();
+            if (node instanceof AST.ArithmeticExpNode) {
+                ((AST.ArithmeticExpNode) node).setWraps(true);
+            }
+            else if (node instanceof AST.UnaryMinusNode) {
+                ((AST.UnaryMinusNode) node).setWraps(true);
+            }
+            for (AST.ASTnode child : node.children()) {
+                open.push(child);
+            }
+        }
+    }
+
+    private static AST.ExpNode literal(AST.IdNode at, int value) {
+        if (value < 0 && value != Integer.MIN_VALUE) {
+            return new AST.UnaryMinusNode(
+                new AST.IntLitNode(at.lineNum(), at.charNum(), -value));
+        }
+        return new AST.IntLitNode(at.lineNum(), at.charNum(), value);
+    }
+
+    private static void add(Map<AST.StmtNode, List<AST.StmtNode>> map,
+                            AST.StmtNode stmt, AST.StmtNode added) {
+        map.computeIfAbsent(stmt, k -> new ArrayList<AST.StmtNode>()).add(added);
+    }
+
+    private static Type.AbstractType type(AST.ExpNode exp) {
+        if (exp instanceof AST.ArithmeticExpNode || exp instanceof AST.UnaryMinusNode) {
+            return new Type.IntType();
+        }
+        return new Type.BoolType();
+    }
+}
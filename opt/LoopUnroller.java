@@ -0,0 +1,358 @@
+package opt;
+
+import java.util.*;
+import ast.*;
+import symtable.*;
+
+/**
+ * Unrolling of the innermost counted loops, one function at a time.
+ *
+ * A counted loop is while (i < n) { ...; i++; } or while (i <= n) with
+ * i a local int variable stepped by its last statement only (i++ or
+ * i = i + c, c a positive literal) and n a literal or an int variable
+ * not assigned in the loop (nor a global one if the loop calls). It
+ * declares no variable, whose value is kept from an iteration to the
+ * next.
+ *
+ * When the value of i before the loop is a literal (set by the statement
+ * just before it) as n, the loop runs a known number of times: if that
+ * is small, the loop is replaced by as many copies of its body. Others
+ * are unrolled by the factor given: the body is copied factor times in a
+ * first loop, which runs while the factor steps can all be taken, and
+ * the loop itself runs the remaining iterations:
+ *
+ *     lim = n - 3 * c;                  (for the factor 4)
+ *     if (n < 0 && lim >= 0 || i >= 0 && lim < 0) { lim = i; }
+ *     while (i < lim) { ...; i++; ...; i++; ...; i++; ...; i++; }
+ *     while (i < n) { ...; i++; }
+ *
+ * where n - 3 * c wraps around (subu on MIPS) rather than traps when n
+ * is near the smallest int: the first loop is then skipped. It is
+ * skipped too when i >= 0 > lim, for i < lim, a trapping subtraction on
+ * MIPS, not to overflow where i < n does not. The condition is evaluated and the branch back taken once for factor
+ * iterations. The code grows by the size of the body (its statements
+ * and expressions) times the factor, which is limited.
+ */
+public class LoopUnroller extends AST.VisitorWalk implements Pass {
+
+    private static final int FULL_TRIPS = 8;      // iterations fully unrolled
+    private static final int UNROLLED_SIZE = 120; // size of the copies
+
+    private int factor;
+    private AST.FnDeclNode fn;
+    private Deque<int[]> sizes;   // of the loops around the walk, and 1
+                                  // if they contain a loop or a declaration
+    private List<AST.WhileStmtNode> innermost;
+    private Map<AST.WhileStmtNode, AST.StmtListNode> lists; // of each loop
+    private Map<AST.StmtNode, AST.StmtNode> previous;       // statement
+    private Map<AST.WhileStmtNode, Integer> loopSizes;
+
+    /**
+     * To unroll by the factor given (1 to unroll fully only)
+     */
+    public LoopUnroller(int factor) {
+        this.factor = factor;
+    }
+
+    public String name() {
+        return "unroll";
+    }
+
+    public AST.DeclNode run(AST.DeclNode decl) {
+        if (decl instanceof AST.FnDeclNode) {
+            walk(decl);
+        }
+        return decl;
+    }
+
+    public boolean runsOnErrors() {
+        return false;
+    }
+
+    public boolean transforms() {
+        return true;
+    }
+
+    protected void defaultVisit(AST.ASTnode node) {
+        if (!sizes.isEmpty()) {
+            sizes.peek()[0]++;
+        }
+        visitChildren(node);
+    }
+
+    public void visitFnDeclNode(AST.FnDeclNode node) {
+        fn = node;
+        sizes = new ArrayDeque<int[]>();
+        innermost = new ArrayList<AST.WhileStmtNode>();
+        lists = new IdentityHashMap<AST.WhileStmtNode, AST.StmtListNode>();
+        previous = new IdentityHashMap<AST.StmtNode, AST.StmtNode>();
+        loopSizes = new IdentityHashMap<AST.WhileStmtNode, Integer>();
+        visit(node.body().stmtList());
+        then(() -> {
+            rewrite();
+            fn = null;
+            sizes = null;
+            innermost = null;
+            lists = null;
+            previous = null;
+            loopSizes = null;
+        });
+    }
+
+    public void visitStmtListNode(AST.StmtListNode node) {
+        List<AST.StmtNode> stmts = node.getList();
+        for (int k = 0; k < stmts.size(); k++) {
+            if (stmts.get(k) instanceof AST.WhileStmtNode) {
+                AST.WhileStmtNode loop = (AST.WhileStmtNode) stmts.get(k);
+                lists.put(loop, node);
+                if (k > 0) {
+                    previous.put(loop, stmts.get(k - 1));
+                }
+            }
+        }
+        visitChildren(node);
+    }
+
+    public void visitVarDeclNode(AST.VarDeclNode node) {
+        if (!sizes.isEmpty()) {
+            sizes.peek()[1] = 1;
+        }
+    }
+
+    public void visitWhileStmtNode(AST.WhileStmtNode node) {
+        if (!sizes.isEmpty()) {
+            sizes.peek()[1] = 1;
+        }
+        int[] size = new int[2];
+        sizes.push(size);
+        visitChildren(node);
+        then(() -> {
+            sizes.pop();
+            if (!sizes.isEmpty()) {
+                sizes.peek()[0] += size[0] + 1;
+            }
+            if (size[1] == 0) {
+                innermost.add(node);
+                loopSizes.put(node, size[0]);
+            }
+        });
+    }
+
+    // a counted loop: its variable, step and bound
+    private static class Counted {
+        AST.IdNode var;
+        int step;
+        AST.ExpNode bound;
+        boolean inclusive;  // i <= n
+    }
+
+    // the counted loop of node, null if it is not one
+    private static Counted counted(AST.WhileStmtNode node) {
+        if (!(node.exp() instanceof AST.LessNode || node.exp() instanceof AST.LessEqNode)) {
+            return null;
+        }
+        AST.BinaryExpNode cond = (AST.BinaryExpNode) node.exp();
+        if (!(cond.exp1() instanceof AST.IdNode)) {
+            return null;
+        }
+        Counted counted = new Counted();
+        counted.var = (AST.IdNode) cond.exp1();
+        counted.bound = cond.exp2();
+        counted.inclusive = cond instanceof AST.LessEqNode;
+        SymInfo info = counted.var.info();
+        if (info.isGlobal() || info instanceof StructInfo || !info.getType().isIntType()) {
+            return null;
+        }
+        SymInfo bound = null;
+        if (counted.bound instanceof AST.IdNode) {
+            bound = ((AST.IdNode) counted.bound).info();
+            if (bound == info || bound instanceof StructInfo
+                || !bound.getType().isIntType()) {
+                return null;
+            }
+        }
+        else if (constant(counted.bound) == null) {
+            return null;
+        }
+        List<AST.StmtNode> stmts = node.stmtList().getList();
+        if (stmts.isEmpty()) {
+            return null;
+        }
+        Integer step = step(stmts.get(stmts.size() - 1), info);
+        if (step == null || step <= 0) {
+            return null;
+        }
+        counted.step = step;
+        for (int k = 0; k < stmts.size() - 1; k++) {
+            Effects effects = Effects.of(stmts.get(k));
+            if (effects.assigned().contains(info)
+                || (bound != null && (effects.assigned().contains(bound)
+                                      || (bound.isGlobal() && effects.calls())))) {
+                return null;
+            }
+        }
+        return counted;
+    }
+
+    // the step of i++ or i = i + c, null for another statement
+    private static Integer step(AST.StmtNode stmt, SymInfo info) {
+        if (stmt instanceof AST.PostIncStmtNode) {
+            return isVar(((AST.PostIncStmtNode) stmt).exp(), info) ? 1 : null;
+        }
+        if (!(stmt instanceof AST.AssignStmtNode)) {
+            return null;
+        }
+        AST.AssignNode assign = ((AST.AssignStmtNode) stmt).assign();
+        if (!isVar(assign.lhs(), info) || !(assign.rhs() instanceof AST.PlusNode)) {
+            return null;
+        }
+        AST.PlusNode plus = (AST.PlusNode) assign.rhs();
+        if (isVar(plus.exp1(), info)) {
+            return constant(plus.exp2());
+        }
+        return isVar(plus.exp2(), info) ? constant(plus.exp1()) : null;
+    }
+
+    private static boolean isVar(AST.ExpNode exp, SymInfo info) {
+        return exp instanceof AST.IdNode && ((AST.IdNode) exp).info() == info;
+    }
+
+    // the value of an integer literal, or of its negation; else null
+    private static Integer constant(AST.ExpNode exp) {
+        if (exp instanceof AST.IntLitNode) {
+            return ((AST.IntLitNode) exp).intVal();
+        }
+        if (exp instanceof AST.UnaryMinusNode
+            && ((AST.UnaryMinusNode) exp).exp() instanceof AST.IntLitNode) {
+            return -((AST.IntLitNode) ((AST.UnaryMinusNode) exp).exp()).intVal();
+        }
+        return null;
+    }
+
+    // the value given to the variable by the statement, null if none
+    private static Integer initial(AST.StmtNode stmt, SymInfo info) {
+        if (!(stmt instanceof AST.AssignStmtNode)) {
+            return null;
+        }
+        AST.AssignNode assign = ((AST.AssignStmtNode) stmt).assign();
+        return isVar(assign.lhs(), info) ? constant(assign.rhs()) : null;
+    }
+
+    // the number of iterations of the loop, -1 if not known
+    private long trips(AST.WhileStmtNode node, Counted counted) {
+        AST.StmtNode before = previous.get(node);
+        Integer first = before == null ? null : initial(before, counted.var.info());
+        Integer last = constant(counted.bound);
+        if (first == null || last == null) {
+            return -1;
+        }
+        long span = (long) last - first + (counted.inclusive ? 1 : 0);
+        return span <= 0 ? 0 : (span + counted.step - 1) / counted.step;
+    }
+
+    // replace the loops unrolled in their list
+    private void rewrite() {
+        Map<AST.StmtNode, List<AST.StmtNode>> replaced =
+            new IdentityHashMap<AST.StmtNode, List<AST.StmtNode>>();
+        Set<AST.StmtListNode> changed = Collections.newSetFromMap(
+            new IdentityHashMap<AST.StmtListNode, Boolean>());
+        for (AST.WhileStmtNode node : innermost) {
+            Counted counted = counted(node);
+            if (counted == null) {
+                continue;
+            }
+            int size = loopSizes.get(node);
+            long trips = trips(node, counted);
+            List<AST.StmtNode> stmts = null;
+            if (trips >= 0 && trips <= FULL_TRIPS && trips * size <= UNROLLED_SIZE) {
+                stmts = copies(node, (int) trips);
+            }
+            else if (factor > 1 && factor * size <= UNROLLED_SIZE) {
+                stmts = unroll(node, counted);
+            }
+            if (stmts != null) {
+                replaced.put(node, stmts);
+                changed.add(lists.get(node));
+            }
+        }
+        for (AST.StmtListNode list : changed) {
+            List<AST.StmtNode> stmts = new ArrayList<AST.StmtNode>();
+            for (AST.StmtNode stmt : list.getList()) {
+                List<AST.StmtNode> replacement = replaced.get(stmt);
+                if (replacement != null) {
+                    stmts.addAll(replacement);
+                }
+                else {
+                    stmts.add(stmt);
+                }
+            }
+            list.getList().clear();
+            list.getList().addAll(stmts);
+        }
+    }
+
+    // n copies of the body
+    private static List<AST.StmtNode> copies(AST.WhileStmtNode node, int n) {
+        List<AST.StmtNode> stmts = new ArrayList<AST.StmtNode>();
+        for (int k = 0; k < n; k++) {
+            stmts.addAll(new Cloner().copy(node.stmtList()).getList());
+        }
+        return stmts;
+    }
+
+    private List<AST.StmtNode> unroll(AST.WhileStmtNode node, Counted counted) {
+        // the first loop runs while i + (factor - 1) * c < n
+        long offset = (long) (factor - 1) * counted.step - (counted.inclusive ? 1 : 0);
+        List<AST.StmtNode> stmts = new ArrayList<AST.StmtNode>();
+        AST.ExpNode limit;
+        Integer bound = constant(counted.bound);
+        if (bound != null) {
+            if (bound - offset < Integer.MIN_VALUE) {
+                return null;
+            }
+            limit = literal(counted.var, bound - offset);
+        }
+        else if (offset == 0) {
+            limit = Temps.use((AST.IdNode) counted.bound);
+        }
+        else {
+            if (offset > Integer.MAX_VALUE) {
+                return null;
+            }
+            AST.IdNode lim = Temps.declare(fn, new Type.IntType(), "lim");
+            AST.IdNode n = (AST.IdNode) counted.bound;
+            AST.MinusNode difference =
+                new AST.MinusNode(Temps.use(n), literal(counted.var, offset));
+            difference.setWraps(true);
+            stmts.add(new AST.AssignStmtNode(
+                new AST.AssignNode(Temps.use(lim), difference)));
+            List<AST.StmtNode> reset = new ArrayList<AST.StmtNode>();
+            reset.add(new AST.AssignStmtNode(
+                new AST.AssignNode(Temps.use(lim), Temps.use(counted.var))));
+            AST.ExpNode skip = new AST.OrNode(
+                new AST.AndNode(
+                    new AST.LessNode(Temps.use(n), literal(counted.var, 0)),
+                    new AST.GreaterEqNode(Temps.use(lim), literal(counted.var, 0))),
+                new AST.AndNode(
+                    new AST.GreaterEqNode(Temps.use(counted.var), literal(counted.var, 0)),
+                    new AST.LessNode(Temps.use(lim), literal(counted.var, 0))));
+            stmts.add(new AST.IfStmtNode(skip,
+                new AST.DeclListNode(new ArrayList<AST.DeclNode>()),
+                new AST.StmtListNode(reset)));
+            limit = Temps.use(lim);
+        }
+        stmts.add(new AST.WhileStmtNode(new AST.LessNode(Temps.use(counted.var), limit),
+                                        new AST.DeclListNode(new ArrayList<AST.DeclNode>()),
+                                        new AST.StmtListNode(copies(node, factor))));
+        stmts.add(node);
+        return stmts;
+    }
+
+    private static AST.ExpNode literal(AST.IdNode at, long value) {
+        if (value < 0 && value != Integer.MIN_VALUE) {
+            return new AST.UnaryMinusNode(
+                new AST.IntLitNode(at.lineNum(), at.charNum(), (int) -value));
+        }
+        return new AST.IntLitNode(at.lineNum(), at.charNum(), (int) value);
+    }
+}
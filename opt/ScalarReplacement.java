@@ -0,0 +1,194 @@
+package opt;
+
+import java.util.*;
+import java.util.function.Consumer;
+import ast.*;
+import symtable.*;
+
+/**
+ * Scalar replacement of the local structs.
+ *
+ * C-- has no pointers, and a struct can be neither assigned, passed nor
+ * returned as a whole (the type checker rejects it): a local struct is
+ * only used through dot-accesses to its fields, and never escapes its
+ * function. Each one is then replaced by a variable per field, the
+ * fields of its nested structs flattened, declared in its place; a
+ * dot-access becomes an ID of the variable of its field. Those are plain
+ * int or bool locals, which the code generator may keep in registers and
+ * the other passes optimize as any other. The global structs are left as
+ * they are.
+ */
+public class ScalarReplacement extends AST.VisitorWalk implements Pass {
+
+    // the fields of each struct type declared so far
+    private Map<SymInfo, AST.DeclListNode> structs = new HashMap<SymInfo, AST.DeclListNode>();
+    // the variables of the fields of each struct replaced, by path
+    private Map<SymInfo, Map<String, AST.IdNode>> fields;
+
+    public String name() {
+        return "sra";
+    }
+
+    public void begin() {
+        structs.clear();
+    }
+
+    public AST.DeclNode run(AST.DeclNode decl) {
+        if (decl instanceof AST.StructDeclNode) {
+            AST.StructDeclNode struct = (AST.StructDeclNode) decl;
+            structs.put(struct.idNode().info(), struct.declList());
+        }
+        else if (decl instanceof AST.FnDeclNode) {
+            fields = new IdentityHashMap<SymInfo, Map<String, AST.IdNode>>();
+            walk(decl);
+        }
+        return decl;
+    }
+
+    public boolean runsOnErrors() {
+        return false;
+    }
+
+    public boolean transforms() {
+        return true;
+    }
+
+    protected void defaultVisit(AST.ASTnode node) {
+        if (node instanceof AST.UnaryExpNode) {
+            AST.UnaryExpNode unary = (AST.UnaryExpNode) node;
+            operand(unary.exp(), unary::setExp);
+        }
+        else if (node instanceof AST.BinaryExpNode) {
+            AST.BinaryExpNode binary = (AST.BinaryExpNode) node;
+            operand(binary.exp1(), binary::setExp1);
+            operand(binary.exp2(), binary::setExp2);
+        }
+        else {
+            visitChildren(node);
+        }
+    }
+
+    // replace the expression if it is a field of a struct replaced, else
+    // visit it
+    private void operand(AST.ExpNode exp, Consumer<AST.ExpNode> slot) {
+        if (exp == null) {
+            return;
+        }
+        AST.IdNode field = field(exp);
+        if (field != null) {
+            slot.accept(Temps.use(field));
+        }
+        else {
+            visit(exp);
+        }
+    }
+
+    // the variable of the field of a dot-access, null if its struct is
+    // not replaced
+    private AST.IdNode field(AST.ExpNode exp) {
+        if (!(exp instanceof AST.DotAccessExpNode)) {
+            return null;
+        }
+        String path = "";
+        while (exp instanceof AST.DotAccessExpNode) {
+            AST.DotAccessExpNode dot = (AST.DotAccessExpNode) exp;
+            path = "." + dot.idNode().name() + path;
+            exp = dot.lhs();
+        }
+        Map<String, AST.IdNode> vars = fields.get(((AST.IdNode) exp).info());
+        return vars == null ? null : vars.get(path);
+    }
+
+    public void visitDeclListNode(AST.DeclListNode node) {
+        List<AST.DeclNode> decls = new ArrayList<AST.DeclNode>();
+        for (AST.DeclNode decl : node.getList()) {
+            SymInfo info = decl instanceof AST.VarDeclNode
+                ? ((AST.VarDeclNode) decl).getMyId().info() : null;
+            if (!(info instanceof StructInfo)) {
+                decls.add(decl);
+                continue;
+            }
+            Map<String, AST.IdNode> vars = new HashMap<String, AST.IdNode>();
+            split(((AST.VarDeclNode) decl).getMyId(),
+                  ((StructInfo) info).getStructType().info(), "", decls, vars);
+            fields.put(info, vars);
+        }
+        node.getList().clear();
+        node.getList().addAll(decls);
+    }
+
+    // declare a variable for each field of the struct type at path in the
+    // variable of id
+    private void split(AST.IdNode id, SymInfo type, String path,
+                       List<AST.DeclNode> decls, Map<String, AST.IdNode> vars) {
+        for (AST.DeclNode decl : structs.get(type).getList()) {
+            AST.IdNode fieldId = ((AST.VarDeclNode) decl).getMyId();
+            SymInfo info = fieldId.info();
+            String fieldPath = path + "." + fieldId.name();
+            if (info instanceof StructInfo) {
+                split(id, ((StructInfo) info).getStructType().info(), fieldPath,
+                      decls, vars);
+                continue;
+            }
+            AST.IdNode var = Temps.part(id, fieldPath.substring(1).replace('.', '_'),
+                                        new SymInfo(info.getType()));
+            AST.TypeNode typeNode = info.getType().isBoolType() ? new AST.BoolNode()
+                                                                : new AST.IntNode();
+            decls.add(new AST.VarDeclNode(typeNode, var, AST.VarDeclNode.NOT_STRUCT));
+            vars.put(fieldPath, var);
+        }
+    }
+
+    public void visitAssignNode(AST.AssignNode node) {
+        operand(node.lhs(), node::setLhs);
+        operand(node.rhs(), node::setRhs);
+    }
+
+    public void visitExpListNode(AST.ExpListNode node) {
+        List<AST.ExpNode> list = node.getList();
+        for (int k = 0; k < list.size(); k++) {
+            int index = k;
+            operand(list.get(k), exp -> list.set(index, exp));
+        }
+    }
+
+    public void visitPostIncStmtNode(AST.PostIncStmtNode node) {
+        operand(node.exp(), node::setExp);
+    }
+
+    public void visitPostDecStmtNode(AST.PostDecStmtNode node) {
+        operand(node.exp(), node::setExp);
+    }
+
+    public void visitReadStmtNode(AST.ReadStmtNode node) {
+        operand(node.exp(), node::setExp);
+    }
+
+    public void visitWriteStmtNode(AST.WriteStmtNode node) {
+        operand(node.exp(), node::setExp);
+    }
+
+    public void visitReturnStmtNode(AST.ReturnStmtNode node) {
+        operand(node.exp(), node::setExp);
+    }
+
+    public void visitIfStmtNode(AST.IfStmtNode node) {
+        operand(node.exp(), node::setExp);
+        visit(node.declList());
+        visit(node.stmtList());
+    }
+
+    public void visitIfElseStmtNode(AST.IfElseStmtNode node) {
+        operand(node.exp(), node::setExp);
+        visit(node.thenDeclList());
+        visit(node.thenStmtList());
+        visit(node.elseDeclList());
+        visit(node.elseStmtList());
+    }
+
+    public void visitWhileStmtNode(AST.WhileStmtNode node) {
+        operand(node.exp(), node::setExp);
+        visit(node.declList());
+        visit(node.stmtList());
+    }
+}
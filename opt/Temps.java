@@ -0,0 +1,64 @@
+package opt;
+
+import ast.*;
+import symtable.*;
+
+/**
+ * The temporary variables introduced by the optimizations. A temporary
+ * is a local of the function using it, declared at the end of the
+ * declarations of its body; its name cannot clash with a C-- identifier.
+ */
+public class Temps {
+
+    private static int currTemp = 0;
+
+    /**
+     * Declare a new temporary of the given type (int or bool) in fn;
+     * returns its ID
+     */
+    public static AST.IdNode declare(AST.FnDeclNode fn, Type.AbstractType type,
+                                     String prefix) {
+        AST.IdNode id = new AST.IdNode(fn.idNode().lineNum(),
+                                       fn.idNode().charNum(), name(prefix));
+        id.link(new SymInfo(type));
+        AST.TypeNode typeNode = type.isBoolType() ? new AST.BoolNode()
+                                                  : new AST.IntNode();
+        fn.body().getDeclList().add(
+            new AST.VarDeclNode(typeNode, id, AST.VarDeclNode.NOT_STRUCT));
+        return id;
+    }
+
+    /**
+     * The ID of a copy of the variable of id, whose symbol is info
+     */
+    public static AST.IdNode rename(AST.IdNode id, SymInfo info) {
+        AST.IdNode copy = new AST.IdNode(id.lineNum(), id.charNum(),
+                                         name(id.name()));
+        copy.link(info);
+        return copy;
+    }
+
+    /**
+     * The ID of a new variable standing for a part (named part) of the
+     * variable of id, whose symbol is info
+     */
+    public static AST.IdNode part(AST.IdNode id, String part, SymInfo info) {
+        AST.IdNode copy = new AST.IdNode(id.lineNum(), id.charNum(),
+                                         name(id.name() + "_" + part));
+        copy.link(info);
+        return copy;
+    }
+
+    private static String name(String prefix) {
+        return prefix + "$" + currTemp++;
+    }
+
+    /**
+     * A new use of the variable of id
+     */
+    public static AST.IdNode use(AST.IdNode id) {
+        AST.IdNode use = new AST.IdNode(id.lineNum(), id.charNum(), id.name());
+        use.link(id.info());
+        return use;
+    }
+}
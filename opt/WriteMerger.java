@@ -0,0 +1,114 @@
+package opt;
+
+import java.util.*;
+import ast.*;
+
+/**
+ * Merging of the consecutive writes of constants.
+ *
+ * A write of a string literal, of an integer literal (negated or not) or
+ * of true or false writes a text known at compile time. A run of such
+ * writes in a statement list is replaced by a single write of the string
+ * literal of their texts put together, the code generator then making a
+ * single syscall for them: cout << "a: "; cout << 1; cout << "\n"; is
+ * cout << "a: 1\n";. A bool is written as 1 or 0, as the code generator
+ * does.
+ */
+public class WriteMerger extends AST.VisitorWalk implements Pass {
+
+    public String name() {
+        return "merge-writes";
+    }
+
+    public AST.DeclNode run(AST.DeclNode decl) {
+        if (decl instanceof AST.FnDeclNode) {
+            walk(decl);
+        }
+        return decl;
+    }
+
+    public boolean runsOnErrors() {
+        return false;
+    }
+
+    public boolean transforms() {
+        return true;
+    }
+
+    protected void defaultVisit(AST.ASTnode node) {
+    }
+
+    public void visitFnDeclNode(AST.FnDeclNode node) {
+        visit(node.body().stmtList());
+    }
+
+    public void visitStmtListNode(AST.StmtListNode node) {
+        List<AST.StmtNode> stmts = new ArrayList<AST.StmtNode>();
+        List<AST.WriteStmtNode> run = new ArrayList<AST.WriteStmtNode>();
+        for (AST.StmtNode stmt : node.getList()) {
+            if (stmt instanceof AST.WriteStmtNode
+                && text(((AST.WriteStmtNode) stmt).exp()) != null) {
+                run.add((AST.WriteStmtNode) stmt);
+                continue;
+            }
+            stmts.addAll(merge(run));
+            run.clear();
+            stmts.add(stmt);
+            visit(stmt);
+        }
+        stmts.addAll(merge(run));
+        node.getList().clear();
+        node.getList().addAll(stmts);
+    }
+
+    public void visitIfStmtNode(AST.IfStmtNode node) {
+        visit(node.stmtList());
+    }
+
+    public void visitIfElseStmtNode(AST.IfElseStmtNode node) {
+        visit(node.thenStmtList());
+        visit(node.elseStmtList());
+    }
+
+    public void visitWhileStmtNode(AST.WhileStmtNode node) {
+        visit(node.stmtList());
+    }
+
+    // the run of writes as a single write, if it has several
+    private static List<AST.WriteStmtNode> merge(List<AST.WriteStmtNode> run) {
+        if (run.size() < 2) {
+            return new ArrayList<AST.WriteStmtNode>(run);
+        }
+        StringBuilder text = new StringBuilder();
+        for (AST.WriteStmtNode write : run) {
+            text.append(text(write.exp()));
+        }
+        AST.ExpNode first = run.get(0).exp();
+        AST.StringLitNode lit = new AST.StringLitNode(first.lineNum(), first.charNum(),
+                                                      "\"" + text + "\"");
+        return Collections.singletonList(new AST.WriteStmtNode(lit));
+    }
+
+    // the text written for exp, as in a string literal (escapes kept), or
+    // null if it is not known at compile time
+    private static String text(AST.ExpNode exp) {
+        if (exp instanceof AST.StringLitNode) {
+            String lit = ((AST.StringLitNode) exp).strVal();
+            return lit.substring(1, lit.length() - 1);
+        }
+        if (exp instanceof AST.IntLitNode) {
+            return Integer.toString(((AST.IntLitNode) exp).intVal());
+        }
+        if (exp instanceof AST.UnaryMinusNode
+            && ((AST.UnaryMinusNode) exp).exp() instanceof AST.IntLitNode) {
+            return Integer.toString(-((AST.IntLitNode) ((AST.UnaryMinusNode) exp).exp()).intVal());
+        }
+        if (exp instanceof AST.TrueNode) {
+            return "1";
+        }
+        if (exp instanceof AST.FalseNode) {
+            return "0";
+        }
+        return null;
+    }
+}
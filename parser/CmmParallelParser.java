@@ -0,0 +1,183 @@
+package parser;
+
+import java.util.*;
+import java.util.concurrent.*;
+import ast.*;
+import lexer.*;
+
+/**
+ * Parser that parses the top-level declarations of a C-- program
+ * concurrently.
+ *
+ * A cheap pre-scan of the TokenStream finds the declaration boundaries:
+ * a top-level declaration ends with a SEMICOLON at brace depth 0 (varDecl),
+ * with the RCURLY closing its body (fnDecl) or with the SEMICOLON after the
+ * RCURLY closing its fields (structDecl). The declarations are grouped in
+ * chunks which are parsed by CmmRDParser on a ForkJoinPool, and the
+ * resulting DeclNodes are assembled in source order.
+ *
+ * The chunks are parsed without reporting errors. A chunk is accepted only
+ * if each of its declarations ends exactly at the next boundary, in which
+ * case the result is the one a sequential parse would give. From the first
+ * chunk that fails, the rest of the program is parsed sequentially, so
+ * syntax errors are reported exactly as with CmmRDParser.
+ */
+public class CmmParallelParser {
+
+    // minimum number of tokens in a chunk parsed by one task
+    private static final int CHUNK_TOKENS = 4096;
+
+    private TokenStream tokens;
+    private ForkJoinPool pool;
+
+    public CmmParallelParser(TokenStream tokens) {
+        this(tokens, ForkJoinPool.commonPool());
+    }
+
+    public CmmParallelParser(TokenStream tokens, ForkJoinPool pool) {
+        this.tokens = tokens;
+        this.pool = pool;
+    }
+
+    public AST.ProgramNode parse() {
+        int[] bounds = declBoundaries();
+        int[] chunks = chunkBoundaries(bounds);
+        int numChunks = chunks.length - 1;
+
+        List<Future<List<AST.DeclNode>>> results =
+            new ArrayList<Future<List<AST.DeclNode>>>(numChunks);
+        for (int c = 0; c < numChunks; c++) {
+            results.add(pool.submit(new ChunkTask(bounds, chunks[c], chunks[c+1])));
+        }
+
+        List<AST.DeclNode> decls = new ArrayList<AST.DeclNode>(bounds.length);
+        for (int c = 0; c < numChunks; c++) {
+            List<AST.DeclNode> chunk = join(results.get(c));
+            if (chunk == null) {
+                // parse sequentially from the start of the failing chunk
+                for (int k = c + 1; k < numChunks; k++) {
+                    results.get(k).cancel(false);
+                }
+                CmmRDParser P = new CmmRDParser(tokens, bounds[chunks[c]], false);
+                decls.addAll(P.declList());
+                break;
+            }
+            decls.addAll(chunk);
+        }
+        return new AST.ProgramNode(new AST.DeclListNode(decls));
+    }
+
+    private static List<AST.DeclNode> join(Future<List<AST.DeclNode>> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Task parsing the declarations bounds[from] .. bounds[to]-1.
+     * Returns null if the chunk does not parse exactly as split.
+     */
+    private class ChunkTask implements Callable<List<AST.DeclNode>> {
+        private int[] bounds;
+        private int from;
+        private int to;
+
+        ChunkTask(int[] bounds, int from, int to) {
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+        }
+
+        public List<AST.DeclNode> call() {
+            List<AST.DeclNode> decls = new ArrayList<AST.DeclNode>(to - from);
+            CmmRDParser P = new CmmRDParser(tokens, bounds[from], true);
+            try {
+                for (int d = from; d < to; d++) {
+                    decls.add(P.decl());
+                    if (P.position() != bounds[d+1]) {
+                        return null;
+                    }
+                }
+            } catch (SyntaxErrorException ex) {
+                return null;
+            }
+            return decls;
+        }
+    }
+
+    /**
+     * Pre-scan the token stream: returns the index of the first token of
+     * each top-level declaration, followed by the index of the EOF token.
+     * When the braces do not balance, the rest of the stream is left as a
+     * single "declaration" (it will be parsed, and rejected, sequentially).
+     */
+    private int[] declBoundaries() {
+        int eof = tokens.size() - 1;
+        int[] bounds = new int[16];
+        int n = 0;
+        int i = 0;
+        while (i < eof) {
+            if (n + 1 >= bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[n++] = i;
+            boolean isStruct = tokens.kind(i) == sym.STRUCT
+                && i + 2 < eof && tokens.kind(i+2) == sym.LCURLY;
+            int depth = 0;
+            int end = eof;
+            for (int j = i; j < eof; j++) {
+                int kind = tokens.kind(j);
+                if (kind == sym.LCURLY) {
+                    depth++;
+                }
+                else if (kind == sym.RCURLY) {
+                    depth--;
+                    if (depth < 0) {
+                        break;
+                    }
+                    if (depth == 0 && !isStruct) {
+                        end = j + 1;
+                        break;
+                    }
+                }
+                else if (kind == sym.SEMICOLON && depth == 0) {
+                    end = j + 1;
+                    break;
+                }
+            }
+            i = end;
+        }
+        bounds[n++] = eof;
+        return Arrays.copyOf(bounds, n);
+    }
+
+    /**
+     * Group consecutive declarations into chunks of at least CHUNK_TOKENS
+     * tokens; returns indexes into bounds
+     */
+    private static int[] chunkBoundaries(int[] bounds) {
+        int numDecls = bounds.length - 1;
+        List<Integer> chunks = new ArrayList<Integer>();
+        chunks.add(0);
+        int start = bounds[0];
+        for (int d = 1; d < numDecls; d++) {
+            if (bounds[d] - start >= CHUNK_TOKENS) {
+                chunks.add(d);
+                start = bounds[d];
+            }
+        }
+        if (numDecls > 0) {
+            chunks.add(numDecls);
+        }
+        int[] result = new int[chunks.size()];
+        for (int c = 0; c < result.length; c++) {
+            result[c] = chunks.get(c);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,682 @@
+package parser;
+
+import java.util.*;
+import ast.*;
+import lexer.*;
+
+/**
+ * Hand-written recursive-descent parser for C-- programs.
+ *
+ * It accepts the same language as the CUP grammar in cmm.cup and builds the
+ * same AST; expressions are parsed with a stack of operators and one of
+ * operands (shunting-yard) using the precedence and associativity declared
+ * in cmm.cup:
+ *
+ *     ASSIGN                                  right   (lowest)
+ *     OR                                      left
+ *     AND                                     left
+ *     EQUALS NOTEQUALS LESS GREATER ...       nonassoc
+ *     PLUS MINUS  (and unary MINUS)           left
+ *     TIMES DIVIDE                            left
+ *     NOT                                     right   (highest)
+ *
+ * Nothing nests on the Java stack: the blocks of a function body are
+ * parsed in one loop with a stack of the blocks open, and the parentheses,
+ * prefix operators, assignments and calls of an expression are on the
+ * operator stack, so that programs nest as deep as with CmmParser.
+ *
+ * The parser reads a pre-lexed TokenStream, so no Symbol is allocated.
+ * On the first token that cannot continue a valid program it reports the
+ * same error as CmmParser.syntax_error and throws SyntaxErrorException.
+ */
+public class CmmRDParser {
+
+    // precedence levels of the binary operators
+    private static final int PREC_NONE = 0;
+    private static final int PREC_OR = 1;
+    private static final int PREC_AND = 2;
+    private static final int PREC_REL = 3;
+    private static final int PREC_ADD = 4;
+    private static final int PREC_MUL = 5;
+    private static final int PREC_NOT = 6;
+
+    // the operators of exp() on its stack besides the binary ones (their
+    // tokens), sym.NOT, sym.ASSIGN (its loc an operand) and sym.LPAREN
+    private static final int UNARY_MINUS = -1;
+    private static final int CALL = -2; // its id an operand
+
+    private TokenStream tokens;
+    private int pos;
+    private boolean quiet; // if true, syntax errors are not reported
+
+    // the stacks of exp(): the operators, the operands and the actuals of
+    // each call open
+    private int[] operators = new int[16];
+    private int operatorCount;
+    private AST.ExpNode[] operands = new AST.ExpNode[16];
+    private int operandCount;
+    private List<List<AST.ExpNode>> calls = new ArrayList<List<AST.ExpNode>>();
+
+    public CmmRDParser(TokenStream tokens) {
+        this(tokens, 0, false);
+    }
+
+    /**
+     * Parser starting at token 'start' (used to parse parts of a program,
+     * see CmmParallelParser)
+     */
+    CmmRDParser(TokenStream tokens, int start, boolean quiet) {
+        this.tokens = tokens;
+        this.pos = start;
+        this.quiet = quiet;
+    }
+
+    /**
+     * program ::= declList
+     */
+    public AST.ProgramNode parse() {
+        return new AST.ProgramNode(new AST.DeclListNode(declList()));
+    }
+
+    /**
+     * program ::= declList, in a FlatAST: each declaration is added to the
+     * store as soon as it is parsed, so that the objects of only one
+     * declaration are alive at a time
+     */
+    public FlatAST parseFlat() {
+        FlatAST flat = new FlatAST();
+        while (kind() != sym.EOF) {
+            flat.add(decl());
+        }
+        flat.trimToSize();
+        return flat;
+    }
+
+    /**
+     * declList ::= declList decl | epsilon
+     */
+    List<AST.DeclNode> declList() {
+        List<AST.DeclNode> decls = new ArrayList<AST.DeclNode>();
+        while (kind() != sym.EOF) {
+            decls.add(decl());
+        }
+        return decls;
+    }
+
+    /**
+     * Index of the next token to be parsed
+     */
+    int position() {
+        return pos;
+    }
+
+    // **********************************************************************
+    // declarations
+    // **********************************************************************
+
+    /**
+     * decl ::= varDecl | fnDecl | structDecl
+     */
+    AST.DeclNode decl() {
+        if (kind() == sym.STRUCT) {
+            if (kind(pos + 1) == sym.ID && kind(pos + 2) == sym.LCURLY) {
+                return structDecl();
+            }
+            return varDecl();
+        }
+        AST.TypeNode t = type();
+        AST.IdNode i = id();
+        if (kind() == sym.SEMICOLON) {
+            pos++;
+            return new AST.VarDeclNode(t, i, AST.VarDeclNode.NOT_STRUCT);
+        }
+        if (kind() == sym.LPAREN) {
+            AST.FormalsListNode f = new AST.FormalsListNode(formals());
+            return new AST.FnDeclNode(t, i, f, fnBody());
+        }
+        throw syntaxError();
+    }
+
+    /**
+     * varDecl ::= type id SEMICOLON | STRUCT id id SEMICOLON
+     */
+    private AST.VarDeclNode varDecl() {
+        if (kind() == sym.STRUCT) {
+            pos++;
+            AST.IdNode t = id();
+            AST.IdNode i = id();
+            expect(sym.SEMICOLON);
+            return new AST.VarDeclNode(new AST.StructNode(t), i, 0);
+        }
+        AST.TypeNode t = type();
+        AST.IdNode i = id();
+        expect(sym.SEMICOLON);
+        return new AST.VarDeclNode(t, i, AST.VarDeclNode.NOT_STRUCT);
+    }
+
+    /**
+     * varDeclList ::= varDeclList varDecl | epsilon
+     */
+    private List<AST.DeclNode> varDeclList() {
+        List<AST.DeclNode> list = new ArrayList<AST.DeclNode>();
+        while (isVarDeclStart(kind())) {
+            list.add(varDecl());
+        }
+        return list;
+    }
+
+    /**
+     * structDecl ::= STRUCT id LCURLY structBody RCURLY SEMICOLON
+     * structBody ::= structBody varDecl | varDecl
+     */
+    private AST.StructDeclNode structDecl() {
+        expect(sym.STRUCT);
+        AST.IdNode i = id();
+        expect(sym.LCURLY);
+        List<AST.DeclNode> body = new ArrayList<AST.DeclNode>();
+        do {
+            body.add(varDecl());
+        } while (isVarDeclStart(kind()));
+        expect(sym.RCURLY);
+        expect(sym.SEMICOLON);
+        return new AST.StructDeclNode(i, new AST.DeclListNode(body));
+    }
+
+    /**
+     * formals     ::= LPAREN RPAREN | LPAREN formalsList RPAREN
+     * formalsList ::= formalDecl | formalDecl COMMA formalsList
+     * formalDecl  ::= type id
+     */
+    private List<AST.FormalDeclNode> formals() {
+        List<AST.FormalDeclNode> list = new ArrayList<AST.FormalDeclNode>();
+        expect(sym.LPAREN);
+        if (kind() == sym.RPAREN) {
+            pos++;
+            return list;
+        }
+        list.add(new AST.FormalDeclNode(type(), id()));
+        while (kind() == sym.COMMA) {
+            pos++;
+            list.add(new AST.FormalDeclNode(type(), id()));
+        }
+        expect(sym.RPAREN);
+        return list;
+    }
+
+    /**
+     * fnBody ::= LCURLY varDeclList stmtList RCURLY
+     *
+     * with the blocks of its if and while statements, parsed in one loop
+     * (see Block)
+     */
+    private AST.FnBodyNode fnBody() {
+        expect(sym.LCURLY);
+        Deque<Block> open = new ArrayDeque<Block>();
+        Block block = new Block(sym.LCURLY, null, new AST.DeclListNode(varDeclList()), null);
+        while (true) {
+            int k = kind();
+            if (k == sym.IF || k == sym.WHILE) {
+                pos++;
+                expect(sym.LPAREN);
+                AST.ExpNode e = exp();
+                expect(sym.RPAREN);
+                expect(sym.LCURLY);
+                open.push(block);
+                block = new Block(k, e, new AST.DeclListNode(varDeclList()), null);
+            }
+            else if (isStmtStart(k)) {
+                block.stmts.add(stmt());
+            }
+            else {
+                expect(sym.RCURLY);
+                if (block.kind == sym.LCURLY) {
+                    return new AST.FnBodyNode(block.decls, new AST.StmtListNode(block.stmts));
+                }
+                if (block.kind == sym.IF && kind() == sym.ELSE) {
+                    pos++;
+                    expect(sym.LCURLY);
+                    block = new Block(sym.ELSE, block.exp, new AST.DeclListNode(varDeclList()),
+                                      block);
+                    continue;
+                }
+                AST.StmtNode s = block.stmt();
+                block = open.pop();
+                block.stmts.add(s);
+            }
+        }
+    }
+
+    /**
+     * type ::= INT | BOOL | VOID
+     */
+    private AST.TypeNode type() {
+        switch (kind()) {
+            case sym.INT:
+                pos++;
+                return new AST.IntNode();
+            case sym.BOOL:
+                pos++;
+                return new AST.BoolNode();
+            case sym.VOID:
+                pos++;
+                return new AST.VoidNode();
+            default:
+                throw syntaxError();
+        }
+    }
+
+    // **********************************************************************
+    // statements
+    // **********************************************************************
+
+    /**
+     * A block being parsed:
+     *
+     *     stmt ::= IF LPAREN exp RPAREN LCURLY varDeclList stmtList RCURLY
+     *            | IF LPAREN exp RPAREN LCURLY varDeclList stmtList RCURLY
+     *              ELSE LCURLY varDeclList stmtList RCURLY
+     *            | WHILE LPAREN exp RPAREN LCURLY varDeclList stmtList RCURLY
+     *
+     * or the body of the function (kind LCURLY)
+     */
+    private static class Block {
+        final int kind; // sym.LCURLY, sym.IF, sym.ELSE or sym.WHILE
+        final AST.ExpNode exp;
+        final AST.DeclListNode decls;
+        final List<AST.StmtNode> stmts = new ArrayList<AST.StmtNode>();
+        final Block then; // of an else
+
+        Block(int kind, AST.ExpNode exp, AST.DeclListNode decls, Block then) {
+            this.kind = kind;
+            this.exp = exp;
+            this.decls = decls;
+            this.then = then;
+        }
+
+        /**
+         * The statement of the block, once closed
+         */
+        AST.StmtNode stmt() {
+            AST.StmtListNode sl = new AST.StmtListNode(stmts);
+            switch (kind) {
+                case sym.IF:
+                    return new AST.IfStmtNode(exp, decls, sl);
+                case sym.ELSE:
+                    return new AST.IfElseStmtNode(exp, then.decls,
+                                                  new AST.StmtListNode(then.stmts), decls, sl);
+                default:
+                    return new AST.WhileStmtNode(exp, decls, sl);
+            }
+        }
+    }
+
+    /**
+     * The statements but if and while (see fnBody)
+     */
+    private AST.StmtNode stmt() {
+        AST.ExpNode e;
+        switch (kind()) {
+            case sym.CIN:
+                pos++;
+                expect(sym.READ);
+                e = exp();
+                expect(sym.SEMICOLON);
+                return new AST.ReadStmtNode(e);
+
+            case sym.COUT:
+                pos++;
+                expect(sym.WRITE);
+                e = exp();
+                expect(sym.SEMICOLON);
+                return new AST.WriteStmtNode(e);
+
+            case sym.RETURN:
+                pos++;
+                if (kind() == sym.SEMICOLON) {
+                    pos++;
+                    return new AST.ReturnStmtNode(null);
+                }
+                e = exp();
+                expect(sym.SEMICOLON);
+                return new AST.ReturnStmtNode(e);
+
+            default: { // statements starting with a loc or a function call
+                AST.ExpNode lc = loc();
+                AST.StmtNode s;
+                if (kind() == sym.ASSIGN) {
+                    pos++;
+                    s = new AST.AssignStmtNode(new AST.AssignNode(lc, exp()));
+                }
+                else if (kind() == sym.PLUSPLUS) {
+                    pos++;
+                    s = new AST.PostIncStmtNode(lc);
+                }
+                else if (kind() == sym.MINUSMINUS) {
+                    pos++;
+                    s = new AST.PostDecStmtNode(lc);
+                }
+                else if (kind() == sym.LPAREN && lc instanceof AST.IdNode) {
+                    s = new AST.CallStmtNode(fncall((AST.IdNode) lc));
+                }
+                else {
+                    throw syntaxError();
+                }
+                expect(sym.SEMICOLON);
+                return s;
+            }
+        }
+    }
+
+    // **********************************************************************
+    // expressions
+    // **********************************************************************
+
+    /**
+     * exp  ::= exp binop exp | NOT exp | MINUS exp | assignExp | term
+     * term ::= loc | INTLITERAL | STRINGLITERAL | TRUE | FALSE
+     *        | LPAREN exp RPAREN | fncall
+     *
+     * Each operand is read after its prefix operators, pushed on the
+     * operator stack as are the LPAREN of a parenthesized exp, the ASSIGN
+     * of an assignExp and the LPAREN of a fncall, these last three ending
+     * with the operands between them. Before a binary operator is pushed,
+     * those of a precedence at least its own are applied (the operand of a
+     * unary minus being an exp of TIMES and DIVIDE, and a relational
+     * operator never following another at the same level); what ends the
+     * operand list applies them all, down to the nearest LPAREN.
+     */
+    private AST.ExpNode exp() {
+        operatorCount = 0;
+        operandCount = 0;
+        calls.clear();
+        while (true) {
+            // the next operand, after its prefix operators
+            int i = pos;
+            switch (kind()) {
+                case sym.NOT:
+                    pos++;
+                    pushOperator(sym.NOT);
+                    continue;
+                case sym.MINUS:
+                    pos++;
+                    pushOperator(UNARY_MINUS);
+                    continue;
+                case sym.LPAREN:
+                    pos++;
+                    pushOperator(sym.LPAREN);
+                    continue;
+                case sym.INTLITERAL:
+                    pos++;
+                    pushOperand(new AST.IntLitNode(tokens.line(i), tokens.column(i),
+                                                   tokens.intVal(i)));
+                    break;
+                case sym.STRINGLITERAL:
+                    pos++;
+                    pushOperand(new AST.StringLitNode(tokens.line(i), tokens.column(i),
+                                                      tokens.strVal(i)));
+                    break;
+                case sym.TRUE:
+                    pos++;
+                    pushOperand(new AST.TrueNode(tokens.line(i), tokens.column(i)));
+                    break;
+                case sym.FALSE:
+                    pos++;
+                    pushOperand(new AST.FalseNode(tokens.line(i), tokens.column(i)));
+                    break;
+                case sym.ID: {
+                    AST.ExpNode lc = loc();
+                    if (kind() == sym.ASSIGN) {
+                        pos++;
+                        pushOperand(lc);
+                        pushOperator(sym.ASSIGN);
+                        continue;
+                    }
+                    if (kind() == sym.LPAREN && lc instanceof AST.IdNode) {
+                        pos++;
+                        if (kind() == sym.RPAREN) {
+                            pos++;
+                            pushOperand(new AST.CallExpNode((AST.IdNode) lc,
+                                new AST.ExpListNode(new ArrayList<AST.ExpNode>())));
+                            break;
+                        }
+                        pushOperand(lc);
+                        calls.add(new ArrayList<AST.ExpNode>());
+                        pushOperator(CALL);
+                        continue;
+                    }
+                    pushOperand(lc);
+                    break;
+                }
+                default:
+                    throw syntaxError();
+            }
+            // the operators after it, up to the next operand
+            while (true) {
+                int prec = binaryPrec(kind());
+                while (operatorCount > 0 && operatorPrec(operators[operatorCount - 1]) >= prec) {
+                    int op = operators[--operatorCount];
+                    if (prec == PREC_REL && operatorPrec(op) == PREC_REL) {
+                        throw syntaxError(); // relational operators are non-associative
+                    }
+                    apply(op);
+                }
+                if (prec != PREC_NONE) {
+                    pushOperator(kind());
+                    pos++;
+                    break;
+                }
+                if (operatorCount == 0) {
+                    return popOperand();
+                }
+                if (operators[operatorCount - 1] == sym.LPAREN) {
+                    expect(sym.RPAREN);
+                    operatorCount--;
+                    continue;
+                }
+                // an actual of the call
+                calls.get(calls.size() - 1).add(popOperand());
+                if (kind() == sym.COMMA) {
+                    pos++;
+                    break;
+                }
+                expect(sym.RPAREN);
+                operatorCount--;
+                List<AST.ExpNode> actuals = calls.remove(calls.size() - 1);
+                AST.IdNode id = (AST.IdNode) popOperand();
+                pushOperand(new AST.CallExpNode(id, new AST.ExpListNode(actuals)));
+            }
+        }
+    }
+
+    private void pushOperator(int op) {
+        if (operatorCount == operators.length) {
+            operators = Arrays.copyOf(operators, 2 * operatorCount);
+        }
+        operators[operatorCount++] = op;
+    }
+
+    private void pushOperand(AST.ExpNode e) {
+        if (operandCount == operands.length) {
+            operands = Arrays.copyOf(operands, 2 * operandCount);
+        }
+        operands[operandCount++] = e;
+    }
+
+    private AST.ExpNode popOperand() {
+        AST.ExpNode e = operands[--operandCount];
+        operands[operandCount] = null;
+        return e;
+    }
+
+    /**
+     * Replace the operands of the operator, on top of the operand stack,
+     * by its node
+     */
+    private void apply(int op) {
+        AST.ExpNode e = popOperand();
+        switch (op) {
+            case sym.NOT:
+                pushOperand(new AST.NotNode(e));
+                break;
+            case UNARY_MINUS:
+                pushOperand(new AST.UnaryMinusNode(e));
+                break;
+            case sym.ASSIGN: {
+                AST.ExpNode lc = popOperand();
+                pushOperand(new AST.AssignNode(lc, e));
+                break;
+            }
+            default: {
+                AST.ExpNode e1 = popOperand();
+                pushOperand(binary(op, e1, e));
+            }
+        }
+    }
+
+    /**
+     * fncall     ::= id LPAREN RPAREN | id LPAREN actualList RPAREN
+     * actualList ::= exp | actualList COMMA exp
+     */
+    private AST.CallExpNode fncall(AST.IdNode i) {
+        List<AST.ExpNode> actuals = new ArrayList<AST.ExpNode>();
+        expect(sym.LPAREN);
+        if (kind() != sym.RPAREN) {
+            actuals.add(exp());
+            while (kind() == sym.COMMA) {
+                pos++;
+                actuals.add(exp());
+            }
+        }
+        expect(sym.RPAREN);
+        return new AST.CallExpNode(i, new AST.ExpListNode(actuals));
+    }
+
+    /**
+     * loc ::= id | loc DOT id
+     */
+    private AST.ExpNode loc() {
+        AST.ExpNode lc = id();
+        while (kind() == sym.DOT) {
+            pos++;
+            lc = new AST.DotAccessExpNode(lc, id());
+        }
+        return lc;
+    }
+
+    private AST.IdNode id() {
+        if (kind() != sym.ID) {
+            throw syntaxError();
+        }
+        int i = pos++;
+        return new AST.IdNode(tokens.line(i), tokens.column(i), tokens.strVal(i));
+    }
+
+    private static AST.ExpNode binary(int op, AST.ExpNode e1, AST.ExpNode e2) {
+        switch (op) {
+            case sym.PLUS:      return new AST.PlusNode(e1, e2);
+            case sym.MINUS:     return new AST.MinusNode(e1, e2);
+            case sym.TIMES:     return new AST.TimesNode(e1, e2);
+            case sym.DIVIDE:    return new AST.DivideNode(e1, e2);
+            case sym.AND:       return new AST.AndNode(e1, e2);
+            case sym.OR:        return new AST.OrNode(e1, e2);
+            case sym.EQUALS:    return new AST.EqualsNode(e1, e2);
+            case sym.NOTEQUALS: return new AST.NotEqualsNode(e1, e2);
+            case sym.LESS:      return new AST.LessNode(e1, e2);
+            case sym.GREATER:   return new AST.GreaterNode(e1, e2);
+            case sym.LESSEQ:    return new AST.LessEqNode(e1, e2);
+            default:            return new AST.GreaterEqNode(e1, e2);
+        }
+    }
+
+    private static int binaryPrec(int kind) {
+        switch (kind) {
+            case sym.OR:
+                return PREC_OR;
+            case sym.AND:
+                return PREC_AND;
+            case sym.EQUALS:
+            case sym.NOTEQUALS:
+            case sym.LESS:
+            case sym.GREATER:
+            case sym.LESSEQ:
+            case sym.GREATEREQ:
+                return PREC_REL;
+            case sym.PLUS:
+            case sym.MINUS:
+                return PREC_ADD;
+            case sym.TIMES:
+            case sym.DIVIDE:
+                return PREC_MUL;
+            default:
+                return PREC_NONE;
+        }
+    }
+
+    /**
+     * The precedence of an operator on the stack of exp(): those of a
+     * precedence at least that of the next binary operator are applied
+     * before it is pushed, all those above the nearest LPAREN at the end
+     * of the operands
+     */
+    private static int operatorPrec(int op) {
+        switch (op) {
+            case sym.NOT:
+                return PREC_NOT;
+            case UNARY_MINUS:
+                return PREC_ADD; // the production precedence of MINUS in cmm.cup
+            case sym.ASSIGN:
+                return PREC_NONE;
+            case sym.LPAREN:
+            case CALL:
+                return -1;
+            default:
+                return binaryPrec(op);
+        }
+    }
+
+    // **********************************************************************
+    // token helpers
+    // **********************************************************************
+
+    private static boolean isVarDeclStart(int kind) {
+        return kind == sym.INT || kind == sym.BOOL || kind == sym.VOID
+            || kind == sym.STRUCT;
+    }
+
+    private static boolean isStmtStart(int kind) {
+        return kind == sym.ID || kind == sym.CIN || kind == sym.COUT
+            || kind == sym.IF || kind == sym.WHILE || kind == sym.RETURN;
+    }
+
+    private int kind() {
+        return tokens.kind(pos);
+    }
+
+    private int kind(int i) {
+        return i < tokens.size() ? tokens.kind(i) : sym.EOF;
+    }
+
+    private void expect(int kind) {
+        if (kind() != kind) {
+            throw syntaxError();
+        }
+        pos++;
+    }
+
+    /**
+     * Report a syntax error on the current token the same way
+     * CmmParser.syntax_error does
+     */
+    private SyntaxErrorException syntaxError() {
+        if (quiet) {
+            return new SyntaxErrorException();
+        }
+        if (kind() == sym.EOF) {
+            ErrMsg.fatal(0,0, "Syntax error at end of file");
+        }
+        else {
+            ErrMsg.fatal(tokens.line(pos), tokens.column(pos), "Syntax error");
+        }
+        return new SyntaxErrorException();
+    }
+}
@@ -0,0 +1,375 @@
+package semantic;
+
+import java.util.*;
+import ast.*;
+import lexer.*;
+import symtable.*;
+
+/**
+ * Name analysis pass: builds the symbol table of the program, links each
+ * ID to its symbol and reports the multiply declared and undeclared
+ * identifiers.
+ */
+public class NameAnalyzer extends AST.VisitorWalk implements Pass {
+
+    private SymTable symTab;
+
+    public String name() {
+        return "name-analysis";
+    }
+
+    public void begin() {
+        symTab = new SymTable();
+    }
+
+    public AST.DeclNode run(AST.DeclNode decl) {
+        walk(decl);
+        return decl;
+    }
+
+    public void end() {
+        symTab = null;
+    }
+
+    protected void defaultVisit(AST.ASTnode node) {
+    }
+
+    public void visitDeclListNode(AST.DeclListNode node) {
+        visitChildren(node);
+    }
+
+    public void visitFnBodyNode(AST.FnBodyNode node) {
+        visitChildren(node);
+    }
+
+    public void visitStmtListNode(AST.StmtListNode node) {
+        visitChildren(node);
+    }
+
+    public void visitExpListNode(AST.ExpListNode node) {
+        visitChildren(node);
+    }
+
+    public void visitVarDeclNode(AST.VarDeclNode node) {
+        varDecl(node, symTab, symTab, "Multiple declaration of identifier");
+    }
+
+    /**
+     * Declare the variable (or struct field) in symTab, the struct types
+     * being looked up in globalTab; returns its symbol, or null if the
+     * declaration is bad
+     */
+    private static SymInfo varDecl(AST.VarDeclNode node, SymTable symTab,
+                                   SymTable globalTab, String dupMsg) {
+        AST.TypeNode type = node.typeNode();
+        AST.IdNode id = node.getMyId();
+        boolean badDecl = false;
+        String name = id.name();
+        SymInfo info = null;
+        AST.IdNode structId = null;
+
+        if (type instanceof AST.VoidNode) {  // check for void type
+            ErrMsg.fatal(id.lineNum(), id.charNum(),
+                         "Non-function declared void");
+            badDecl = true;
+        }
+        else if (type instanceof AST.StructNode) {
+            structId = ((AST.StructNode) type).idNode();//the name of variable
+            info = globalTab.lookupGlobal(structId.name());//the type
+            // if the name for the struct type is not found,
+            // or is not a struct type
+            if (info == null || !(info instanceof StructDefInfo)) {
+                ErrMsg.fatal(structId.lineNum(), structId.charNum(),
+                             "Invalid name of struct type");
+                badDecl = true;
+            }
+            else {
+                structId.link(info);
+            }
+        }
+        SymInfo dup = symTab.lookupLocal(name);
+
+        if (dup != null) {
+            ErrMsg.fatal(id.lineNum(), id.charNum(), dupMsg);
+            badDecl = true;
+        }
+        if (!badDecl) {  // insert into symbol table
+            if (type instanceof AST.StructNode) {
+                info = new StructInfo(structId);
+            }
+            else {
+                info = new SymInfo(type.type());
+            }
+            symTab.addDecl(name, info);
+            id.link(info);
+        }
+        return info;
+    }
+
+    public void visitFnDeclNode(AST.FnDeclNode node) {
+        AST.IdNode id = node.idNode();
+        String name = id.name();
+        FnInfo info = null;
+
+        SymInfo dup = symTab.lookupLocal(name);
+
+        if (dup != null) {
+            ErrMsg.fatal(id.lineNum(), id.charNum(),
+                         "Multiply declared identifier");
+        }
+        else { // add function name to local symbol table
+            info = new FnInfo(node.typeNode().type(), node.formalsList().length());
+            symTab.addDecl(name, info);
+            id.link(info);
+        }
+        symTab.addScope();  // add a new scope for locals and params
+        // process the formals
+        List<Type.AbstractType> typeList = new LinkedList<Type.AbstractType>();
+        for (AST.FormalDeclNode formal : node.formalsList().getList()) {
+            SymInfo formalInfo = formalDecl(formal);
+            if (formalInfo != null) {
+                typeList.add(formalInfo.getType());
+            }
+        }
+        if (info != null) {
+            info.addFormals(typeList);
+        }
+        visit(node.body());
+        then(() -> symTab.removeScope());
+    }
+
+    public void visitFormalDeclNode(AST.FormalDeclNode node) {
+        formalDecl(node);
+    }
+
+    private SymInfo formalDecl(AST.FormalDeclNode node) {
+        AST.IdNode id = node.idNode();
+        String name = id.name();
+        boolean badDecl = false;
+        SymInfo info = null;
+
+        if (node.typeNode() instanceof AST.VoidNode) {
+            ErrMsg.fatal(id.lineNum(), id.charNum(),
+                         "Non-function declared void");
+            badDecl = true;
+        }
+
+        if (symTab.lookupLocal(name) != null) {
+            ErrMsg.fatal(id.lineNum(), id.charNum(),
+                         "Multiply declared identifier");
+            badDecl = true;
+        }
+
+        if ( ! badDecl ) {  // insert into symbol table
+            info = new SymInfo(node.typeNode().type());
+            symTab.addDecl(name, info);
+            id.link(info);
+        }
+
+        return info;
+    }
+
+    public void visitStructDeclNode(AST.StructDeclNode node) {
+        AST.IdNode id = node.idNode();
+        String name = id.name();
+        boolean badDecl = false;
+
+        SymInfo dup = symTab.lookupLocal(name);
+
+        if (dup != null) {
+            ErrMsg.fatal(id.lineNum(), id.charNum(),
+                         "Multiply declared identifier");
+            badDecl = true;
+        }
+
+        SymTable structSymTab = new SymTable();
+
+        // the fields (the grammar only allows variable declarations)
+        for (AST.DeclNode field : node.declList().getList()) {
+            varDecl((AST.VarDeclNode) field, structSymTab, symTab,
+                    "Multiple declaration of struct field");
+        }
+
+        if (!badDecl) {
+            StructDefInfo info = new StructDefInfo(structSymTab);
+            symTab.addDecl(name, info);
+            id.link(info);
+        }
+    }
+
+    public void visitAssignStmtNode(AST.AssignStmtNode node) {
+        visitChildren(node);
+    }
+
+    public void visitPostIncStmtNode(AST.PostIncStmtNode node) {
+        visitChildren(node);
+    }
+
+    public void visitPostDecStmtNode(AST.PostDecStmtNode node) {
+        visitChildren(node);
+    }
+
+    public void visitReadStmtNode(AST.ReadStmtNode node) {
+        visitChildren(node);
+    }
+
+    public void visitWriteStmtNode(AST.WriteStmtNode node) {
+        visitChildren(node);
+    }
+
+    public void visitIfStmtNode(AST.IfStmtNode node) {
+        visit(node.exp());
+        then(() -> symTab.addScope());
+        visit(node.declList());
+        visit(node.stmtList());
+        then(() -> symTab.removeScope());
+    }
+
+    public void visitIfElseStmtNode(AST.IfElseStmtNode node) {
+        visit(node.exp());
+        then(() -> symTab.addScope());
+        visit(node.thenDeclList());
+        visit(node.thenStmtList());
+        then(() -> {
+            symTab.removeScope();
+            symTab.addScope();
+        });
+        visit(node.elseDeclList());
+        visit(node.elseStmtList());
+        then(() -> symTab.removeScope());
+    }
+
+    public void visitWhileStmtNode(AST.WhileStmtNode node) {
+        visit(node.exp());
+        then(() -> symTab.addScope());
+        visit(node.declList());
+        visit(node.stmtList());
+        then(() -> symTab.removeScope());
+    }
+
+    public void visitCallStmtNode(AST.CallStmtNode node) {
+        visitChildren(node);
+    }
+
+    public void visitReturnStmtNode(AST.ReturnStmtNode node) {
+        visitChildren(node);
+    }
+
+    public void visitIdNode(AST.IdNode node) {
+        SymInfo info = symTab.lookupGlobal(node.name());
+        if (info == null) {
+            ErrMsg.fatal(node.lineNum(), node.charNum(), "Undeclared identifier");
+        } else {
+            node.link(info);
+        }
+    }
+
+    public void visitDotAccessExpNode(AST.DotAccessExpNode node) {
+        node.setBadAccess(false);
+        visit(node.lhs());  // do name analysis on LHS
+        then(() -> dotAccessRhs(node));
+    }
+
+    // name analysis of the RHS of a dot-access, once the LHS is done
+    private void dotAccessRhs(AST.DotAccessExpNode node) {
+        AST.ExpNode lhs = node.lhs();
+        AST.IdNode rhs = node.idNode();
+        boolean badAccess = false;
+        SymTable structSymTab = null; // to lookup RHS of dot-access
+        SymInfo info = null;
+        if (lhs instanceof AST.IdNode) {
+            AST.IdNode id = (AST.IdNode) lhs;
+            info = id.info();
+            if (info == null) { // ID was undeclared
+                badAccess = true;
+            }
+            else if (info instanceof StructInfo) {
+                SymInfo tempSym = ((StructInfo)info).getStructType().info();
+                structSymTab = ((StructDefInfo)tempSym).getSymTable();
+            }
+            else {  // LHS is not a struct type
+                ErrMsg.fatal(id.lineNum(), id.charNum(),
+                             "Dot-access of non-struct type");
+                badAccess = true;
+            }
+        }
+        else if (lhs instanceof AST.DotAccessExpNode) {
+            AST.DotAccessExpNode dot = (AST.DotAccessExpNode) lhs;
+            if (dot.badAccess()) {  // if errors in processing the LHS
+                badAccess = true; // don't continue proccessing this dot-access
+            }
+            else { //  no errors in processing the LHS
+                info = dot.info();
+
+                if (info == null) {  // no struct in which to look up RHS
+                    ErrMsg.fatal(dot.lineNum(), dot.charNum(),
+                                 "Dot-access of non-struct type");
+                    badAccess = true;
+                }
+                else {  // get the struct's symbol table in which to lookup RHS
+                    if (info instanceof StructDefInfo) {
+                        structSymTab = ((StructDefInfo)info).getSymTable();
+                    }
+                    else {
+                        System.err.println("Unexpected Sym type in DotAccessExpNode");
+                        System.exit(-1);
+                    }
+                }
+            }
+        }
+        else { // don't know what kind of thing the LHS is
+            System.err.println("Unexpected node type in LHS of dot-access");
+            System.exit(-1);
+        }
+        // do name analysis on RHS of dot-access in the struct's symbol table
+        if (!badAccess) {
+            info = structSymTab.lookupGlobal(rhs.name()); // lookup
+
+            if (info == null) { // not found - RHS is not a valid field name
+                ErrMsg.fatal(rhs.lineNum(), rhs.charNum(),
+                             "Invalid struct field name");
+                badAccess = true;
+            }
+            else {
+                rhs.link(info);  // link the symbol
+                // if RHS is itself as struct type, link the symbol for its struct
+                // type to this dot-access node (to allow chained dot-access)
+                if (info instanceof StructInfo) {
+                    node.link(((StructInfo)info).getStructType().info());
+                }
+            }
+        }
+        node.setBadAccess(badAccess);
+    }
+
+    public void visitAssignNode(AST.AssignNode node) {
+        visit(node.rhs());
+        visit(node.lhs());
+    }
+
+    public void visitCallExpNode(AST.CallExpNode node) {
+        visitIdNode(node.idNode());
+        visit(node.expList());
+    }
+
+    public void visitUnaryMinusNode(AST.UnaryMinusNode node) {
+        visitChildren(node);
+    }
+
+    public void visitNotNode(AST.NotNode node) {
+        visitChildren(node);
+    }
+
+    public void visitPlusNode(AST.PlusNode node) { visitChildren(node); }
+    public void visitMinusNode(AST.MinusNode node) { visitChildren(node); }
+    public void visitTimesNode(AST.TimesNode node) { visitChildren(node); }
+    public void visitDivideNode(AST.DivideNode node) { visitChildren(node); }
+    public void visitAndNode(AST.AndNode node) { visitChildren(node); }
+    public void visitOrNode(AST.OrNode node) { visitChildren(node); }
+    public void visitEqualsNode(AST.EqualsNode node) { visitChildren(node); }
+    public void visitNotEqualsNode(AST.NotEqualsNode node) { visitChildren(node); }
+    public void visitLessNode(AST.LessNode node) { visitChildren(node); }
+    public void visitGreaterNode(AST.GreaterNode node) { visitChildren(node); }
+    public void visitLessEqNode(AST.LessEqNode node) { visitChildren(node); }
+    public void visitGreaterEqNode(AST.GreaterEqNode node) { visitChildren(node); }
+}
@@ -0,0 +1,432 @@
+package semantic;
+
+import java.util.*;
+import ast.*;
+import lexer.*;
+import symtable.*;
+
+/**
+ * Type checking pass (after name analysis). Each expression pushes its
+ * type on the value stack of the walk; the program must declare a
+ * "void main()" function.
+ */
+public class TypeChecker extends AST.VisitorWalk implements Pass {
+
+    private Type.AbstractType retType; // return type of the function being checked
+    private boolean main;
+
+    public String name() {
+        return "type-check";
+    }
+
+    public void begin() {
+        main = false;
+    }
+
+    public AST.DeclNode run(AST.DeclNode decl) {
+        walk(decl);
+        if (!(decl instanceof AST.FnDeclNode)) {
+            return decl;
+        }
+        AST.FnDeclNode fn = (AST.FnDeclNode) decl;
+        if (fn.idNode().name().equals("main") && fn.typeNode().type().isVoidType()
+            && fn.formalsList().length() == 0) {
+            main = true;
+        }
+        return decl;
+    }
+
+    public void end() {
+        if(!main){
+            ErrMsg.fatal(0,0,"No main function");
+        }
+    }
+
+    private Type.AbstractType popType() {
+        return (Type.AbstractType) pop();
+    }
+
+    protected void defaultVisit(AST.ASTnode node) {
+    }
+
+    public void visitFnDeclNode(AST.FnDeclNode node) {
+        retType = node.typeNode().type();
+        visit(node.body());
+    }
+
+    public void visitFnBodyNode(AST.FnBodyNode node) {
+        visit(node.stmtList());
+    }
+
+    public void visitStmtListNode(AST.StmtListNode node) {
+        visitChildren(node);
+    }
+
+    public void visitAssignStmtNode(AST.AssignStmtNode node) {
+        visit(node.assign());
+        then(() -> popType());
+    }
+
+    public void visitPostIncStmtNode(AST.PostIncStmtNode node) {
+        checkArithmetic(node.exp());
+    }
+
+    public void visitPostDecStmtNode(AST.PostDecStmtNode node) {
+        checkArithmetic(node.exp());
+    }
+
+    private void checkArithmetic(AST.ExpNode exp) {
+        visit(exp);
+        then(() -> {
+            Type.AbstractType type = popType();
+
+            if ( ! type.isErrorType() && ! type.isIntType() ) {
+                ErrMsg.fatal(exp.lineNum(), exp.charNum(),
+                             "Arithmetic operator applied to non-numeric operand");
+            }
+        });
+    }
+
+    public void visitReadStmtNode(AST.ReadStmtNode node) {
+        AST.ExpNode exp = node.exp();
+        visit(exp);
+        then(() -> {
+            Type.AbstractType type = popType();
+
+            if ( type.isFnType() ) {
+                ErrMsg.fatal(exp.lineNum(), exp.charNum(),
+                             "Attempt to read a function");
+            }
+            if ( type.isStructDefType() ) {
+                ErrMsg.fatal(exp.lineNum(), exp.charNum(),
+                             "Attempt to read a struct name");
+            }
+            if ( type.isStructType() ) {
+                ErrMsg.fatal(exp.lineNum(), exp.charNum(),
+                             "Attempt to read a struct variable");
+            }
+        });
+    }
+
+    public void visitWriteStmtNode(AST.WriteStmtNode node) {
+        AST.ExpNode exp = node.exp();
+        visit(exp);
+        then(() -> {
+            Type.AbstractType type = popType();
+
+            if (type.isFnType()) {
+                ErrMsg.fatal(exp.lineNum(), exp.charNum(),
+                             "Attempt to write a function");
+            }
+            if (type.isStructDefType()) {
+                ErrMsg.fatal(exp.lineNum(), exp.charNum(),
+                             "Attempt to write a struct name");
+            }
+            if (type.isStructType()) {
+                ErrMsg.fatal(exp.lineNum(), exp.charNum(),
+                             "Attempt to write a struct variable");
+            }
+            if (type.isVoidType()) {
+                ErrMsg.fatal(exp.lineNum(), exp.charNum(),
+                             "Attempt to write void");
+            }
+        });
+    }
+
+    private void checkCondition(AST.ExpNode exp, String msg) {
+        visit(exp);
+        then(() -> {
+            Type.AbstractType type = popType();
+            if ( ! type.isErrorType() && ! type.isBoolType() ) {
+                ErrMsg.fatal(exp.lineNum(), exp.charNum(), msg);
+            }
+        });
+    }
+
+    public void visitIfStmtNode(AST.IfStmtNode node) {
+        checkCondition(node.exp(), "Non-bool expression used as an if condition");
+        visit(node.stmtList());
+    }
+
+    public void visitIfElseStmtNode(AST.IfElseStmtNode node) {
+        checkCondition(node.exp(), "Non-bool expression used as an if condition");
+        visit(node.thenStmtList());
+        visit(node.elseStmtList());
+    }
+
+    public void visitWhileStmtNode(AST.WhileStmtNode node) {
+        checkCondition(node.exp(), "Non-bool expression used as a while condition");
+        visit(node.stmtList());
+    }
+
+    public void visitCallStmtNode(AST.CallStmtNode node) {
+        visit(node.call());
+        then(() -> popType());
+    }
+
+    public void visitReturnStmtNode(AST.ReturnStmtNode node) {
+        AST.ExpNode exp = node.exp();
+        Type.AbstractType retType = this.retType;
+        if (exp != null) {  // return value given
+            visit(exp);
+            then(() -> {
+                Type.AbstractType type = popType();
+                if ( retType.isVoidType() ) {
+                    ErrMsg.fatal(exp.lineNum(), exp.charNum(),
+                                 "Return with a value in a void function");
+                }
+                else if ( ! retType.isErrorType() && ! type.isErrorType() && ! retType.equals(type) ) {
+                    ErrMsg.fatal(exp.lineNum(), exp.charNum(),
+                                 "Bad return value");
+                }
+            });
+        }
+        else {  // no return value given -- ok if this is a void function
+            if ( ! retType.isVoidType() ) {
+                ErrMsg.fatal(node.lineNum(), node.charNum(), "Missing return value");
+            }
+        }
+    }
+
+    public void visitIntLitNode(AST.IntLitNode node) {
+        push(new Type.IntType());
+    }
+
+    public void visitStringLitNode(AST.StringLitNode node) {
+        push(new Type.StringType());
+    }
+
+    public void visitTrueNode(AST.TrueNode node) {
+        push(new Type.BoolType());
+    }
+
+    public void visitFalseNode(AST.FalseNode node) {
+        push(new Type.BoolType());
+    }
+
+    public void visitIdNode(AST.IdNode node) {
+        if ( node.info() != null ) {
+            push(node.info().getType());
+        }
+        else {
+            ErrMsg.fatal(node.lineNum(), node.charNum(), "ID with null info field in IdNode.typeCheck()");
+            System.exit(-1);
+        }
+    }
+
+    public void visitDotAccessExpNode(AST.DotAccessExpNode node) {
+        visitIdNode(node.idNode());
+    }
+
+    public void visitAssignNode(AST.AssignNode node) {
+        AST.ExpNode lhs = node.lhs();
+        visit(lhs);
+        visit(node.rhs());
+        then(() -> {
+            Type.AbstractType typeExp = popType();
+            Type.AbstractType typeLhs = popType();
+            Type.AbstractType retType = typeLhs;
+            int charNum = node.charNum();
+
+            if (typeLhs.isFnType() && typeExp.isFnType()) {
+                ErrMsg.fatal(lhs.lineNum(), charNum, "Function assignment");
+                retType = new Type.ErrorType();
+            }
+            if (typeLhs.isStructDefType() && typeExp.isStructDefType()) {
+                ErrMsg.fatal(lhs.lineNum(), charNum, "Struct name assignment");
+                retType = new Type.ErrorType();
+            }
+            if (typeLhs.isStructType() && typeExp.isStructType()) {
+                ErrMsg.fatal(lhs.lineNum(), charNum, "Struct variable assignment");
+                retType = new Type.ErrorType();
+            }
+            if (!typeLhs.equals(typeExp) && !typeLhs.isErrorType() && !typeExp.isErrorType()) {
+                ErrMsg.fatal(lhs.lineNum(), charNum, "Type mismatch");
+                retType = new Type.ErrorType();
+            }
+            if (typeLhs.isErrorType() || typeExp.isErrorType()) {
+                retType = new Type.ErrorType();
+            }
+
+            push(retType);
+        });
+    }
+
+    public void visitCallExpNode(AST.CallExpNode node) {
+        AST.IdNode id = node.idNode();
+        visitIdNode(id);
+        if ( ! popType().isFnType() ) {
+            ErrMsg.fatal(id.lineNum(), id.charNum(),
+                         "Attempt to call a non-function");
+            push(new Type.ErrorType());
+            return;
+        }
+        FnInfo fnInfo = (FnInfo)(id.info());
+        if ( fnInfo == null ) {
+            System.err.println("null sym for Id in CallExpNode.typeCheck");
+            System.exit(-1);
+        }
+
+        if ( node.expList().size() != fnInfo.getNumParams() ) {
+            ErrMsg.fatal(id.lineNum(), id.charNum(),
+                         "Function call with wrong number of args");
+            push(fnInfo.getReturnType());
+            return;
+        }
+        // the actuals against the formal types
+        List<Type.AbstractType> typeList = fnInfo.getParamTypes();
+        int k = 0;
+        for (AST.ExpNode actual : node.expList().getList()) {
+            int index = k;
+            visit(actual);
+            then(() -> {
+                Type.AbstractType actualType = popType(); // actual type of arg
+
+                if (!actualType.isErrorType()) { // if this is not an error
+                    Type.AbstractType formalType = typeList.get(index); // get the formal type
+                    if ( ! formalType.equals(actualType)) {
+                        ErrMsg.fatal(actual.lineNum(), actual.charNum(),
+                                     "Type of actual does not match type of formal");
+                    }
+                }
+            });
+            k++;
+        }
+        then(() -> push(fnInfo.getReturnType()));
+    }
+
+    public void visitUnaryMinusNode(AST.UnaryMinusNode node) {
+        visit(node.exp());
+        then(() -> {
+            Type.AbstractType type = popType();
+            Type.AbstractType retType = new Type.IntType();
+
+            if ( ! type.isErrorType() && ! type.isIntType() ) {
+                ErrMsg.fatal(node.lineNum(), node.charNum(),
+                             "Arithmetic operator applied to non-numeric operand");
+                retType = new Type.ErrorType();
+            }
+            if (type.isErrorType()) {
+                retType = new Type.ErrorType();
+            }
+            push(retType);
+        });
+    }
+
+    public void visitNotNode(AST.NotNode node) {
+        visit(node.exp());
+        then(() -> {
+            Type.AbstractType type = popType();
+            Type.AbstractType retType = new Type.BoolType();
+            if ( ! type.isErrorType() && ! type.isBoolType() ) {
+                ErrMsg.fatal(node.lineNum(), node.charNum(),
+                             "Logical operator applied to non-bool operand");
+                retType = new Type.ErrorType();
+            }
+            if ( type.isErrorType() ) {
+                retType = new Type.ErrorType();
+            }
+            push(retType);
+        });
+    }
+
+    /**
+     * Check the operands of an arithmetic (int result), logical (bool
+     * operands and result) or relational (int operands) operator
+     */
+    private void checkOperands(AST.BinaryExpNode node, boolean intOperands,
+                               boolean intResult, String msg) {
+        AST.ExpNode exp1 = node.exp1();
+        AST.ExpNode exp2 = node.exp2();
+        visit(exp1);
+        visit(exp2);
+        then(() -> {
+            Type.AbstractType type2 = popType();
+            Type.AbstractType type1 = popType();
+            Type.AbstractType retType = intResult ? new Type.IntType() : new Type.BoolType();
+
+            if ( ! type1.isErrorType() && ! (intOperands ? type1.isIntType() : type1.isBoolType()) ) {
+                ErrMsg.fatal(exp1.lineNum(), exp1.charNum(), msg);
+                retType = new Type.ErrorType();
+            }
+            if ( ! type2.isErrorType() && ! (intOperands ? type2.isIntType() : type2.isBoolType()) ) {
+                ErrMsg.fatal(exp2.lineNum(), exp2.charNum(), msg);
+                retType = new Type.ErrorType();
+            }
+            if ( type1.isErrorType() || type2.isErrorType() ) {
+                retType = new Type.ErrorType();
+            }
+            push(retType);
+        });
+    }
+
+    private void checkArithmetic(AST.BinaryExpNode node) {
+        checkOperands(node, true, true,
+                      "Arithmetic operator applied to non-numeric operand");
+    }
+
+    private void checkLogical(AST.BinaryExpNode node) {
+        checkOperands(node, false, false,
+                      "Logical operator applied to non-bool operand");
+    }
+
+    private void checkRelational(AST.BinaryExpNode node) {
+        checkOperands(node, true, false,
+                      "Relational operator applied to non-numeric operand");
+    }
+
+    private void checkEquality(AST.BinaryExpNode node) {
+        visit(node.exp1());
+        visit(node.exp2());
+        then(() -> {
+            Type.AbstractType type2 = popType();
+            Type.AbstractType type1 = popType();
+            Type.AbstractType retType = new Type.BoolType();
+            int lineNum = node.lineNum();
+            int charNum = node.charNum();
+
+            if ( type1.isVoidType() && type2.isVoidType() ) {
+                ErrMsg.fatal(lineNum, charNum,
+                             "Equality operator applied to void functions");
+                retType = new Type.ErrorType();
+            }
+            if ( type1.isFnType() && type2.isFnType() ) {
+                ErrMsg.fatal(lineNum, charNum,
+                             "Equality operator applied to functions");
+                retType = new Type.ErrorType();
+            }
+            if ( type1.isStructDefType() && type2.isStructDefType() ) {
+                ErrMsg.fatal(lineNum, charNum,
+                             "Equality operator applied to struct names");
+                retType = new Type.ErrorType();
+            }
+            if ( type1.isStructType() && type2.isStructType() ) {
+                ErrMsg.fatal(lineNum, charNum,
+                             "Equality operator applied to struct variables");
+                retType = new Type.ErrorType();
+            }
+            if ( ! type1.equals(type2) && ! type1.isErrorType() && ! type2.isErrorType() ) {
+                ErrMsg.fatal(lineNum, charNum,
+                             "Type mismatch");
+                retType = new Type.ErrorType();
+            }
+            if ( type1.isErrorType() || type2.isErrorType() ) {
+                retType = new Type.ErrorType();
+            }
+            push(retType);
+        });
+    }
+
+    public void visitPlusNode(AST.PlusNode node) { checkArithmetic(node); }
+    public void visitMinusNode(AST.MinusNode node) { checkArithmetic(node); }
+    public void visitTimesNode(AST.TimesNode node) { checkArithmetic(node); }
+    public void visitDivideNode(AST.DivideNode node) { checkArithmetic(node); }
+    public void visitAndNode(AST.AndNode node) { checkLogical(node); }
+    public void visitOrNode(AST.OrNode node) { checkLogical(node); }
+    public void visitEqualsNode(AST.EqualsNode node) { checkEquality(node); }
+    public void visitNotEqualsNode(AST.NotEqualsNode node) { checkEquality(node); }
+    public void visitLessNode(AST.LessNode node) { checkRelational(node); }
+    public void visitGreaterNode(AST.GreaterNode node) { checkRelational(node); }
+    public void visitLessEqNode(AST.LessEqNode node) { checkRelational(node); }
+    public void visitGreaterEqNode(AST.GreaterEqNode node) { checkRelational(node); }
+}
@@ -18,4 +18,13 @@ public class StructInfo extends SymInfo {
     public AST.IdNode getStructType() {
         return structType;
     }    
+
+    /**
+     * Return the size in bytes of the struct type (0 before the structs
+     * are laid out)
+     */
+    public int getSize() {
+        SymInfo info = structType.info();
+        return info instanceof StructDefInfo ? ((StructDefInfo) info).getSize() : 0;
+    }
 }
@@ -7,14 +7,20 @@ import java.util.*;
  */
 public class SymTable {
 
+    // scopes, from outer to inner
     private List<Map<String,SymInfo>> bindings;
 
+    // for each name, its visible declarations from outer to inner, so that
+    // lookups do not depend on the depth of the scopes
+    private Map<String,List<SymInfo>> visible;
+
     /**
      * Create a Symbol Table with one empty scope
      */
     public SymTable() {
         bindings = new ArrayList<Map<String,SymInfo>>();
         bindings.add(new HashMap<String,SymInfo>());
+        visible = new HashMap<String,List<SymInfo>>();
     }
 
     /**
@@ -25,20 +31,26 @@ public class SymTable {
             throw new NullPointerException();
         if ( bindings.isEmpty() )
             throw new EmptySymTableException();
-        Map<String,SymInfo> map = bindings.get(0);
+        Map<String,SymInfo> map = bindings.get(bindings.size() - 1);
         if ( map.get(name) != null )
             throw new DuplicateSymException();
         if(bindings.size() == 1){
             sym.setGlobal(true);
         }
         map.put(name, sym);
+        List<SymInfo> decls = visible.get(name);
+        if ( decls == null ) {
+            decls = new ArrayList<SymInfo>();
+            visible.put(name, decls);
+        }
+        decls.add(sym);
     }
 
     /**
      * Add a new inner scope
      */
     public void addScope() {
-        bindings.add(0, new HashMap<String,SymInfo>());
+        bindings.add(new HashMap<String,SymInfo>());
     }
 
     /**
@@ -47,7 +59,7 @@ public class SymTable {
     public SymInfo lookupLocal(String name) throws EmptySymTableException {
         if ( bindings.isEmpty() )
             throw new EmptySymTableException();
-        return bindings.get(0).get(name);
+        return bindings.get(bindings.size() - 1).get(name);
     }
 
     /**
@@ -56,12 +68,10 @@ public class SymTable {
     public SymInfo lookupGlobal(String name)  throws EmptySymTableException {
         if ( bindings.isEmpty() )
             throw new EmptySymTableException();
-        for ( Map<String,SymInfo> map : bindings )  {
-            SymInfo sym = map.get(name);
-            if ( sym != null )
-                return sym;
-        }
-        return null;
+        List<SymInfo> decls = visible.get(name);
+        if ( decls == null )
+            return null;
+        return decls.get(decls.size() - 1);
     }
 
     /**
@@ -70,7 +80,13 @@ public class SymTable {
     public void removeScope() throws EmptySymTableException {
         if ( bindings.isEmpty() )
             throw new EmptySymTableException();
-        bindings.remove(0);
+        Map<String,SymInfo> map = bindings.remove(bindings.size() - 1);
+        for ( String name : map.keySet() ) {
+            List<SymInfo> decls = visible.get(name);
+            decls.remove(decls.size() - 1);
+            if ( decls.isEmpty() )
+                visible.remove(name);
+        }
     }
 
     /**
@@ -78,14 +94,13 @@ public class SymTable {
      */
     public void print() {
         System.out.print("\nSym Table\n");
-        for ( Map<String,SymInfo> map : bindings )
-            System.out.println(map);
+        for ( int k = bindings.size() - 1; k >= 0; k-- )
+            System.out.println(bindings.get(k));
         System.out.println();
     }
 
     public boolean isGlobal(String name){
-        int len = bindings.size();
-        Map<String,SymInfo> map = bindings.get(len-1);
+        Map<String,SymInfo> map = bindings.get(0);
         SymInfo sym = map.get(name);
         if(sym != null){
             return true;
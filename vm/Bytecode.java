@@ -0,0 +1,101 @@
+package vm;
+
+/**
+ * A program compiled for the Interpreter: register-based bytecode.
+ *
+ * The code of all the functions is one array of ints, each instruction
+ * an opcode followed by its operands, also ints: a register (R), a
+ * global (G), a constant (K), the index of a function (F) or a string
+ * (S), or the index in code of the target of a jump (T). The registers
+ * are those of the frame of the function running: its formals first,
+ * then its locals (a struct variable having one for each of its words),
+ * then the temporaries of its expressions. A global is a word of the
+ * globals, a struct global having consecutive ones.
+ *
+ * Besides the plain instructions, superinstructions do in one dispatch
+ * what would take two or three: a comparison of two registers, or of a
+ * register and a constant, jumping on its result (JLT, JLTK...), the
+ * addition of a constant to a register or a global (INC, INCG) and to a
+ * register into another (ADDK).
+ */
+public final class Bytecode {
+
+    // the opcodes, with their operands
+    static final int CONST = 0;   // R K: R = K
+    static final int MOVE = 1;    // R R2: R = R2
+    static final int GET = 2;     // R G: R = G
+    static final int PUT = 3;     // G R: G = R
+    static final int ADD = 4;     // R R1 R2: R = R1 + R2
+    static final int SUB = 5;
+    static final int MUL = 6;
+    static final int DIV = 7;
+    static final int ADDK = 8;    // R R1 K: R = R1 + K
+    static final int NEG = 9;     // R R1: R = -R1
+    static final int NOT = 10;    // R R1: R = R1 ^ 1
+    static final int EQ = 11;     // R R1 R2: R = R1 == R2 ? 1 : 0
+    static final int NE = 12;
+    static final int LT = 13;
+    static final int LE = 14;
+    static final int GT = 15;
+    static final int GE = 16;
+    static final int JUMP = 17;   // T
+    static final int JT = 18;     // R T: jump if R != 0
+    static final int JF = 19;     // R T: jump if R == 0
+    static final int JEQ = 20;    // R1 R2 T: jump if R1 == R2
+    static final int JNE = 21;
+    static final int JLT = 22;
+    static final int JLE = 23;
+    static final int JGT = 24;
+    static final int JGE = 25;
+    static final int JEQK = 26;   // R K T: jump if R == K
+    static final int JNEK = 27;
+    static final int JLTK = 28;
+    static final int JLEK = 29;
+    static final int JGTK = 30;
+    static final int JGEK = 31;
+    static final int INC = 32;    // R K: R += K
+    static final int INCG = 33;   // G K: G += K
+    static final int CALL = 34;   // R F R2 K: R = F(the K registers from R2)
+    static final int RET = 35;    // R: return R
+    static final int RETV = 36;   // return, from a void function
+    static final int READ = 37;   // R: cin >> R
+    static final int PRINT = 38;  // R: cout << R
+    static final int PRINTS = 39; // S: cout << S
+
+    /**
+     * The jump (JEQ to JGE, or JEQK to JGEK) taken when the comparison
+     * of that one is false
+     */
+    static int negate(int jump) {
+        int base = jump >= JEQK ? JEQK : JEQ;
+        // EQ-NE, LT-GE and LE-GT are the pairs
+        final int[] negated = { 1, 0, 5, 4, 3, 2 };
+        return base + negated[jump - base];
+    }
+
+    final int[] code;
+    final int[] entries;     // the index in code of each function
+    final int[] formals;     // the number of formals of each function
+    final int[] frames;      // the number of registers of each function
+    final byte[][] strings;
+    final int globals;       // the number of words of the globals
+    final int main;          // the index of main
+
+    Bytecode(int[] code, int[] entries, int[] formals, int[] frames,
+             byte[][] strings, int globals, int main) {
+        this.code = code;
+        this.entries = entries;
+        this.formals = formals;
+        this.frames = frames;
+        this.strings = strings;
+        this.globals = globals;
+        this.main = main;
+    }
+
+    /**
+     * The number of ints of the code
+     */
+    public int size() {
+        return code.length;
+    }
+}
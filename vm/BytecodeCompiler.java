@@ -0,0 +1,712 @@
+package vm;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import ast.*;
+import codegen.OffsetResolver;
+import symtable.*;
+
+/**
+ * Code generation pass compiling the program to the Bytecode run by the
+ * Interpreter, in place of the MIPS code.
+ *
+ * Each variable has a register of the frame of its function (the locals
+ * of all the blocks have their own), or a word of the globals. An
+ * expression is computed into the register it is given (that of the
+ * variable assigned, or of an argument of a call) or, if none is, into a
+ * temporary, the temporaries being allocated as a stack above the
+ * variables; a variable is used in its register, unless an assignment in
+ * the operand evaluated after it could change it. As the code generator
+ * does, the arguments of a call are evaluated from the last, into the
+ * registers from which the frame of the function called starts.
+ *
+ * The conditions of the if and while statements are compiled to jumps,
+ * a comparison to one superinstruction (with a constant operand if it
+ * has one), && and || short-circuiting to their label; the test of a
+ * while loop is at its end. An assignment adding a constant to the
+ * variable assigned, and ++ and --, are an INC or an INCG.
+ */
+public class BytecodeCompiler extends AST.VisitorWalk implements Pass {
+
+    private static final int ANY = -1; // no register given
+
+    // the opcodes of the operators, and of their jumps
+    private static final Map<Class<?>, Integer> OPERATORS = new HashMap<Class<?>, Integer>();
+    private static final Map<Class<?>, Integer> JUMPS = new HashMap<Class<?>, Integer>();
+    static {
+        OPERATORS.put(AST.PlusNode.class, Bytecode.ADD);
+        OPERATORS.put(AST.MinusNode.class, Bytecode.SUB);
+        OPERATORS.put(AST.TimesNode.class, Bytecode.MUL);
+        OPERATORS.put(AST.DivideNode.class, Bytecode.DIV);
+        OPERATORS.put(AST.EqualsNode.class, Bytecode.EQ);
+        OPERATORS.put(AST.NotEqualsNode.class, Bytecode.NE);
+        OPERATORS.put(AST.LessNode.class, Bytecode.LT);
+        OPERATORS.put(AST.LessEqNode.class, Bytecode.LE);
+        OPERATORS.put(AST.GreaterNode.class, Bytecode.GT);
+        OPERATORS.put(AST.GreaterEqNode.class, Bytecode.GE);
+        JUMPS.put(AST.EqualsNode.class, Bytecode.JEQ);
+        JUMPS.put(AST.NotEqualsNode.class, Bytecode.JNE);
+        JUMPS.put(AST.LessNode.class, Bytecode.JLT);
+        JUMPS.put(AST.LessEqNode.class, Bytecode.JLE);
+        JUMPS.put(AST.GreaterNode.class, Bytecode.JGT);
+        JUMPS.put(AST.GreaterEqNode.class, Bytecode.JGE);
+    }
+
+    /**
+     * A place in the code, the jumps to it patched when it is bound
+     */
+    private static class Label {
+        int position = -1;
+        List<Integer> uses = new ArrayList<Integer>();
+    }
+
+    private int[] code = new int[1024];
+    private int size = 0;
+    private Map<SymInfo, Integer> functions = new IdentityHashMap<SymInfo, Integer>();
+    private List<Integer> entries = new ArrayList<Integer>();
+    private List<Integer> formals = new ArrayList<Integer>();
+    private List<Integer> frames = new ArrayList<Integer>();
+    private List<byte[]> strings = new ArrayList<byte[]>();
+    private Map<SymInfo, Integer> globals = new IdentityHashMap<SymInfo, Integer>();
+    private int globalWords = 0;
+    private int main = -1;
+    private Bytecode bytecode;
+
+    // of the function being compiled
+    private Map<SymInfo, Integer> registers;
+    private int firstTemp;
+    private int top;         // the first temporary free
+    private int frame;       // the number of registers used
+
+    public String name() {
+        return "codegen";
+    }
+
+    public AST.DeclNode run(AST.DeclNode decl) {
+        walk(decl);
+        return decl;
+    }
+
+    public void end() {
+        bytecode = new Bytecode(Arrays.copyOf(code, size), ints(entries), ints(formals),
+                                ints(frames), strings.toArray(new byte[0][]), globalWords,
+                                main);
+    }
+
+    public boolean runsOnErrors() {
+        return false;
+    }
+
+    /**
+     * The program compiled, once the pass has run
+     */
+    public Bytecode bytecode() {
+        return bytecode;
+    }
+
+    private static int[] ints(List<Integer> list) {
+        int[] ints = new int[list.size()];
+        for (int k = 0; k < ints.length; k++) {
+            ints[k] = list.get(k);
+        }
+        return ints;
+    }
+
+    private void emit(int... words) {
+        if (size + words.length > code.length) {
+            code = Arrays.copyOf(code, 2 * code.length + words.length);
+        }
+        for (int word : words) {
+            code[size++] = word;
+        }
+    }
+
+    // emit the jump with its operands, to the label
+    private void emitJump(Label label, int... words) {
+        emit(words);
+        if (label.position < 0) {
+            label.uses.add(size);
+        }
+        emit(label.position);
+    }
+
+    private void bind(Label label) {
+        label.position = size;
+        for (int use : label.uses) {
+            code[use] = size;
+        }
+    }
+
+    private int alloc() {
+        int register = top++;
+        frame = Math.max(frame, top);
+        return register;
+    }
+
+    // the register given, or a temporary
+    private int target(int dest) {
+        return dest == ANY ? alloc() : dest;
+    }
+
+    protected void defaultVisit(AST.ASTnode node) {
+    }
+
+    public void visitVarDeclNode(AST.VarDeclNode node) {
+        // a global
+        SymInfo info = node.getMyId().info();
+        globals.put(info, globalWords);
+        globalWords += OffsetResolver.size(info) / 4;
+    }
+
+    public void visitFnDeclNode(AST.FnDeclNode node) {
+        FnInfo info = (FnInfo) node.idNode().info();
+        int index = functions.size();
+        functions.put(info, index);
+        if (node.idNode().name().equals("main")) {
+            main = index;
+        }
+        entries.add(size);
+        formals.add(info.getNumParams());
+        frames.add(0);
+        registers = new IdentityHashMap<SymInfo, Integer>();
+        int register = 0;
+        for (AST.FormalDeclNode formal : node.formalsList().getList()) {
+            registers.put(formal.idNode().info(), register++);
+        }
+        // the locals of all the blocks
+        Deque<AST.ASTnode> nodes = new ArrayDeque<AST.ASTnode>();
+        nodes.push(node.body());
+        while (!nodes.isEmpty()) {
+            AST.ASTnode n = nodes.pop();
+            if (n instanceof AST.VarDeclNode) {
+                SymInfo local = ((AST.VarDeclNode) n).getMyId().info();
+                registers.put(local, register);
+                register += OffsetResolver.size(local) / 4;
+            }
+            nodes.addAll(n.children());
+        }
+        firstTemp = top = frame = register;
+        visit(node.body().stmtList());
+        then(() -> {
+            // falling off the end
+            if (info.getReturnType().isVoidType()) {
+                emit(Bytecode.RETV);
+            }
+            else {
+                int zero = alloc();
+                emit(Bytecode.CONST, zero, 0);
+                emit(Bytecode.RET, zero);
+            }
+            frames.set(index, frame);
+        });
+    }
+
+    public void visitStmtListNode(AST.StmtListNode node) {
+        for (AST.StmtNode stmt : node.getList()) {
+            visit(stmt);
+            then(() -> top = firstTemp);
+        }
+    }
+
+    public void visitAssignStmtNode(AST.AssignStmtNode node) {
+        AST.ExpNode lhs = node.assign().lhs();
+        AST.ExpNode rhs = node.assign().rhs();
+        Integer step = step(lhs, rhs);
+        if (step != null) {
+            genStep(lhs, step);
+            return;
+        }
+        int register = register(lhs);
+        if (register >= 0) {
+            visit(rhs, register);
+            then(() -> pop());
+        }
+        else {
+            visit(rhs, ANY);
+            then(() -> emit(Bytecode.PUT, global(lhs), (Integer) pop()));
+        }
+    }
+
+    // the constant added to the variable (or field) by the assignment of
+    // the value to it, null if it is not such an assignment
+    private Integer step(AST.ExpNode lhs, AST.ExpNode rhs) {
+        if (!(rhs instanceof AST.PlusNode || rhs instanceof AST.MinusNode)) {
+            return null;
+        }
+        AST.ExpNode exp1 = ((AST.BinaryExpNode) rhs).exp1();
+        AST.ExpNode exp2 = ((AST.BinaryExpNode) rhs).exp2();
+        if (rhs instanceof AST.PlusNode && exp1 instanceof AST.IntLitNode) {
+            AST.ExpNode exp = exp1;
+            exp1 = exp2;
+            exp2 = exp;
+        }
+        if (!(exp2 instanceof AST.IntLitNode) || !sameVariable(lhs, exp1)) {
+            return null;
+        }
+        int k = ((AST.IntLitNode) exp2).intVal();
+        return rhs instanceof AST.PlusNode ? k : -k;
+    }
+
+    private boolean sameVariable(AST.ExpNode exp1, AST.ExpNode exp2) {
+        if (!isVariable(exp2)) {
+            return false;
+        }
+        int register = register(exp1);
+        if (register >= 0) {
+            return register == register(exp2);
+        }
+        return register(exp2) < 0 && global(exp1) == global(exp2);
+    }
+
+    public void visitPostIncStmtNode(AST.PostIncStmtNode node) {
+        genStep(node.exp(), 1);
+    }
+
+    public void visitPostDecStmtNode(AST.PostDecStmtNode node) {
+        genStep(node.exp(), -1);
+    }
+
+    private void genStep(AST.ExpNode exp, int k) {
+        int register = register(exp);
+        if (register >= 0) {
+            emit(Bytecode.INC, register, k);
+        }
+        else {
+            emit(Bytecode.INCG, global(exp), k);
+        }
+    }
+
+    public void visitReadStmtNode(AST.ReadStmtNode node) {
+        int register = register(node.exp());
+        if (register >= 0) {
+            emit(Bytecode.READ, register);
+            return;
+        }
+        int value = alloc();
+        emit(Bytecode.READ, value);
+        emit(Bytecode.PUT, global(node.exp()), value);
+    }
+
+    public void visitWriteStmtNode(AST.WriteStmtNode node) {
+        AST.ExpNode exp = node.exp();
+        if (exp instanceof AST.StringLitNode) {
+            strings.add(string(((AST.StringLitNode) exp).strVal()));
+            emit(Bytecode.PRINTS, strings.size() - 1);
+            return;
+        }
+        visit(exp, ANY);
+        then(() -> emit(Bytecode.PRINT, (Integer) pop()));
+    }
+
+    public void visitIfStmtNode(AST.IfStmtNode node) {
+        Label end = new Label();
+        genJump(node.exp(), false, end);
+        visit(node.stmtList());
+        then(() -> bind(end));
+    }
+
+    public void visitIfElseStmtNode(AST.IfElseStmtNode node) {
+        Label otherwise = new Label();
+        Label end = new Label();
+        genJump(node.exp(), false, otherwise);
+        visit(node.thenStmtList());
+        then(() -> {
+            emitJump(end, Bytecode.JUMP);
+            bind(otherwise);
+        });
+        visit(node.elseStmtList());
+        then(() -> bind(end));
+    }
+
+    public void visitWhileStmtNode(AST.WhileStmtNode node) {
+        Label body = new Label();
+        Label test = new Label();
+        emitJump(test, Bytecode.JUMP);
+        bind(body);
+        visit(node.stmtList());
+        then(() -> bind(test));
+        genJump(node.exp(), true, body);
+    }
+
+    public void visitCallStmtNode(AST.CallStmtNode node) {
+        visit(node.call(), ANY);
+        then(() -> pop());
+    }
+
+    public void visitReturnStmtNode(AST.ReturnStmtNode node) {
+        if (node.exp() == null) {
+            emit(Bytecode.RETV);
+            return;
+        }
+        visit(node.exp(), ANY);
+        then(() -> emit(Bytecode.RET, (Integer) pop()));
+    }
+
+    /**
+     * Jump to the label if the condition is when, else fall through; the
+     * code is written by actions, in the order of the walk
+     */
+    private void genJump(AST.ExpNode exp, boolean when, Label label) {
+        if (exp instanceof AST.NotNode) {
+            genJump(((AST.NotNode) exp).exp(), !when, label);
+            return;
+        }
+        if (exp instanceof AST.TrueNode || exp instanceof AST.FalseNode) {
+            if ((exp instanceof AST.TrueNode) == when) {
+                then(() -> emitJump(label, Bytecode.JUMP));
+            }
+            return;
+        }
+        if (exp instanceof AST.AndNode || exp instanceof AST.OrNode) {
+            AST.BinaryExpNode binary = (AST.BinaryExpNode) exp;
+            if ((exp instanceof AST.AndNode) != when) {
+                // either operand decides: a false one of &&, a true one of ||
+                genJump(binary.exp1(), when, label);
+                genJump(binary.exp2(), when, label);
+                return;
+            }
+            Label decided = new Label();
+            genJump(binary.exp1(), !when, decided);
+            genJump(binary.exp2(), when, label);
+            then(() -> bind(decided));
+            return;
+        }
+        int mark = top;
+        Integer jump = JUMPS.get(exp.getClass());
+        if (jump == null) {
+            visit(exp, ANY);
+            then(() -> {
+                top = mark;
+                emitJump(label, when ? Bytecode.JT : Bytecode.JF, (Integer) pop());
+            });
+            return;
+        }
+        AST.BinaryExpNode binary = (AST.BinaryExpNode) exp;
+        AST.ExpNode exp1 = binary.exp1();
+        AST.ExpNode exp2 = binary.exp2();
+        if (exp1 instanceof AST.IntLitNode && !(exp2 instanceof AST.IntLitNode)) {
+            // k < x as x > k
+            exp1 = binary.exp2();
+            exp2 = binary.exp1();
+            jump = mirror(jump);
+        }
+        int taken = when ? jump : Bytecode.negate(jump);
+        visit(exp1, ANY);
+        if (exp2 instanceof AST.IntLitNode) {
+            int k = ((AST.IntLitNode) exp2).intVal();
+            then(() -> {
+                top = mark;
+                emitJump(label, taken - Bytecode.JEQ + Bytecode.JEQK, (Integer) pop(), k);
+            });
+            return;
+        }
+        genOperand(exp2);
+        then(() -> {
+            int register2 = (Integer) pop();
+            top = mark;
+            emitJump(label, taken, (Integer) pop(), register2);
+        });
+    }
+
+    // the jump of the comparison of its operands swapped
+    private static int mirror(int jump) {
+        switch (jump) {
+        case Bytecode.JLT: return Bytecode.JGT;
+        case Bytecode.JLE: return Bytecode.JGE;
+        case Bytecode.JGT: return Bytecode.JLT;
+        case Bytecode.JGE: return Bytecode.JLE;
+        default: return jump;
+        }
+    }
+
+    /**
+     * Compute the second operand of a binary expression, the first one's
+     * register on the stack of values: the value of the first one is
+     * first copied into a temporary if it is a variable the second one
+     * may assign
+     */
+    private void genOperand(AST.ExpNode exp2) {
+        if (assigns(exp2)) {
+            then(() -> {
+                int register1 = (Integer) pop();
+                if (register1 < firstTemp) {
+                    int copy = alloc();
+                    emit(Bytecode.MOVE, copy, register1);
+                    register1 = copy;
+                }
+                push(register1);
+            });
+        }
+        visit(exp2, ANY);
+    }
+
+    // true if the expression has an assignment
+    private static boolean assigns(AST.ExpNode exp) {
+        Deque<AST.ASTnode> nodes = new ArrayDeque<AST.ASTnode>();
+        nodes.push(exp);
+        while (!nodes.isEmpty()) {
+            AST.ASTnode node = nodes.pop();
+            if (node instanceof AST.AssignNode) {
+                return true;
+            }
+            nodes.addAll(node.children());
+        }
+        return false;
+    }
+
+    public void visitIntLitNode(AST.IntLitNode node) {
+        genConstant(node.intVal());
+    }
+
+    public void visitTrueNode(AST.TrueNode node) {
+        genConstant(1);
+    }
+
+    public void visitFalseNode(AST.FalseNode node) {
+        genConstant(0);
+    }
+
+    private void genConstant(int k) {
+        int register = target(arg());
+        emit(Bytecode.CONST, register, k);
+        push(register);
+    }
+
+    public void visitIdNode(AST.IdNode node) {
+        genLoad(node);
+    }
+
+    public void visitDotAccessExpNode(AST.DotAccessExpNode node) {
+        genLoad(node);
+    }
+
+    private void genLoad(AST.ExpNode exp) {
+        int dest = arg();
+        int register = register(exp);
+        if (register < 0) {
+            register = target(dest);
+            emit(Bytecode.GET, register, global(exp));
+        }
+        else if (dest != ANY && dest != register) {
+            emit(Bytecode.MOVE, dest, register);
+            register = dest;
+        }
+        push(register);
+    }
+
+    public void visitAssignNode(AST.AssignNode node) {
+        int dest = arg();
+        AST.ExpNode lhs = node.lhs();
+        int register = register(lhs);
+        if (register >= 0) {
+            visit(node.rhs(), register);
+            then(() -> {
+                pop();
+                if (dest != ANY && dest != register) {
+                    emit(Bytecode.MOVE, dest, register);
+                }
+                push(dest == ANY ? register : dest);
+            });
+            return;
+        }
+        visit(node.rhs(), dest);
+        then(() -> {
+            int value = (Integer) pop();
+            emit(Bytecode.PUT, global(lhs), value);
+            push(value);
+        });
+    }
+
+    public void visitCallExpNode(AST.CallExpNode node) {
+        int dest = arg();
+        List<AST.ExpNode> args = node.expList().getList();
+        int function = functions.get(node.idNode().info());
+        int mark = top;
+        int first = top;
+        top += args.size();
+        frame = Math.max(frame, top);
+        for (int k = args.size() - 1; k >= 0; k--) {
+            visit(args.get(k), first + k);
+            then(() -> pop());
+        }
+        then(() -> {
+            top = mark;
+            int register = target(dest);
+            emit(Bytecode.CALL, register, function, first, args.size());
+            push(register);
+        });
+    }
+
+    public void visitUnaryMinusNode(AST.UnaryMinusNode node) {
+        genUnary(node, Bytecode.NEG);
+    }
+
+    public void visitNotNode(AST.NotNode node) {
+        genUnary(node, Bytecode.NOT);
+    }
+
+    private void genUnary(AST.UnaryExpNode node, int opcode) {
+        int dest = arg();
+        int mark = top;
+        visit(node.exp(), ANY);
+        then(() -> {
+            int register1 = (Integer) pop();
+            top = mark;
+            int register = target(dest);
+            emit(opcode, register, register1);
+            push(register);
+        });
+    }
+
+    private void genBinary(AST.BinaryExpNode node) {
+        int dest = arg();
+        int mark = top;
+        int opcode = OPERATORS.get(node.getClass());
+        AST.ExpNode exp2 = node.exp2();
+        visit(node.exp1(), ANY);
+        if ((opcode == Bytecode.ADD || opcode == Bytecode.SUB)
+            && exp2 instanceof AST.IntLitNode) {
+            int k = ((AST.IntLitNode) exp2).intVal();
+            then(() -> {
+                int register1 = (Integer) pop();
+                top = mark;
+                int register = target(dest);
+                emit(Bytecode.ADDK, register, register1, opcode == Bytecode.ADD ? k : -k);
+                push(register);
+            });
+            return;
+        }
+        genOperand(exp2);
+        then(() -> {
+            int register2 = (Integer) pop();
+            int register1 = (Integer) pop();
+            top = mark;
+            int register = target(dest);
+            emit(opcode, register, register1, register2);
+            push(register);
+        });
+    }
+
+    public void visitPlusNode(AST.PlusNode node) {
+        genBinary(node);
+    }
+
+    public void visitMinusNode(AST.MinusNode node) {
+        genBinary(node);
+    }
+
+    public void visitTimesNode(AST.TimesNode node) {
+        genBinary(node);
+    }
+
+    public void visitDivideNode(AST.DivideNode node) {
+        genBinary(node);
+    }
+
+    public void visitEqualsNode(AST.EqualsNode node) {
+        genBinary(node);
+    }
+
+    public void visitNotEqualsNode(AST.NotEqualsNode node) {
+        genBinary(node);
+    }
+
+    public void visitLessNode(AST.LessNode node) {
+        genBinary(node);
+    }
+
+    public void visitGreaterNode(AST.GreaterNode node) {
+        genBinary(node);
+    }
+
+    public void visitLessEqNode(AST.LessEqNode node) {
+        genBinary(node);
+    }
+
+    public void visitGreaterEqNode(AST.GreaterEqNode node) {
+        genBinary(node);
+    }
+
+    public void visitAndNode(AST.AndNode node) {
+        genCondition(node);
+    }
+
+    public void visitOrNode(AST.OrNode node) {
+        genCondition(node);
+    }
+
+    // 1 if the condition holds, else 0
+    private void genCondition(AST.ExpNode exp) {
+        int dest = arg();
+        int mark = top;
+        Label holds = new Label();
+        Label end = new Label();
+        genJump(exp, true, holds);
+        then(() -> {
+            top = mark;
+            int register = target(dest);
+            emit(Bytecode.CONST, register, 0);
+            emitJump(end, Bytecode.JUMP);
+            bind(holds);
+            emit(Bytecode.CONST, register, 1);
+            bind(end);
+            push(register);
+        });
+    }
+
+    private static boolean isVariable(AST.ExpNode exp) {
+        return exp instanceof AST.IdNode || exp instanceof AST.DotAccessExpNode;
+    }
+
+    // the variable of an ID or a dot-access chain, and the offset of the
+    // word in it
+    private static AST.IdNode variable(AST.ExpNode exp) {
+        while (exp instanceof AST.DotAccessExpNode) {
+            exp = ((AST.DotAccessExpNode) exp).lhs();
+        }
+        return (AST.IdNode) exp;
+    }
+
+    private static int offset(AST.ExpNode exp) {
+        int offset = 0;
+        while (exp instanceof AST.DotAccessExpNode) {
+            AST.DotAccessExpNode dot = (AST.DotAccessExpNode) exp;
+            offset += dot.idNode().info().getOffset();
+            exp = dot.lhs();
+        }
+        return offset;
+    }
+
+    // the register of the word, -1 if it is in a global
+    private int register(AST.ExpNode exp) {
+        AST.IdNode id = variable(exp);
+        if (id.info().isGlobal()) {
+            return -1;
+        }
+        return registers.get(id.info()) + offset(exp) / 4;
+    }
+
+    // the index of the word, in a global, in the globals
+    private int global(AST.ExpNode exp) {
+        return globals.get(variable(exp).info()) + offset(exp) / 4;
+    }
+
+    // the bytes of a string literal, its escapes decoded
+    static byte[] string(String literal) {
+        StringBuilder text = new StringBuilder();
+        for (int k = 1; k < literal.length() - 1; k++) {
+            char c = literal.charAt(k);
+            if (c == '\\') {
+                c = literal.charAt(++k);
+                if (c == 'n') {
+                    c = '\n';
+                }
+                else if (c == 't') {
+                    c = '\t';
+                }
+            }
+            text.append(c);
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,94 @@
+package vm;
+
+import java.io.*;
+
+/**
+ * The cin and cout of a program run by an interpreter, through buffers
+ * of their own, so that reading and writing allocate nothing. An int is
+ * read as IoRuntime does: the next digits, a '-' just before them making
+ * it negative, 0 at the end of the input.
+ */
+class Console {
+
+    private static final int SIZE = 1 << 16;
+
+    private final InputStream in;
+    private final OutputStream out;
+    private final byte[] input = new byte[SIZE];
+    private int inPos = 0;
+    private int inLength = 0;
+    private final byte[] output = new byte[SIZE];
+    private int outPos = 0;
+
+    Console(InputStream in, OutputStream out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    int readInt() throws IOException {
+        int c = read();
+        boolean negative = false;
+        while (c >= 0 && (c < '0' || c > '9')) {
+            negative = c == '-';
+            c = read();
+        }
+        int n = 0;
+        while (c >= '0' && c <= '9') {
+            n = 10 * n + c - '0';
+            c = read();
+        }
+        return negative ? -n : n;
+    }
+
+    // the next byte of the input, -1 at its end
+    private int read() throws IOException {
+        if (inPos == inLength) {
+            inLength = in.read(input, 0, SIZE);
+            inPos = 0;
+            if (inLength <= 0) {
+                inLength = 0;
+                return -1;
+            }
+        }
+        return input[inPos++] & 0xff;
+    }
+
+    void print(int n) throws IOException {
+        if (outPos > SIZE - 11) {
+            flush();
+        }
+        if (n < 0) {
+            output[outPos++] = '-';
+        }
+        else {
+            n = -n; // the digits of -2^31 as of the others
+        }
+        int end = outPos;
+        do {
+            output[end++] = (byte) ('0' - n % 10);
+            n /= 10;
+        } while (n != 0);
+        // the digits were written from the last
+        for (int k = outPos, j = end - 1; k < j; k++, j--) {
+            byte digit = output[k];
+            output[k] = output[j];
+            output[j] = digit;
+        }
+        outPos = end;
+    }
+
+    void print(byte[] bytes) throws IOException {
+        for (int k = 0; k < bytes.length; k++) {
+            if (outPos == SIZE) {
+                flush();
+            }
+            output[outPos++] = bytes[k];
+        }
+    }
+
+    void flush() throws IOException {
+        out.write(output, 0, outPos);
+        out.flush();
+        outPos = 0;
+    }
+}
@@ -0,0 +1,232 @@
+package vm;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * The interpreter of the Bytecode: one loop dispatching on the opcode of
+ * each instruction, with the program counter, the frame of the function
+ * running and the code in locals.
+ *
+ * The frames are preallocated: the registers of all of them are one
+ * array, each frame starting at the registers of the arguments of the
+ * call in the frame of the caller (so that they are its formals without
+ * a copy), and the return addresses another one, of REGISTERS and CALLS
+ * ints, allocated with the interpreter. A frame has its registers but
+ * the formals set to 0 on a call. Nothing is allocated while the program
+ * runs.
+ */
+public class Interpreter {
+
+    private static final int REGISTERS = 1 << 22;
+    private static final int CALLS = 1 << 18;
+
+    private final Bytecode program;
+    private final int[] registers = new int[REGISTERS];
+    // for each call: the return address, the frame and the register of
+    // the result of the caller
+    private final int[] calls = new int[3 * CALLS];
+
+    public Interpreter(Bytecode program) {
+        this.program = program;
+    }
+
+    /**
+     * Run main, reading cin from in and writing cout to out. A division by
+     * zero throws an ArithmeticException, and too many nested calls an
+     * IllegalStateException
+     */
+    public void run(InputStream in, OutputStream out) throws IOException {
+        Console console = new Console(in, out);
+        try {
+            execute(console);
+        }
+        finally {
+            console.flush();
+        }
+    }
+
+    private void execute(Console console) throws IOException {
+        final int[] code = program.code;
+        final int[] entries = program.entries;
+        final int[] formals = program.formals;
+        final int[] frames = program.frames;
+        final byte[][] strings = program.strings;
+        final int[] globals = new int[program.globals];
+        final int[] r = registers;
+        final int[] calls = this.calls;
+        int depth = 0;
+        int fp = 0;
+        int pc = entries[program.main];
+        if (frames[program.main] > REGISTERS) {
+            throw new IllegalStateException("stack overflow");
+        }
+        Arrays.fill(r, 0, frames[program.main], 0);
+        while (true) {
+            switch (code[pc]) {
+            case Bytecode.CONST:
+                r[fp + code[pc + 1]] = code[pc + 2];
+                pc += 3;
+                break;
+            case Bytecode.MOVE:
+                r[fp + code[pc + 1]] = r[fp + code[pc + 2]];
+                pc += 3;
+                break;
+            case Bytecode.GET:
+                r[fp + code[pc + 1]] = globals[code[pc + 2]];
+                pc += 3;
+                break;
+            case Bytecode.PUT:
+                globals[code[pc + 1]] = r[fp + code[pc + 2]];
+                pc += 3;
+                break;
+            case Bytecode.ADD:
+                r[fp + code[pc + 1]] = r[fp + code[pc + 2]] + r[fp + code[pc + 3]];
+                pc += 4;
+                break;
+            case Bytecode.SUB:
+                r[fp + code[pc + 1]] = r[fp + code[pc + 2]] - r[fp + code[pc + 3]];
+                pc += 4;
+                break;
+            case Bytecode.MUL:
+                r[fp + code[pc + 1]] = r[fp + code[pc + 2]] * r[fp + code[pc + 3]];
+                pc += 4;
+                break;
+            case Bytecode.DIV:
+                r[fp + code[pc + 1]] = r[fp + code[pc + 2]] / r[fp + code[pc + 3]];
+                pc += 4;
+                break;
+            case Bytecode.ADDK:
+                r[fp + code[pc + 1]] = r[fp + code[pc + 2]] + code[pc + 3];
+                pc += 4;
+                break;
+            case Bytecode.NEG:
+                r[fp + code[pc + 1]] = -r[fp + code[pc + 2]];
+                pc += 3;
+                break;
+            case Bytecode.NOT:
+                r[fp + code[pc + 1]] = r[fp + code[pc + 2]] ^ 1;
+                pc += 3;
+                break;
+            case Bytecode.EQ:
+                r[fp + code[pc + 1]] = r[fp + code[pc + 2]] == r[fp + code[pc + 3]] ? 1 : 0;
+                pc += 4;
+                break;
+            case Bytecode.NE:
+                r[fp + code[pc + 1]] = r[fp + code[pc + 2]] != r[fp + code[pc + 3]] ? 1 : 0;
+                pc += 4;
+                break;
+            case Bytecode.LT:
+                r[fp + code[pc + 1]] = r[fp + code[pc + 2]] < r[fp + code[pc + 3]] ? 1 : 0;
+                pc += 4;
+                break;
+            case Bytecode.LE:
+                r[fp + code[pc + 1]] = r[fp + code[pc + 2]] <= r[fp + code[pc + 3]] ? 1 : 0;
+                pc += 4;
+                break;
+            case Bytecode.GT:
+                r[fp + code[pc + 1]] = r[fp + code[pc + 2]] > r[fp + code[pc + 3]] ? 1 : 0;
+                pc += 4;
+                break;
+            case Bytecode.GE:
+                r[fp + code[pc + 1]] = r[fp + code[pc + 2]] >= r[fp + code[pc + 3]] ? 1 : 0;
+                pc += 4;
+                break;
+            case Bytecode.JUMP:
+                pc = code[pc + 1];
+                break;
+            case Bytecode.JT:
+                pc = r[fp + code[pc + 1]] != 0 ? code[pc + 2] : pc + 3;
+                break;
+            case Bytecode.JF:
+                pc = r[fp + code[pc + 1]] == 0 ? code[pc + 2] : pc + 3;
+                break;
+            case Bytecode.JEQ:
+                pc = r[fp + code[pc + 1]] == r[fp + code[pc + 2]] ? code[pc + 3] : pc + 4;
+                break;
+            case Bytecode.JNE:
+                pc = r[fp + code[pc + 1]] != r[fp + code[pc + 2]] ? code[pc + 3] : pc + 4;
+                break;
+            case Bytecode.JLT:
+                pc = r[fp + code[pc + 1]] < r[fp + code[pc + 2]] ? code[pc + 3] : pc + 4;
+                break;
+            case Bytecode.JLE:
+                pc = r[fp + code[pc + 1]] <= r[fp + code[pc + 2]] ? code[pc + 3] : pc + 4;
+                break;
+            case Bytecode.JGT:
+                pc = r[fp + code[pc + 1]] > r[fp + code[pc + 2]] ? code[pc + 3] : pc + 4;
+                break;
+            case Bytecode.JGE:
+                pc = r[fp + code[pc + 1]] >= r[fp + code[pc + 2]] ? code[pc + 3] : pc + 4;
+                break;
+            case Bytecode.JEQK:
+                pc = r[fp + code[pc + 1]] == code[pc + 2] ? code[pc + 3] : pc + 4;
+                break;
+            case Bytecode.JNEK:
+                pc = r[fp + code[pc + 1]] != code[pc + 2] ? code[pc + 3] : pc + 4;
+                break;
+            case Bytecode.JLTK:
+                pc = r[fp + code[pc + 1]] < code[pc + 2] ? code[pc + 3] : pc + 4;
+                break;
+            case Bytecode.JLEK:
+                pc = r[fp + code[pc + 1]] <= code[pc + 2] ? code[pc + 3] : pc + 4;
+                break;
+            case Bytecode.JGTK:
+                pc = r[fp + code[pc + 1]] > code[pc + 2] ? code[pc + 3] : pc + 4;
+                break;
+            case Bytecode.JGEK:
+                pc = r[fp + code[pc + 1]] >= code[pc + 2] ? code[pc + 3] : pc + 4;
+                break;
+            case Bytecode.INC:
+                r[fp + code[pc + 1]] += code[pc + 2];
+                pc += 3;
+                break;
+            case Bytecode.INCG:
+                globals[code[pc + 1]] += code[pc + 2];
+                pc += 3;
+                break;
+            case Bytecode.CALL: {
+                int function = code[pc + 2];
+                int callee = fp + code[pc + 3];
+                if (depth == CALLS || callee + frames[function] > REGISTERS) {
+                    throw new IllegalStateException("stack overflow");
+                }
+                calls[3 * depth] = pc + 5;
+                calls[3 * depth + 1] = fp;
+                calls[3 * depth + 2] = code[pc + 1];
+                depth++;
+                Arrays.fill(r, callee + formals[function], callee + frames[function], 0);
+                fp = callee;
+                pc = entries[function];
+                break;
+            }
+            case Bytecode.RET:
+            case Bytecode.RETV: {
+                if (depth == 0) {
+                    return;
+                }
+                int value = code[pc] == Bytecode.RET ? r[fp + code[pc + 1]] : 0;
+                depth--;
+                pc = calls[3 * depth];
+                fp = calls[3 * depth + 1];
+                r[fp + calls[3 * depth + 2]] = value;
+                break;
+            }
+            case Bytecode.READ:
+                r[fp + code[pc + 1]] = console.readInt();
+                pc += 2;
+                break;
+            case Bytecode.PRINT:
+                console.print(r[fp + code[pc + 1]]);
+                pc += 2;
+                break;
+            case Bytecode.PRINTS:
+                console.print(strings[code[pc + 1]]);
+                pc += 2;
+                break;
+            default:
+                throw new IllegalStateException("bad opcode " + code[pc] + " at " + pc);
+            }
+        }
+    }
+}
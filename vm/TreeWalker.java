@@ -0,0 +1,262 @@
+package vm;
+
+import java.io.*;
+import java.util.*;
+import ast.*;
+import codegen.OffsetResolver;
+import symtable.*;
+
+/**
+ * A naive interpreter of the program, walking its AST: the baseline of
+ * the Interpreter in benchmarks, run on the same checked program.
+ *
+ * Each call has a map from the variables to their words, the statements
+ * and the expressions are evaluated by recursive methods, with the Java
+ * stack, and the values are boxed. The program runs as with the
+ * Interpreter: the arguments of a call are evaluated from the last, the
+ * variables start at 0, and cin and cout go through a Console.
+ */
+public class TreeWalker implements Pass {
+
+    private Map<SymInfo, AST.FnDeclNode> functions = new IdentityHashMap<SymInfo, AST.FnDeclNode>();
+    private List<SymInfo> globalInfos = new ArrayList<SymInfo>();
+    private AST.FnDeclNode main;
+
+    // of a run
+    private Map<SymInfo, int[]> globals;
+    private Map<SymInfo, int[]> frame;
+    private Console console;
+    private boolean returning;
+    private Object returned;
+
+    public String name() {
+        return "codegen";
+    }
+
+    public AST.DeclNode run(AST.DeclNode decl) {
+        if (decl instanceof AST.VarDeclNode) {
+            globalInfos.add(((AST.VarDeclNode) decl).getMyId().info());
+        }
+        else if (decl instanceof AST.FnDeclNode) {
+            AST.FnDeclNode fn = (AST.FnDeclNode) decl;
+            functions.put(fn.idNode().info(), fn);
+            if (fn.idNode().name().equals("main")) {
+                main = fn;
+            }
+        }
+        return decl;
+    }
+
+    public boolean runsOnErrors() {
+        return false;
+    }
+
+    /**
+     * Run main, reading cin from in and writing cout to out. A division by
+     * zero throws an ArithmeticException, and too many nested calls an
+     * IllegalStateException
+     */
+    public void run(InputStream in, OutputStream out) throws IOException {
+        globals = new IdentityHashMap<SymInfo, int[]>();
+        for (SymInfo info : globalInfos) {
+            globals.put(info, new int[OffsetResolver.size(info) / 4]);
+        }
+        console = new Console(in, out);
+        try {
+            call(main, new ArrayList<Object>());
+        }
+        catch (StackOverflowError error) {
+            throw new IllegalStateException("stack overflow");
+        }
+        finally {
+            console.flush();
+        }
+    }
+
+    private Object call(AST.FnDeclNode fn, List<Object> args) throws IOException {
+        Map<SymInfo, int[]> caller = frame;
+        frame = new IdentityHashMap<SymInfo, int[]>();
+        List<AST.FormalDeclNode> formals = fn.formalsList().getList();
+        for (int k = 0; k < formals.size(); k++) {
+            frame.put(formals.get(k).idNode().info(), new int[] { (Integer) args.get(k) });
+        }
+        execute(fn.body().stmtList());
+        Object value = returning ? returned : Integer.valueOf(0);
+        returning = false;
+        frame = caller;
+        return value;
+    }
+
+    private void execute(AST.StmtListNode list) throws IOException {
+        for (AST.StmtNode stmt : list.getList()) {
+            execute(stmt);
+            if (returning) {
+                return;
+            }
+        }
+    }
+
+    private void execute(AST.StmtNode stmt) throws IOException {
+        if (stmt instanceof AST.AssignStmtNode) {
+            evaluate(((AST.AssignStmtNode) stmt).assign());
+        }
+        else if (stmt instanceof AST.PostIncStmtNode) {
+            AST.ExpNode exp = ((AST.PostIncStmtNode) stmt).exp();
+            store(exp, (Integer) evaluate(exp) + 1);
+        }
+        else if (stmt instanceof AST.PostDecStmtNode) {
+            AST.ExpNode exp = ((AST.PostDecStmtNode) stmt).exp();
+            store(exp, (Integer) evaluate(exp) - 1);
+        }
+        else if (stmt instanceof AST.ReadStmtNode) {
+            store(((AST.ReadStmtNode) stmt).exp(), console.readInt());
+        }
+        else if (stmt instanceof AST.WriteStmtNode) {
+            AST.ExpNode exp = ((AST.WriteStmtNode) stmt).exp();
+            if (exp instanceof AST.StringLitNode) {
+                console.print(BytecodeCompiler.string(((AST.StringLitNode) exp).strVal()));
+            }
+            else {
+                console.print((Integer) evaluate(exp));
+            }
+        }
+        else if (stmt instanceof AST.IfStmtNode) {
+            AST.IfStmtNode node = (AST.IfStmtNode) stmt;
+            if (isTrue(node.exp())) {
+                execute(node.stmtList());
+            }
+        }
+        else if (stmt instanceof AST.IfElseStmtNode) {
+            AST.IfElseStmtNode node = (AST.IfElseStmtNode) stmt;
+            execute(isTrue(node.exp()) ? node.thenStmtList() : node.elseStmtList());
+        }
+        else if (stmt instanceof AST.WhileStmtNode) {
+            AST.WhileStmtNode node = (AST.WhileStmtNode) stmt;
+            while (!returning && isTrue(node.exp())) {
+                execute(node.stmtList());
+            }
+        }
+        else if (stmt instanceof AST.CallStmtNode) {
+            evaluate(((AST.CallStmtNode) stmt).call());
+        }
+        else if (stmt instanceof AST.ReturnStmtNode) {
+            AST.ExpNode exp = ((AST.ReturnStmtNode) stmt).exp();
+            returned = exp == null ? Integer.valueOf(0) : evaluate(exp);
+            returning = true;
+        }
+    }
+
+    private boolean isTrue(AST.ExpNode exp) throws IOException {
+        return (Integer) evaluate(exp) != 0;
+    }
+
+    private Object evaluate(AST.ExpNode exp) throws IOException {
+        if (exp instanceof AST.IntLitNode) {
+            return ((AST.IntLitNode) exp).intVal();
+        }
+        if (exp instanceof AST.TrueNode) {
+            return 1;
+        }
+        if (exp instanceof AST.FalseNode) {
+            return 0;
+        }
+        if (exp instanceof AST.IdNode || exp instanceof AST.DotAccessExpNode) {
+            return words(exp)[offset(exp) / 4];
+        }
+        if (exp instanceof AST.AssignNode) {
+            AST.AssignNode assign = (AST.AssignNode) exp;
+            Object value = evaluate(assign.rhs());
+            store(assign.lhs(), (Integer) value);
+            return value;
+        }
+        if (exp instanceof AST.CallExpNode) {
+            AST.CallExpNode call = (AST.CallExpNode) exp;
+            List<AST.ExpNode> argList = call.expList().getList();
+            Object[] args = new Object[argList.size()];
+            for (int k = args.length - 1; k >= 0; k--) {
+                args[k] = evaluate(argList.get(k));
+            }
+            return call(functions.get(call.idNode().info()), Arrays.asList(args));
+        }
+        if (exp instanceof AST.UnaryMinusNode) {
+            return -(Integer) evaluate(((AST.UnaryMinusNode) exp).exp());
+        }
+        if (exp instanceof AST.NotNode) {
+            return (Integer) evaluate(((AST.NotNode) exp).exp()) ^ 1;
+        }
+        AST.BinaryExpNode binary = (AST.BinaryExpNode) exp;
+        if (exp instanceof AST.AndNode) {
+            return isTrue(binary.exp1()) && isTrue(binary.exp2()) ? 1 : 0;
+        }
+        if (exp instanceof AST.OrNode) {
+            return isTrue(binary.exp1()) || isTrue(binary.exp2()) ? 1 : 0;
+        }
+        int value1 = (Integer) evaluate(binary.exp1());
+        int value2 = (Integer) evaluate(binary.exp2());
+        if (exp instanceof AST.PlusNode) {
+            return value1 + value2;
+        }
+        if (exp instanceof AST.MinusNode) {
+            return value1 - value2;
+        }
+        if (exp instanceof AST.TimesNode) {
+            return value1 * value2;
+        }
+        if (exp instanceof AST.DivideNode) {
+            return value1 / value2;
+        }
+        boolean holds;
+        if (exp instanceof AST.EqualsNode) {
+            holds = value1 == value2;
+        }
+        else if (exp instanceof AST.NotEqualsNode) {
+            holds = value1 != value2;
+        }
+        else if (exp instanceof AST.LessNode) {
+            holds = value1 < value2;
+        }
+        else if (exp instanceof AST.LessEqNode) {
+            holds = value1 <= value2;
+        }
+        else if (exp instanceof AST.GreaterNode) {
+            holds = value1 > value2;
+        }
+        else {
+            holds = value1 >= value2;
+        }
+        return holds ? 1 : 0;
+    }
+
+    private void store(AST.ExpNode exp, int value) {
+        words(exp)[offset(exp) / 4] = value;
+    }
+
+    // the words of the variable of an ID or a dot-access chain, created
+    // on the first use of a local
+    private int[] words(AST.ExpNode exp) {
+        while (exp instanceof AST.DotAccessExpNode) {
+            exp = ((AST.DotAccessExpNode) exp).lhs();
+        }
+        SymInfo info = ((AST.IdNode) exp).info();
+        if (info.isGlobal()) {
+            return globals.get(info);
+        }
+        int[] words = frame.get(info);
+        if (words == null) {
+            words = new int[OffsetResolver.size(info) / 4];
+            frame.put(info, words);
+        }
+        return words;
+    }
+
+    // the offset of the word in the variable
+    private static int offset(AST.ExpNode exp) {
+        int offset = 0;
+        while (exp instanceof AST.DotAccessExpNode) {
+            AST.DotAccessExpNode dot = (AST.DotAccessExpNode) exp;
+            offset += dot.idNode().info().getOffset();
+            exp = dot.lhs();
+        }
+        return offset;
+    }
+}